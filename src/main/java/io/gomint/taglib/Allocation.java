@@ -1,14 +1,135 @@
 package io.gomint.taglib;
 
 /**
+ * Heap costs of decoded values, used to charge allocation limits. The sizes are the shallow sizes on a 64 bit JVM
+ * with compressed references where every object is aligned to 8 bytes.
+ *
  * @author geNAZt
  * @version 1.0
  */
 class Allocation {
 
-    static int ARRAY_LIST = 40;
-    static int REFERENCE = 4;
-    static int STRING = 48;
-    static int COMPOUND = 72;
+    static final int REFERENCE = 4;
+    static final int ARRAY = 16;
+    static final int BOXED = 16;
+    static final int BOXED_WIDE = 24;
+    static final int STRING = 24;
+    static final int ARRAY_LIST = 24 + ARRAY;
+
+    // NBTTagCompound, its HashMap and the table the map creates for its first entry
+    static final int COMPOUND = 48 + 48 + ARRAY + 16 * REFERENCE;
+
+    // Node of the HashMap and the table slots it needs with the default load factor
+    static final int COMPOUND_ENTRY = 32 + 2 * REFERENCE;
+
+    private Allocation() {
+
+    }
+
+    static long align( long size ) {
+        return ( size + 7 ) & ~7L;
+    }
+
+    /**
+     * Gets the cost of a string before it has been decoded. Strings which only contain latin-1 characters are
+     * stored with one byte per character, which is the common case for NBT data.
+     *
+     * @param length The length of the UTF-8 encoded string
+     * @return The heap cost in bytes
+     */
+    static long string( int length ) {
+        return STRING + align( ARRAY + (long) length );
+    }
+
+    /**
+     * Gets the cost which has not been charged by {@link #string(int)} once the string has been decoded. Strings
+     * with characters outside of latin-1 are stored with two bytes per character.
+     *
+     * @param value  The decoded string
+     * @param length The length of the UTF-8 encoded string
+     * @return The additional heap cost in bytes
+     */
+    static long stringExtra( String value, int length ) {
+        // Only multi byte characters can be outside of latin-1, those make the string shorter than its encoding
+        if ( value.length() == length ) {
+            return 0;
+        }
+
+        return Math.max( 0, align( ARRAY + 2L * value.length() ) - align( ARRAY + (long) length ) );
+    }
+
+    static long byteArray( int length ) {
+        return align( ARRAY + (long) length );
+    }
+
+    static long intArray( int length ) {
+        return align( ARRAY + 4L * length );
+    }
+
+    /**
+     * Gets the cost of a list and its elements. Elements which are no primitive values charge themselves when they
+     * are decoded.
+     *
+     * @param listType The type of the elements
+     * @param length   The amount of elements
+     * @return The heap cost in bytes
+     */
+    static long list( byte listType, int length ) {
+        return ARRAY_LIST + align( (long) REFERENCE * length ) + (long) value( listType ) * length;
+    }
+
+    /**
+     * Gets the cost of a primitive value once it has been boxed. All bytes and small numbers are cached by
+     * the JVM, those are charged as well except for bytes.
+     *
+     * @param tagID The type of the value
+     * @return The heap cost in bytes, 0 for values which charge themselves
+     */
+    static int value( byte tagID ) {
+        switch ( tagID ) {
+            case NBTDefinitions.TAG_SHORT:
+            case NBTDefinitions.TAG_INT:
+            case NBTDefinitions.TAG_FLOAT:
+                return BOXED;
+            case NBTDefinitions.TAG_LONG:
+            case NBTDefinitions.TAG_DOUBLE:
+                return BOXED_WIDE;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Gets the amount of bytes a value needs at least in its encoded form
+     *
+     * @param tagID     The type of the value
+     * @param useVarint Whether or not numbers and lengths are encoded as varints
+     * @return The minimal encoded size in bytes
+     */
+    static int minimumSize( byte tagID, boolean useVarint ) {
+        switch ( tagID ) {
+            case NBTDefinitions.TAG_BYTE:
+            case NBTDefinitions.TAG_COMPOUND:
+                return 1;
+            case NBTDefinitions.TAG_SHORT:
+                return 2;
+            case NBTDefinitions.TAG_INT:
+            case NBTDefinitions.TAG_BYTE_ARRAY:
+            case NBTDefinitions.TAG_INT_ARRAY:
+                return useVarint ? 1 : 4;
+            case NBTDefinitions.TAG_LONG:
+                return useVarint ? 1 : 8;
+            case NBTDefinitions.TAG_FLOAT:
+                return 4;
+            case NBTDefinitions.TAG_DOUBLE:
+                return 8;
+            case NBTDefinitions.TAG_STRING:
+                return useVarint ? 1 : 2;
+            case NBTDefinitions.TAG_LIST:
+                return useVarint ? 2 : 5;
+            default:
+                return 0;
+        }
+    }
 
 }
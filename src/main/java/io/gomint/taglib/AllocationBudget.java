@@ -0,0 +1,190 @@
+package io.gomint.taglib;
+
+import java.io.IOException;
+
+/**
+ * Resource limits of a reader. Every limit is checked on the header of a value, before anything gets allocated
+ * for it. When the reader knows how much input is left, declared lengths which can't fit into that input are
+ * rejected as invalid data right away.
+ *
+ * @author geNAZt
+ * @version 1.0
+ */
+class AllocationBudget {
+
+    static final int DEFAULT_MAX_DEPTH = 512;
+
+    private long remaining = -1;
+    private int maxDepth = DEFAULT_MAX_DEPTH;
+    private int maxListLength = -1;
+    private int maxArrayLength = -1;
+    private int maxStringLength = -1;
+    private int depth;
+
+    private NBTMetrics metrics;
+
+    void setLimit( long limit ) {
+        this.remaining = limit;
+    }
+
+    void setMaxDepth( int maxDepth ) {
+        this.maxDepth = maxDepth;
+    }
+
+    void setMaxListLength( int maxListLength ) {
+        this.maxListLength = maxListLength;
+    }
+
+    void setMaxArrayLength( int maxArrayLength ) {
+        this.maxArrayLength = maxArrayLength;
+    }
+
+    void setMaxStringLength( int maxStringLength ) {
+        this.maxStringLength = maxStringLength;
+    }
+
+    void setMetrics( NBTMetrics metrics ) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Charges the given amount of bytes from the allocation limit
+     *
+     * @param bytes The amount of bytes which are about to be allocated
+     * @throws AllocationLimitReachedException Thrown in case the limit does not allow the allocation
+     */
+    void charge( long bytes ) throws AllocationLimitReachedException {
+        if ( this.remaining != -1 ) {
+            if ( this.remaining - bytes < 0 ) {
+                this.reject( "Could not allocate more bytes due to reaching the set limit" );
+            }
+
+            this.remaining -= bytes;
+        }
+    }
+
+    /**
+     * Enters a compound or list
+     *
+     * @throws AllocationLimitReachedException Thrown in case the maximum depth has been exceeded
+     */
+    void enter() throws AllocationLimitReachedException {
+        if ( ++this.depth > this.maxDepth && this.maxDepth != -1 ) {
+            this.reject( "Could not read NBT data nested deeper than " + this.maxDepth + " levels" );
+        }
+    }
+
+    void leave() {
+        this.depth--;
+    }
+
+    /**
+     * Drops all limits and everything which has been charged
+     */
+    void clear() {
+        this.remaining = -1;
+        this.maxDepth = DEFAULT_MAX_DEPTH;
+        this.maxListLength = -1;
+        this.maxArrayLength = -1;
+        this.maxStringLength = -1;
+        this.depth = 0;
+    }
+
+    /**
+     * Forgets about the nesting of a parse which has been aborted
+     */
+    void reset() {
+        this.depth = 0;
+    }
+
+    /**
+     * Checks the header of a list
+     *
+     * @param listType  The type of the elements
+     * @param length    The declared amount of elements
+     * @param available The amount of input left or -1 if unknown
+     * @param useVarint Whether or not numbers and lengths are encoded as varints
+     * @return The capacity the list should be created with
+     * @throws IOException                     Thrown in case the length is negative or the elements can't fit into the input
+     * @throws AllocationLimitReachedException Thrown in case the list is longer than allowed
+     */
+    int checkList( byte listType, int length, long available, boolean useVarint ) throws IOException, AllocationLimitReachedException {
+        if ( listType < NBTDefinitions.TAG_END || listType > NBTDefinitions.TAG_INT_ARRAY ) {
+            throw new IOException( "Invalid NBT Data: Unknown tag <" + listType + ">" );
+        }
+
+        // Lists of end tags don't hold any elements, no matter what their length says
+        if ( listType == NBTDefinitions.TAG_END ) {
+            return 0;
+        }
+
+        if ( length < 0 ) {
+            throw new IOException( "Invalid NBT Data: Negative list length <" + length + ">" );
+        }
+
+        if ( this.maxListLength != -1 && length > this.maxListLength ) {
+            this.reject( "Could not read list of " + length + " elements, the limit is " + this.maxListLength );
+        }
+
+        this.checkInput( length, Allocation.minimumSize( listType, useVarint ), available, "list" );
+
+        // Lists of unknown input only grow while elements arrive
+        return available != -1 ? length : Math.min( length, 1024 );
+    }
+
+    /**
+     * Checks the header of a byte or int array
+     *
+     * @param length      The declared amount of elements
+     * @param elementSize The minimal encoded size of one element
+     * @param available   The amount of input left or -1 if unknown
+     * @throws IOException                     Thrown in case the length is negative or the elements can't fit into the input
+     * @throws AllocationLimitReachedException Thrown in case the array is longer than allowed
+     */
+    void checkArray( int length, int elementSize, long available ) throws IOException, AllocationLimitReachedException {
+        if ( length < 0 ) {
+            throw new IOException( "Invalid NBT Data: Negative array length <" + length + ">" );
+        }
+
+        if ( this.maxArrayLength != -1 && length > this.maxArrayLength ) {
+            this.reject( "Could not read array of " + length + " elements, the limit is " + this.maxArrayLength );
+        }
+
+        this.checkInput( length, elementSize, available, "array" );
+    }
+
+    /**
+     * Checks the header of a string
+     *
+     * @param length    The declared length of the UTF-8 encoded string
+     * @param available The amount of input left or -1 if unknown
+     * @throws IOException                     Thrown in case the length is negative or the string can't fit into the input
+     * @throws AllocationLimitReachedException Thrown in case the string is longer than allowed
+     */
+    void checkString( int length, long available ) throws IOException, AllocationLimitReachedException {
+        if ( length < 0 ) {
+            throw new IOException( "Invalid NBT Data: Negative string length <" + length + ">" );
+        }
+
+        if ( this.maxStringLength != -1 && length > this.maxStringLength ) {
+            this.reject( "Could not read string of " + length + " bytes, the limit is " + this.maxStringLength );
+        }
+
+        this.checkInput( length, 1, available, "string" );
+    }
+
+    private void checkInput( int length, int elementSize, long available, String type ) throws IOException {
+        if ( available != -1 && (long) length * elementSize > available ) {
+            throw new IOException( "Invalid NBT Data: Declared " + type + " length <" + length + "> does not fit into the remaining " + available + " bytes" );
+        }
+    }
+
+    private void reject( String message ) throws AllocationLimitReachedException {
+        if ( this.metrics != null ) {
+            this.metrics.recordAllocationLimitRejection();
+        }
+
+        throw new AllocationLimitReachedException( message );
+    }
+
+}
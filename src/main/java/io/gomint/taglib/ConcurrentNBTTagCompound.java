@@ -0,0 +1,201 @@
+package io.gomint.taglib;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Compound which can be read and modified by multiple threads at once. Children are stored in a
+ * {@link ConcurrentHashMap}, so all get methods are lock free and never see a partially modified compound. Lists
+ * and compounds inserted through {@link #getList(String, boolean)} and {@link #getCompound(String, boolean)} are
+ * concurrent as well and inserted atomically, so two threads asking for the same missing child always get the same
+ * instance. Read-modify-write updates like counters should use {@link #compute(String, BiFunction)} or
+ * {@link #merge(String, Object, BiFunction)} instead of a get followed by an add.
+ * <p>
+ * Values added through the add methods are stored as they are. Lists and compounds added that way are only thread
+ * safe if they have been thread safe before, use {@link #copyOf(NBTTagCompound)} to convert a whole tree. Like
+ * with {@link ConcurrentHashMap} null values are not supported.
+ * <p>
+ * Concurrent compounds can be written by {@link NBTWriter} like any other compound, {@link NBTReader#setConcurrent(boolean)}
+ * makes the reader create them. Clones are plain compounds, their {@link #contentHash()} is computed on every call
+ * since it can't be cached safely.
+ *
+ * @author geNAZt
+ * @version 1.0
+ */
+public class ConcurrentNBTTagCompound extends NBTTagCompound {
+
+    /**
+     * Creates a concurrent copy of the given compound. Nested compounds are converted to concurrent compounds,
+     * lists to {@link CopyOnWriteArrayList}s and arrays are copied, the given compound is not modified.
+     *
+     * @param compound The compound to copy
+     * @return The concurrent copy which keeps the name of the given compound
+     */
+    public static ConcurrentNBTTagCompound copyOf( NBTTagCompound compound ) {
+        ConcurrentNBTTagCompound copy = new ConcurrentNBTTagCompound( compound.getName() );
+        for ( Map.Entry<String, Object> entry : compound.entries() ) {
+            copy.values.put( entry.getKey(), concurrentValue( entry.getValue() ) );
+        }
+
+        return copy;
+    }
+
+    private static Object concurrentValue( Object value ) {
+        if ( value instanceof NBTTagCompound ) {
+            return copyOf( (NBTTagCompound) value );
+        } else if ( value instanceof List ) {
+            List<?> list = (List<?>) value;
+            Object[] elements = new Object[list.size()];
+            for ( int i = 0; i < elements.length; i++ ) {
+                elements[i] = concurrentValue( list.get( i ) );
+            }
+
+            return new CopyOnWriteArrayList<>( elements );
+        }
+
+        return NBTTagCompound.deepCloneValue( value );
+    }
+
+    private final ConcurrentMap<String, Object> values;
+
+    /**
+     * Constructs a new and empty concurrent compound given its name.
+     *
+     * @param name The name of the compound
+     */
+    public ConcurrentNBTTagCompound( String name ) {
+        this( name, new ConcurrentHashMap<>() );
+    }
+
+    private ConcurrentNBTTagCompound( String name, ConcurrentMap<String, Object> values ) {
+        super( name, values );
+        this.values = values;
+    }
+
+    /**
+     * Gets the list stored under the specified name. In case the list does not exist and insert is set to
+     * true a new and empty {@link CopyOnWriteArrayList} is inserted atomically. If insert is set to false null
+     * will be returned instead.
+     *
+     * @param name   The name of the list
+     * @param insert Whether or not to insert a new and empty list if the list does not exist
+     * @return The list or null
+     */
+    @Override
+    @SuppressWarnings( "unchecked" )
+    public List<Object> getList( String name, boolean insert ) {
+        Object value = this.values.get( name );
+        if ( value != null || !insert ) {
+            return (List<Object>) value;
+        }
+
+        this.ensureMutable();
+        return (List<Object>) this.values.computeIfAbsent( name, key -> new CopyOnWriteArrayList<>() );
+    }
+
+    /**
+     * Gets the compound stored under the specified name. In case the compound does not exist and insert is set to
+     * true a new and empty concurrent compound is inserted atomically. If insert is set to false null will be
+     * returned instead.
+     *
+     * @param name   The name of the compound
+     * @param insert Whether or not to insert a new and empty compound if the compound does not exist
+     * @return The compound or null
+     */
+    @Override
+    public NBTTagCompound getCompound( String name, boolean insert ) {
+        Object value = this.values.get( name );
+        if ( value != null || !insert ) {
+            return (NBTTagCompound) value;
+        }
+
+        this.ensureMutable();
+        return (NBTTagCompound) this.values.computeIfAbsent( name, ConcurrentNBTTagCompound::new );
+    }
+
+    /**
+     * Stores the value under the given name unless there already is a value for it. This happens atomically.
+     *
+     * @param name  The name of the value
+     * @param value The value to be stored, has to be one of the supported NBT types
+     * @return The value which has been stored before or null if the given value has been stored
+     * @throws IllegalArgumentException Thrown in case the value is no supported NBT type
+     */
+    public Object putIfAbsent( String name, Object value ) {
+        this.ensureMutable();
+        return this.values.putIfAbsent( name, checkValue( name, value ) );
+    }
+
+    /**
+     * Computes the value for the given name if there is none yet. The mapping function is called at most once
+     * and the whole operation happens atomically, other updates of the same name wait until it has finished so
+     * the function should be short and must not modify this compound.
+     *
+     * @param name    The name of the value
+     * @param mapping Function which computes the value, returning null stores nothing
+     * @return The current value, either the existing or the computed one
+     * @throws IllegalArgumentException Thrown in case the computed value is no supported NBT type
+     */
+    public Object computeIfAbsent( String name, Function<String, Object> mapping ) {
+        this.ensureMutable();
+        return this.values.computeIfAbsent( name, key -> checkValue( key, mapping.apply( key ) ) );
+    }
+
+    /**
+     * Computes a new value for the given name from its current value, or null if there is none. The whole
+     * operation happens atomically, see {@link #computeIfAbsent(String, Function)} for restrictions of the
+     * remapping function.
+     *
+     * @param name      The name of the value
+     * @param remapping Function which computes the new value, returning null removes the value
+     * @return The new value or null if there is none
+     * @throws IllegalArgumentException Thrown in case the computed value is no supported NBT type
+     */
+    public Object compute( String name, BiFunction<String, Object, Object> remapping ) {
+        this.ensureMutable();
+        return this.values.compute( name, ( key, value ) -> checkValue( key, remapping.apply( key, value ) ) );
+    }
+
+    /**
+     * Stores the value under the given name if there is none yet, otherwise combines the current and the given
+     * value. The whole operation happens atomically, see {@link #computeIfAbsent(String, Function)} for
+     * restrictions of the remapping function.
+     *
+     * @param name      The name of the value
+     * @param value     The value to store or combine with the current one
+     * @param remapping Function which combines the current and the given value, returning null removes the value
+     * @return The new value or null if there is none
+     * @throws IllegalArgumentException Thrown in case the value is no supported NBT type
+     */
+    public Object merge( String name, Object value, BiFunction<Object, Object, Object> remapping ) {
+        this.ensureMutable();
+        return this.values.merge( name, checkValue( name, value ), ( current, given ) -> checkValue( name, remapping.apply( current, given ) ) );
+    }
+
+    @Override
+    boolean isConcurrent() {
+        return true;
+    }
+
+    private static Object checkValue( String name, Object value ) {
+        if ( value == null ) {
+            return null;
+        }
+
+        if ( NBTDefinitions.getTagType( value ) == -1 ) {
+            throw new IllegalArgumentException( "Value of " + name + " is no NBT type: " + value.getClass().getName() );
+        }
+
+        if ( value instanceof NBTTagCompound && !name.equals( ( (NBTTagCompound) value ).getName() ) ) {
+            throw new IllegalArgumentException( "Failed to add NBTTagCompound with name '" + ( (NBTTagCompound) value ).getName() + "' given name '" + name + "'" );
+        }
+
+        return value;
+    }
+
+}
@@ -1,5 +1,7 @@
 package io.gomint.taglib;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * @author geNAZt
  * @version 1.0
@@ -8,7 +10,7 @@ public class FallbackDecoder implements StringDecoder {
 
     @Override
     public String decode( byte[] data, int length, int offset ) {
-        return new String( data, length, offset );
+        return new String( data, length, offset, StandardCharsets.UTF_8 );
     }
 
 }
@@ -0,0 +1,443 @@
+package io.gomint.taglib;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Loads all NBT files of a directory on a bounded amount of worker threads. Files may be gzip compressed, zlib
+ * compressed or uncompressed, the compression is detected per file.
+ * <p>
+ * Every worker reads whole files into a buffer it keeps for the next file and inflates them with its own
+ * {@link Inflater}, so loading thousands of small files doesn't allocate a stream, a buffer and an inflater per file
+ * like {@link NBTTagCompound#readFrom(java.io.File, boolean, ByteOrder)} does. Results are handed over through a
+ * bounded queue in the order they complete: workers wait while the consumer falls behind, so the amount of parsed
+ * compounds which are held at once is bounded as well.
+ * <pre>
+ * try ( Stream&lt;NBTBulkLoader.Result&gt; results = new NBTBulkLoader( ByteOrder.BIG_ENDIAN ).loadAll( dir, path -&gt; path.toString().endsWith( ".dat" ), 8 ) ) {
+ *     results.forEach( result -&gt; ... );
+ * }
+ * </pre>
+ *
+ * @author geNAZt
+ * @version 1.0
+ */
+public class NBTBulkLoader {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_RETAINED_BUFFER = 4 * 1024 * 1024;
+    private static final int MAX_INFLATED = Integer.MAX_VALUE - 8;
+
+    private static final int GZIP_FHCRC = 2;
+    private static final int GZIP_FEXTRA = 4;
+    private static final int GZIP_FNAME = 8;
+    private static final int GZIP_FCOMMENT = 16;
+
+    private static final AtomicInteger THREAD_ID = new AtomicInteger();
+
+    private final ByteOrder byteOrder;
+    private boolean useVarint;
+    private int allocateLimit = -1;
+
+    /**
+     * Constructs a loader for files in the given byteorder
+     *
+     * @param byteOrder The byteorder of the encoded data
+     */
+    public NBTBulkLoader( ByteOrder byteOrder ) {
+        this.byteOrder = byteOrder;
+    }
+
+    public void setUseVarint( boolean useVarint ) {
+        this.useVarint = useVarint;
+    }
+
+    public boolean isUseVarint() {
+        return this.useVarint;
+    }
+
+    /**
+     * Sets the amount of heap the decoded values of one file may take up, see
+     * {@link NBTStreamReader#setAllocateLimit(int)}. Compressed files may not inflate to more bytes than this either.
+     *
+     * @param allocateLimit The limit in bytes or -1 for no limit
+     */
+    public void setAllocateLimit( int allocateLimit ) {
+        this.allocateLimit = allocateLimit;
+    }
+
+    /**
+     * Loads all regular files in the directory and its subdirectories which pass the filter. The files are listed
+     * right away, loading starts on the worker threads before this returns.
+     * <p>
+     * The stream has to be closed when it isn't consumed completely, closing it stops the workers. A file which
+     * can't be read or parsed doesn't stop the others, it's reported as a failed result.
+     *
+     * @param directory   The directory to load
+     * @param filter      Filter which selects the files to load
+     * @param parallelism The amount of worker threads
+     * @return Stream of the results, in the order they complete
+     * @throws IOException Thrown in case the directory can't be listed
+     */
+    public Stream<Result> loadAll( Path directory, Predicate<Path> filter, int parallelism ) throws IOException {
+        if ( parallelism < 1 ) {
+            throw new IllegalArgumentException( "Loading needs at least one worker" );
+        }
+
+        List<Path> files;
+        try ( Stream<Path> walk = Files.walk( directory ) ) {
+            files = walk.filter( Files::isRegularFile ).filter( filter ).collect( Collectors.toCollection( ArrayList::new ) );
+        }
+
+        Results results = new Results( files, Math.min( parallelism, Math.max( files.size(), 1 ) ) );
+        Spliterator<Result> spliterator = Spliterators.spliterator( results, files.size(), Spliterator.SIZED | Spliterator.NONNULL );
+        return StreamSupport.stream( spliterator, false ).onClose( results::close );
+    }
+
+    /**
+     * Outcome of loading one file
+     */
+    public static final class Result {
+
+        private final Path path;
+        private final NBTTagCompound compound;
+        private final Exception error;
+
+        private Result( Path path, NBTTagCompound compound, Exception error ) {
+            this.path = path;
+            this.compound = compound;
+            this.error = error;
+        }
+
+        public Path getPath() {
+            return this.path;
+        }
+
+        /**
+         * Gets the root of the file
+         *
+         * @return The root or null if the file could not be loaded
+         */
+        public NBTTagCompound getCompound() {
+            return this.compound;
+        }
+
+        /**
+         * Gets the reason the file could not be loaded
+         *
+         * @return An {@link IOException}, {@link AllocationLimitReachedException}, unexpected runtime exception or an
+         * {@link ExecutionException} wrapping an error, null when the file has been loaded
+         */
+        public Exception getError() {
+            return this.error;
+        }
+
+        public boolean isSuccess() {
+            return this.error == null;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{path=" + this.path + ", success=" + this.isSuccess() + "}";
+        }
+
+    }
+
+    /**
+     * Hands out the results of the workers, stops them when it gets closed
+     */
+    private final class Results implements Iterator<Result> {
+
+        private final List<Path> files;
+        private final AtomicInteger next = new AtomicInteger();
+        private final BlockingQueue<Result> queue;
+        private final ExecutorService executor;
+        private int received;
+
+        private Results( List<Path> files, int parallelism ) {
+            this.files = files;
+            this.queue = new ArrayBlockingQueue<>( parallelism * 2 );
+            this.executor = Executors.newFixedThreadPool( parallelism, runnable -> {
+                Thread thread = new Thread( runnable, "NBTBulkLoader-" + THREAD_ID.incrementAndGet() );
+                thread.setDaemon( true );
+                return thread;
+            } );
+
+            for ( int i = 0; i < parallelism; i++ ) {
+                this.executor.execute( new Worker( this ) );
+            }
+
+            this.executor.shutdown();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.received < this.files.size();
+        }
+
+        @Override
+        public Result next() {
+            if ( !this.hasNext() ) {
+                throw new NoSuchElementException();
+            }
+
+            try {
+                Result result = this.queue.take();
+                this.received++;
+                return result;
+            } catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new UncheckedIOException( new InterruptedIOException( "Interrupted while waiting for NBT files" ) );
+            }
+        }
+
+        private Path claim() {
+            int index = this.next.getAndIncrement();
+            return index < this.files.size() ? this.files.get( index ) : null;
+        }
+
+        private void close() {
+            // Workers waiting for the queue get interrupted, workers which are loading stop after their file
+            this.next.set( this.files.size() );
+            this.executor.shutdownNow();
+            this.queue.clear();
+        }
+
+    }
+
+    /**
+     * Loads claimed files until none are left. The buffers and inflaters are reused for every file.
+     */
+    private final class Worker implements Runnable {
+
+        private final Results results;
+        private final CRC32 crc = new CRC32();
+
+        private Inflater gzipInflater;
+        private Inflater zlibInflater;
+        private byte[] input = new byte[BUFFER_SIZE];
+        private byte[] output = new byte[BUFFER_SIZE];
+        private int outputLength;
+
+        private Worker( Results results ) {
+            this.results = results;
+        }
+
+        @Override
+        public void run() {
+            try {
+                Path path;
+                while ( ( path = this.results.claim() ) != null ) {
+                    Result result;
+                    try {
+                        result = new Result( path, this.load( path ), null );
+                    } catch ( IOException | AllocationLimitReachedException | RuntimeException e ) {
+                        // A broken file must not stall the consumer, it waits for one result per file
+                        result = new Result( path, null, e );
+                    } catch ( Error e ) {
+                        // Errors like running out of heap would end the worker without a result, drop the buffers of
+                        // the file and carry on with the next one
+                        this.input = new byte[BUFFER_SIZE];
+                        this.output = new byte[BUFFER_SIZE];
+                        result = new Result( path, null, new ExecutionException( "Loading failed with " + e, e ) );
+                    }
+
+                    this.results.queue.put( result );
+                    this.trimBuffers();
+                }
+            } catch ( InterruptedException e ) {
+                // Closed by the consumer
+            } finally {
+                if ( this.gzipInflater != null ) {
+                    this.gzipInflater.end();
+                }
+
+                if ( this.zlibInflater != null ) {
+                    this.zlibInflater.end();
+                }
+            }
+        }
+
+        private NBTTagCompound load( Path path ) throws IOException, AllocationLimitReachedException {
+            int length = this.read( path );
+            byte[] data = this.input;
+            if ( length >= 2 && ( data[0] & 0xFF ) == 0x1F && ( data[1] & 0xFF ) == 0x8B ) {
+                this.gunzip( length );
+                data = this.output;
+                length = this.outputLength;
+            } else if ( length >= 2 && ( data[0] & 0x0F ) == 8 && ( ( data[0] & 0xFF ) << 8 | data[1] & 0xFF ) % 31 == 0 ) {
+                // zlib header, an uncompressed root starts with the compound tag which never passes this check
+                if ( this.zlibInflater == null ) {
+                    this.zlibInflater = new Inflater();
+                }
+
+                this.inflate( this.zlibInflater, 0, length );
+                data = this.output;
+                length = this.outputLength;
+            }
+
+            NBTByteArrayReader reader = new NBTByteArrayReader( data, 0, length, NBTBulkLoader.this.byteOrder );
+            reader.setUseVarint( NBTBulkLoader.this.useVarint );
+            reader.setAllocateLimit( NBTBulkLoader.this.allocateLimit );
+            return reader.parse();
+        }
+
+        private int read( Path path ) throws IOException {
+            try ( FileChannel channel = FileChannel.open( path, StandardOpenOption.READ ) ) {
+                long size = channel.size();
+                if ( size > Integer.MAX_VALUE - 8 ) {
+                    throw new IOException( "File is too big to be loaded: " + size + " bytes" );
+                }
+
+                if ( this.input.length < size ) {
+                    this.input = new byte[(int) size];
+                }
+
+                ByteBuffer buffer = ByteBuffer.wrap( this.input, 0, (int) size );
+                while ( buffer.hasRemaining() ) {
+                    if ( channel.read( buffer ) < 0 ) {
+                        break;
+                    }
+                }
+
+                return buffer.position();
+            }
+        }
+
+        private void gunzip( int length ) throws IOException {
+            byte[] data = this.input;
+            if ( length < 18 || data[2] != 8 ) {
+                throw new IOException( "Invalid GZIP data: Unsupported header" );
+            }
+
+            int flags = data[3] & 0xFF;
+            int offset = 10;
+            if ( ( flags & GZIP_FEXTRA ) != 0 ) {
+                offset += 2 + ( ( data[offset] & 0xFF ) | ( data[offset + 1] & 0xFF ) << 8 );
+            }
+
+            if ( ( flags & GZIP_FNAME ) != 0 ) {
+                offset = this.skipZeroTerminated( offset, length );
+            }
+
+            if ( ( flags & GZIP_FCOMMENT ) != 0 ) {
+                offset = this.skipZeroTerminated( offset, length );
+            }
+
+            if ( ( flags & GZIP_FHCRC ) != 0 ) {
+                offset += 2;
+            }
+
+            if ( offset > length ) {
+                throw new IOException( "Invalid GZIP data: Truncated header" );
+            }
+
+            if ( this.gzipInflater == null ) {
+                this.gzipInflater = new Inflater( true );
+            }
+
+            int trailer = this.inflate( this.gzipInflater, offset, length - offset );
+            if ( trailer + 8 > length ) {
+                throw new IOException( "Invalid GZIP data: Missing trailer" );
+            }
+
+            this.crc.reset();
+            this.crc.update( this.output, 0, this.outputLength );
+            if ( (int) this.crc.getValue() != this.readIntLE( trailer ) || this.outputLength != this.readIntLE( trailer + 4 ) ) {
+                throw new IOException( "Invalid GZIP data: Checksum mismatch" );
+            }
+        }
+
+        /**
+         * Inflates the given part of the input into the output buffer
+         *
+         * @return The index of the first input byte behind the compressed data
+         */
+        private int inflate( Inflater inflater, int offset, int length ) throws IOException {
+            inflater.reset();
+            inflater.setInput( this.input, offset, length );
+
+            // One byte more than the limit tells data which ends right at the limit from data which is too big
+            int limit = NBTBulkLoader.this.allocateLimit != -1 ? Math.min( NBTBulkLoader.this.allocateLimit, MAX_INFLATED ) : MAX_INFLATED;
+            int filled = 0;
+            try {
+                while ( !inflater.finished() ) {
+                    if ( filled == this.output.length ) {
+                        if ( filled > limit || filled >= MAX_INFLATED ) {
+                            throw new IOException( "Invalid NBT Data: Inflated data exceeds " + limit + " bytes" );
+                        }
+
+                        this.output = Arrays.copyOf( this.output, (int) Math.min( limit + 1L, Math.min( MAX_INFLATED, this.output.length * 2L ) ) );
+                    }
+
+                    int inflated = inflater.inflate( this.output, filled, this.output.length - filled );
+                    if ( inflated == 0 && ( inflater.needsInput() || inflater.needsDictionary() ) ) {
+                        throw new IOException( "Invalid NBT Data: Compressed data is truncated" );
+                    }
+
+                    filled += inflated;
+                }
+            } catch ( DataFormatException e ) {
+                throw new IOException( "Invalid NBT Data: " + e.getMessage(), e );
+            }
+
+            if ( filled > limit ) {
+                throw new IOException( "Invalid NBT Data: Inflated data exceeds " + limit + " bytes" );
+            }
+
+            this.outputLength = filled;
+            return offset + length - inflater.getRemaining();
+        }
+
+        private int skipZeroTerminated( int offset, int length ) {
+            while ( offset < length && this.input[offset] != 0 ) {
+                offset++;
+            }
+
+            return offset + 1;
+        }
+
+        private int readIntLE( int offset ) {
+            return ( this.input[offset] & 0xFF ) | ( this.input[offset + 1] & 0xFF ) << 8 | ( this.input[offset + 2] & 0xFF ) << 16 | ( this.input[offset + 3] & 0xFF ) << 24;
+        }
+
+        private void trimBuffers() {
+            // Don't hold on to the buffers of a huge file for the rest of the load
+            if ( this.input.length > MAX_RETAINED_BUFFER ) {
+                this.input = new byte[BUFFER_SIZE];
+            }
+
+            if ( this.output.length > MAX_RETAINED_BUFFER ) {
+                this.output = new byte[BUFFER_SIZE];
+            }
+        }
+
+    }
+
+}
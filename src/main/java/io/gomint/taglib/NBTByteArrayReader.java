@@ -0,0 +1,753 @@
+package io.gomint.taglib;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Reader for NBT data which is already held in a byte array, like most packets. Values are read straight out of the
+ * array through {@link VarHandle} views, there is no intermediate buffer and no stream. Every value does a single
+ * bounds check and all of the decoding happens in this final class, so the JIT can inline the whole parse.
+ * <p>
+ * Since the length of the input is known, declared lengths of lists, arrays and strings which can't fit into the
+ * remaining bytes are rejected before anything gets allocated. Limits, metrics and flight recorder events work like
+ * they do for {@link NBTReader}.
+ *
+ * @author geNAZt
+ * @version 1.0
+ */
+public final class NBTByteArrayReader {
+
+    private static final VarHandle SHORT_BE = MethodHandles.byteArrayViewVarHandle( short[].class, ByteOrder.BIG_ENDIAN );
+    private static final VarHandle SHORT_LE = MethodHandles.byteArrayViewVarHandle( short[].class, ByteOrder.LITTLE_ENDIAN );
+    private static final VarHandle INT_BE = MethodHandles.byteArrayViewVarHandle( int[].class, ByteOrder.BIG_ENDIAN );
+    private static final VarHandle INT_LE = MethodHandles.byteArrayViewVarHandle( int[].class, ByteOrder.LITTLE_ENDIAN );
+    private static final VarHandle LONG_BE = MethodHandles.byteArrayViewVarHandle( long[].class, ByteOrder.BIG_ENDIAN );
+    private static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle( long[].class, ByteOrder.LITTLE_ENDIAN );
+    private static final VarHandle FLOAT_BE = MethodHandles.byteArrayViewVarHandle( float[].class, ByteOrder.BIG_ENDIAN );
+    private static final VarHandle FLOAT_LE = MethodHandles.byteArrayViewVarHandle( float[].class, ByteOrder.LITTLE_ENDIAN );
+    private static final VarHandle DOUBLE_BE = MethodHandles.byteArrayViewVarHandle( double[].class, ByteOrder.BIG_ENDIAN );
+    private static final VarHandle DOUBLE_LE = MethodHandles.byteArrayViewVarHandle( double[].class, ByteOrder.LITTLE_ENDIAN );
+
+    private final byte[] data;
+    private final int limit;
+    private final ByteOrder byteOrder;
+    private final boolean bigEndian;
+    private final AllocationBudget budget = new AllocationBudget();
+
+    private int position;
+    private boolean useVarint;
+
+    // Names of the packed document which is currently read, null while reading standard NBT
+    private NBTNameTable nameTable;
+    private NBTNameTable.Document packedNames;
+    private boolean packedUseVarint;
+
+    private NBTMetrics metrics;
+    private int[] tagCounts;
+    private int stringsDecoded;
+
+    /**
+     * Constructs a reader for the whole given array
+     *
+     * @param data      The array to read from, it is not copied
+     * @param byteOrder The byteorder of the encoded data
+     */
+    public NBTByteArrayReader( byte[] data, ByteOrder byteOrder ) {
+        this( data, 0, data.length, byteOrder );
+    }
+
+    /**
+     * Constructs a reader for a slice of the given array
+     *
+     * @param data      The array to read from, it is not copied
+     * @param offset    The index of the first byte to read
+     * @param length    The amount of bytes which may be read
+     * @param byteOrder The byteorder of the encoded data
+     */
+    public NBTByteArrayReader( byte[] data, int offset, int length, ByteOrder byteOrder ) {
+        Objects.checkFromIndexSize( offset, length, data.length );
+        this.data = data;
+        this.position = offset;
+        this.limit = offset + length;
+        this.byteOrder = byteOrder;
+        this.bigEndian = byteOrder == ByteOrder.BIG_ENDIAN;
+        this.setMetrics( NBTMetrics.getGlobal() );
+    }
+
+    public void setUseVarint( boolean useVarint ) {
+        this.useVarint = useVarint;
+    }
+
+    public boolean isUseVarint() {
+        return this.useVarint;
+    }
+
+    /**
+     * Sets the table packed data is read with, see {@link NBTStreamReader#setNameTable(NBTNameTable)}
+     *
+     * @param nameTable The table of common names or null if there is none
+     */
+    public void setNameTable( NBTNameTable nameTable ) {
+        this.nameTable = nameTable;
+    }
+
+    /**
+     * Sets the amount of heap the decoded values may take up, see {@link NBTStreamReader#setAllocateLimit(int)}
+     *
+     * @param allocateLimit The limit in bytes or -1 for no limit
+     */
+    public void setAllocateLimit( int allocateLimit ) {
+        this.budget.setLimit( allocateLimit );
+    }
+
+    /**
+     * Sets how deep compounds and lists may be nested. The default is {@value AllocationBudget#DEFAULT_MAX_DEPTH}.
+     *
+     * @param maxDepth The maximum depth or -1 for no limit
+     */
+    public void setMaxDepth( int maxDepth ) {
+        this.budget.setMaxDepth( maxDepth );
+    }
+
+    /**
+     * Sets how many elements a single list may declare
+     *
+     * @param maxListLength The maximum amount of elements or -1 for no limit
+     */
+    public void setMaxListLength( int maxListLength ) {
+        this.budget.setMaxListLength( maxListLength );
+    }
+
+    /**
+     * Sets how many elements a single byte or int array may declare
+     *
+     * @param maxArrayLength The maximum amount of elements or -1 for no limit
+     */
+    public void setMaxArrayLength( int maxArrayLength ) {
+        this.budget.setMaxArrayLength( maxArrayLength );
+    }
+
+    /**
+     * Sets how many bytes a single string may declare
+     *
+     * @param maxStringLength The maximum length of the UTF-8 encoded string or -1 for no limit
+     */
+    public void setMaxStringLength( int maxStringLength ) {
+        this.budget.setMaxStringLength( maxStringLength );
+    }
+
+    /**
+     * Sets the metrics this reader reports to. Readers report to the {@link NBTMetrics#getGlobal() global metrics}
+     * by default.
+     *
+     * @param metrics The metrics to report to or null to disable reporting
+     */
+    public void setMetrics( NBTMetrics metrics ) {
+        this.metrics = metrics;
+        this.budget.setMetrics( metrics );
+        this.tagCounts = metrics != null ? NBTMetrics.newTagCounts() : this.tagCounts;
+    }
+
+    /**
+     * Gets the index of the next byte this reader would read. After a parse this is the index right behind the
+     * compound which has been read.
+     *
+     * @return The index into the array
+     */
+    public int getPosition() {
+        return this.position;
+    }
+
+    public boolean hasMoreToRead() {
+        return this.position < this.limit;
+    }
+
+    public NBTTagCompound parse() throws IOException, AllocationLimitReachedException {
+        NBTParseEvent event = NBTEvents.beginParse();
+        if ( this.tagCounts == null && event != null ) {
+            this.tagCounts = NBTMetrics.newTagCounts();
+        }
+
+        this.budget.reset();
+        int begin = this.position;
+        long start = this.metrics != null ? System.nanoTime() : 0;
+        boolean success = false;
+        try {
+            String name = this.readRootName();
+            this.countTag( NBTDefinitions.TAG_COMPOUND );
+            NBTTagCompound root = this.readCompound( name );
+            success = true;
+            return root;
+        } finally {
+            this.endPacked();
+            this.report( start, success, this.position - begin, event );
+        }
+    }
+
+    private NBTTagCompound readCompound( String name ) throws IOException, AllocationLimitReachedException {
+        this.budget.enter();
+        this.budget.charge( Allocation.COMPOUND );
+        NBTTagCompound compound = new NBTTagCompound( name );
+
+        byte tagID = this.readByte();
+        while ( tagID != NBTDefinitions.TAG_END ) {
+            this.budget.charge( Allocation.COMPOUND_ENTRY + Allocation.value( tagID ) );
+            this.countTag( tagID );
+
+            String key = this.readTagName();
+            compound.set( key, this.readValue( tagID, key ) );
+
+            tagID = this.readByte();
+        }
+
+        this.budget.leave();
+        return compound;
+    }
+
+    /**
+     * Reads a value like {@link #readValue(byte)}, compounds get the given name
+     *
+     * @param tagID The type of the value
+     * @param name  The name of the value, null for values inside lists
+     * @return The value which has been read
+     * @throws IOException                     Thrown in case invalid NBT data is encountered
+     * @throws AllocationLimitReachedException Thrown in case the allocation limit is reached
+     */
+    Object readValue( byte tagID, String name ) throws IOException, AllocationLimitReachedException {
+        return tagID == NBTDefinitions.TAG_COMPOUND ? this.readCompound( name ) : this.readValue( tagID );
+    }
+
+    Object readValue( byte tagID ) throws IOException, AllocationLimitReachedException {
+        switch ( tagID ) {
+            case NBTDefinitions.TAG_BYTE:
+                return this.readByte();
+            case NBTDefinitions.TAG_SHORT:
+                return this.readShort();
+            case NBTDefinitions.TAG_INT:
+                return this.readInt();
+            case NBTDefinitions.TAG_LONG:
+                return this.readLong();
+            case NBTDefinitions.TAG_FLOAT:
+                return this.readFloat();
+            case NBTDefinitions.TAG_DOUBLE:
+                return this.readDouble();
+            case NBTDefinitions.TAG_BYTE_ARRAY:
+                return this.readByteArray();
+            case NBTDefinitions.TAG_STRING:
+                return this.readString();
+            case NBTDefinitions.TAG_LIST:
+                return this.readList();
+            case NBTDefinitions.TAG_COMPOUND:
+                return this.readCompound( null );
+            case NBTDefinitions.TAG_INT_ARRAY:
+                return this.readIntArray();
+            default:
+                throw new IOException( "Invalid NBT Data: Unknown tag <" + tagID + ">" );
+        }
+    }
+
+    private List<Object> readList() throws IOException, AllocationLimitReachedException {
+        byte listType = this.readByte();
+        int listLength = this.readInt();
+
+        int capacity = this.budget.checkList( listType, listLength, this.limit - this.position, this.useVarint );
+        if ( listType == NBTDefinitions.TAG_END ) {
+            listLength = 0;
+        }
+
+        this.budget.enter();
+        this.budget.charge( Allocation.list( listType, listLength ) );
+        this.countTags( listType, listLength );
+
+        // One loop per type keeps every loop monomorphic
+        List<Object> list = new ArrayList<>( capacity );
+        switch ( listType ) {
+            case NBTDefinitions.TAG_END:
+                break;
+            case NBTDefinitions.TAG_BYTE:
+                for ( int i = 0; i < listLength; ++i ) {
+                    list.add( this.readByte() );
+                }
+                break;
+            case NBTDefinitions.TAG_SHORT:
+                for ( int i = 0; i < listLength; ++i ) {
+                    list.add( this.readShort() );
+                }
+                break;
+            case NBTDefinitions.TAG_INT:
+                for ( int i = 0; i < listLength; ++i ) {
+                    list.add( this.readInt() );
+                }
+                break;
+            case NBTDefinitions.TAG_LONG:
+                for ( int i = 0; i < listLength; ++i ) {
+                    list.add( this.readLong() );
+                }
+                break;
+            case NBTDefinitions.TAG_FLOAT:
+                for ( int i = 0; i < listLength; ++i ) {
+                    list.add( this.readFloat() );
+                }
+                break;
+            case NBTDefinitions.TAG_DOUBLE:
+                for ( int i = 0; i < listLength; ++i ) {
+                    list.add( this.readDouble() );
+                }
+                break;
+            case NBTDefinitions.TAG_STRING:
+                for ( int i = 0; i < listLength; ++i ) {
+                    list.add( this.readString() );
+                }
+                break;
+            case NBTDefinitions.TAG_COMPOUND:
+                for ( int i = 0; i < listLength; ++i ) {
+                    list.add( this.readCompound( null ) );
+                }
+                break;
+            default:
+                for ( int i = 0; i < listLength; ++i ) {
+                    list.add( this.readValue( listType ) );
+                }
+                break;
+        }
+
+        this.budget.leave();
+        return list;
+    }
+
+    private void require( int bytes, String message ) throws IOException {
+        if ( this.limit - this.position < bytes ) {
+            throw new IOException( message );
+        }
+    }
+
+    byte readByte() throws IOException {
+        this.require( 1, "Invalid NBT Data: Expected byte" );
+        return this.data[this.position++];
+    }
+
+    short readShort() throws IOException {
+        this.require( 2, "Invalid NBT Data: Expected short" );
+        short value = this.bigEndian ? (short) SHORT_BE.get( this.data, this.position ) : (short) SHORT_LE.get( this.data, this.position );
+        this.position += 2;
+        return value;
+    }
+
+    int readInt() throws IOException {
+        if ( this.useVarint ) {
+            return VarInt.decodeZigZag32( this.readUnsignedVarLong( VarInt.MAX_INT_BYTES ) );
+        }
+
+        this.require( 4, "Invalid NBT Data: Expected int" );
+        int value = this.bigEndian ? (int) INT_BE.get( this.data, this.position ) : (int) INT_LE.get( this.data, this.position );
+        this.position += 4;
+        return value;
+    }
+
+    long readLong() throws IOException {
+        if ( this.useVarint ) {
+            return VarInt.decodeZigZag64( this.readUnsignedVarLong( VarInt.MAX_LONG_BYTES ) );
+        }
+
+        this.require( 8, "Invalid NBT Data: Expected long" );
+        long value = this.bigEndian ? (long) LONG_BE.get( this.data, this.position ) : (long) LONG_LE.get( this.data, this.position );
+        this.position += 8;
+        return value;
+    }
+
+    float readFloat() throws IOException {
+        // Floating point values are never varint encoded
+        this.require( 4, "Invalid NBT Data: Expected float" );
+        float value = this.bigEndian ? (float) FLOAT_BE.get( this.data, this.position ) : (float) FLOAT_LE.get( this.data, this.position );
+        this.position += 4;
+        return value;
+    }
+
+    double readDouble() throws IOException {
+        this.require( 8, "Invalid NBT Data: Expected double" );
+        double value = this.bigEndian ? (double) DOUBLE_BE.get( this.data, this.position ) : (double) DOUBLE_LE.get( this.data, this.position );
+        this.position += 8;
+        return value;
+    }
+
+    private long readUnsignedVarLong( int maxBytes ) throws IOException {
+        long value = 0;
+        for ( int i = 0; i < maxBytes; i++ ) {
+            byte in = this.readByte();
+            value |= (long) ( in & 0x7F ) << ( i * 7 );
+            if ( ( in & 0x80 ) == 0 ) {
+                return value;
+            }
+        }
+
+        throw new IOException( "Invalid NBT Data: VarInt too big" );
+    }
+
+    String readString() throws IOException, AllocationLimitReachedException {
+        int length = this.useVarint ? (int) this.readUnsignedVarLong( VarInt.MAX_INT_BYTES ) : this.readShort() & 0xFFFF;
+        this.budget.checkString( length, this.limit - this.position );
+        this.budget.charge( Allocation.string( length ) );
+
+        String value = StringUtil.fromUTF8Bytes( this.data, this.position, length );
+        this.position += length;
+        this.budget.charge( Allocation.stringExtra( value, length ) );
+        this.stringsDecoded++;
+        return value;
+    }
+
+    private byte[] readByteArray() throws IOException, AllocationLimitReachedException {
+        int size = this.readInt();
+        this.budget.checkArray( size, 1, this.limit - this.position );
+        this.budget.charge( Allocation.byteArray( size ) );
+
+        byte[] result = Arrays.copyOfRange( this.data, this.position, this.position + size );
+        this.position += size;
+        return result;
+    }
+
+    private int[] readIntArray() throws IOException, AllocationLimitReachedException {
+        int size = this.readInt();
+        this.budget.checkArray( size, this.useVarint ? 1 : 4, this.limit - this.position );
+        this.budget.charge( Allocation.intArray( size ) );
+
+        int[] result = new int[size];
+        if ( this.useVarint ) {
+            for ( int i = 0; i < size; ++i ) {
+                result[i] = this.readInt();
+            }
+        } else {
+            // The length check above already covered all elements
+            VarHandle handle = this.bigEndian ? INT_BE : INT_LE;
+            for ( int i = 0; i < size; ++i ) {
+                result[i] = (int) handle.get( this.data, this.position );
+                this.position += 4;
+            }
+        }
+
+        return result;
+    }
+
+    // Walking encoded data without decoding it, used by NBTPath
+
+    void setPosition( int position ) {
+        this.position = position;
+    }
+
+    byte[] getData() {
+        return this.data;
+    }
+
+    ByteOrder getByteOrder() {
+        return this.byteOrder;
+    }
+
+    /**
+     * Reads the header of a root compound. Packed data is recognized by its marker, until {@link #endPacked()} all
+     * numbers and lengths are read as varints and names as references.
+     *
+     * @return The name of the root compound
+     * @throws IOException                     Thrown in case there is no root compound or the packed header is invalid
+     * @throws AllocationLimitReachedException Thrown in case the name is longer than allowed
+     */
+    String readRootName() throws IOException, AllocationLimitReachedException {
+        this.budget.reset();
+        byte tagID = this.readByte();
+        if ( tagID == NBTDefinitions.PACKED_MAGIC ) {
+            byte version = this.readByte();
+            int tableId = VarInt.decodeZigZag32( this.readUnsignedVarLong( VarInt.MAX_INT_BYTES ) );
+            this.packedNames = NBTNameTable.open( version, tableId, this.nameTable );
+            this.packedUseVarint = this.useVarint;
+            this.useVarint = true;
+            tagID = this.readByte();
+        }
+
+        if ( tagID != NBTDefinitions.TAG_COMPOUND ) {
+            throw new IOException( "Invalid NBT Data: No root tag found" );
+        }
+
+        return this.readTagName();
+    }
+
+    /**
+     * Leaves the packed format of the root which has been read, does nothing after standard NBT
+     */
+    void endPacked() {
+        if ( this.packedNames != null ) {
+            this.packedNames = null;
+            this.useVarint = this.packedUseVarint;
+        }
+    }
+
+    boolean isPacked() {
+        return this.packedNames != null;
+    }
+
+    /**
+     * Gets how many names the packed document has spelled out so far, see {@link #rewind(int, int)}
+     *
+     * @return The amount of names or 0 for standard NBT
+     */
+    int getNameCount() {
+        return this.packedNames != null ? this.packedNames.size() : 0;
+    }
+
+    /**
+     * Moves back to an earlier position. Names which have been spelled out behind it are forgotten, they are
+     * remembered again once they are read another time.
+     *
+     * @param position The position to move to
+     * @param names    The {@link #getNameCount() amount of names} at that position
+     */
+    void rewind( int position, int names ) {
+        this.position = position;
+        if ( this.packedNames != null ) {
+            this.packedNames.truncate( names );
+        }
+    }
+
+    void enterNested() throws AllocationLimitReachedException {
+        this.budget.enter();
+    }
+
+    void leaveNested() {
+        this.budget.leave();
+    }
+
+    /**
+     * Reads the length of a list whose type has already been read
+     *
+     * @param listType The type of the elements
+     * @return The amount of elements, 0 for lists of end tags
+     * @throws IOException                     Thrown in case the elements can't fit into the input
+     * @throws AllocationLimitReachedException Thrown in case the list is longer than allowed
+     */
+    int readListLength( byte listType ) throws IOException, AllocationLimitReachedException {
+        int length = this.readInt();
+        this.budget.checkList( listType, length, this.limit - this.position, this.useVarint );
+        return listType == NBTDefinitions.TAG_END ? 0 : length;
+    }
+
+    int readArrayLength( int elementSize ) throws IOException, AllocationLimitReachedException {
+        int size = this.readInt();
+        this.budget.checkArray( size, elementSize, this.limit - this.position );
+        return size;
+    }
+
+    /**
+     * Compares the name of the next entry with the given one. The name is consumed, it is only decoded when it is a
+     * packed reference.
+     *
+     * @param expected The UTF-8 bytes of the expected name
+     * @param name     The expected name
+     * @return Whether or not the name has been the expected one
+     * @throws IOException                     Thrown in case the name is invalid
+     * @throws AllocationLimitReachedException Thrown in case the name is longer than allowed
+     */
+    boolean matchName( byte[] expected, String name ) throws IOException, AllocationLimitReachedException {
+        if ( this.packedNames == null ) {
+            return this.matchString( expected );
+        }
+
+        return name.equals( this.readTagName() );
+    }
+
+    /**
+     * Compares the next string with the given UTF-8 bytes without decoding it. The string is consumed.
+     *
+     * @param expected The UTF-8 bytes of the expected string
+     * @return Whether or not the string has been the expected one
+     * @throws IOException                     Thrown in case the string does not fit into the input
+     * @throws AllocationLimitReachedException Thrown in case the string is longer than allowed
+     */
+    boolean matchString( byte[] expected ) throws IOException, AllocationLimitReachedException {
+        int length = this.readStringLength();
+        boolean match = this.regionEquals( this.position, length, expected );
+        this.position += length;
+        return match;
+    }
+
+    boolean regionEquals( int offset, int length, byte[] expected ) {
+        return length == expected.length && Arrays.equals( this.data, offset, offset + length, expected, 0, length );
+    }
+
+    void skipString() throws IOException, AllocationLimitReachedException {
+        int length = this.readStringLength();
+        this.position += length;
+    }
+
+    /**
+     * Skips the name of a compound entry. Names which are spelled out in packed data are decoded since later
+     * references may point to them.
+     *
+     * @throws IOException                     Thrown in case the name is invalid
+     * @throws AllocationLimitReachedException Thrown in case the name is longer than allowed
+     */
+    void skipTagName() throws IOException, AllocationLimitReachedException {
+        if ( this.packedNames == null ) {
+            this.skipString();
+        } else {
+            this.readTagName();
+        }
+    }
+
+    /**
+     * Skips a value without decoding it
+     *
+     * @param tagID The type of the value
+     * @throws IOException                     Thrown in case of invalid NBT data
+     * @throws AllocationLimitReachedException Thrown in case the value exceeds the limits of this reader
+     */
+    void skipValue( byte tagID ) throws IOException, AllocationLimitReachedException {
+        switch ( tagID ) {
+            case NBTDefinitions.TAG_BYTE:
+            case NBTDefinitions.TAG_SHORT:
+            case NBTDefinitions.TAG_FLOAT:
+            case NBTDefinitions.TAG_DOUBLE:
+                this.skip( this.fixedSize( tagID ) );
+                break;
+            case NBTDefinitions.TAG_INT:
+                this.readInt();
+                break;
+            case NBTDefinitions.TAG_LONG:
+                this.readLong();
+                break;
+            case NBTDefinitions.TAG_BYTE_ARRAY:
+                this.skip( this.readArrayLength( 1 ) );
+                break;
+            case NBTDefinitions.TAG_STRING:
+                this.skipString();
+                break;
+            case NBTDefinitions.TAG_LIST:
+                byte listType = this.readByte();
+                int length = this.readListLength( listType );
+                int elementSize = this.fixedSize( listType );
+                if ( elementSize > 0 ) {
+                    // The list header check made sure the elements fit into the input
+                    this.skip( length * elementSize );
+                    break;
+                }
+
+                this.budget.enter();
+                for ( int i = 0; i < length; i++ ) {
+                    this.skipValue( listType );
+                }
+
+                this.budget.leave();
+                break;
+            case NBTDefinitions.TAG_COMPOUND:
+                this.budget.enter();
+                for ( byte entryType = this.readByte(); entryType != NBTDefinitions.TAG_END; entryType = this.readByte() ) {
+                    this.skipTagName();
+                    this.skipValue( entryType );
+                }
+
+                this.budget.leave();
+                break;
+            case NBTDefinitions.TAG_INT_ARRAY:
+                int size = this.readArrayLength( this.useVarint ? 1 : 4 );
+                if ( this.useVarint ) {
+                    for ( int i = 0; i < size; i++ ) {
+                        this.readInt();
+                    }
+                } else {
+                    this.skip( size * 4 );
+                }
+
+                break;
+            default:
+                throw new IOException( "Invalid NBT Data: Unknown tag <" + tagID + ">" );
+        }
+    }
+
+    private int fixedSize( byte tagID ) {
+        switch ( tagID ) {
+            case NBTDefinitions.TAG_BYTE:
+                return 1;
+            case NBTDefinitions.TAG_SHORT:
+                return 2;
+            case NBTDefinitions.TAG_INT:
+            case NBTDefinitions.TAG_LONG:
+                return this.useVarint ? -1 : tagID == NBTDefinitions.TAG_INT ? 4 : 8;
+            case NBTDefinitions.TAG_FLOAT:
+                return 4;
+            case NBTDefinitions.TAG_DOUBLE:
+                return 8;
+            default:
+                return -1;
+        }
+    }
+
+    private void skip( int bytes ) throws IOException {
+        this.require( bytes, "Invalid NBT Data: Value exceeds the input" );
+        this.position += bytes;
+    }
+
+    String readTagName() throws IOException, AllocationLimitReachedException {
+        if ( this.packedNames == null ) {
+            return this.readString();
+        }
+
+        int reference = (int) this.readUnsignedVarLong( VarInt.MAX_INT_BYTES );
+        if ( reference != 0 ) {
+            return this.packedNames.resolve( reference );
+        }
+
+        String name = this.readString();
+        this.packedNames.add( name );
+        return name;
+    }
+
+    int readStringLength() throws IOException, AllocationLimitReachedException {
+        int length = this.useVarint ? (int) this.readUnsignedVarLong( VarInt.MAX_INT_BYTES ) : this.readShort() & 0xFFFF;
+        this.budget.checkString( length, this.limit - this.position );
+        return length;
+    }
+
+    private void countTag( byte tagID ) {
+        if ( this.tagCounts != null && tagID > 0 && tagID < this.tagCounts.length ) {
+            this.tagCounts[tagID]++;
+        }
+    }
+
+    private void countTags( byte tagID, int amount ) {
+        if ( this.tagCounts != null && tagID > 0 && tagID < this.tagCounts.length && amount > 0 ) {
+            this.tagCounts[tagID] += amount;
+        }
+    }
+
+    private void report( long start, boolean success, int bytes, NBTParseEvent event ) {
+        boolean commit = event != null && event.shouldCommit();
+        if ( this.metrics != null ) {
+            this.metrics.recordParse( System.nanoTime() - start, success, bytes, this.tagCounts, this.stringsDecoded, 0 );
+        }
+
+        if ( commit ) {
+            int tags = 0;
+            if ( this.tagCounts != null ) {
+                for ( int count : this.tagCounts ) {
+                    tags += count;
+                }
+            }
+
+            event.reader = NBTByteArrayReader.class.getSimpleName();
+            event.bytes = bytes;
+            event.tags = tags;
+            event.byteOrder = this.byteOrder.toString();
+            event.varint = this.useVarint;
+            event.success = success;
+            event.commit();
+        }
+
+        this.stringsDecoded = 0;
+        if ( this.tagCounts != null ) {
+            Arrays.fill( this.tagCounts, 0 );
+        }
+    }
+
+}
@@ -0,0 +1,38 @@
+package io.gomint.taglib;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a class for which the taglib-processor annotation processor generates a {@link NBTObjectCodec}. The codec
+ * is generated into the package of the class, named after the class with the suffix NBTCodec (Outer_InnerNBTCodec
+ * for nested classes), and is available through its INSTANCE field.
+ * <p>
+ * Every field which is neither static nor transient is stored under its name, {@link Name} overrides the name.
+ * Supported are all primitives (booleans are stored as bytes), their boxed forms, Strings, byte and int arrays,
+ * other classes with this annotation and Lists of all of these except arrays. The class needs a constructor without
+ * arguments and every field has to be accessible from its package, either directly or through a getter and setter.
+ * Null values are not written, null elements of Lists are rejected, and keys which don't belong to a field are
+ * skipped when reading.
+ *
+ * @author geNAZt
+ * @version 1.0
+ */
+@Retention( RetentionPolicy.RUNTIME )
+@Target( ElementType.TYPE )
+public @interface NBTCodec {
+
+    /**
+     * Stores a field under another name than its own
+     */
+    @Retention( RetentionPolicy.RUNTIME )
+    @Target( ElementType.FIELD )
+    @interface Name {
+
+        String value();
+
+    }
+
+}
@@ -0,0 +1,103 @@
+package io.gomint.taglib;
+
+/**
+ * Registry of {@link NBTObjectCodec}s for types which are only known at runtime. A type is inspected once, the codec
+ * built for it is cached for as long as the type is loaded.
+ * <p>
+ * Classes annotated with {@link NBTCodec} use the codec generated by the taglib-processor when it is present. All
+ * other beans and records get a codec which accesses their fields through method handles, following the rules of
+ * {@link NBTCodec}. Records are constructed through their canonical constructor, beans need a constructor without
+ * arguments and fields which are not final. Fields of any access level are supported, types in named modules need
+ * to open their package to gomint.taglib.
+ *
+ * @author geNAZt
+ * @version 1.0
+ */
+public class NBTCodecs {
+
+    private static final ClassValue<NBTRuntimeCodec<?>> RUNTIME_CODECS = new ClassValue<NBTRuntimeCodec<?>>() {
+        @Override
+        protected NBTRuntimeCodec<?> computeValue( Class<?> type ) {
+            return new NBTRuntimeCodec<>( type );
+        }
+    };
+
+    private static final ClassValue<NBTObjectCodec<?>> CODECS = new ClassValue<NBTObjectCodec<?>>() {
+        @Override
+        protected NBTObjectCodec<?> computeValue( Class<?> type ) {
+            NBTObjectCodec<?> generated = generated( type );
+            return generated != null ? generated : RUNTIME_CODECS.get( type );
+        }
+    };
+
+    /**
+     * Gets the codec for the given type, inspecting the type if this is the first time it is used
+     *
+     * @param type The type of the objects
+     * @param <T>  The type of the objects
+     * @return The codec of the type
+     * @throws IllegalArgumentException Thrown in case the type or one of its fields can't be stored as NBT
+     */
+    @SuppressWarnings( "unchecked" )
+    public static <T> NBTObjectCodec<T> get( Class<T> type ) {
+        return (NBTObjectCodec<T>) CODECS.get( type );
+    }
+
+    /**
+     * Converts an object into a compound. Arrays and nested compounds are not copied.
+     *
+     * @param name  The name of the compound
+     * @param value The object to convert
+     * @return The compound holding the fields of the object
+     * @throws IllegalArgumentException Thrown in case the type or one of its fields can't be stored as NBT
+     */
+    public static NBTTagCompound toCompound( String name, Object value ) {
+        return RUNTIME_CODECS.get( value.getClass() ).toCompound( name, value );
+    }
+
+    /**
+     * Converts a compound into a new object. Entries which don't belong to a field are ignored, fields without
+     * entry keep their default value.
+     *
+     * @param compound The compound to convert
+     * @param type     The type of the object
+     * @param <T>      The type of the object
+     * @return The object holding the values of the compound
+     * @throws IllegalArgumentException Thrown in case the type can't be stored as NBT or an entry does not fit its field
+     */
+    @SuppressWarnings( "unchecked" )
+    public static <T> T fromCompound( NBTTagCompound compound, Class<T> type ) {
+        return (T) RUNTIME_CODECS.get( type ).fromCompound( compound );
+    }
+
+    static NBTRuntimeCodec<?> runtime( Class<?> type ) {
+        return RUNTIME_CODECS.get( type );
+    }
+
+    private static NBTObjectCodec<?> generated( Class<?> type ) {
+        if ( !type.isAnnotationPresent( NBTCodec.class ) ) {
+            return null;
+        }
+
+        // Same naming as the taglib-processor: Outer_InnerNBTCodec in the package of the type
+        StringBuilder name = new StringBuilder( type.getSimpleName() );
+        for ( Class<?> enclosing = type.getEnclosingClass(); enclosing != null; enclosing = enclosing.getEnclosingClass() ) {
+            name.insert( 0, enclosing.getSimpleName() + "_" );
+        }
+
+        String packageName = type.getPackageName();
+        name.append( "NBTCodec" );
+        if ( !packageName.isEmpty() ) {
+            name.insert( 0, packageName + "." );
+        }
+
+        try {
+            Class<?> codec = Class.forName( name.toString(), true, type.getClassLoader() );
+            return (NBTObjectCodec<?>) codec.getField( "INSTANCE" ).get( null );
+        } catch ( ReflectiveOperationException | ClassCastException e ) {
+            // Not generated or not accessible, the type is inspected at runtime instead
+            return null;
+        }
+    }
+
+}
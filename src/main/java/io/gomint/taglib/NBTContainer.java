@@ -0,0 +1,545 @@
+package io.gomint.taglib;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only container file which stores many named compounds in one file. Every {@link #put(String, NBTTagCompound)}
+ * appends a record to the end of the file, the latest record of a key wins. Records are buffered in memory and written
+ * in large sequential chunks, reads are served from a memory mapping of the file and decoded by {@link NBTReader}
+ * without copying the payload first.
+ * <p>
+ * Overwritten and removed records stay in the file until {@link #compact()} rewrites it with only the live records.
+ * A torn record at the end of the file (for example after a crash while writing) is detected by its checksum and
+ * cut off when the container is opened.
+ * <p>
+ * Layout: an 8 byte header (magic, version, byte order, varint flag) followed by records of the form
+ * {@code [int keyLength][int payloadLength][int crc32][key][payload]}. A payload length of -1 marks a removal.
+ *
+ * @author geNAZt
+ * @version 1.0
+ */
+public class NBTContainer implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger( NBTContainer.class );
+
+    private static final int MAGIC = 0x54474C43; // TGLC
+    private static final byte VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 12;
+    private static final int TOMBSTONE = -1;
+    private static final int FLUSH_THRESHOLD = 1024 * 1024;
+
+    private final File file;
+    private final ByteOrder byteOrder;
+    private final boolean useVarint;
+
+    private final Map<String, Slot> index = new HashMap<>();
+    private final RecordBuffer pending = new RecordBuffer();
+    private NBTWriter writer;
+
+    private FileChannel channel;
+    private MappedByteBuffer mapping;
+    private long fileLength;
+    private long liveBytes;
+
+    /**
+     * Opens the container stored in the given file, creating it if it does not exist yet.
+     * See {@link #NBTContainer(File, ByteOrder, boolean)} for details.
+     *
+     * @param file      The file which holds the container
+     * @param byteOrder The byteorder used for new containers
+     * @throws IOException Thrown in case an I/O error occurs or the file is no valid container
+     */
+    public NBTContainer( File file, ByteOrder byteOrder ) throws IOException {
+        this( file, byteOrder, false );
+    }
+
+    /**
+     * Opens the container stored in the given file, creating it if it does not exist yet. Byteorder and varint
+     * encoding are stored in the file header, when opening an existing container the stored values are used and
+     * the given ones are ignored.
+     *
+     * @param file      The file which holds the container
+     * @param byteOrder The byteorder used for new containers
+     * @param useVarint Whether or not new containers encode integers as varints
+     * @throws IOException Thrown in case an I/O error occurs or the file is no valid container
+     */
+    public NBTContainer( File file, ByteOrder byteOrder, boolean useVarint ) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open( file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE );
+
+        if ( this.channel.size() == 0 ) {
+            ByteBuffer header = ByteBuffer.allocate( HEADER_SIZE );
+            header.putInt( MAGIC );
+            header.put( VERSION );
+            header.put( (byte) ( byteOrder == ByteOrder.BIG_ENDIAN ? 0 : 1 ) );
+            header.put( (byte) ( useVarint ? 1 : 0 ) );
+            header.put( (byte) 0 );
+            header.flip();
+            this.writeFully( header, 0 );
+
+            this.byteOrder = byteOrder;
+            this.useVarint = useVarint;
+            this.fileLength = HEADER_SIZE;
+        } else {
+            ByteBuffer header = ByteBuffer.allocate( HEADER_SIZE );
+            while ( header.hasRemaining() ) {
+                if ( this.channel.read( header, header.position() ) == -1 ) {
+                    this.channel.close();
+                    throw new IOException( "Invalid NBT container: Header is truncated" );
+                }
+            }
+
+            header.flip();
+            if ( header.getInt() != MAGIC || header.get() != VERSION ) {
+                this.channel.close();
+                throw new IOException( "Invalid NBT container: Unknown magic or version" );
+            }
+
+            this.byteOrder = header.get() == 0 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+            this.useVarint = header.get() == 1;
+            this.loadIndex();
+        }
+
+        this.writer = this.createWriter();
+    }
+
+    /**
+     * Stores the compound under the given key, replacing any older version of it. The record is buffered and
+     * written to disk on the next {@link #flush()}, or once enough records have been buffered.
+     *
+     * @param key      The key to store the compound under
+     * @param compound The compound to store
+     * @throws IOException Thrown in case an I/O error occurs while writing buffered records
+     */
+    public synchronized void put( String key, NBTTagCompound compound ) throws IOException {
+        this.ensureOpen();
+
+        byte[] keyBytes = key.getBytes( StandardCharsets.UTF_8 );
+        int recordStart = this.pending.size();
+
+        this.pending.writeInt( keyBytes.length );
+        this.pending.writeInt( 0 );
+        this.pending.writeInt( 0 );
+        this.pending.write( keyBytes, 0, keyBytes.length );
+        try {
+            this.writer.write( compound );
+        } catch ( IOException | RuntimeException e ) {
+            // Drop the partial record, the writer may still hold parts of it as well
+            this.pending.truncate( recordStart );
+            this.writer = this.createWriter();
+            throw e;
+        }
+
+        int payloadLength = this.pending.size() - recordStart - RECORD_HEADER_SIZE - keyBytes.length;
+        this.pending.patchInt( recordStart + 4, payloadLength );
+        this.pending.patchInt( recordStart + 8, this.pending.crc( recordStart + RECORD_HEADER_SIZE, keyBytes.length + payloadLength ) );
+
+        this.updateIndex( key, new Slot( this.fileLength + recordStart, keyBytes.length, payloadLength ) );
+
+        if ( this.pending.size() >= FLUSH_THRESHOLD ) {
+            this.flush();
+        }
+    }
+
+    /**
+     * Stores all given compounds. See {@link #put(String, NBTTagCompound)} for details.
+     *
+     * @param compounds The compounds to store, mapped by their key
+     * @throws IOException Thrown in case an I/O error occurs while writing buffered records
+     */
+    public synchronized void putAll( Map<String, NBTTagCompound> compounds ) throws IOException {
+        for ( Map.Entry<String, NBTTagCompound> entry : compounds.entrySet() ) {
+            this.put( entry.getKey(), entry.getValue() );
+        }
+    }
+
+    /**
+     * Removes the compound stored under the given key.
+     *
+     * @param key The key of the compound to remove
+     * @return Whether or not a compound has been removed
+     * @throws IOException Thrown in case an I/O error occurs while writing buffered records
+     */
+    public synchronized boolean remove( String key ) throws IOException {
+        this.ensureOpen();
+        if ( !this.index.containsKey( key ) ) {
+            return false;
+        }
+
+        byte[] keyBytes = key.getBytes( StandardCharsets.UTF_8 );
+        int recordStart = this.pending.size();
+
+        this.pending.writeInt( keyBytes.length );
+        this.pending.writeInt( TOMBSTONE );
+        this.pending.writeInt( 0 );
+        this.pending.write( keyBytes, 0, keyBytes.length );
+        this.pending.patchInt( recordStart + 8, this.pending.crc( recordStart + RECORD_HEADER_SIZE, keyBytes.length ) );
+
+        this.updateIndex( key, null );
+
+        if ( this.pending.size() >= FLUSH_THRESHOLD ) {
+            this.flush();
+        }
+
+        return true;
+    }
+
+    /**
+     * Reads the compound stored under the given key.
+     *
+     * @param key The key of the compound
+     * @return The compound or null when nothing is stored under this key
+     * @throws IOException                     Thrown in case an I/O error occurs or invalid NBT data is encountered
+     * @throws AllocationLimitReachedException Never thrown since no allocation limit is set
+     */
+    public NBTTagCompound get( String key ) throws IOException, AllocationLimitReachedException {
+        ByteBuffer payload;
+        synchronized ( this ) {
+            this.ensureOpen();
+
+            Slot slot = this.index.get( key );
+            if ( slot == null ) {
+                return null;
+            }
+
+            payload = this.region( slot.payloadOffset(), slot.payloadLength );
+        }
+
+        // Mappings stay valid even after the container has been compacted, decode without holding the lock
+        NBTReader reader = new NBTReader( payload, this.byteOrder );
+        reader.setUseVarint( this.useVarint );
+        return reader.parse();
+    }
+
+    /**
+     * Checks whether or not a compound is stored under the given key.
+     *
+     * @param key The key to check
+     * @return Whether or not a compound is stored under the given key
+     */
+    public synchronized boolean contains( String key ) {
+        return this.index.containsKey( key );
+    }
+
+    /**
+     * Gets a snapshot of all keys which currently have a compound stored.
+     *
+     * @return The stored keys
+     */
+    public synchronized Set<String> keys() {
+        return Collections.unmodifiableSet( new HashSet<>( this.index.keySet() ) );
+    }
+
+    /**
+     * Get the amount of compounds stored in this container
+     *
+     * @return amount of compounds
+     */
+    public synchronized int size() {
+        return this.index.size();
+    }
+
+    /**
+     * Gets the fraction of the file which is occupied by overwritten or removed records. Can be used to decide
+     * when to {@link #compact()} the container.
+     *
+     * @return The fraction of garbage in the file, between 0 and 1
+     */
+    public synchronized double getGarbageRatio() {
+        long total = this.fileLength + this.pending.size() - HEADER_SIZE;
+        return total == 0 ? 0 : 1 - ( (double) this.liveBytes / total );
+    }
+
+    /**
+     * Writes all buffered records to the file.
+     *
+     * @throws IOException Thrown in case an I/O error occurs
+     */
+    public synchronized void flush() throws IOException {
+        this.ensureOpen();
+        if ( this.pending.size() == 0 ) {
+            return;
+        }
+
+        this.writeFully( ByteBuffer.wrap( this.pending.array(), 0, this.pending.size() ), this.fileLength );
+        this.fileLength += this.pending.size();
+        this.pending.reset();
+    }
+
+    /**
+     * Rewrites the container so that it only contains the latest record of every key. The new file is written next
+     * to the old one and atomically moved over it once complete.
+     *
+     * @throws IOException Thrown in case an I/O error occurs
+     */
+    public synchronized void compact() throws IOException {
+        this.flush();
+
+        File target = new File( this.file.getPath() + ".compact" );
+        Map<String, Slot> compacted = new HashMap<>( this.index.size() );
+        try ( FileChannel out = FileChannel.open( target.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE ) ) {
+            // Copy the header as is
+            long position = this.transfer( 0, HEADER_SIZE, out, 0 );
+
+            // Keep records in file order so the copy stays sequential
+            ArrayList<Map.Entry<String, Slot>> entries = new ArrayList<>( this.index.entrySet() );
+            entries.sort( ( a, b ) -> Long.compare( a.getValue().recordOffset, b.getValue().recordOffset ) );
+            for ( Map.Entry<String, Slot> entry : entries ) {
+                Slot slot = entry.getValue();
+                compacted.put( entry.getKey(), new Slot( position, slot.keyLength, slot.payloadLength ) );
+                position += this.transfer( slot.recordOffset, slot.recordLength(), out, position );
+            }
+
+            out.force( true );
+        }
+
+        // Some platforms can't replace a file which is still open
+        this.channel.close();
+        this.channel = null;
+        this.mapping = null;
+
+        boolean moved = false;
+        try {
+            Files.move( target.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+            moved = true;
+        } finally {
+            // A failed move leaves the old file in place, which still matches the index
+            this.channel = FileChannel.open( this.file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE );
+            if ( !moved ) {
+                Files.deleteIfExists( target.toPath() );
+            }
+        }
+
+        this.fileLength = this.channel.size();
+        this.index.clear();
+        this.index.putAll( compacted );
+        this.liveBytes = this.fileLength - HEADER_SIZE;
+    }
+
+    /**
+     * Flushes all buffered records, forces them to the storage device and closes the container.
+     *
+     * @throws IOException Thrown in case an I/O error occurs
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if ( this.channel == null ) {
+            return;
+        }
+
+        try {
+            this.flush();
+            this.channel.force( true );
+        } finally {
+            this.channel.close();
+            this.channel = null;
+            this.mapping = null;
+        }
+    }
+
+    private NBTWriter createWriter() {
+        NBTWriter writer = new NBTWriter( this.pending, this.byteOrder );
+        writer.setUseVarint( this.useVarint );
+        return writer;
+    }
+
+    private void loadIndex() throws IOException {
+        long size = this.channel.size();
+        this.fileLength = size;
+        long position = HEADER_SIZE;
+        ByteBuffer recordHeader = ByteBuffer.allocate( RECORD_HEADER_SIZE );
+        CRC32 crc = new CRC32();
+
+        while ( position + RECORD_HEADER_SIZE <= size ) {
+            recordHeader.clear();
+            this.readFully( recordHeader, position );
+            recordHeader.flip();
+
+            int keyLength = recordHeader.getInt();
+            int payloadLength = recordHeader.getInt();
+            int checksum = recordHeader.getInt();
+            int bodyLength = keyLength + Math.max( payloadLength, 0 );
+            if ( keyLength < 0 || payloadLength < TOMBSTONE || bodyLength < 0 || position + RECORD_HEADER_SIZE + bodyLength > size ) {
+                break;
+            }
+
+            ByteBuffer body = this.region( position + RECORD_HEADER_SIZE, bodyLength );
+            crc.reset();
+            crc.update( body.duplicate() );
+            if ( (int) crc.getValue() != checksum ) {
+                break;
+            }
+
+            byte[] keyBytes = new byte[keyLength];
+            body.get( keyBytes );
+            String key = new String( keyBytes, StandardCharsets.UTF_8 );
+
+            this.updateIndex( key, payloadLength == TOMBSTONE ? null : new Slot( position, keyLength, payloadLength ) );
+            position += RECORD_HEADER_SIZE + bodyLength;
+        }
+
+        if ( position != size ) {
+            LOGGER.warn( "NBT container {} has a damaged tail, discarding {} bytes", this.file, size - position );
+            this.channel.truncate( position );
+            this.mapping = null;
+        }
+
+        this.fileLength = position;
+    }
+
+    private void updateIndex( String key, Slot slot ) {
+        Slot old = slot == null ? this.index.remove( key ) : this.index.put( key, slot );
+        if ( old != null ) {
+            this.liveBytes -= old.recordLength();
+        }
+
+        if ( slot != null ) {
+            this.liveBytes += slot.recordLength();
+        }
+    }
+
+    private ByteBuffer region( long offset, int length ) throws IOException {
+        if ( offset + length > this.fileLength + this.pending.size() ) {
+            throw new IOException( "Invalid NBT container: Record exceeds file" );
+        }
+
+        if ( offset + length > this.fileLength ) {
+            this.flush();
+        }
+
+        if ( this.mapping == null || offset + length > this.mapping.capacity() ) {
+            if ( this.fileLength > Integer.MAX_VALUE ) {
+                // Too big to map as a whole, map only what is requested
+                return this.channel.map( FileChannel.MapMode.READ_ONLY, offset, length );
+            }
+
+            this.mapping = this.channel.map( FileChannel.MapMode.READ_ONLY, 0, this.fileLength );
+        }
+
+        ByteBuffer region = this.mapping.duplicate();
+        region.limit( (int) offset + length );
+        region.position( (int) offset );
+        return region.slice();
+    }
+
+    private long transfer( long position, long count, FileChannel target, long targetPosition ) throws IOException {
+        long transferred = 0;
+        while ( transferred < count ) {
+            target.position( targetPosition + transferred );
+            long written = this.channel.transferTo( position + transferred, count - transferred, target );
+            if ( written <= 0 ) {
+                throw new IOException( "Could not copy NBT container record" );
+            }
+
+            transferred += written;
+        }
+
+        return transferred;
+    }
+
+    private void writeFully( ByteBuffer data, long position ) throws IOException {
+        while ( data.hasRemaining() ) {
+            position += this.channel.write( data, position );
+        }
+    }
+
+    private void readFully( ByteBuffer data, long position ) throws IOException {
+        while ( data.hasRemaining() ) {
+            int read = this.channel.read( data, position );
+            if ( read == -1 ) {
+                throw new IOException( "Invalid NBT container: Unexpected end of file" );
+            }
+
+            position += read;
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if ( this.channel == null ) {
+            throw new IOException( "NBT container has been closed" );
+        }
+    }
+
+    private static final class Slot {
+
+        private final long recordOffset;
+        private final int keyLength;
+        private final int payloadLength;
+
+        private Slot( long recordOffset, int keyLength, int payloadLength ) {
+            this.recordOffset = recordOffset;
+            this.keyLength = keyLength;
+            this.payloadLength = payloadLength;
+        }
+
+        private long payloadOffset() {
+            return this.recordOffset + RECORD_HEADER_SIZE + this.keyLength;
+        }
+
+        private int recordLength() {
+            return RECORD_HEADER_SIZE + this.keyLength + this.payloadLength;
+        }
+
+    }
+
+    private static final class RecordBuffer extends ByteArrayOutputStream {
+
+        private final CRC32 crc = new CRC32();
+
+        private RecordBuffer() {
+            super( 1024 * 64 );
+        }
+
+        private void writeInt( int value ) {
+            this.write( value >>> 24 );
+            this.write( value >>> 16 );
+            this.write( value >>> 8 );
+            this.write( value );
+        }
+
+        private void patchInt( int position, int value ) {
+            this.buf[position] = (byte) ( value >>> 24 );
+            this.buf[position + 1] = (byte) ( value >>> 16 );
+            this.buf[position + 2] = (byte) ( value >>> 8 );
+            this.buf[position + 3] = (byte) value;
+        }
+
+        private int crc( int offset, int length ) {
+            this.crc.reset();
+            this.crc.update( this.buf, offset, length );
+            return (int) this.crc.getValue();
+        }
+
+        private void truncate( int size ) {
+            this.count = size;
+        }
+
+        private byte[] array() {
+            return this.buf;
+        }
+
+    }
+
+}
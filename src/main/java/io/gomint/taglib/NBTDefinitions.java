@@ -25,11 +25,15 @@
 
 package io.gomint.taglib;
 
+import java.util.List;
+
 /**
+ * Ids of the NBT tag types
+ *
  * @author BlackyPaw
  * @version 1.0
  */
-class NBTDefinitions {
+public class NBTDefinitions {
 
 	public static final byte TAG_END = 0x00;
 	public static final byte TAG_BYTE = 0x01;
@@ -43,5 +47,43 @@ class NBTDefinitions {
 	public static final byte TAG_LIST = 0x09;
 	public static final byte TAG_COMPOUND = 0x0A;
 	public static final byte TAG_INT_ARRAY = 0x0B;
-	
+
+	// Packed data starts with this byte instead of the compound tag, followed by the format version
+	static final byte PACKED_MAGIC = 'P';
+	static final byte PACKED_VERSION = 1;
+
+	/**
+	 * Gets the NBT tag type which is used to store the given value.
+	 *
+	 * @param value The value to get the type for
+	 * @return The tag type or -1 if the value cannot be stored as NBT
+	 */
+	static byte getTagType( Object value ) {
+		if ( value instanceof Byte ) {
+			return TAG_BYTE;
+		} else if ( value instanceof Short ) {
+			return TAG_SHORT;
+		} else if ( value instanceof Integer ) {
+			return TAG_INT;
+		} else if ( value instanceof Long ) {
+			return TAG_LONG;
+		} else if ( value instanceof Float ) {
+			return TAG_FLOAT;
+		} else if ( value instanceof Double ) {
+			return TAG_DOUBLE;
+		} else if ( value instanceof byte[] ) {
+			return TAG_BYTE_ARRAY;
+		} else if ( value instanceof String ) {
+			return TAG_STRING;
+		} else if ( value instanceof List ) {
+			return TAG_LIST;
+		} else if ( value instanceof NBTTagCompound ) {
+			return TAG_COMPOUND;
+		} else if ( value instanceof int[] ) {
+			return TAG_INT_ARRAY;
+		}
+
+		return -1;
+	}
+
 }
@@ -0,0 +1,233 @@
+package io.gomint.taglib;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Preset dictionary for zlib compressed NBT. Small compounds hardly compress on their own since every tag name
+ * only shows up once or twice in them. With a dictionary holding the names and strings which are common to most
+ * compounds, deflate can reference those from the first occurrence on.
+ * <p>
+ * The id of a dictionary is the Adler-32 checksum zlib stores in the header of every stream compressed with it.
+ * Readers get all dictionaries they know about and pick the one the stream asks for, so a new dictionary can be
+ * rolled out while data compressed with older ones is still around. See
+ * {@link NBTTagCompound#writeTo(java.io.OutputStream, NBTDictionary, ByteOrder)} and
+ * {@link NBTTagCompound#readFrom(InputStream, ByteOrder, NBTDictionary...)}.
+ *
+ * @author geNAZt
+ * @version 1.0
+ */
+public class NBTDictionary {
+
+    /**
+     * Size of the deflate window, dictionary bytes beyond it can never be referenced
+     */
+    public static final int MAX_SIZE = 32 * 1024;
+
+    private final byte[] bytes;
+    private final int id;
+
+    /**
+     * Constructs a dictionary from bytes which have been stored before, see {@link #getBytes()}
+     *
+     * @param bytes The content of the dictionary, it is copied
+     */
+    public NBTDictionary( byte[] bytes ) {
+        if ( bytes.length == 0 || bytes.length > MAX_SIZE ) {
+            throw new IllegalArgumentException( "Dictionary needs to hold between 1 and " + MAX_SIZE + " bytes" );
+        }
+
+        this.bytes = bytes.clone();
+
+        Adler32 adler = new Adler32();
+        adler.update( this.bytes );
+        this.id = (int) adler.getValue();
+    }
+
+    /**
+     * Builds a dictionary from a sample of the compounds it should compress. The tag headers and strings which show
+     * up in the most samples make it into the dictionary, the most valuable ones are placed at its end where deflate
+     * references them with the shortest distances.
+     *
+     * @param samples   Compounds representative for the data which gets compressed
+     * @param byteOrder The byteorder the data gets written with
+     * @param maxSize   The maximum size of the dictionary, at most {@value #MAX_SIZE} bytes
+     * @return The trained dictionary
+     * @throws IllegalArgumentException Thrown in case nothing in the samples repeats
+     */
+    public static NBTDictionary train( Iterable<NBTTagCompound> samples, ByteOrder byteOrder, int maxSize ) {
+        if ( maxSize < 1 || maxSize > MAX_SIZE ) {
+            throw new IllegalArgumentException( "Dictionary size needs to be between 1 and " + MAX_SIZE + " bytes" );
+        }
+
+        // Count in how many samples every fragment shows up, repeats inside one sample are found by deflate anyway
+        Map<ByteBuffer, int[]> occurrences = new HashMap<>();
+        Set<ByteBuffer> seen = new HashSet<>();
+        for ( NBTTagCompound sample : samples ) {
+            seen.clear();
+            collect( sample, byteOrder, seen );
+            for ( ByteBuffer fragment : seen ) {
+                occurrences.computeIfAbsent( fragment, key -> new int[1] )[0]++;
+            }
+        }
+
+        List<Map.Entry<ByteBuffer, int[]>> fragments = new ArrayList<>();
+        for ( Map.Entry<ByteBuffer, int[]> entry : occurrences.entrySet() ) {
+            if ( entry.getValue()[0] > 1 ) {
+                fragments.add( entry );
+            }
+        }
+
+        if ( fragments.isEmpty() ) {
+            throw new IllegalArgumentException( "Samples don't have anything in common to build a dictionary from" );
+        }
+
+        // Most valuable first, ties broken by content so training is deterministic
+        fragments.sort( ( a, b ) -> {
+            int compare = Long.compare( score( b ), score( a ) );
+            return compare != 0 ? compare : a.getKey().compareTo( b.getKey() );
+        } );
+
+        List<ByteBuffer> selected = new ArrayList<>();
+        int size = 0;
+        for ( Map.Entry<ByteBuffer, int[]> fragment : fragments ) {
+            int length = fragment.getKey().remaining();
+            if ( size + length <= maxSize ) {
+                selected.add( fragment.getKey() );
+                size += length;
+            }
+        }
+
+        byte[] bytes = new byte[size];
+        int offset = size;
+        for ( ByteBuffer fragment : selected ) {
+            offset -= fragment.remaining();
+            fragment.duplicate().get( bytes, offset, fragment.remaining() );
+        }
+
+        return new NBTDictionary( bytes );
+    }
+
+    /**
+     * Gets the id zlib streams compressed with this dictionary carry in their header
+     *
+     * @return The Adler-32 checksum of the dictionary
+     */
+    public int getId() {
+        return this.id;
+    }
+
+    /**
+     * Gets the content of this dictionary so it can be stored and shipped to every reader
+     *
+     * @return A copy of the dictionary bytes
+     */
+    public byte[] getBytes() {
+        return this.bytes.clone();
+    }
+
+    public int getSize() {
+        return this.bytes.length;
+    }
+
+    /**
+     * Creates a new deflater which has this dictionary preset. The caller has to end it.
+     *
+     * @return The deflater, ready to compress
+     */
+    Deflater newDeflater() {
+        Deflater deflater = new Deflater();
+        deflater.setDictionary( this.bytes );
+        return deflater;
+    }
+
+    /**
+     * Wraps a zlib stream which is decompressed with the given inflater. When the stream asks for a preset
+     * dictionary it is looked up by its id.
+     *
+     * @param in           The compressed stream
+     * @param inflater     The inflater to use, the caller has to end it
+     * @param dictionaries The dictionaries the stream may have been compressed with
+     * @return The decompressed stream
+     */
+    static InputStream inflating( InputStream in, Inflater inflater, NBTDictionary[] dictionaries ) {
+        return new InflaterInputStream( in, inflater ) {
+            @Override
+            public int read( byte[] b, int off, int len ) throws IOException {
+                int read = super.read( b, off, len );
+                if ( read == -1 && this.inf.needsDictionary() ) {
+                    this.inf.setDictionary( find( dictionaries, this.inf.getAdler() ).bytes );
+                    read = super.read( b, off, len );
+                }
+
+                return read;
+            }
+        };
+    }
+
+    private static NBTDictionary find( NBTDictionary[] dictionaries, int id ) throws IOException {
+        for ( NBTDictionary dictionary : dictionaries ) {
+            if ( dictionary.id == id ) {
+                return dictionary;
+            }
+        }
+
+        throw new IOException( "Invalid NBT Data: Compressed with unknown dictionary <" + Integer.toHexString( id ) + ">" );
+    }
+
+    private static long score( Map.Entry<ByteBuffer, int[]> fragment ) {
+        return (long) fragment.getValue()[0] * fragment.getKey().remaining();
+    }
+
+    /**
+     * Collects the encoded tag headers and string values of a compound and everything below it
+     */
+    private static void collect( NBTTagCompound compound, ByteOrder byteOrder, Set<ByteBuffer> fragments ) {
+        for ( Map.Entry<String, Object> entry : compound.entries() ) {
+            Object value = entry.getValue();
+            byte tagID = NBTDefinitions.getTagType( value );
+            if ( tagID == -1 ) {
+                continue;
+            }
+
+            // Lists are followed by their element type, which belongs to the header just as well
+            byte[] name = StringUtil.getUTF8Bytes( entry.getKey() );
+            List<?> list = tagID == NBTDefinitions.TAG_LIST ? (List<?>) value : null;
+            boolean typed = list != null && !list.isEmpty() && NBTDefinitions.getTagType( list.get( 0 ) ) != -1;
+            ByteBuffer header = ByteBuffer.allocate( 3 + name.length + ( typed ? 1 : 0 ) ).order( byteOrder );
+            header.put( tagID ).putShort( (short) name.length ).put( name );
+            if ( typed ) {
+                header.put( NBTDefinitions.getTagType( list.get( 0 ) ) );
+            }
+
+            fragments.add( header.flip() );
+            collectValue( value, byteOrder, fragments );
+        }
+    }
+
+    private static void collectValue( Object value, ByteOrder byteOrder, Set<ByteBuffer> fragments ) {
+        if ( value instanceof String ) {
+            byte[] utf8 = StringUtil.getUTF8Bytes( (String) value );
+            fragments.add( ByteBuffer.allocate( 2 + utf8.length ).order( byteOrder ).putShort( (short) utf8.length ).put( utf8 ).flip() );
+        } else if ( value instanceof NBTTagCompound ) {
+            collect( (NBTTagCompound) value, byteOrder, fragments );
+        } else if ( value instanceof List ) {
+            for ( Object element : (List<?>) value ) {
+                collectValue( element, byteOrder, fragments );
+            }
+        }
+    }
+
+}
@@ -0,0 +1,312 @@
+package io.gomint.taglib;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes and applies {@link NBTPatch}es between compounds. Changed values are replaced, missing ones removed and
+ * byte and int arrays of equal length only get their changed ranges replaced. Lists of equal length and element
+ * types are compared element by element, all other list changes replace the whole list.
+ *
+ * @author geNAZt
+ * @version 1.0
+ */
+public class NBTDiff {
+
+    // Unchanged elements between two changed ranges which are cheaper to resend than to start a new range
+    private static final int RANGE_MERGE_GAP = 8;
+
+    /**
+     * Computes the patch which turns the old compound into the new one. Neither compound is modified and the
+     * patch does not share any mutable values with them.
+     *
+     * @param oldCompound The compound the patch will be applied to
+     * @param newCompound The compound the patch should produce
+     * @return The patch between both compounds
+     */
+    public static NBTPatch diff( NBTTagCompound oldCompound, NBTTagCompound newCompound ) {
+        NBTPatch patch = new NBTPatch();
+        diffCompound( new ArrayList<>(), oldCompound, newCompound, patch );
+        return patch;
+    }
+
+    /**
+     * Computes the patch between two encoded compounds. See {@link #diff(NBTTagCompound, NBTTagCompound)} for details.
+     *
+     * @param oldData   The encoded compound the patch will be applied to
+     * @param newData   The encoded compound the patch should produce
+     * @param byteOrder The byteorder of both compounds
+     * @return The patch between both compounds
+     * @throws IOException                     Thrown in case invalid NBT data is encountered
+     * @throws AllocationLimitReachedException Never thrown since no allocation limit is set
+     */
+    public static NBTPatch diff( byte[] oldData, byte[] newData, ByteOrder byteOrder ) throws IOException, AllocationLimitReachedException {
+        return diff( new NBTReader( ByteBuffer.wrap( oldData ), byteOrder ).parse(), new NBTReader( ByteBuffer.wrap( newData ), byteOrder ).parse() );
+    }
+
+    /**
+     * Applies the patch to the given compound. The compound is modified in place, values are copied out of
+     * the patch so the same patch can be applied to multiple compounds. All operations are checked before the
+     * compound is modified, a patch which does not fit leaves the compound unchanged.
+     *
+     * @param base  The compound to apply the patch to
+     * @param patch The patch to apply
+     * @return The given compound
+     * @throws IllegalArgumentException Thrown in case the patch does not fit the structure of the compound
+     */
+    public static NBTTagCompound apply( NBTTagCompound base, NBTPatch patch ) {
+        // A single operation fails before it changes anything. Operations may depend on the ones before them, so
+        // longer patches are tried on a copy-on-write clone first which only copies what the patch touches.
+        if ( patch.size() > 1 ) {
+            applyOperations( base.copyOnWriteClone( base.getName() ), patch );
+        }
+
+        return applyOperations( base, patch );
+    }
+
+    // setName is only deprecated to keep it away from users of the library
+    @SuppressWarnings( { "unchecked", "deprecation" } )
+    private static NBTTagCompound applyOperations( NBTTagCompound base, NBTPatch patch ) {
+        for ( NBTPatch.Operation operation : patch.operations() ) {
+            Object[] path = operation.path;
+            if ( path.length == 0 ) {
+                throw new IllegalArgumentException( "NBT patch does not fit: Operation without path" );
+            }
+
+            Object container = base;
+            for ( int i = 0; i < path.length - 1; i++ ) {
+                container = child( container, path[i] );
+            }
+
+            Object last = path[path.length - 1];
+            switch ( operation.type ) {
+                case NBTPatch.OP_SET:
+                    Object value = NBTTagCompound.deepCloneValue( operation.value );
+                    if ( container instanceof NBTTagCompound && last instanceof String ) {
+                        if ( value instanceof NBTTagCompound ) {
+                            ( (NBTTagCompound) value ).setName( (String) last );
+                        }
+
+                        ( (NBTTagCompound) container ).set( (String) last, value );
+                    } else if ( container instanceof List && last instanceof Integer ) {
+                        List<Object> list = (List<Object>) container;
+                        int index = (Integer) last;
+                        if ( index < 0 || index >= list.size() ) {
+                            throw new IllegalArgumentException( "NBT patch does not fit: List index " + index + " out of bounds" );
+                        }
+
+                        list.set( index, value );
+                    } else {
+                        throw new IllegalArgumentException( "NBT patch does not fit: Can't set " + last + " on " + container.getClass().getSimpleName() );
+                    }
+
+                    break;
+                case NBTPatch.OP_REMOVE:
+                    if ( !( container instanceof NBTTagCompound ) || !( last instanceof String ) ) {
+                        throw new IllegalArgumentException( "NBT patch does not fit: Can't remove " + last + " from " + container.getClass().getSimpleName() );
+                    }
+
+                    ( (NBTTagCompound) container ).remove( (String) last );
+                    break;
+                case NBTPatch.OP_ARRAY_RANGE:
+                    Object target = child( container, last );
+                    try {
+                        if ( target instanceof byte[] && operation.value instanceof byte[] ) {
+                            byte[] range = (byte[]) operation.value;
+                            System.arraycopy( range, 0, target, operation.offset, range.length );
+                        } else if ( target instanceof int[] && operation.value instanceof int[] ) {
+                            int[] range = (int[]) operation.value;
+                            System.arraycopy( range, 0, target, operation.offset, range.length );
+                        } else {
+                            throw new IllegalArgumentException( "NBT patch does not fit: " + last + " is no matching array" );
+                        }
+                    } catch ( IndexOutOfBoundsException e ) {
+                        throw new IllegalArgumentException( "NBT patch does not fit: Array range of " + last + " out of bounds", e );
+                    }
+
+                    break;
+                default:
+                    throw new IllegalArgumentException( "Unknown NBT patch operation <" + operation.type + ">" );
+            }
+        }
+
+        return base;
+    }
+
+    /**
+     * Applies the patch to an encoded compound. See {@link #apply(NBTTagCompound, NBTPatch)} for details.
+     *
+     * @param base      The encoded compound to apply the patch to
+     * @param patch     The patch to apply
+     * @param byteOrder The byteorder of the encoded compound
+     * @return The encoded compound with the patch applied
+     * @throws IOException                     Thrown in case invalid NBT data is encountered
+     * @throws AllocationLimitReachedException Never thrown since no allocation limit is set
+     */
+    public static byte[] apply( byte[] base, NBTPatch patch, ByteOrder byteOrder ) throws IOException, AllocationLimitReachedException {
+        NBTTagCompound compound = apply( new NBTReader( ByteBuffer.wrap( base ), byteOrder ).parse(), patch );
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream( base.length );
+        new NBTWriter( out, byteOrder ).write( compound );
+        return out.toByteArray();
+    }
+
+    private static void diffCompound( List<Object> path, NBTTagCompound oldCompound, NBTTagCompound newCompound, NBTPatch patch ) {
+        for ( Map.Entry<String, Object> entry : oldCompound.entries() ) {
+            if ( !newCompound.containsKey( entry.getKey() ) ) {
+                path.add( entry.getKey() );
+                patch.add( new NBTPatch.Operation( NBTPatch.OP_REMOVE, path.toArray(), null, 0 ) );
+                path.remove( path.size() - 1 );
+            }
+        }
+
+        for ( Map.Entry<String, Object> entry : newCompound.entries() ) {
+            path.add( entry.getKey() );
+            diffValue( path, oldCompound.get( entry.getKey() ), entry.getValue(), patch );
+            path.remove( path.size() - 1 );
+        }
+    }
+
+    private static void diffValue( List<Object> path, Object oldValue, Object newValue, NBTPatch patch ) {
+        byte type = NBTDefinitions.getTagType( newValue );
+        if ( oldValue == null || NBTDefinitions.getTagType( oldValue ) != type ) {
+            set( path, newValue, patch );
+            return;
+        }
+
+        switch ( type ) {
+            case NBTDefinitions.TAG_COMPOUND:
+                diffCompound( path, (NBTTagCompound) oldValue, (NBTTagCompound) newValue, patch );
+                break;
+            case NBTDefinitions.TAG_LIST:
+                diffList( path, (List<?>) oldValue, (List<?>) newValue, patch );
+                break;
+            case NBTDefinitions.TAG_BYTE_ARRAY:
+                byte[] oldBytes = (byte[]) oldValue;
+                byte[] newBytes = (byte[]) newValue;
+                if ( oldBytes.length != newBytes.length ) {
+                    set( path, newValue, patch );
+                } else {
+                    diffArray( path, oldBytes, newBytes, newBytes.length, patch );
+                }
+
+                break;
+            case NBTDefinitions.TAG_INT_ARRAY:
+                int[] oldInts = (int[]) oldValue;
+                int[] newInts = (int[]) newValue;
+                if ( oldInts.length != newInts.length ) {
+                    set( path, newValue, patch );
+                } else {
+                    diffArray( path, oldInts, newInts, newInts.length, patch );
+                }
+
+                break;
+            default:
+                if ( !oldValue.equals( newValue ) ) {
+                    set( path, newValue, patch );
+                }
+
+                break;
+        }
+    }
+
+    private static void diffList( List<Object> path, List<?> oldList, List<?> newList, NBTPatch patch ) {
+        boolean sameShape = oldList.size() == newList.size();
+        for ( int i = 0; sameShape && i < newList.size(); i++ ) {
+            sameShape = NBTDefinitions.getTagType( oldList.get( i ) ) == NBTDefinitions.getTagType( newList.get( i ) );
+        }
+
+        if ( !sameShape ) {
+            set( path, newList, patch );
+            return;
+        }
+
+        for ( int i = 0; i < newList.size(); i++ ) {
+            path.add( i );
+            diffValue( path, oldList.get( i ), newList.get( i ), patch );
+            path.remove( path.size() - 1 );
+        }
+    }
+
+    private static void diffArray( List<Object> path, Object oldArray, Object newArray, int length, NBTPatch patch ) {
+        List<int[]> ranges = new ArrayList<>();
+        int changed = 0;
+        int start = -1;
+        int end = -1;
+        for ( int i = 0; i < length; i++ ) {
+            if ( arrayElementEquals( oldArray, newArray, i ) ) {
+                continue;
+            }
+
+            if ( start != -1 && i - end > RANGE_MERGE_GAP ) {
+                ranges.add( new int[]{ start, end } );
+                changed += end - start;
+                start = -1;
+            }
+
+            if ( start == -1 ) {
+                start = i;
+            }
+
+            end = i + 1;
+        }
+
+        if ( start != -1 ) {
+            ranges.add( new int[]{ start, end } );
+            changed += end - start;
+        }
+
+        if ( ranges.isEmpty() ) {
+            return;
+        }
+
+        // Resending the whole array is cheaper once most of it changed
+        if ( changed > length / 2 ) {
+            set( path, newArray, patch );
+            return;
+        }
+
+        for ( int[] range : ranges ) {
+            Object data = newArray instanceof byte[] ?
+                Arrays.copyOfRange( (byte[]) newArray, range[0], range[1] ) :
+                Arrays.copyOfRange( (int[]) newArray, range[0], range[1] );
+            patch.add( new NBTPatch.Operation( NBTPatch.OP_ARRAY_RANGE, path.toArray(), data, range[0] ) );
+        }
+    }
+
+    private static boolean arrayElementEquals( Object oldArray, Object newArray, int index ) {
+        if ( oldArray instanceof byte[] ) {
+            return ( (byte[]) oldArray )[index] == ( (byte[]) newArray )[index];
+        }
+
+        return ( (int[]) oldArray )[index] == ( (int[]) newArray )[index];
+    }
+
+    private static void set( List<Object> path, Object value, NBTPatch patch ) {
+        patch.add( new NBTPatch.Operation( NBTPatch.OP_SET, path.toArray(), NBTTagCompound.deepCloneValue( value ), 0 ) );
+    }
+
+    private static Object child( Object container, Object segment ) {
+        Object child = null;
+        if ( container instanceof NBTTagCompound && segment instanceof String ) {
+            child = ( (NBTTagCompound) container ).getOwned( (String) segment );
+        } else if ( container instanceof List && segment instanceof Integer ) {
+            List<?> list = (List<?>) container;
+            int index = (Integer) segment;
+            child = index >= 0 && index < list.size() ? list.get( index ) : null;
+        }
+
+        if ( child == null ) {
+            throw new IllegalArgumentException( "NBT patch does not fit: Missing " + segment );
+        }
+
+        return child;
+    }
+
+}
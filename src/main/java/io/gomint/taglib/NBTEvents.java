@@ -0,0 +1,55 @@
+package io.gomint.taglib;
+
+import jdk.jfr.EventType;
+
+/**
+ * Hands out the flight recorder events of parses and writes. Events are only allocated while a recording has them
+ * enabled, parses and writes which start before the recording don't get one. jdk.jfr is an optional dependency, on
+ * runtimes without it no event is ever allocated and none of its classes get loaded.
+ *
+ * @author geNAZt
+ * @version 1.0
+ */
+final class NBTEvents {
+
+    private static final boolean AVAILABLE = ModuleLayer.boot().findModule( "jdk.jfr" ).isPresent();
+
+    /**
+     * Begins the event of a parse
+     *
+     * @return The begun event or null when no recording is interested in parses
+     */
+    static NBTParseEvent beginParse() {
+        if ( !AVAILABLE || !Types.PARSE.isEnabled() ) {
+            return null;
+        }
+
+        NBTParseEvent event = new NBTParseEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Begins the event of a write
+     *
+     * @return The begun event or null when no recording is interested in writes
+     */
+    static NBTWriteEvent beginWrite() {
+        if ( !AVAILABLE || !Types.WRITE.isEnabled() ) {
+            return null;
+        }
+
+        NBTWriteEvent event = new NBTWriteEvent();
+        event.begin();
+        return event;
+    }
+
+    // Only initialized once jdk.jfr is known to be present
+    private static final class Types {
+
+        private static final EventType PARSE = EventType.getEventType( NBTParseEvent.class );
+        private static final EventType WRITE = EventType.getEventType( NBTWriteEvent.class );
+
+    }
+
+}
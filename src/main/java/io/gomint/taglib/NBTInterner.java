@@ -0,0 +1,197 @@
+package io.gomint.taglib;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Canonicalizes compounds with equal name and content into one shared instance. Canonical instances are frozen,
+ * they and everything below them can't be modified anymore, so they can be handed to any number of owners and
+ * threads. The interner only holds weak references to them, canonical instances which are no longer used anywhere
+ * else get garbage collected as usual.
+ * <p>
+ * Compounds can be interned on demand through {@link #intern(NBTTagCompound)} or while parsing by setting the
+ * interner on a {@link NBTReader}.
+ *
+ * @author geNAZt
+ * @version 1.0
+ */
+public class NBTInterner {
+
+    private final Map<Object, WeakEntry> table = new ConcurrentHashMap<>();
+    private final ReferenceQueue<NBTTagCompound> collected = new ReferenceQueue<>();
+
+    /**
+     * Gets the canonical instance for the given compound. If there is none yet a frozen copy of the compound
+     * becomes the canonical instance, the given compound itself is never modified. Compounds below the given one
+     * are canonicalized as well.
+     *
+     * @param compound The compound to intern
+     * @return The frozen canonical instance which equals the given compound in name and content
+     */
+    public NBTTagCompound intern( NBTTagCompound compound ) {
+        NBTTagCompound canonical = this.lookup( compound );
+        if ( canonical != null ) {
+            return canonical;
+        }
+
+        // Frozen compounds can't change anymore, no need to copy them
+        if ( compound.isFrozen() ) {
+            return this.insert( compound );
+        }
+
+        return this.internOwned( compound.deepClone( compound.getName() ) );
+    }
+
+    /**
+     * Get the amount of canonical instances which are still in use
+     *
+     * @return amount of canonical instances
+     */
+    public int size() {
+        this.expunge();
+        return this.table.size();
+    }
+
+    /**
+     * Interns a compound which is not referenced by anyone else yet, like one which has just been parsed. The
+     * compound is canonicalized and frozen in place when there is no canonical instance for it yet.
+     *
+     * @param compound The compound to intern
+     * @return The frozen canonical instance which equals the given compound in name and content
+     */
+    NBTTagCompound internOwned( NBTTagCompound compound ) {
+        if ( compound.isFrozen() ) {
+            return this.intern( compound );
+        }
+
+        for ( Map.Entry<String, Object> entry : compound.entrySet() ) {
+            entry.setValue( this.internValue( entry.getValue() ) );
+        }
+
+        NBTTagCompound canonical = this.lookup( compound );
+        if ( canonical != null ) {
+            return canonical;
+        }
+
+        compound.freeze0();
+        return this.insert( compound );
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private Object internValue( Object value ) {
+        if ( value instanceof NBTTagCompound ) {
+            return this.internOwned( (NBTTagCompound) value );
+        } else if ( value instanceof List ) {
+            List<Object> list = (List<Object>) value;
+            for ( int i = 0; i < list.size(); i++ ) {
+                Object element = list.get( i );
+                Object interned = this.internValue( element );
+                if ( interned != element ) {
+                    list.set( i, interned );
+                }
+            }
+        }
+
+        return value;
+    }
+
+    private NBTTagCompound lookup( NBTTagCompound compound ) {
+        WeakEntry entry = this.table.get( new Lookup( compound ) );
+        return entry != null ? entry.get() : null;
+    }
+
+    private NBTTagCompound insert( NBTTagCompound compound ) {
+        this.expunge();
+
+        WeakEntry entry = new WeakEntry( compound, this.collected );
+        while ( true ) {
+            WeakEntry existing = this.table.putIfAbsent( entry, entry );
+            if ( existing == null ) {
+                return compound;
+            }
+
+            // Someone else has been faster, use their instance unless it just got collected
+            NBTTagCompound canonical = existing.get();
+            if ( canonical != null ) {
+                return canonical;
+            }
+
+            this.table.remove( existing, existing );
+        }
+    }
+
+    private void expunge() {
+        Object reference;
+        while ( ( reference = this.collected.poll() ) != null ) {
+            this.table.remove( reference, reference );
+        }
+    }
+
+    private static int hash( NBTTagCompound compound ) {
+        long hash = compound.contentHash() * 31 + Objects.hashCode( compound.getName() );
+        return (int) ( hash ^ ( hash >>> 32 ) );
+    }
+
+    private static boolean same( NBTTagCompound compound, NBTTagCompound other ) {
+        return compound != null && other != null && Objects.equals( compound.getName(), other.getName() ) && compound.contentEquals( other );
+    }
+
+    private static final class Lookup {
+
+        private final NBTTagCompound compound;
+        private final int hash;
+
+        private Lookup( NBTTagCompound compound ) {
+            this.compound = compound;
+            this.hash = hash( compound );
+        }
+
+        @Override
+        public boolean equals( Object other ) {
+            return other instanceof WeakEntry && same( this.compound, ( (WeakEntry) other ).get() );
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+    }
+
+    private static final class WeakEntry extends WeakReference<NBTTagCompound> {
+
+        private final int hash;
+
+        private WeakEntry( NBTTagCompound compound, ReferenceQueue<NBTTagCompound> queue ) {
+            super( compound, queue );
+            this.hash = hash( compound );
+        }
+
+        @Override
+        public boolean equals( Object other ) {
+            if ( other == this ) {
+                return true;
+            }
+
+            // Collected entries only ever equal themselves so they can't shadow new instances
+            if ( other instanceof WeakEntry ) {
+                return same( this.get(), ( (WeakEntry) other ).get() );
+            } else if ( other instanceof Lookup ) {
+                return same( this.get(), ( (Lookup) other ).compound );
+            }
+
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+    }
+
+}
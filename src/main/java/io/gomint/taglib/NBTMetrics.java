@@ -0,0 +1,416 @@
+package io.gomint.taglib;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects how much work the readers and writers do. Readers and writers pick up the metrics which are
+ * {@link #setGlobal(NBTMetrics) installed globally} when they are constructed, or get their own through
+ * setMetrics. Without metrics they only do a single null check per parse or write.
+ * <p>
+ * All counters are striped ({@link LongAdder}) so threads don't contend on them. Readers count into plain fields
+ * while parsing and add their counts once the parse has finished, so a parse costs a handful of striped additions
+ * no matter how many tags it decoded. Latencies are recorded into histograms with power of two buckets.
+ * <p>
+ * Metrics are exported by calling {@link #publish()} periodically, which hands a {@link Snapshot} of all values to
+ * the registered {@link NBTMetricsListener}s.
+ *
+ * @author geNAZt
+ * @version 1.0
+ */
+public class NBTMetrics {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger( NBTMetrics.class );
+    private static final int TAG_TYPES = NBTDefinitions.TAG_INT_ARRAY + 1;
+
+    private static volatile NBTMetrics global;
+
+    /**
+     * Installs the metrics every reader and writer which gets constructed afterwards reports to
+     *
+     * @param metrics The metrics to report to or null to disable reporting
+     */
+    public static void setGlobal( NBTMetrics metrics ) {
+        global = metrics;
+    }
+
+    /**
+     * Gets the globally installed metrics
+     *
+     * @return The installed metrics or null when none are installed
+     */
+    public static NBTMetrics getGlobal() {
+        return global;
+    }
+
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder[] tagsDecoded = new LongAdder[TAG_TYPES];
+    private final LongAdder stringsDecoded = new LongAdder();
+    private final LongAdder bufferGrowths = new LongAdder();
+    private final LongAdder allocationLimitRejections = new LongAdder();
+    private final LongAdder parseFailures = new LongAdder();
+    private final LongAdder writeFailures = new LongAdder();
+    private final Histogram parseLatency = new Histogram();
+    private final Histogram writeLatency = new Histogram();
+
+    private final List<NBTMetricsListener> listeners = new CopyOnWriteArrayList<>();
+
+    public NBTMetrics() {
+        for ( int i = 0; i < TAG_TYPES; i++ ) {
+            this.tagsDecoded[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Adds a listener which gets every snapshot published through {@link #publish()}
+     *
+     * @param listener The listener to add
+     */
+    public void addListener( NBTMetricsListener listener ) {
+        this.listeners.add( listener );
+    }
+
+    /**
+     * Removes a listener which has been added before
+     *
+     * @param listener The listener to remove
+     */
+    public void removeListener( NBTMetricsListener listener ) {
+        this.listeners.remove( listener );
+    }
+
+    /**
+     * Takes a snapshot and hands it to all listeners. Exceptions thrown by listeners are logged and don't keep
+     * other listeners from getting the snapshot.
+     *
+     * @return The snapshot which has been published
+     */
+    public Snapshot publish() {
+        Snapshot snapshot = this.snapshot();
+        for ( NBTMetricsListener listener : this.listeners ) {
+            try {
+                listener.onMetrics( snapshot );
+            } catch ( Exception e ) {
+                LOGGER.error( "Could not publish NBT metrics", e );
+            }
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Gets the current values of all counters and histograms. Counters only ever grow, the snapshot is not
+     * atomic across counters while other threads are reporting.
+     *
+     * @return The current values
+     */
+    public Snapshot snapshot() {
+        long[] tags = new long[TAG_TYPES];
+        for ( int i = 0; i < TAG_TYPES; i++ ) {
+            tags[i] = this.tagsDecoded[i].sum();
+        }
+
+        return new Snapshot( this.bytesRead.sum(), this.bytesWritten.sum(), tags, this.stringsDecoded.sum(),
+            this.bufferGrowths.sum(), this.allocationLimitRejections.sum(), this.parseFailures.sum(),
+            this.writeFailures.sum(), this.parseLatency.snapshot(), this.writeLatency.snapshot() );
+    }
+
+    void recordParse( long nanos, boolean success, long bytes, int[] tags, int strings, int growths ) {
+        this.parseLatency.record( nanos );
+        if ( !success ) {
+            this.parseFailures.increment();
+        }
+
+        this.bytesRead.add( bytes );
+        for ( int i = 0; i < TAG_TYPES; i++ ) {
+            if ( tags[i] != 0 ) {
+                this.tagsDecoded[i].add( tags[i] );
+            }
+        }
+
+        if ( strings != 0 ) {
+            this.stringsDecoded.add( strings );
+        }
+
+        if ( growths != 0 ) {
+            this.bufferGrowths.add( growths );
+        }
+    }
+
+    void recordWrite( long nanos, boolean success, long bytes ) {
+        this.writeLatency.record( nanos );
+        if ( !success ) {
+            this.writeFailures.increment();
+        }
+
+        this.bytesWritten.add( bytes );
+    }
+
+    void recordAllocationLimitRejection() {
+        this.allocationLimitRejections.increment();
+    }
+
+    /**
+     * Creates the array readers count decoded tags into, indexed by tag type
+     *
+     * @return The array to count into
+     */
+    static int[] newTagCounts() {
+        return new int[TAG_TYPES];
+    }
+
+    private static final class Histogram {
+
+        private final LongAdder[] buckets = new LongAdder[64];
+        private final LongAdder sum = new LongAdder();
+
+        private Histogram() {
+            for ( int i = 0; i < this.buckets.length; i++ ) {
+                this.buckets[i] = new LongAdder();
+            }
+        }
+
+        private void record( long nanos ) {
+            // Bucket i holds values in [2^i, 2^(i+1)), zero and negative clock jumps go into the first one
+            long value = Math.max( nanos, 1 );
+            this.buckets[63 - Long.numberOfLeadingZeros( value )].increment();
+            this.sum.add( value );
+        }
+
+        private LatencySnapshot snapshot() {
+            long[] counts = new long[this.buckets.length];
+            long count = 0;
+            for ( int i = 0; i < counts.length; i++ ) {
+                counts[i] = this.buckets[i].sum();
+                count += counts[i];
+            }
+
+            return new LatencySnapshot( counts, count, this.sum.sum() );
+        }
+
+    }
+
+    /**
+     * Values of all metrics at the time the snapshot has been taken
+     */
+    public static final class Snapshot {
+
+        private final long bytesRead;
+        private final long bytesWritten;
+        private final long[] tagsDecoded;
+        private final long stringsDecoded;
+        private final long bufferGrowths;
+        private final long allocationLimitRejections;
+        private final long parseFailures;
+        private final long writeFailures;
+        private final LatencySnapshot parseLatency;
+        private final LatencySnapshot writeLatency;
+
+        private Snapshot( long bytesRead, long bytesWritten, long[] tagsDecoded, long stringsDecoded, long bufferGrowths,
+                          long allocationLimitRejections, long parseFailures, long writeFailures,
+                          LatencySnapshot parseLatency, LatencySnapshot writeLatency ) {
+            this.bytesRead = bytesRead;
+            this.bytesWritten = bytesWritten;
+            this.tagsDecoded = tagsDecoded;
+            this.stringsDecoded = stringsDecoded;
+            this.bufferGrowths = bufferGrowths;
+            this.allocationLimitRejections = allocationLimitRejections;
+            this.parseFailures = parseFailures;
+            this.writeFailures = writeFailures;
+            this.parseLatency = parseLatency;
+            this.writeLatency = writeLatency;
+        }
+
+        /**
+         * Get the amount of bytes consumed by parses, after decompression
+         *
+         * @return amount of bytes read
+         */
+        public long getBytesRead() {
+            return this.bytesRead;
+        }
+
+        /**
+         * Get the amount of bytes produced by writes, before compression
+         *
+         * @return amount of bytes written
+         */
+        public long getBytesWritten() {
+            return this.bytesWritten;
+        }
+
+        /**
+         * Get the amount of decoded tags of the given type. Types are the ids of the NBT format, 1 (byte) up to
+         * 11 (int array). Elements of lists count as tags of the element type.
+         *
+         * @param tagType The id of the tag type
+         * @return amount of decoded tags of this type
+         */
+        public long getTagsDecoded( int tagType ) {
+            return tagType >= 0 && tagType < this.tagsDecoded.length ? this.tagsDecoded[tagType] : 0;
+        }
+
+        /**
+         * Get the amount of decoded tags of all types
+         *
+         * @return amount of decoded tags
+         */
+        public long getTagsDecoded() {
+            long sum = 0;
+            for ( long count : this.tagsDecoded ) {
+                sum += count;
+            }
+
+            return sum;
+        }
+
+        /**
+         * Get the amount of decoded strings, including the names of tags
+         *
+         * @return amount of decoded strings
+         */
+        public long getStringsDecoded() {
+            return this.stringsDecoded;
+        }
+
+        /**
+         * Get the amount of times a reader had to grow its buffer for a value which did not fit into it
+         *
+         * @return amount of buffer growths
+         */
+        public long getBufferGrowths() {
+            return this.bufferGrowths;
+        }
+
+        /**
+         * Get the amount of parses which have been rejected for exceeding their allocation limit
+         *
+         * @return amount of rejections
+         */
+        public long getAllocationLimitRejections() {
+            return this.allocationLimitRejections;
+        }
+
+        /**
+         * Get the amount of parses which failed, including allocation limit rejections
+         *
+         * @return amount of failed parses
+         */
+        public long getParseFailures() {
+            return this.parseFailures;
+        }
+
+        /**
+         * Get the amount of writes which failed
+         *
+         * @return amount of failed writes
+         */
+        public long getWriteFailures() {
+            return this.writeFailures;
+        }
+
+        /**
+         * Gets the latencies of all parses, failed ones included
+         *
+         * @return The parse latencies
+         */
+        public LatencySnapshot getParseLatency() {
+            return this.parseLatency;
+        }
+
+        /**
+         * Gets the latencies of all writes, failed ones included
+         *
+         * @return The write latencies
+         */
+        public LatencySnapshot getWriteLatency() {
+            return this.writeLatency;
+        }
+
+    }
+
+    /**
+     * Latency histogram with power of two buckets in nanoseconds. Bucket i counts latencies from 2^i up to
+     * (excluding) 2^(i+1) nanoseconds.
+     */
+    public static final class LatencySnapshot {
+
+        private final long[] buckets;
+        private final long count;
+        private final long sum;
+
+        private LatencySnapshot( long[] buckets, long count, long sum ) {
+            this.buckets = buckets;
+            this.count = count;
+            this.sum = sum;
+        }
+
+        /**
+         * Get the amount of recorded latencies
+         *
+         * @return amount of recorded latencies
+         */
+        public long getCount() {
+            return this.count;
+        }
+
+        /**
+         * Gets the sum of all recorded latencies
+         *
+         * @return The sum in nanoseconds
+         */
+        public long getSumNanos() {
+            return this.sum;
+        }
+
+        /**
+         * Gets the mean of all recorded latencies
+         *
+         * @return The mean in nanoseconds or 0 if nothing has been recorded
+         */
+        public double getMeanNanos() {
+            return this.count == 0 ? 0 : (double) this.sum / this.count;
+        }
+
+        /**
+         * Gets the amount of latencies in the given bucket
+         *
+         * @param bucket The bucket, 0 to 63
+         * @return amount of latencies from 2^bucket up to 2^(bucket+1) nanoseconds
+         */
+        public long getBucket( int bucket ) {
+            return this.buckets[bucket];
+        }
+
+        /**
+         * Gets an upper bound of the given percentile. The result is the upper end of the bucket which contains
+         * the percentile, so it is at most twice the real value.
+         *
+         * @param percentile The percentile, between 0 and 100
+         * @return The upper bound in nanoseconds or 0 if nothing has been recorded
+         */
+        public long getPercentileNanos( double percentile ) {
+            if ( this.count == 0 ) {
+                return 0;
+            }
+
+            long rank = (long) Math.ceil( this.count * Math.min( Math.max( percentile, 0 ), 100 ) / 100 );
+            long seen = 0;
+            for ( int i = 0; i < this.buckets.length; i++ ) {
+                seen += this.buckets[i];
+                if ( seen >= Math.max( rank, 1 ) ) {
+                    return i >= 62 ? Long.MAX_VALUE : 1L << ( i + 1 );
+                }
+            }
+
+            return Long.MAX_VALUE;
+        }
+
+    }
+
+}
@@ -0,0 +1,18 @@
+package io.gomint.taglib;
+
+/**
+ * @author geNAZt
+ * @version 1.0
+ */
+public interface NBTMetricsListener {
+
+    /**
+     * Gets invoked by {@link NBTMetrics#publish()} with the current values of all metrics. Implementations
+     * typically copy the values into a monitoring system.
+     *
+     * @param snapshot The values of all metrics
+     * @throws Exception An exception which occured while exporting the values
+     */
+    void onMetrics( NBTMetrics.Snapshot snapshot ) throws Exception;
+
+}
@@ -0,0 +1,251 @@
+package io.gomint.taglib;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Table of tag names shared by the writer and the readers of packed NBT, see
+ * {@link NBTWriter#writePacked(NBTTagCompound, NBTNameTable)}. Packed data references names of the table by their
+ * index instead of spelling them out, the most common names should come first since they get the shortest
+ * references.
+ * <p>
+ * Packed data stores the id of the table it has been written with, readers refuse to read it with a different
+ * table. Names which are not in the table are written once per document and referenced by index afterwards.
+ * <p>
+ * All readers recognize packed data by its marker and take the table through their {@code setNameTable} setter.
+ * {@link NBTTransform} is the exception, it copies encoded bytes and rejects packed data.
+ *
+ * @author geNAZt
+ * @version 1.0
+ */
+public class NBTNameTable {
+
+    private final String[] names;
+    private final Map<String, Integer> indexes;
+    private final int id;
+
+    /**
+     * Constructs a table holding the given names in the given order
+     *
+     * @param names The names of the table
+     * @throws IllegalArgumentException Thrown in case a name is null or contained twice
+     */
+    public NBTNameTable( List<String> names ) {
+        this.names = names.toArray( new String[0] );
+        this.indexes = new HashMap<>( this.names.length * 2 );
+
+        CRC32 crc = new CRC32();
+        for ( int i = 0; i < this.names.length; i++ ) {
+            String name = this.names[i];
+            if ( name == null || this.indexes.putIfAbsent( name, i ) != null ) {
+                throw new IllegalArgumentException( "Name table contains null or duplicate name <" + name + ">" );
+            }
+
+            crc.update( StringUtil.getUTF8Bytes( name ) );
+            crc.update( 0 );
+        }
+
+        // Zero marks data written without a table
+        int checksum = (int) crc.getValue();
+        this.id = checksum != 0 ? checksum : 1;
+    }
+
+    /**
+     * Builds a table from a sample of the compounds it should pack. Names are ordered by how often they occur, names
+     * which only occur once are left out.
+     *
+     * @param samples  Compounds representative for the data which gets packed
+     * @param maxNames The maximum amount of names in the table
+     * @return The trained table
+     */
+    public static NBTNameTable train( Iterable<NBTTagCompound> samples, int maxNames ) {
+        Map<String, int[]> counts = new HashMap<>();
+        for ( NBTTagCompound sample : samples ) {
+            count( sample, counts );
+        }
+
+        List<Map.Entry<String, int[]>> entries = new ArrayList<>();
+        for ( Map.Entry<String, int[]> entry : counts.entrySet() ) {
+            if ( entry.getValue()[0] > 1 ) {
+                entries.add( entry );
+            }
+        }
+
+        // Most common first, ties broken by name so training is deterministic
+        entries.sort( ( a, b ) -> {
+            int compare = Integer.compare( b.getValue()[0], a.getValue()[0] );
+            return compare != 0 ? compare : a.getKey().compareTo( b.getKey() );
+        } );
+
+        List<String> names = new ArrayList<>( Math.min( maxNames, entries.size() ) );
+        for ( int i = 0; i < entries.size() && i < maxNames; i++ ) {
+            names.add( entries.get( i ).getKey() );
+        }
+
+        return new NBTNameTable( names );
+    }
+
+    /**
+     * Gets the id packed data written with this table carries
+     *
+     * @return The checksum of the names, never zero
+     */
+    public int getId() {
+        return this.id;
+    }
+
+    public List<String> getNames() {
+        return Collections.unmodifiableList( Arrays.asList( this.names ) );
+    }
+
+    public int size() {
+        return this.names.length;
+    }
+
+    /**
+     * Starts reading a packed document whose header has been read
+     *
+     * @param version The format version of the document
+     * @param tableId The id of the table the document has been written with, zero for none
+     * @param table   The table the reader has been given
+     * @return The names of the document
+     * @throws IOException Thrown in case the version is unknown or the document needs a different table
+     */
+    static Document open( byte version, int tableId, NBTNameTable table ) throws IOException {
+        if ( version != NBTDefinitions.PACKED_VERSION ) {
+            throw new IOException( "Invalid NBT Data: Unknown packed format version <" + version + ">" );
+        }
+
+        if ( tableId == 0 ) {
+            return new Document( null );
+        }
+
+        if ( table == null || table.id != tableId ) {
+            throw new IOException( "Invalid NBT Data: Packed with unknown name table <" + Integer.toHexString( tableId ) + ">" );
+        }
+
+        return new Document( table );
+    }
+
+    private static void count( NBTTagCompound compound, Map<String, int[]> counts ) {
+        for ( Map.Entry<String, Object> entry : compound.entries() ) {
+            counts.computeIfAbsent( entry.getKey(), key -> new int[1] )[0]++;
+            count( entry.getValue(), counts );
+        }
+    }
+
+    private static void count( Object value, Map<String, int[]> counts ) {
+        if ( value instanceof NBTTagCompound ) {
+            count( (NBTTagCompound) value, counts );
+        } else if ( value instanceof List ) {
+            for ( Object element : (List<?>) value ) {
+                count( element, counts );
+            }
+        }
+    }
+
+    /**
+     * Names of one packed document. Reference zero announces a name which is spelled out, every other reference
+     * points to a name of the shared table or, behind those, to a name which has been spelled out before.
+     */
+    static final class Document {
+
+        private final NBTNameTable table;
+        private final List<String> names = new ArrayList<>();
+        private Map<String, Integer> references;
+
+        Document( NBTNameTable table ) {
+            this.table = table;
+        }
+
+        /**
+         * Gets the reference of a name which is about to be written. Names without reference are remembered, the
+         * caller has to spell them out.
+         *
+         * @param name The name to write
+         * @return The reference of the name or zero if it has to be spelled out
+         */
+        int reference( String name ) {
+            if ( this.table != null ) {
+                Integer index = this.table.indexes.get( name );
+                if ( index != null ) {
+                    return index + 1;
+                }
+            }
+
+            if ( this.references == null ) {
+                this.references = new HashMap<>();
+            }
+
+            Integer reference = this.references.get( name );
+            if ( reference != null ) {
+                return reference;
+            }
+
+            this.names.add( name );
+            this.references.put( name, this.shared() + this.names.size() );
+            return 0;
+        }
+
+        /**
+         * Remembers a name which has been spelled out in the data
+         *
+         * @param name The name which has been read
+         */
+        void add( String name ) {
+            this.names.add( name );
+        }
+
+        /**
+         * Resolves a reference which has been read
+         *
+         * @param reference The reference, at least one
+         * @return The name it references
+         * @throws IOException Thrown in case nothing is referenced yet by the given index
+         */
+        String resolve( int reference ) throws IOException {
+            int index = reference - 1;
+            int shared = this.shared();
+            if ( index >= 0 && index < shared ) {
+                return this.table.names[index];
+            }
+
+            index -= shared;
+            if ( index < 0 || index >= this.names.size() ) {
+                throw new IOException( "Invalid NBT Data: Unknown name reference <" + reference + ">" );
+            }
+
+            return this.names.get( index );
+        }
+
+        /**
+         * Gets the amount of names which have been spelled out so far
+         *
+         * @return The amount of names
+         */
+        int size() {
+            return this.names.size();
+        }
+
+        /**
+         * Forgets the names which have been spelled out after the given amount, used when a reader moves back
+         *
+         * @param size The amount of names to keep
+         */
+        void truncate( int size ) {
+            this.names.subList( size, this.names.size() ).clear();
+        }
+
+        private int shared() {
+            return this.table != null ? this.table.names.length : 0;
+        }
+
+    }
+
+}
@@ -0,0 +1,34 @@
+package io.gomint.taglib;
+
+import java.io.IOException;
+
+/**
+ * Reads and writes objects of one type straight from and to encoded NBT data, without a {@link NBTTagCompound} in
+ * between. An object is stored as the entries of a compound.
+ *
+ * @param <T> The type of the objects
+ * @author geNAZt
+ * @version 1.0
+ */
+public interface NBTObjectCodec<T> {
+
+    /**
+     * Reads the entries of a compound into a new object. The end tag of the compound is consumed as well.
+     *
+     * @param reader The reader which is positioned at the first entry
+     * @return The object which has been read
+     * @throws IOException                     Thrown in case of invalid NBT data or data which does not fit the type
+     * @throws AllocationLimitReachedException Thrown in case the data exceeds the limits of the reader
+     */
+    T read( NBTObjectReader reader ) throws IOException, AllocationLimitReachedException;
+
+    /**
+     * Writes the entries of the object. The end tag of the compound is written by the caller.
+     *
+     * @param writer The writer to write to
+     * @param value  The object to write
+     * @throws IOException Thrown in case writing failed
+     */
+    void write( NBTObjectWriter writer, T value ) throws IOException;
+
+}
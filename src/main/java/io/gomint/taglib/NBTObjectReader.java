@@ -0,0 +1,204 @@
+package io.gomint.taglib;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Reader which decodes objects through {@link NBTObjectCodec}s. It hands the primitives of the NBT format to the
+ * codecs, which turn them into fields of their objects right away. All limits of {@link NBTStreamReader} apply.
+ *
+ * @author geNAZt
+ * @version 1.0
+ */
+public class NBTObjectReader extends NBTStreamReader {
+
+    private int listCapacity;
+
+    public NBTObjectReader( InputStream in, ByteOrder byteOrder ) {
+        super( in, byteOrder );
+    }
+
+    /**
+     * Constructs a reader which reads from the remaining bytes of the given buffer. The position of the buffer is
+     * not modified.
+     *
+     * @param buffer    The buffer to read from
+     * @param byteOrder The byteorder of the encoded data
+     */
+    public NBTObjectReader( ByteBuffer buffer, ByteOrder byteOrder ) {
+        super( buffer, byteOrder );
+    }
+
+    /**
+     * Reads a root compound into an object, standard or packed. The name of the root is ignored.
+     *
+     * @param codec The codec of the object
+     * @param <T>   The type of the object
+     * @return The object which has been read
+     * @throws IOException                     Thrown in case of invalid NBT data or data which does not fit the type
+     * @throws AllocationLimitReachedException Thrown in case the data exceeds the limits of this reader
+     */
+    public <T> T read( NBTObjectCodec<T> codec ) throws IOException, AllocationLimitReachedException {
+        NBTParseEvent event = NBTEvents.beginParse();
+        long start = this.startOperation( event );
+        boolean success = false;
+        try {
+            this.readRootHeader();
+            T value = this.readObject( codec );
+            success = true;
+            return value;
+        } finally {
+            this.endPacked();
+            this.finishOperation( start, success, event );
+        }
+    }
+
+    /**
+     * Reads the value of a compound tag into an object
+     *
+     * @param codec The codec of the object
+     * @param <T>   The type of the object
+     * @return The object which has been read
+     * @throws IOException                     Thrown in case of invalid NBT data or data which does not fit the type
+     * @throws AllocationLimitReachedException Thrown in case the data exceeds the limits of this reader
+     */
+    public <T> T readObject( NBTObjectCodec<T> codec ) throws IOException, AllocationLimitReachedException {
+        this.enterNested();
+        T value = codec.read( this );
+        this.leaveNested();
+        return value;
+    }
+
+    /**
+     * Reads the type of the next entry of a compound
+     *
+     * @return The type of the entry or {@link NBTDefinitions#TAG_END} at the end of the compound
+     * @throws IOException                     Thrown in case the input ended
+     * @throws AllocationLimitReachedException Never thrown, readers only charge for values
+     */
+    public byte readTagType() throws IOException, AllocationLimitReachedException {
+        byte tagID = this.readByteValue();
+        if ( tagID != NBTDefinitions.TAG_END ) {
+            this.countTag( tagID );
+        }
+
+        return tagID;
+    }
+
+    /**
+     * Checks that an entry has the type a field needs
+     *
+     * @param tagID    The type of the entry
+     * @param expected The type the field needs
+     * @param name     The name of the entry
+     * @throws IOException Thrown in case the types don't match
+     */
+    public void checkType( byte tagID, byte expected, String name ) throws IOException {
+        if ( tagID != expected ) {
+            throw new IOException( "Invalid NBT Data: Expected tag <" + expected + "> for '" + name + "' but got <" + tagID + ">" );
+        }
+    }
+
+    /**
+     * Reads the header of a list whose elements have to be of the given type. Collections for the elements should
+     * be pre-sized with {@link #getListCapacity()}, not with the amount of elements, which is not backed by any
+     * input yet.
+     *
+     * @param elementType The type the elements need to have
+     * @return The amount of elements
+     * @throws IOException                     Thrown in case the list holds other elements or the header is invalid
+     * @throws AllocationLimitReachedException Thrown in case the list is longer than allowed
+     */
+    public int readListHeader( byte elementType ) throws IOException, AllocationLimitReachedException {
+        byte listType = this.readByteValue();
+        int length = this.readIntValue();
+        this.listCapacity = this.checkListLength( listType, length );
+
+        // Empty lists are written with any type
+        if ( listType == NBTDefinitions.TAG_END || length == 0 ) {
+            this.listCapacity = 0;
+            return 0;
+        }
+
+        if ( listType != elementType ) {
+            throw new IOException( "Invalid NBT Data: Expected list of tag <" + elementType + "> but got <" + listType + ">" );
+        }
+
+        this.countTags( listType, length );
+        this.alterAllocationLimit( Allocation.list( listType, length ) );
+        return length;
+    }
+
+    /**
+     * Gets the capacity to pre-size the collection of the list whose header has been read last with. It is the amount
+     * of elements as long as the remaining input is known to hold them, capped otherwise so that a hostile header
+     * can't allocate more than the input backs.
+     *
+     * @return The capacity for the elements of the list
+     */
+    public int getListCapacity() {
+        return this.listCapacity;
+    }
+
+    /**
+     * Reads the name of a compound entry, which is a reference in packed data
+     *
+     * @return The name of the entry
+     * @throws IOException                     Thrown in case the name could not be read
+     * @throws AllocationLimitReachedException Thrown in case the name is longer than allowed
+     */
+    public String readName() throws IOException, AllocationLimitReachedException {
+        return this.readTagName();
+    }
+
+    public byte readByte() throws IOException, AllocationLimitReachedException {
+        return this.readByteValue();
+    }
+
+    public short readShort() throws IOException, AllocationLimitReachedException {
+        return this.readShortValue();
+    }
+
+    public int readInt() throws IOException, AllocationLimitReachedException {
+        return this.readIntValue();
+    }
+
+    public long readLong() throws IOException, AllocationLimitReachedException {
+        return this.readLongValue();
+    }
+
+    public float readFloat() throws IOException, AllocationLimitReachedException {
+        return this.readFloatValue();
+    }
+
+    public double readDouble() throws IOException, AllocationLimitReachedException {
+        return this.readDoubleValue();
+    }
+
+    public String readString() throws IOException, AllocationLimitReachedException {
+        return this.readStringValue();
+    }
+
+    public byte[] readByteArray() throws IOException, AllocationLimitReachedException {
+        return this.readByteArrayValue();
+    }
+
+    public int[] readIntArray() throws IOException, AllocationLimitReachedException {
+        return this.readIntArrayValue();
+    }
+
+    /**
+     * Skips the value of an entry nobody is interested in, without decoding it
+     *
+     * @param tagID The type of the value
+     * @throws IOException                     Thrown in case of invalid NBT data
+     * @throws AllocationLimitReachedException Thrown in case the value is nested deeper than allowed
+     */
+    @Override
+    public void skipValue( byte tagID ) throws IOException, AllocationLimitReachedException {
+        super.skipValue( tagID );
+    }
+
+}
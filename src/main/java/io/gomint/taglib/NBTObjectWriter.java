@@ -0,0 +1,108 @@
+package io.gomint.taglib;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteOrder;
+
+/**
+ * Writer which encodes objects through {@link NBTObjectCodec}s. The codecs write the fields of their objects as
+ * entries of a compound straight into the buffer of this writer. Compounds can still be written through
+ * {@link #write(NBTTagCompound)}.
+ *
+ * @author geNAZt
+ * @version 1.0
+ */
+public class NBTObjectWriter extends NBTWriter {
+
+    public NBTObjectWriter( OutputStream out, ByteOrder byteOrder ) {
+        super( out, byteOrder );
+    }
+
+    /**
+     * Writes an object as root compound and flushes the stream
+     *
+     * @param name  The name of the root compound
+     * @param value The object to write
+     * @param codec The codec of the object
+     * @param <T>   The type of the object
+     * @throws IOException Thrown in case writing failed
+     */
+    public <T> void write( String name, T value, NBTObjectCodec<T> codec ) throws IOException {
+        this.writeRoot( name, () -> this.writeObject( value, codec ) );
+    }
+
+    /**
+     * Writes an object as value of a compound tag, including the end tag of the compound
+     *
+     * @param value The object to write
+     * @param codec The codec of the object
+     * @param <T>   The type of the object
+     * @throws IOException Thrown in case writing failed
+     */
+    public <T> void writeObject( T value, NBTObjectCodec<T> codec ) throws IOException {
+        codec.write( this, value );
+        this.writeByteValue( NBTDefinitions.TAG_END );
+    }
+
+    /**
+     * Starts an entry of a compound, its value has to be written right after
+     *
+     * @param tagID The type of the value
+     * @param name  The name of the entry
+     * @throws IOException Thrown in case writing failed
+     */
+    public void writeTag( byte tagID, String name ) throws IOException {
+        this.countTags( 1 );
+        this.writeTagHeader( tagID, name );
+    }
+
+    /**
+     * Writes the header of a list, its elements have to be written right after
+     *
+     * @param elementType The type of the elements
+     * @param length      The amount of elements
+     * @throws IOException Thrown in case writing failed
+     */
+    public void writeListHeader( byte elementType, int length ) throws IOException {
+        this.countTags( length );
+        this.writeByteValue( length > 0 ? elementType : NBTDefinitions.TAG_BYTE );
+        this.writeIntegerValue( length );
+    }
+
+    public void writeByte( byte value ) throws IOException {
+        this.writeByteValue( value );
+    }
+
+    public void writeShort( short value ) throws IOException {
+        this.writeShortValue( value );
+    }
+
+    public void writeInt( int value ) throws IOException {
+        this.writeIntegerValue( value );
+    }
+
+    public void writeLong( long value ) throws IOException {
+        this.writeLongValue( value );
+    }
+
+    public void writeFloat( float value ) throws IOException {
+        this.writeFloatValue( value );
+    }
+
+    public void writeDouble( double value ) throws IOException {
+        this.writeDoubleValue( value );
+    }
+
+    public void writeString( String value ) throws IOException {
+        this.writeStringValue( value );
+    }
+
+    public void writeByteArray( byte[] value ) throws IOException {
+        this.writeByteArrayValue( value );
+    }
+
+    public void writeIntArray( int[] value ) throws IOException {
+        this.writeIntegerArrayValue( value );
+    }
+
+}
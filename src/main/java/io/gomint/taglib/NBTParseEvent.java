@@ -0,0 +1,48 @@
+package io.gomint.taglib;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event which is emitted for every parse of a NBT compound. The event duration is the time the
+ * parse took, decompression included.
+ *
+ * @author geNAZt
+ * @version 1.0
+ */
+@Name( "io.gomint.taglib.Parse" )
+@Label( "NBT Parse" )
+@Category( { "GoMint", "TagLib" } )
+@Description( "Parse of a NBT compound" )
+@StackTrace( false )
+final class NBTParseEvent extends jdk.jfr.Event {
+
+    @Label( "Reader" )
+    String reader;
+
+    @Label( "Bytes" )
+    @Description( "Bytes consumed by the parse, after decompression" )
+    @DataAmount
+    long bytes;
+
+    @Label( "Tags" )
+    @Description( "Tags decoded by the parse, list elements included" )
+    int tags;
+
+    @Label( "Compressed" )
+    boolean compressed;
+
+    @Label( "Byte Order" )
+    String byteOrder;
+
+    @Label( "Varint" )
+    boolean varint;
+
+    @Label( "Success" )
+    boolean success;
+
+}
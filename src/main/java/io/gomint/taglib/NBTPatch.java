@@ -0,0 +1,223 @@
+package io.gomint.taglib;
+
+import lombok.ToString;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Set of changes which turn one compound into another. Patches are created by {@link NBTDiff#diff(NBTTagCompound, NBTTagCompound)}
+ * and applied by {@link NBTDiff#apply(NBTTagCompound, NBTPatch)}.
+ * <p>
+ * The binary form is a version byte and a varint operation count followed by the operations. Each operation is an
+ * opcode, a path of keys (compounds) and indices (lists), and depending on the opcode a NBT value or an array offset
+ * together with the replacement elements.
+ *
+ * @author geNAZt
+ * @version 1.0
+ */
+@ToString
+public class NBTPatch {
+
+    static final byte OP_SET = 0;
+    static final byte OP_REMOVE = 1;
+    static final byte OP_ARRAY_RANGE = 2;
+
+    private static final byte VERSION = 1;
+    private static final byte SEGMENT_KEY = 0;
+    private static final byte SEGMENT_INDEX = 1;
+
+    // Readers don't nest deeper than this by default, longer paths can't point into data they read
+    private static final int MAX_PATH_LENGTH = AllocationBudget.DEFAULT_MAX_DEPTH;
+
+    /**
+     * Reads a patch from its binary form.
+     *
+     * @param data      The encoded patch
+     * @param byteOrder The byteorder the patch has been written with
+     * @return The patch which has been read
+     * @throws IOException                     Thrown in case invalid patch data is encountered
+     * @throws AllocationLimitReachedException Never thrown since no allocation limit is set
+     */
+    public static NBTPatch readFrom( byte[] data, ByteOrder byteOrder ) throws IOException, AllocationLimitReachedException {
+        return read( new NBTReader( ByteBuffer.wrap( data ), byteOrder ) );
+    }
+
+    /**
+     * Reads a patch from the given input stream. The reader buffers its input so the stream should not contain
+     * any other data after the patch.
+     *
+     * @param in        The input stream to read from
+     * @param byteOrder The byteorder the patch has been written with
+     * @return The patch which has been read
+     * @throws IOException                     Thrown in case an I/O error occurs or invalid patch data is encountered
+     * @throws AllocationLimitReachedException Never thrown since no allocation limit is set
+     */
+    public static NBTPatch readFrom( InputStream in, ByteOrder byteOrder ) throws IOException, AllocationLimitReachedException {
+        return read( new NBTReader( in, byteOrder ) );
+    }
+
+    private static NBTPatch read( NBTReader reader ) throws IOException, AllocationLimitReachedException {
+        if ( reader.readByteValue() != VERSION ) {
+            throw new IOException( "Invalid NBT patch: Unknown version" );
+        }
+
+        int count = VarInt.readUnsignedVarInt( reader );
+        NBTPatch patch = new NBTPatch();
+        for ( int i = 0; i < count; i++ ) {
+            byte type = reader.readByteValue();
+            int pathLength = VarInt.readUnsignedVarInt( reader );
+            if ( pathLength < 0 || pathLength > MAX_PATH_LENGTH ) {
+                throw new IOException( "Invalid NBT patch: Path of " + Integer.toUnsignedString( pathLength ) + " segments is too long" );
+            }
+
+            Object[] path = new Object[pathLength];
+            for ( int j = 0; j < path.length; j++ ) {
+                byte segment = reader.readByteValue();
+                if ( segment == SEGMENT_KEY ) {
+                    path[j] = reader.readStringValue();
+                } else if ( segment == SEGMENT_INDEX ) {
+                    path[j] = VarInt.readUnsignedVarInt( reader );
+                } else {
+                    throw new IOException( "Invalid NBT patch: Unknown path segment <" + segment + ">" );
+                }
+            }
+
+            switch ( type ) {
+                case OP_SET:
+                    patch.add( new Operation( OP_SET, path, reader.readValue( reader.readByteValue() ), 0 ) );
+                    break;
+                case OP_REMOVE:
+                    patch.add( new Operation( OP_REMOVE, path, null, 0 ) );
+                    break;
+                case OP_ARRAY_RANGE:
+                    int offset = VarInt.readUnsignedVarInt( reader );
+                    byte arrayType = reader.readByteValue();
+                    if ( arrayType != NBTDefinitions.TAG_BYTE_ARRAY && arrayType != NBTDefinitions.TAG_INT_ARRAY ) {
+                        throw new IOException( "Invalid NBT patch: Array range on non array tag <" + arrayType + ">" );
+                    }
+
+                    patch.add( new Operation( OP_ARRAY_RANGE, path, reader.readValue( arrayType ), offset ) );
+                    break;
+                default:
+                    throw new IOException( "Invalid NBT patch: Unknown operation <" + type + ">" );
+            }
+        }
+
+        return patch;
+    }
+
+    private final List<Operation> operations = new ArrayList<>();
+
+    NBTPatch() {
+
+    }
+
+    /**
+     * Checks whether or not this patch changes anything.
+     *
+     * @return True when there are no changes in this patch
+     */
+    public boolean isEmpty() {
+        return this.operations.isEmpty();
+    }
+
+    /**
+     * Get the amount of operations in this patch
+     *
+     * @return amount of operations
+     */
+    public int size() {
+        return this.operations.size();
+    }
+
+    /**
+     * Encodes this patch into its binary form.
+     *
+     * @param byteOrder The byteorder to use
+     * @return The encoded patch
+     * @throws IOException Thrown in case the patch contains values which can't be written as NBT
+     */
+    public byte[] toByteArray( ByteOrder byteOrder ) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        this.writeTo( out, byteOrder );
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes the binary form of this patch to the given output stream. The stream is flushed but not closed.
+     *
+     * @param out       The output stream to write to
+     * @param byteOrder The byteorder to use
+     * @throws IOException Thrown in case an I/O error occurs
+     */
+    public void writeTo( OutputStream out, ByteOrder byteOrder ) throws IOException {
+        NBTWriter writer = new NBTWriter( out, byteOrder );
+        writer.writeByteValue( VERSION );
+        VarInt.writeUnsignedVarInt( writer, this.operations.size() );
+        for ( Operation operation : this.operations ) {
+            writer.writeByteValue( operation.type );
+            VarInt.writeUnsignedVarInt( writer, operation.path.length );
+            for ( Object segment : operation.path ) {
+                if ( segment instanceof String ) {
+                    writer.writeByteValue( SEGMENT_KEY );
+                    writer.writeStringValue( (String) segment );
+                } else {
+                    writer.writeByteValue( SEGMENT_INDEX );
+                    VarInt.writeUnsignedVarInt( writer, (Integer) segment );
+                }
+            }
+
+            switch ( operation.type ) {
+                case OP_SET:
+                    byte valueType = writer.getNBTTypeFromValue( operation.value );
+                    writer.writeByteValue( valueType );
+                    writer.writeValue( valueType, operation.value );
+                    break;
+                case OP_ARRAY_RANGE:
+                    VarInt.writeUnsignedVarInt( writer, operation.offset );
+                    byte arrayType = writer.getNBTTypeFromValue( operation.value );
+                    writer.writeByteValue( arrayType );
+                    writer.writeValue( arrayType, operation.value );
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        writer.finish();
+    }
+
+    void add( Operation operation ) {
+        this.operations.add( operation );
+    }
+
+    List<Operation> operations() {
+        return Collections.unmodifiableList( this.operations );
+    }
+
+    @ToString
+    static final class Operation {
+
+        final byte type;
+        final Object[] path;
+        final Object value;
+        final int offset;
+
+        Operation( byte type, Object[] path, Object value, int offset ) {
+            this.type = type;
+            this.path = path;
+            this.value = value;
+            this.offset = offset;
+        }
+
+    }
+
+}
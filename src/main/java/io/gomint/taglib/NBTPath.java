@@ -0,0 +1,724 @@
+package io.gomint.taglib;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Compiled query which selects values out of a compound, like {@code Level.Entities[id=="minecraft:zombie"].Pos[1]}.
+ * A path is compiled once and can then be evaluated against any amount of {@link NBTTagCompound}s or, without
+ * parsing them, against encoded data read by a {@link NBTByteArrayReader}.
+ * <p>
+ * A path is a list of segments separated by dots, starting at the root compound. A segment is the name of an entry,
+ * either bare or in double quotes, or {@code *} for all entries of a compound. Each segment may be followed by
+ * selectors in brackets:
+ * <ul>
+ * <li>{@code [3]} selects an element of a list or array, negative indices count from the end</li>
+ * <li>{@code [*]} selects all elements of a list or array</li>
+ * <li>{@code [key==literal]} and {@code [key!=literal]} select the compounds of a list whose entry has, or has not,
+ * the given value. Applied to a compound it keeps or drops the compound itself. Literals are strings in double
+ * quotes, numbers and true or false. Numbers match entries of any numeric type with the same value, entries
+ * which don't exist match neither operator.</li>
+ * </ul>
+ * Evaluating against encoded data skips every entry which can't lead to a match without decoding it, names are
+ * compared as UTF-8 bytes and only the selected values are decoded. Results are the same objects the getters of
+ * {@link NBTTagCompound} would return.
+ *
+ * @author geNAZt
+ * @version 1.0
+ */
+public class NBTPath {
+
+    static final int CHILD = 0;
+    static final int ANY_CHILD = 1;
+    static final int INDEX = 2;
+    static final int ALL = 3;
+    static final int FILTER = 4;
+
+    private final String expression;
+    private final Step[] steps;
+
+    private NBTPath( String expression, Step[] steps ) {
+        this.expression = expression;
+        this.steps = steps;
+    }
+
+    /**
+     * Compiles the given path
+     *
+     * @param expression The path to compile, an empty path selects the root compound
+     * @return The compiled path
+     * @throws IllegalArgumentException Thrown in case the path is invalid
+     */
+    public static NBTPath compile( String expression ) {
+        return new NBTPath( expression, new Parser( expression ).parse() );
+    }
+
+    /**
+     * Hands every value the path selects in the given compound to the action
+     *
+     * @param root   The compound to select values from
+     * @param action The action which gets every selected value
+     */
+    public void forEach( NBTTagCompound root, Consumer<Object> action ) {
+        this.evaluate( root, 0, action );
+    }
+
+    /**
+     * Selects all values of the path in the given compound. Values are selected lazily while the stream is consumed,
+     * short-circuiting operations like {@link Stream#findFirst()} stop walking the compound once they are done. The
+     * compound must not be modified while the stream is consumed.
+     *
+     * @param root The compound to select values from
+     * @return Stream of the selected values
+     */
+    public Stream<Object> stream( NBTTagCompound root ) {
+        return StreamSupport.stream( new Selection( root ), false );
+    }
+
+    /**
+     * Hands every value the path selects in the next root compound of the reader to the action. Only the selected
+     * values are decoded. After evaluation the reader is positioned behind the root compound.
+     *
+     * @param reader The reader positioned at the root compound
+     * @param action The action which gets every selected value
+     * @throws IOException                     Thrown in case of invalid NBT data
+     * @throws AllocationLimitReachedException Thrown in case the data exceeds the limits of the reader
+     */
+    public void forEach( NBTByteArrayReader reader, Consumer<Object> action ) throws IOException, AllocationLimitReachedException {
+        if ( this.steps.length == 0 ) {
+            action.accept( reader.parse() );
+            return;
+        }
+
+        reader.readRootName();
+        try {
+            this.evaluate( reader, NBTDefinitions.TAG_COMPOUND, 0, null, action );
+        } finally {
+            reader.endPacked();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return this.expression;
+    }
+
+    Step[] getSteps() {
+        return this.steps;
+    }
+
+    private void evaluate( Object node, int index, Consumer<Object> action ) {
+        if ( index == this.steps.length ) {
+            action.accept( node );
+            return;
+        }
+
+        Step step = this.steps[index];
+        switch ( step.type ) {
+            case CHILD:
+                if ( node instanceof NBTTagCompound ) {
+                    Object child = ( (NBTTagCompound) node ).getOwned( step.name );
+                    if ( child != null ) {
+                        this.evaluate( child, index + 1, action );
+                    }
+                }
+
+                break;
+            case ANY_CHILD:
+                if ( node instanceof NBTTagCompound ) {
+                    for ( Map.Entry<String, Object> entry : ( (NBTTagCompound) node ).entrySet() ) {
+                        this.evaluate( entry.getValue(), index + 1, action );
+                    }
+                }
+
+                break;
+            case INDEX:
+            case ALL:
+                int length = length( node );
+                if ( step.type == ALL ) {
+                    for ( int i = 0; i < length; i++ ) {
+                        this.evaluate( element( node, i ), index + 1, action );
+                    }
+                } else {
+                    int element = step.index < 0 ? length + step.index : step.index;
+                    if ( element >= 0 && element < length ) {
+                        this.evaluate( element( node, element ), index + 1, action );
+                    }
+                }
+
+                break;
+            default:
+                if ( node instanceof NBTTagCompound ) {
+                    if ( step.matches( ( (NBTTagCompound) node ).get( step.name ) ) ) {
+                        this.evaluate( node, index + 1, action );
+                    }
+                } else if ( node instanceof List ) {
+                    List<?> list = (List<?>) node;
+                    for ( int i = 0; i < list.size(); i++ ) {
+                        Object element = list.get( i );
+                        if ( element instanceof NBTTagCompound && step.matches( ( (NBTTagCompound) element ).get( step.name ) ) ) {
+                            this.evaluate( element, index + 1, action );
+                        }
+                    }
+                }
+
+                break;
+        }
+    }
+
+    private static int length( Object node ) {
+        if ( node instanceof List ) {
+            return ( (List<?>) node ).size();
+        } else if ( node instanceof byte[] ) {
+            return ( (byte[]) node ).length;
+        } else if ( node instanceof int[] ) {
+            return ( (int[]) node ).length;
+        }
+
+        return 0;
+    }
+
+    private static Object element( Object node, int index ) {
+        if ( node instanceof List ) {
+            return ( (List<?>) node ).get( index );
+        } else if ( node instanceof byte[] ) {
+            return ( (byte[]) node )[index];
+        }
+
+        return ( (int[]) node )[index];
+    }
+
+    private void evaluate( NBTByteArrayReader reader, byte tagID, int index, String name, Consumer<Object> action ) throws IOException, AllocationLimitReachedException {
+        if ( index == this.steps.length ) {
+            action.accept( reader.readValue( tagID, name ) );
+            return;
+        }
+
+        Step step = this.steps[index];
+        switch ( step.type ) {
+            case CHILD:
+            case ANY_CHILD:
+                if ( tagID != NBTDefinitions.TAG_COMPOUND ) {
+                    reader.skipValue( tagID );
+                    return;
+                }
+
+                // Only compounds which are selected themselves need the name of their entry
+                boolean last = index + 1 == this.steps.length;
+                reader.enterNested();
+                for ( byte entryType = reader.readByte(); entryType != NBTDefinitions.TAG_END; entryType = reader.readByte() ) {
+                    if ( step.type == ANY_CHILD ) {
+                        String entryName = null;
+                        if ( last && entryType == NBTDefinitions.TAG_COMPOUND ) {
+                            entryName = reader.readTagName();
+                        } else {
+                            reader.skipTagName();
+                        }
+
+                        this.evaluate( reader, entryType, index + 1, entryName, action );
+                    } else if ( reader.matchName( step.nameBytes, step.name ) ) {
+                        this.evaluate( reader, entryType, index + 1, step.name, action );
+                    } else {
+                        reader.skipValue( entryType );
+                    }
+                }
+
+                reader.leaveNested();
+                break;
+            case INDEX:
+            case ALL:
+                this.evaluateElements( reader, tagID, step, index, action );
+                break;
+            default:
+                if ( tagID == NBTDefinitions.TAG_COMPOUND ) {
+                    int start = reader.getPosition();
+                    int names = reader.getNameCount();
+                    boolean matches = matches( reader, step );
+                    reader.rewind( start, names );
+                    if ( matches ) {
+                        this.evaluate( reader, tagID, index + 1, name, action );
+                    } else {
+                        reader.skipValue( tagID );
+                    }
+                } else if ( tagID == NBTDefinitions.TAG_LIST ) {
+                    byte listType = reader.readByte();
+                    int length = reader.readListLength( listType );
+                    reader.enterNested();
+                    for ( int i = 0; i < length; i++ ) {
+                        int start = listType == NBTDefinitions.TAG_COMPOUND ? reader.getPosition() : -1;
+                        int names = reader.getNameCount();
+                        if ( start != -1 && matches( reader, step ) ) {
+                            reader.rewind( start, names );
+                            this.evaluate( reader, listType, index + 1, null, action );
+                        } else {
+                            if ( start != -1 ) {
+                                reader.rewind( start, names );
+                            }
+
+                            reader.skipValue( listType );
+                        }
+                    }
+
+                    reader.leaveNested();
+                } else {
+                    reader.skipValue( tagID );
+                }
+
+                break;
+        }
+    }
+
+    private void evaluateElements( NBTByteArrayReader reader, byte tagID, Step step, int index, Consumer<Object> action ) throws IOException, AllocationLimitReachedException {
+        boolean last = index + 1 == this.steps.length;
+        if ( tagID == NBTDefinitions.TAG_LIST ) {
+            byte listType = reader.readByte();
+            int length = reader.readListLength( listType );
+            int selected = step.index < 0 ? length + step.index : step.index;
+            reader.enterNested();
+            for ( int i = 0; i < length; i++ ) {
+                if ( step.type == ALL || i == selected ) {
+                    this.evaluate( reader, listType, index + 1, null, action );
+                } else {
+                    reader.skipValue( listType );
+                }
+            }
+
+            reader.leaveNested();
+        } else if ( tagID == NBTDefinitions.TAG_BYTE_ARRAY && last ) {
+            int length = reader.readArrayLength( 1 );
+            int selected = step.index < 0 ? length + step.index : step.index;
+            for ( int i = 0; i < length; i++ ) {
+                byte value = reader.readByte();
+                if ( step.type == ALL || i == selected ) {
+                    action.accept( value );
+                }
+            }
+        } else if ( tagID == NBTDefinitions.TAG_INT_ARRAY && last ) {
+            int length = reader.readArrayLength( reader.isUseVarint() ? 1 : 4 );
+            int selected = step.index < 0 ? length + step.index : step.index;
+            for ( int i = 0; i < length; i++ ) {
+                int value = reader.readInt();
+                if ( step.type == ALL || i == selected ) {
+                    action.accept( value );
+                }
+            }
+        } else {
+            // Elements of arrays have no entries further steps could select
+            reader.skipValue( tagID );
+        }
+    }
+
+    /**
+     * Checks the predicate of a filter against the compound the reader is positioned at. The reader is left
+     * somewhere inside the compound.
+     */
+    static boolean matches( NBTByteArrayReader reader, Step step ) throws IOException, AllocationLimitReachedException {
+        reader.enterNested();
+        try {
+            for ( byte entryType = reader.readByte(); entryType != NBTDefinitions.TAG_END; entryType = reader.readByte() ) {
+                if ( !reader.matchName( step.nameBytes, step.name ) ) {
+                    reader.skipValue( entryType );
+                    continue;
+                }
+
+                boolean equal;
+                switch ( entryType ) {
+                    case NBTDefinitions.TAG_STRING:
+                        equal = step.literalBytes != null && reader.matchString( step.literalBytes );
+                        break;
+                    case NBTDefinitions.TAG_BYTE:
+                        equal = step.literalBytes == null && step.equalsIntegral( reader.readByte() );
+                        break;
+                    case NBTDefinitions.TAG_SHORT:
+                        equal = step.literalBytes == null && step.equalsIntegral( reader.readShort() );
+                        break;
+                    case NBTDefinitions.TAG_INT:
+                        equal = step.literalBytes == null && step.equalsIntegral( reader.readInt() );
+                        break;
+                    case NBTDefinitions.TAG_LONG:
+                        equal = step.literalBytes == null && step.equalsIntegral( reader.readLong() );
+                        break;
+                    case NBTDefinitions.TAG_FLOAT:
+                        equal = step.literalBytes == null && step.equalsFloating( reader.readFloat() );
+                        break;
+                    case NBTDefinitions.TAG_DOUBLE:
+                        equal = step.literalBytes == null && step.equalsFloating( reader.readDouble() );
+                        break;
+                    default:
+                        equal = false;
+                        break;
+                }
+
+                return equal != step.negated;
+            }
+
+            return false;
+        } finally {
+            reader.leaveNested();
+        }
+    }
+
+    /**
+     * Lazy evaluation of a path against a compound. Every step that is being walked keeps a cursor over the nodes
+     * it selects, evaluation stops as soon as a value has been found.
+     */
+    private final class Selection extends Spliterators.AbstractSpliterator<Object> {
+
+        private final ArrayDeque<Cursor> cursors = new ArrayDeque<>();
+        private Object root;
+
+        private Selection( NBTTagCompound root ) {
+            super( Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL );
+            this.root = root;
+        }
+
+        @Override
+        public boolean tryAdvance( Consumer<? super Object> action ) {
+            Object node = this.root;
+            int index = 0;
+            this.root = null;
+
+            while ( true ) {
+                if ( node == null ) {
+                    Cursor cursor = this.cursors.peek();
+                    if ( cursor == null ) {
+                        return false;
+                    }
+
+                    node = cursor.next();
+                    if ( node == null ) {
+                        this.cursors.pop();
+                        continue;
+                    }
+
+                    index = cursor.index + 1;
+                }
+
+                if ( index == NBTPath.this.steps.length ) {
+                    action.accept( node );
+                    return true;
+                }
+
+                this.cursors.push( new Cursor( node, NBTPath.this.steps[index], index ) );
+                node = null;
+            }
+        }
+
+    }
+
+    private static final class Cursor {
+
+        private final Object node;
+        private final Step step;
+        private final int index;
+        private int position;
+        private Iterator<Map.Entry<String, Object>> entries;
+
+        private Cursor( Object node, Step step, int index ) {
+            this.node = node;
+            this.step = step;
+            this.index = index;
+        }
+
+        /**
+         * Gets the next node the step selects
+         *
+         * @return The node or null if there are no more
+         */
+        private Object next() {
+            switch ( this.step.type ) {
+                case CHILD:
+                    if ( this.position++ == 0 && this.node instanceof NBTTagCompound ) {
+                        return ( (NBTTagCompound) this.node ).getOwned( this.step.name );
+                    }
+
+                    return null;
+                case ANY_CHILD:
+                    if ( !( this.node instanceof NBTTagCompound ) ) {
+                        return null;
+                    }
+
+                    if ( this.entries == null ) {
+                        this.entries = ( (NBTTagCompound) this.node ).entrySet().iterator();
+                    }
+
+                    return this.entries.hasNext() ? this.entries.next().getValue() : null;
+                case INDEX:
+                    if ( this.position++ != 0 ) {
+                        return null;
+                    }
+
+                    int length = length( this.node );
+                    int selected = this.step.index < 0 ? length + this.step.index : this.step.index;
+                    return selected >= 0 && selected < length ? element( this.node, selected ) : null;
+                case ALL:
+                    return this.position < length( this.node ) ? element( this.node, this.position++ ) : null;
+                default:
+                    if ( this.node instanceof NBTTagCompound ) {
+                        boolean matches = this.position++ == 0 && this.step.matches( ( (NBTTagCompound) this.node ).get( this.step.name ) );
+                        return matches ? this.node : null;
+                    }
+
+                    if ( this.node instanceof List ) {
+                        List<?> list = (List<?>) this.node;
+                        while ( this.position < list.size() ) {
+                            Object value = list.get( this.position++ );
+                            if ( value instanceof NBTTagCompound && this.step.matches( ( (NBTTagCompound) value ).get( this.step.name ) ) ) {
+                                return value;
+                            }
+                        }
+                    }
+
+                    return null;
+            }
+        }
+
+    }
+
+    static final class Step {
+
+        final int type;
+
+        // Name of the entry for CHILD, key of the predicate for FILTER
+        String name;
+        byte[] nameBytes;
+        int index;
+
+        private boolean negated;
+        private String literal;
+        private byte[] literalBytes;
+        private boolean integral;
+        private long longLiteral;
+        private double doubleLiteral;
+
+        private Step( int type ) {
+            this.type = type;
+        }
+
+        private boolean equalsIntegral( long value ) {
+            return this.integral ? value == this.longLiteral : value == this.doubleLiteral;
+        }
+
+        private boolean equalsFloating( double value ) {
+            return value == this.doubleLiteral;
+        }
+
+        private boolean matches( Object value ) {
+            if ( value == null ) {
+                return false;
+            }
+
+            boolean equal;
+            if ( value instanceof String ) {
+                equal = value.equals( this.literal );
+            } else if ( value instanceof Float || value instanceof Double ) {
+                equal = this.literal == null && this.equalsFloating( ( (Number) value ).doubleValue() );
+            } else if ( value instanceof Number ) {
+                equal = this.literal == null && this.equalsIntegral( ( (Number) value ).longValue() );
+            } else {
+                equal = false;
+            }
+
+            return equal != this.negated;
+        }
+
+    }
+
+    private static final class Parser {
+
+        private final String text;
+        private final List<Step> steps = new ArrayList<>();
+        private int position;
+
+        private Parser( String text ) {
+            this.text = text;
+        }
+
+        private Step[] parse() {
+            if ( !this.text.isEmpty() ) {
+                this.parseSegment();
+                while ( this.position < this.text.length() ) {
+                    this.expect( '.' );
+                    this.parseSegment();
+                }
+            }
+
+            return this.steps.toArray( new Step[0] );
+        }
+
+        private void parseSegment() {
+            if ( this.peek() == '*' ) {
+                this.position++;
+                this.steps.add( new Step( ANY_CHILD ) );
+            } else {
+                Step step = new Step( CHILD );
+                step.name = this.parseName();
+                step.nameBytes = StringUtil.getUTF8Bytes( step.name );
+                this.steps.add( step );
+            }
+
+            while ( this.peek() == '[' ) {
+                this.position++;
+                this.skipSpaces();
+                this.steps.add( this.parseSelector() );
+                this.skipSpaces();
+                this.expect( ']' );
+            }
+        }
+
+        private Step parseSelector() {
+            char c = this.peek();
+            if ( c == '*' ) {
+                this.position++;
+                return new Step( ALL );
+            }
+
+            if ( c == '-' || ( c >= '0' && c <= '9' ) ) {
+                Step step = new Step( INDEX );
+                int start = this.position++;
+                while ( this.peek() >= '0' && this.peek() <= '9' ) {
+                    this.position++;
+                }
+
+                try {
+                    step.index = Integer.parseInt( this.text.substring( start, this.position ) );
+                } catch ( NumberFormatException e ) {
+                    throw this.error( "Invalid index" );
+                }
+
+                return step;
+            }
+
+            Step step = new Step( FILTER );
+            step.name = this.parseName();
+            step.nameBytes = StringUtil.getUTF8Bytes( step.name );
+            this.skipSpaces();
+            if ( this.text.startsWith( "==", this.position ) ) {
+                step.negated = false;
+            } else if ( this.text.startsWith( "!=", this.position ) ) {
+                step.negated = true;
+            } else {
+                throw this.error( "Expected == or !=" );
+            }
+
+            this.position += 2;
+            this.skipSpaces();
+            this.parseLiteral( step );
+            return step;
+        }
+
+        private void parseLiteral( Step step ) {
+            if ( this.peek() == '"' ) {
+                step.literal = this.parseQuoted();
+                step.literalBytes = StringUtil.getUTF8Bytes( step.literal );
+                return;
+            }
+
+            int start = this.position;
+            while ( this.position < this.text.length() && this.text.charAt( this.position ) != ']' && !Character.isWhitespace( this.text.charAt( this.position ) ) ) {
+                this.position++;
+            }
+
+            String token = this.text.substring( start, this.position );
+            if ( token.equals( "true" ) || token.equals( "false" ) ) {
+                step.integral = true;
+                step.longLiteral = token.equals( "true" ) ? 1 : 0;
+                step.doubleLiteral = step.longLiteral;
+                return;
+            }
+
+            // Suffixes of stringified NBT are accepted, numbers match entries of any numeric type anyway
+            char suffix = token.isEmpty() ? ' ' : Character.toLowerCase( token.charAt( token.length() - 1 ) );
+            if ( suffix == 'b' || suffix == 's' || suffix == 'l' || suffix == 'f' || suffix == 'd' ) {
+                token = token.substring( 0, token.length() - 1 );
+            }
+
+            try {
+                if ( suffix == 'f' || suffix == 'd' || token.indexOf( '.' ) != -1 || token.indexOf( 'e' ) != -1 || token.indexOf( 'E' ) != -1 ) {
+                    step.doubleLiteral = Double.parseDouble( token );
+                } else {
+                    step.integral = true;
+                    step.longLiteral = Long.parseLong( token );
+                    step.doubleLiteral = step.longLiteral;
+                }
+            } catch ( NumberFormatException e ) {
+                this.position = start;
+                throw this.error( "Expected string or number" );
+            }
+        }
+
+        private String parseName() {
+            if ( this.peek() == '"' ) {
+                return this.parseQuoted();
+            }
+
+            int start = this.position;
+            while ( this.position < this.text.length() ) {
+                char c = this.text.charAt( this.position );
+                if ( c == '.' || c == '[' || c == ']' || c == '=' || c == '!' || c == '"' || Character.isWhitespace( c ) ) {
+                    break;
+                }
+
+                this.position++;
+            }
+
+            if ( start == this.position ) {
+                throw this.error( "Expected name" );
+            }
+
+            return this.text.substring( start, this.position );
+        }
+
+        private String parseQuoted() {
+            StringBuilder builder = new StringBuilder();
+            this.position++;
+            while ( this.position < this.text.length() ) {
+                char c = this.text.charAt( this.position++ );
+                if ( c == '"' ) {
+                    return builder.toString();
+                }
+
+                if ( c == '\\' && this.position < this.text.length() ) {
+                    c = this.text.charAt( this.position++ );
+                }
+
+                builder.append( c );
+            }
+
+            throw this.error( "Unterminated string" );
+        }
+
+        private char peek() {
+            return this.position < this.text.length() ? this.text.charAt( this.position ) : 0;
+        }
+
+        private void skipSpaces() {
+            while ( this.position < this.text.length() && Character.isWhitespace( this.text.charAt( this.position ) ) ) {
+                this.position++;
+            }
+        }
+
+        private void expect( char c ) {
+            if ( this.peek() != c ) {
+                throw this.error( "Expected '" + c + "'" );
+            }
+
+            this.position++;
+        }
+
+        private IllegalArgumentException error( String message ) {
+            return new IllegalArgumentException( "Invalid NBT path '" + this.text + "' at " + this.position + ": " + message );
+        }
+
+    }
+
+}
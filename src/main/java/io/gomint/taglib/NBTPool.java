@@ -0,0 +1,126 @@
+package io.gomint.taglib;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteOrder;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Bounded pool of idle {@link NBTReader}s and {@link NBTWriter}s. Every reader and writer holds a 16 KB buffer, a
+ * pool lets code which parses or writes a lot of small payloads reuse those buffers instead of allocating new
+ * ones for every payload.
+ * <p>
+ * Borrowed readers and writers behave exactly like newly constructed ones, settings of the previous user are
+ * dropped. Buffers which had to grow for oversized values are not pooled, a released reader or writer falls back
+ * to its initial buffer. When the pool is full released readers and writers are left to the garbage collector,
+ * so the memory a pool holds on to is bounded by its size. Readers and writers must not be used anymore after
+ * they have been released.
+ *
+ * @author geNAZt
+ * @version 1.0
+ */
+public class NBTPool {
+
+    private static final NBTPool DEFAULT = new NBTPool( Runtime.getRuntime().availableProcessors() * 2 );
+
+    /**
+     * Gets the pool which is used by {@link NBTTagCompound#readFrom(InputStream, boolean, ByteOrder)} and
+     * {@link NBTTagCompound#writeTo(OutputStream, boolean, ByteOrder)}
+     *
+     * @return The shared pool
+     */
+    public static NBTPool getDefault() {
+        return DEFAULT;
+    }
+
+    private final ArrayBlockingQueue<NBTReader> readers;
+    private final ArrayBlockingQueue<NBTWriter> writers;
+
+    /**
+     * Constructs a new pool
+     *
+     * @param maxIdle The maximum amount of idle readers and, separately, writers which are kept
+     */
+    public NBTPool( int maxIdle ) {
+        if ( maxIdle < 1 ) {
+            throw new IllegalArgumentException( "Pool needs to keep at least one reader and writer" );
+        }
+
+        this.readers = new ArrayBlockingQueue<>( maxIdle );
+        this.writers = new ArrayBlockingQueue<>( maxIdle );
+    }
+
+    /**
+     * Takes an idle reader out of the pool or constructs a new one if there is none
+     *
+     * @param in        The stream to read from
+     * @param byteOrder The byteorder of the encoded data
+     * @return The reader, ready to parse
+     */
+    public NBTReader borrowReader( InputStream in, ByteOrder byteOrder ) {
+        NBTReader reader = this.readers.poll();
+        if ( reader == null ) {
+            return new NBTReader( in, byteOrder );
+        }
+
+        reader.reset( in, byteOrder );
+        return reader;
+    }
+
+    /**
+     * Hands a reader back to the pool
+     *
+     * @param reader The reader which is not used anymore
+     */
+    public void release( NBTReader reader ) {
+        // Don't keep the stream and the settings of the last user alive while the reader is idle
+        reader.reset( (InputStream) null, ByteOrder.BIG_ENDIAN );
+        this.readers.offer( reader );
+    }
+
+    /**
+     * Takes an idle writer out of the pool or constructs a new one if there is none
+     *
+     * @param out       The stream to write to
+     * @param byteOrder The byteorder to encode data with
+     * @return The writer, ready to write
+     */
+    public NBTWriter borrowWriter( OutputStream out, ByteOrder byteOrder ) {
+        NBTWriter writer = this.writers.poll();
+        if ( writer == null ) {
+            return new NBTWriter( out, byteOrder );
+        }
+
+        writer.reset( out, byteOrder );
+        return writer;
+    }
+
+    /**
+     * Hands a writer back to the pool
+     *
+     * @param writer The writer which is not used anymore
+     */
+    public void release( NBTWriter writer ) {
+        writer.reset( null, ByteOrder.BIG_ENDIAN );
+        this.writers.offer( writer );
+    }
+
+    /**
+     * Get the amount of idle readers in this pool
+     *
+     * @return amount of idle readers
+     */
+    public int getIdleReaders() {
+        return this.readers.size();
+    }
+
+    /**
+     * Get the amount of idle writers in this pool
+     *
+     * @return amount of idle writers
+     */
+    public int getIdleWriters() {
+        return this.writers.size();
+    }
+
+}
@@ -0,0 +1,907 @@
+package io.gomint.taglib;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parser which gets pushed the input in chunks of any size instead of pulling it from a stream. This fits non
+ * blocking network code: every chunk which arrives gets {@link #feed(ByteBuffer) fed} right away, the parser never
+ * waits for more input and never needs a whole frame to be buffered up front.
+ * <p>
+ * All of the parse state lives in explicit fields and a stack of open compounds and lists, so a value may be split
+ * at any byte between two chunks. Only the value which is currently incomplete keeps its bytes, strings and arrays
+ * grow while their content arrives. Multiple roots may follow each other in the input, feeding stops behind every
+ * root which has been completed.
+ * <pre>
+ * NBTPushParser parser = new NBTPushParser( ByteOrder.LITTLE_ENDIAN );
+ * while ( parser.feed( chunk ) == NBTPushParser.Status.ROOT ) {
+ *     handle( parser.getRoot() );
+ * }
+ * </pre>
+ * When a {@link NBTStreamListener} is set the parser doesn't build any compounds. It reports every value with its
+ * path instead, like {@link NBTStream} does. After an exception the parser has to be {@link #reset() reset} before it
+ * can be used again.
+ *
+ * @author geNAZt
+ * @version 1.0
+ */
+public class NBTPushParser {
+
+    /**
+     * Outcome of feeding a chunk into the parser
+     */
+    public enum Status {
+        /**
+         * The chunk has been consumed completely, more input is needed to complete the current root
+         */
+        NEED_MORE,
+        /**
+         * A root has been completed. Input behind the root is left in the chunk.
+         */
+        ROOT
+    }
+
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    private static final int ROOT_TYPE = 0;
+    private static final int ROOT_NAME = 1;
+    private static final int ENTRY_TYPE = 2;
+    private static final int ENTRY_NAME = 3;
+    private static final int VALUE = 4;
+    private static final int PACKED_VERSION = 5;
+    private static final int PACKED_TABLE = 6;
+
+    private final ByteOrder byteOrder;
+    private final AllocationBudget budget = new AllocationBudget();
+
+    // Primitives which are split between two chunks are collected here
+    private final byte[] scratch = new byte[8];
+    private final ByteBuffer scratchView;
+    private int scratchLength;
+
+    // Varints which are split between two chunks
+    private long varValue;
+    private int varShift;
+
+    private boolean useVarint;
+    private int allocateLimit = -1;
+
+    // Names of the packed root which is currently read, null while reading standard NBT
+    private NBTNameTable nameTable;
+    private NBTNameTable.Document packedNames;
+    private boolean packedUseVarint;
+    private byte packedVersion;
+
+    // Reference of the name which is currently read, -1 while not known yet
+    private int nameReference = -1;
+    private NBTStreamListener listener;
+
+    private int state = ROOT_TYPE;
+    private byte valueType;
+    private String entryName;
+    private String rootName;
+    private NBTTagCompound root;
+
+    // Header of the list which is currently read, -1 while not known yet
+    private int listType = -1;
+
+    // Length of the string or array which is currently read, -1 while not known yet
+    private int length = -1;
+    private int filled;
+    private byte[] stringBytes = new byte[256];
+    private byte[] byteArray;
+    private int[] intArray;
+
+    private Frame[] frames = new Frame[16];
+    private int depth;
+
+    private NBTMetrics metrics;
+    private int[] tagCounts;
+    private int stringsDecoded;
+    private long nanos;
+    private long bytes;
+
+    /**
+     * Constructs a parser which is idle until the first chunk arrives
+     *
+     * @param byteOrder The byteorder of the encoded data
+     */
+    public NBTPushParser( ByteOrder byteOrder ) {
+        this.byteOrder = byteOrder;
+        this.scratchView = ByteBuffer.wrap( this.scratch ).order( byteOrder );
+        this.setMetrics( NBTMetrics.getGlobal() );
+    }
+
+    public void setUseVarint( boolean useVarint ) {
+        this.useVarint = useVarint;
+    }
+
+    public boolean isUseVarint() {
+        return this.useVarint;
+    }
+
+    /**
+     * Sets the table packed data is read with, see {@link NBTStreamReader#setNameTable(NBTNameTable)}
+     *
+     * @param nameTable The table of common names or null if there is none
+     */
+    public void setNameTable( NBTNameTable nameTable ) {
+        this.nameTable = nameTable;
+    }
+
+    public ByteOrder getByteOrder() {
+        return this.byteOrder;
+    }
+
+    /**
+     * Sets the listener which gets every value reported instead of building compounds. This has to be set before the
+     * first chunk of a root is fed.
+     *
+     * @param listener The listener to report to or null to build compounds
+     */
+    public void setListener( NBTStreamListener listener ) {
+        this.listener = listener;
+    }
+
+    /**
+     * Sets the amount of heap the decoded values of one root may take up, see
+     * {@link NBTStreamReader#setAllocateLimit(int)}. Nothing is charged while a listener is set.
+     *
+     * @param allocateLimit The limit in bytes or -1 for no limit
+     */
+    public void setAllocateLimit( int allocateLimit ) {
+        this.allocateLimit = allocateLimit;
+        this.budget.setLimit( allocateLimit );
+    }
+
+    /**
+     * Sets how deep compounds and lists may be nested. The default is {@value AllocationBudget#DEFAULT_MAX_DEPTH}.
+     *
+     * @param maxDepth The maximum depth or -1 for no limit
+     */
+    public void setMaxDepth( int maxDepth ) {
+        this.budget.setMaxDepth( maxDepth );
+    }
+
+    /**
+     * Sets how many elements a single list may declare
+     *
+     * @param maxListLength The maximum amount of elements or -1 for no limit
+     */
+    public void setMaxListLength( int maxListLength ) {
+        this.budget.setMaxListLength( maxListLength );
+    }
+
+    /**
+     * Sets how many elements a single byte or int array may declare
+     *
+     * @param maxArrayLength The maximum amount of elements or -1 for no limit
+     */
+    public void setMaxArrayLength( int maxArrayLength ) {
+        this.budget.setMaxArrayLength( maxArrayLength );
+    }
+
+    /**
+     * Sets how many bytes a single string may declare
+     *
+     * @param maxStringLength The maximum length of the UTF-8 encoded string or -1 for no limit
+     */
+    public void setMaxStringLength( int maxStringLength ) {
+        this.budget.setMaxStringLength( maxStringLength );
+    }
+
+    /**
+     * Sets the metrics this parser reports to. Every completed root is reported as one parse, the time only counts
+     * what has been spent inside of {@link #feed(ByteBuffer)}.
+     *
+     * @param metrics The metrics to report to or null to disable reporting
+     */
+    public void setMetrics( NBTMetrics metrics ) {
+        this.metrics = metrics;
+        this.budget.setMetrics( metrics );
+        this.tagCounts = metrics != null ? NBTMetrics.newTagCounts() : null;
+    }
+
+    /**
+     * Gets the root which has been completed by the last call to {@link #feed(ByteBuffer)}
+     *
+     * @return The completed root or null when a listener is set or no root has been completed yet
+     */
+    public NBTTagCompound getRoot() {
+        return this.root;
+    }
+
+    /**
+     * Gets the name of the root which is currently read or has been completed last
+     *
+     * @return The name of the root or null if it hasn't been read yet
+     */
+    public String getRootName() {
+        return this.rootName;
+    }
+
+    /**
+     * Checks if the parser is in between two roots. When the input ends while the parser isn't idle it has been
+     * truncated.
+     *
+     * @return True when no part of a root has been fed, false otherwise
+     */
+    public boolean isIdle() {
+        return this.state == ROOT_TYPE && this.scratchLength == 0 && this.packedNames == null;
+    }
+
+    /**
+     * Drops the root which is currently read so the parser can start over with a new root. The listener, the
+     * limits and the metrics are kept.
+     */
+    public void reset() {
+        this.state = ROOT_TYPE;
+        this.endPacked();
+        this.nameReference = -1;
+        this.scratchLength = 0;
+        this.varValue = 0;
+        this.varShift = 0;
+        this.listType = -1;
+        this.length = -1;
+        this.filled = 0;
+        this.byteArray = null;
+        this.intArray = null;
+        this.entryName = null;
+        this.rootName = null;
+        this.root = null;
+        this.budget.reset();
+        for ( int i = 0; i < this.depth; i++ ) {
+            this.frames[i].container = null;
+        }
+
+        this.depth = 0;
+        this.resetCounters();
+    }
+
+    /**
+     * Feeds the next chunk of input. Bytes are consumed from the position of the buffer up to its limit or up to the
+     * end of the next root, whatever comes first.
+     *
+     * @param in The chunk to consume
+     * @return {@link Status#ROOT} when a root has been completed, {@link Status#NEED_MORE} otherwise
+     * @throws IOException                     Thrown in case the input is no valid NBT data or the listener failed
+     * @throws AllocationLimitReachedException Thrown in case one of the limits has been exceeded
+     */
+    public Status feed( ByteBuffer in ) throws IOException, AllocationLimitReachedException {
+        if ( this.state == ROOT_TYPE && this.root != null ) {
+            // The previous root has been handed out
+            this.root = null;
+            this.rootName = null;
+        }
+
+        int begin = in.position();
+        long start = this.metrics != null ? System.nanoTime() : 0;
+        boolean success = false;
+        try {
+            boolean completed = this.run( in );
+            success = true;
+
+            if ( this.metrics != null ) {
+                this.nanos += System.nanoTime() - start;
+            }
+
+            this.bytes += in.position() - begin;
+            if ( completed ) {
+                this.report( true );
+                return Status.ROOT;
+            }
+
+            return Status.NEED_MORE;
+        } finally {
+            if ( !success ) {
+                if ( this.metrics != null ) {
+                    this.nanos += System.nanoTime() - start;
+                }
+
+                this.bytes += in.position() - begin;
+                this.report( false );
+            }
+        }
+    }
+
+    private boolean run( ByteBuffer in ) throws IOException, AllocationLimitReachedException {
+        while ( true ) {
+            switch ( this.state ) {
+                case ROOT_TYPE:
+                    if ( !in.hasRemaining() ) {
+                        return false;
+                    }
+
+                    byte rootType = in.get();
+                    if ( rootType == NBTDefinitions.PACKED_MAGIC && this.packedNames == null ) {
+                        this.state = PACKED_VERSION;
+                        break;
+                    }
+
+                    if ( rootType != NBTDefinitions.TAG_COMPOUND ) {
+                        throw new IOException( "Invalid NBT Data: No root tag found" );
+                    }
+
+                    // Every root gets the whole limit
+                    this.budget.reset();
+                    this.budget.setLimit( this.allocateLimit );
+                    this.countTag( NBTDefinitions.TAG_COMPOUND );
+                    this.state = ROOT_NAME;
+                    break;
+                case PACKED_VERSION:
+                    if ( !in.hasRemaining() ) {
+                        return false;
+                    }
+
+                    this.packedVersion = in.get();
+                    this.state = PACKED_TABLE;
+                    break;
+                case PACKED_TABLE:
+                    if ( !this.readVarNumber( in, VarInt.MAX_INT_BYTES ) ) {
+                        return false;
+                    }
+
+                    // Packed data reads all numbers and lengths as varints, the root follows the header
+                    int tableId = VarInt.decodeZigZag32( this.varValue );
+                    this.varValue = 0;
+                    this.packedNames = NBTNameTable.open( this.packedVersion, tableId, this.nameTable );
+                    this.packedUseVarint = this.useVarint;
+                    this.useVarint = true;
+                    this.state = ROOT_TYPE;
+                    break;
+                case ROOT_NAME:
+                    String name = this.readTagName( in );
+                    if ( name == null ) {
+                        return false;
+                    }
+
+                    this.rootName = name;
+                    this.pushCompound( name, name );
+                    break;
+                case ENTRY_TYPE:
+                    if ( !in.hasRemaining() ) {
+                        return false;
+                    }
+
+                    byte tagID = in.get();
+                    if ( tagID == NBTDefinitions.TAG_END ) {
+                        Frame frame = this.pop();
+                        if ( this.depth == 0 ) {
+                            this.root = (NBTTagCompound) frame.container;
+                            frame.container = null;
+                            this.endPacked();
+                            this.state = ROOT_TYPE;
+                            return true;
+                        }
+
+                        this.complete( frame.container, frame.name );
+                        break;
+                    }
+
+                    if ( tagID < NBTDefinitions.TAG_BYTE || tagID > NBTDefinitions.TAG_INT_ARRAY ) {
+                        throw new IOException( "Invalid NBT Data: Unknown tag <" + tagID + ">" );
+                    }
+
+                    this.charge( Allocation.COMPOUND_ENTRY + Allocation.value( tagID ) );
+                    this.countTag( tagID );
+                    this.valueType = tagID;
+                    this.state = ENTRY_NAME;
+                    break;
+                case ENTRY_NAME:
+                    String entry = this.readTagName( in );
+                    if ( entry == null ) {
+                        return false;
+                    }
+
+                    this.entryName = entry;
+                    this.state = VALUE;
+                    break;
+                case VALUE:
+                    if ( !this.readValue( in ) ) {
+                        return false;
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException( "Unknown parser state " + this.state );
+            }
+        }
+    }
+
+    private boolean readValue( ByteBuffer in ) throws IOException, AllocationLimitReachedException {
+        switch ( this.valueType ) {
+            case NBTDefinitions.TAG_BYTE:
+                if ( !this.fill( in, 1 ) ) {
+                    return false;
+                }
+
+                this.complete( this.scratch[0], this.entryName );
+                return true;
+            case NBTDefinitions.TAG_SHORT:
+                if ( !this.fill( in, 2 ) ) {
+                    return false;
+                }
+
+                this.complete( this.scratchView.getShort( 0 ), this.entryName );
+                return true;
+            case NBTDefinitions.TAG_INT:
+                if ( !this.readInt( in ) ) {
+                    return false;
+                }
+
+                int intValue = (int) this.varValue;
+                this.varValue = 0;
+                this.complete( intValue, this.entryName );
+                return true;
+            case NBTDefinitions.TAG_LONG:
+                if ( this.useVarint ) {
+                    if ( !this.readVarNumber( in, VarInt.MAX_LONG_BYTES ) ) {
+                        return false;
+                    }
+
+                    long raw = this.varValue;
+                    this.varValue = 0;
+                    this.complete( VarInt.decodeZigZag64( raw ), this.entryName );
+                    return true;
+                }
+
+                if ( !this.fill( in, 8 ) ) {
+                    return false;
+                }
+
+                this.complete( this.scratchView.getLong( 0 ), this.entryName );
+                return true;
+            case NBTDefinitions.TAG_FLOAT:
+                if ( !this.fill( in, 4 ) ) {
+                    return false;
+                }
+
+                this.complete( this.scratchView.getFloat( 0 ), this.entryName );
+                return true;
+            case NBTDefinitions.TAG_DOUBLE:
+                if ( !this.fill( in, 8 ) ) {
+                    return false;
+                }
+
+                this.complete( this.scratchView.getDouble( 0 ), this.entryName );
+                return true;
+            case NBTDefinitions.TAG_STRING:
+                String value = this.readString( in );
+                if ( value == null ) {
+                    return false;
+                }
+
+                this.complete( value, this.entryName );
+                return true;
+            case NBTDefinitions.TAG_BYTE_ARRAY:
+                return this.readByteArray( in );
+            case NBTDefinitions.TAG_INT_ARRAY:
+                return this.readIntArray( in );
+            case NBTDefinitions.TAG_LIST:
+                return this.readListHeader( in );
+            case NBTDefinitions.TAG_COMPOUND:
+                // Compounds have no header, their entries follow right away. Elements of lists have no name.
+                this.pushCompound( this.frames[this.depth - 1].list ? null : this.entryName, null );
+                return true;
+            default:
+                throw new IOException( "Invalid NBT Data: Unknown tag <" + this.valueType + ">" );
+        }
+    }
+
+    private boolean readListHeader( ByteBuffer in ) throws IOException, AllocationLimitReachedException {
+        if ( this.listType == -1 ) {
+            if ( !in.hasRemaining() ) {
+                return false;
+            }
+
+            this.listType = in.get() & 0xFF;
+        }
+
+        if ( !this.readInt( in ) ) {
+            return false;
+        }
+
+        byte type = (byte) this.listType;
+        int listLength = (int) this.varValue;
+        this.varValue = 0;
+        this.listType = -1;
+
+        int capacity = this.budget.checkList( type, listLength, -1, this.useVarint );
+        if ( type == NBTDefinitions.TAG_END ) {
+            listLength = 0;
+        }
+
+        this.budget.enter();
+        this.charge( Allocation.list( type, listLength ) );
+        this.countTags( type, listLength );
+
+        Frame frame = this.push( this.entryName );
+        frame.list = true;
+        frame.listType = type;
+        frame.length = listLength;
+        frame.container = this.listener == null ? new ArrayList<>( capacity ) : null;
+
+        if ( listLength == 0 ) {
+            this.pop();
+            this.complete( frame.container, frame.name );
+        } else {
+            this.valueType = type;
+            this.state = VALUE;
+        }
+
+        return true;
+    }
+
+    private boolean readByteArray( ByteBuffer in ) throws IOException, AllocationLimitReachedException {
+        if ( this.length == -1 ) {
+            if ( !this.readInt( in ) ) {
+                return false;
+            }
+
+            int size = (int) this.varValue;
+            this.varValue = 0;
+            this.budget.checkArray( size, 1, -1 );
+            this.charge( Allocation.byteArray( size ) );
+
+            // The array only grows while its content arrives so a bogus length can't allocate up front
+            this.length = size;
+            this.filled = 0;
+            this.byteArray = new byte[Math.min( size, CHUNK_SIZE )];
+        }
+
+        int amount = Math.min( this.length - this.filled, in.remaining() );
+        this.byteArray = this.grow( this.byteArray, amount );
+        in.get( this.byteArray, this.filled, amount );
+        this.filled += amount;
+        if ( this.filled < this.length ) {
+            return false;
+        }
+
+        byte[] value = this.byteArray;
+        this.byteArray = null;
+        this.length = -1;
+        this.complete( value, this.entryName );
+        return true;
+    }
+
+    private boolean readIntArray( ByteBuffer in ) throws IOException, AllocationLimitReachedException {
+        if ( this.length == -1 ) {
+            if ( !this.readInt( in ) ) {
+                return false;
+            }
+
+            int size = (int) this.varValue;
+            this.varValue = 0;
+            this.budget.checkArray( size, this.useVarint ? 1 : 4, -1 );
+            this.charge( Allocation.intArray( size ) );
+
+            this.length = size;
+            this.filled = 0;
+            this.intArray = new int[Math.min( size, CHUNK_SIZE / 4 )];
+        }
+
+        while ( this.filled < this.length ) {
+            if ( !this.readInt( in ) ) {
+                return false;
+            }
+
+            if ( this.filled == this.intArray.length ) {
+                this.intArray = Arrays.copyOf( this.intArray, (int) Math.min( this.length, this.filled * 2L ) );
+            }
+
+            this.intArray[this.filled++] = (int) this.varValue;
+            this.varValue = 0;
+        }
+
+        int[] value = this.intArray;
+        this.intArray = null;
+        this.length = -1;
+        this.complete( value, this.entryName );
+        return true;
+    }
+
+    /**
+     * Continues reading the name of a compound entry, which is a reference in packed data. Returns null while the
+     * name is incomplete.
+     */
+    private String readTagName( ByteBuffer in ) throws IOException, AllocationLimitReachedException {
+        if ( this.packedNames == null ) {
+            return this.readString( in );
+        }
+
+        if ( this.nameReference == -1 ) {
+            if ( !this.readVarNumber( in, VarInt.MAX_INT_BYTES ) ) {
+                return null;
+            }
+
+            int reference = (int) this.varValue;
+            this.varValue = 0;
+            if ( reference != 0 ) {
+                return this.packedNames.resolve( reference );
+            }
+
+            this.nameReference = 0;
+        }
+
+        String name = this.readString( in );
+        if ( name != null ) {
+            this.packedNames.add( name );
+            this.nameReference = -1;
+        }
+
+        return name;
+    }
+
+    private void endPacked() {
+        if ( this.packedNames != null ) {
+            this.packedNames = null;
+            this.useVarint = this.packedUseVarint;
+        }
+    }
+
+    private String readString( ByteBuffer in ) throws IOException, AllocationLimitReachedException {
+        if ( this.length == -1 ) {
+            int stringLength;
+            if ( this.useVarint ) {
+                if ( !this.readVarNumber( in, VarInt.MAX_INT_BYTES ) ) {
+                    return null;
+                }
+
+                stringLength = (int) this.varValue;
+                this.varValue = 0;
+            } else {
+                if ( !this.fill( in, 2 ) ) {
+                    return null;
+                }
+
+                stringLength = this.scratchView.getShort( 0 ) & 0xFFFF;
+            }
+
+            this.budget.checkString( stringLength, -1 );
+            this.charge( Allocation.string( stringLength ) );
+            this.length = stringLength;
+            this.filled = 0;
+        }
+
+        int amount = Math.min( this.length - this.filled, in.remaining() );
+        this.stringBytes = this.grow( this.stringBytes, amount );
+        in.get( this.stringBytes, this.filled, amount );
+        this.filled += amount;
+        if ( this.filled < this.length ) {
+            return null;
+        }
+
+        int stringLength = this.length;
+        String value = StringUtil.fromUTF8Bytes( this.stringBytes, 0, stringLength );
+        this.charge( Allocation.stringExtra( value, stringLength ) );
+        this.stringsDecoded++;
+        this.length = -1;
+
+        // Don't hold on to the buffer of a huge string for the rest of the connection
+        if ( this.stringBytes.length > CHUNK_SIZE ) {
+            this.stringBytes = new byte[256];
+        }
+
+        return value;
+    }
+
+    /**
+     * Grows the array of the current string or byte array so the next amount of bytes fit behind what has been
+     * filled already. Arrays grow at least twice their size but never beyond the declared length.
+     */
+    private byte[] grow( byte[] array, int amount ) {
+        int needed = this.filled + amount;
+        if ( needed <= array.length ) {
+            return array;
+        }
+
+        return Arrays.copyOf( array, (int) Math.min( this.length, Math.max( needed, array.length * 2L ) ) );
+    }
+
+    /**
+     * Reads an int into {@link #varValue}, either zigzag encoded as varint or with a fixed size
+     */
+    private boolean readInt( ByteBuffer in ) throws IOException {
+        if ( this.useVarint ) {
+            if ( !this.readVarNumber( in, VarInt.MAX_INT_BYTES ) ) {
+                return false;
+            }
+
+            long raw = this.varValue;
+            this.varValue = VarInt.decodeZigZag32( raw );
+            return true;
+        }
+
+        if ( !this.fill( in, 4 ) ) {
+            return false;
+        }
+
+        this.varValue = this.scratchView.getInt( 0 );
+        return true;
+    }
+
+    /**
+     * Continues reading an unsigned varint into {@link #varValue}. The value is complete once this returns true. This
+     * is the resumable form of {@link NBTStreamReader#readVarNumber(int)}, a varint may be split between two chunks.
+     */
+    private boolean readVarNumber( ByteBuffer in, int maxBytes ) throws IOException {
+        while ( in.hasRemaining() ) {
+            byte b = in.get();
+            this.varValue |= (long) ( b & 0x7F ) << this.varShift;
+            this.varShift += 7;
+            if ( ( b & 0x80 ) == 0 ) {
+                this.varShift = 0;
+                return true;
+            }
+
+            if ( this.varShift >= maxBytes * 7 ) {
+                throw new IOException( "Invalid NBT Data: VarInt too big" );
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Collects the given amount of bytes in the scratch array, they can be read through the scratch view once this
+     * returns true
+     */
+    private boolean fill( ByteBuffer in, int size ) {
+        int amount = Math.min( size - this.scratchLength, in.remaining() );
+        in.get( this.scratch, this.scratchLength, amount );
+        this.scratchLength += amount;
+        if ( this.scratchLength < size ) {
+            return false;
+        }
+
+        this.scratchLength = 0;
+        return true;
+    }
+
+    private void pushCompound( String name, String path ) throws AllocationLimitReachedException {
+        this.budget.enter();
+        this.charge( Allocation.COMPOUND );
+
+        Frame frame = this.push( name );
+        if ( path != null ) {
+            frame.path = path;
+        }
+
+        frame.list = false;
+        if ( this.listener == null ) {
+            frame.container = new NBTTagCompound( name );
+        }
+
+        this.state = ENTRY_TYPE;
+    }
+
+    private Frame push( String name ) {
+        if ( this.depth == this.frames.length ) {
+            this.frames = Arrays.copyOf( this.frames, this.depth * 2 );
+        }
+
+        Frame frame = this.frames[this.depth];
+        if ( frame == null ) {
+            frame = this.frames[this.depth] = new Frame();
+        }
+
+        if ( this.listener != null && this.depth > 0 ) {
+            Frame parent = this.frames[this.depth - 1];
+            frame.path = parent.list ? parent.path + "." + parent.index : parent.path + "." + name;
+        }
+
+        frame.name = name;
+        frame.index = 0;
+        frame.container = null;
+        this.depth++;
+        return frame;
+    }
+
+    private Frame pop() {
+        this.budget.leave();
+        return this.frames[--this.depth];
+    }
+
+    /**
+     * Hands a completed value to the innermost open compound or list. Lists which get completed by this are closed
+     * and handed to their parent in turn.
+     */
+    @SuppressWarnings( "unchecked" )
+    private void complete( Object value, String name ) throws IOException {
+        while ( true ) {
+            Frame frame = this.frames[this.depth - 1];
+            if ( !frame.list ) {
+                if ( frame.container != null ) {
+                    ( (NBTTagCompound) frame.container ).set( name, value );
+                } else if ( value != null ) {
+                    this.emit( frame.path + "." + name, value );
+                }
+
+                this.state = ENTRY_TYPE;
+                return;
+            }
+
+            if ( frame.container != null ) {
+                ( (List<Object>) frame.container ).add( value );
+            } else if ( value != null ) {
+                this.emit( frame.path + "." + frame.index, value );
+            }
+
+            if ( ++frame.index < frame.length ) {
+                this.valueType = frame.listType;
+                this.state = VALUE;
+                return;
+            }
+
+            this.pop();
+            value = frame.container;
+            name = frame.name;
+            frame.container = null;
+        }
+    }
+
+    private void emit( String path, Object value ) throws IOException {
+        try {
+            this.listener.onNBTValue( path, value );
+        } catch ( RuntimeException | IOException e ) {
+            throw e;
+        } catch ( Exception e ) {
+            throw new IOException( "Listener failed for " + path, e );
+        }
+    }
+
+    private void charge( long bytes ) throws AllocationLimitReachedException {
+        // Values which are only reported to the listener are discarded right away
+        if ( this.listener == null ) {
+            this.budget.charge( bytes );
+        }
+    }
+
+    private void countTag( byte tagID ) {
+        if ( this.tagCounts != null && tagID > 0 && tagID < this.tagCounts.length ) {
+            this.tagCounts[tagID]++;
+        }
+    }
+
+    private void countTags( byte tagID, int amount ) {
+        if ( this.tagCounts != null && tagID > 0 && tagID < this.tagCounts.length && amount > 0 ) {
+            this.tagCounts[tagID] += amount;
+        }
+    }
+
+    private void report( boolean success ) {
+        if ( this.metrics != null ) {
+            this.metrics.recordParse( this.nanos, success, this.bytes, this.tagCounts, this.stringsDecoded, 0 );
+        }
+
+        this.resetCounters();
+    }
+
+    private void resetCounters() {
+        this.nanos = 0;
+        this.bytes = 0;
+        this.stringsDecoded = 0;
+        if ( this.tagCounts != null ) {
+            Arrays.fill( this.tagCounts, 0 );
+        }
+    }
+
+    /**
+     * A compound or list which has been opened but not completed yet
+     */
+    private static final class Frame {
+
+        private boolean list;
+        private Object container;
+        private String name;
+        private String path;
+        private byte listType;
+        private int length;
+        private int index;
+
+    }
+
+}
@@ -27,9 +27,11 @@ package io.gomint.taglib;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * @author BlackyPaw
@@ -37,64 +39,142 @@ import java.util.List;
  */
 public class NBTReader extends NBTStreamReader {
 
+	private NBTInterner interner;
+	private boolean concurrent;
+
 	public NBTReader( InputStream in, ByteOrder byteOrder ) {
 		super( in, byteOrder );
 	}
 
+	/**
+	 * Constructs a reader which decodes directly from the remaining bytes of the given buffer. The
+	 * buffer may be a heap, direct or memory-mapped buffer; its position is not modified.
+	 *
+	 * @param buffer    The buffer to read from
+	 * @param byteOrder The byteorder of the encoded data
+	 */
+	public NBTReader( ByteBuffer buffer, ByteOrder byteOrder ) {
+		super( buffer, byteOrder );
+	}
+
+	/**
+	 * Sets the interner which canonicalizes all compounds below the root while parsing. Equal compounds then share
+	 * one frozen instance, only the returned root compound itself stays modifiable.
+	 *
+	 * @param interner The interner to use or null to disable interning
+	 */
+	public void setInterner( NBTInterner interner ) {
+		this.interner = interner;
+	}
+
+	/**
+	 * Sets whether or not the reader should create {@link ConcurrentNBTTagCompound}s and {@link CopyOnWriteArrayList}s
+	 * so the parsed compound can be shared with multiple threads right away.
+	 *
+	 * @param concurrent Whether or not to create concurrent compounds and lists
+	 */
+	public void setConcurrent( boolean concurrent ) {
+		this.concurrent = concurrent;
+	}
+
+	@Override
+	protected void resetState() {
+		super.resetState();
+		this.interner = null;
+		this.concurrent = false;
+	}
+
 	public NBTTagCompound parse() throws IOException, AllocationLimitReachedException {
-		this.expectInput( 3, "Invalid NBT Data: Not enough data to read new tag", false );
-		if ( this.buffer.get() != NBTDefinitions.TAG_COMPOUND ) {
-			throw new IOException( "Invalid NBT Data: No root tag found" );
+		NBTParseEvent event = NBTEvents.beginParse();
+		long start = this.startOperation( event );
+		boolean success = false;
+		try {
+			this.expectInput( 3, "Invalid NBT Data: Not enough data to read new tag", false );
+			String name = this.readRootHeader();
+			NBTTagCompound root = this.readTagCompoundValue();
+			root.setName( name );
+			success = true;
+			return root;
+		} finally {
+			this.endPacked();
+			this.finishOperation( start, success, event );
 		}
+	}
 
-		String name = this.readStringValue();
-		NBTTagCompound root = this.readTagCompoundValue();
-		root.setName( name );
-		return root;
+	Object readValue( byte tagID ) throws IOException, AllocationLimitReachedException {
+		switch ( tagID ) {
+			case NBTDefinitions.TAG_BYTE:
+				return this.readByteValue();
+			case NBTDefinitions.TAG_SHORT:
+				return this.readShortValue();
+			case NBTDefinitions.TAG_INT:
+				return this.readIntValue();
+			case NBTDefinitions.TAG_LONG:
+				return this.readLongValue();
+			case NBTDefinitions.TAG_FLOAT:
+				return this.readFloatValue();
+			case NBTDefinitions.TAG_DOUBLE:
+				return this.readDoubleValue();
+			case NBTDefinitions.TAG_BYTE_ARRAY:
+				return this.readByteArrayValue();
+			case NBTDefinitions.TAG_STRING:
+				return this.readStringValue();
+			case NBTDefinitions.TAG_LIST:
+				return this.readTagListValue();
+			case NBTDefinitions.TAG_COMPOUND:
+				return this.readTagCompoundValue();
+			case NBTDefinitions.TAG_INT_ARRAY:
+				return this.readIntArrayValue();
+			default:
+				throw new IOException( "Invalid NBT Data: Unknown tag <" + tagID + ">" );
+		}
 	}
 
 	private NBTTagCompound readTagCompoundValue() throws IOException, AllocationLimitReachedException {
+		this.enterNested();
 		this.alterAllocationLimit( Allocation.COMPOUND );
-		NBTTagCompound compound = new NBTTagCompound();
+		NBTTagCompound compound = this.concurrent ? new ConcurrentNBTTagCompound( null ) : new NBTTagCompound();
 		this.expectInput( 1, "Invalid NBT Data: Expected Tag ID in compound tag", false );
 		byte tagID = this.readByteValue();
 		while ( tagID != NBTDefinitions.TAG_END ) {
+			this.alterAllocationLimit( Allocation.COMPOUND_ENTRY + Allocation.value( tagID ) );
+			this.countTag( tagID );
 			switch ( tagID ) {
 				case NBTDefinitions.TAG_BYTE:
-					compound.addValue( this.readStringValue(), this.readByteValue() );
+					compound.addValue( this.readTagName(), this.readByteValue() );
 					break;
 				case NBTDefinitions.TAG_SHORT:
-					compound.addValue( this.readStringValue(), this.readShortValue() );
+					compound.addValue( this.readTagName(), this.readShortValue() );
 					break;
 				case NBTDefinitions.TAG_INT:
-					compound.addValue( this.readStringValue(), this.readIntValue() );
+					compound.addValue( this.readTagName(), this.readIntValue() );
 					break;
 				case NBTDefinitions.TAG_LONG:
-					compound.addValue( this.readStringValue(), this.readLongValue() );
+					compound.addValue( this.readTagName(), this.readLongValue() );
 					break;
 				case NBTDefinitions.TAG_FLOAT:
-					compound.addValue( this.readStringValue(), this.readFloatValue() );
+					compound.addValue( this.readTagName(), this.readFloatValue() );
 					break;
 				case NBTDefinitions.TAG_DOUBLE:
-					compound.addValue( this.readStringValue(), this.readDoubleValue() );
+					compound.addValue( this.readTagName(), this.readDoubleValue() );
 					break;
 				case NBTDefinitions.TAG_BYTE_ARRAY:
-					compound.addValue( this.readStringValue(), this.readByteArrayValue() );
+					compound.addValue( this.readTagName(), this.readByteArrayValue() );
 					break;
 				case NBTDefinitions.TAG_STRING:
-					compound.addValue( this.readStringValue(), this.readStringValue() );
+					compound.addValue( this.readTagName(), this.readStringValue() );
 					break;
 				case NBTDefinitions.TAG_LIST:
-					compound.addValue( this.readStringValue(), this.readTagListValue() );
+					compound.addValue( this.readTagName(), this.readTagListValue() );
 					break;
 				case NBTDefinitions.TAG_COMPOUND:
-					String name = this.readStringValue();
+					String name = this.readTagName();
 					NBTTagCompound child = this.readTagCompoundValue();
 					child.setName( name );
-					compound.addChild( child );
+					compound.addChild( this.intern( child ) );
 					break;
 				case NBTDefinitions.TAG_INT_ARRAY:
-					compound.addValue( this.readStringValue(), this.readIntArrayValue() );
+					compound.addValue( this.readTagName(), this.readIntArrayValue() );
 					break;
 				default:
 					throw new IOException( "Invalid NBT Data: Unknown tag <" + tagID + ">" );
@@ -103,56 +183,62 @@ public class NBTReader extends NBTStreamReader {
 			this.expectInput( 1, "Invalid NBT Data: Expected tag ID in tag compound", false );
 			tagID = this.readByteValue();
 		}
+
+		this.leaveNested();
 		return compound;
 	}
 	
+	private NBTTagCompound intern( NBTTagCompound compound ) {
+		return this.interner != null ? this.interner.internOwned( compound ) : compound;
+	}
+
 	private List<Object> readTagListValue() throws IOException, AllocationLimitReachedException {
-		this.expectInput( 5, "Invalid NBT Data: Expected TAGList header", false );
+		this.expectInput( this.isUseVarint() ? 2 : 5, "Invalid NBT Data: Expected TAGList header", false );
 		byte listType = this.readByteValue();
 		int listLength = this.readIntValue();
 
-		this.alterAllocationLimit( Allocation.ARRAY_LIST ); 			// 16 byte java object overhead + 4 byte integer for size
-		this.alterAllocationLimit( Allocation.REFERENCE * listLength ); // reference overhead ( for the objects stored inside )
+		// Everything is checked before the list gets allocated, elements of streamed input only take memory once they arrive
+		int capacity = this.checkListLength( listType, listLength );
+		if ( listType == NBTDefinitions.TAG_END ) {
+			listLength = 0;
+		}
+
+		this.enterNested();
+		this.alterAllocationLimit( Allocation.list( listType, listLength ) );
 
-		List<Object> backingList = new ArrayList<>( listLength );
+		List<Object> backingList = new ArrayList<>( capacity );
+		this.countTags( listType, listLength );
 
 		switch( listType ) {
 			case NBTDefinitions.TAG_END:
 				// Not to be unseen! Seemingly Mojang cares about something after all: disk space
-				listLength = 0;
 				break;
 			case NBTDefinitions.TAG_BYTE:
-				this.expectInput( listLength, "Invalid NBT Data: Expected bytes for list" );
 				for ( int i = 0; i < listLength; ++i ) {
 					backingList.add( this.readByteValue() );
 				}
 				break;
 			case NBTDefinitions.TAG_SHORT:
-				this.expectInput( 2 * listLength, "Invalid NBT Data: Expected shorts for list" );
 				for ( int i = 0; i < listLength; ++i ) {
 					backingList.add( this.readShortValue() );
 				}
 				break;
 			case NBTDefinitions.TAG_INT:
-				this.expectInput( 4 * listLength, "Invalid NBT Data: Expected ints for list" );
 				for ( int i = 0; i < listLength; ++i ) {
 					backingList.add( this.readIntValue() );
 				}
 				break;
 			case NBTDefinitions.TAG_LONG:
-				this.expectInput( 8 * listLength, "Invalid NBT Data: Expected longs for list" );
 				for ( int i = 0; i < listLength; ++i ) {
 					backingList.add( this.readLongValue() );
 				}
 				break;
 			case NBTDefinitions.TAG_FLOAT:
-				this.expectInput( 4 * listLength, "Invalid NBT Data: Expected floats for list" );
 				for ( int i = 0; i < listLength; ++i ) {
 					backingList.add( this.readFloatValue() );
 				}
 				break;
 			case NBTDefinitions.TAG_DOUBLE:
-				this.expectInput( 8 * listLength, "Invalid NBT Data: Expected doubles for list" );
 				for ( int i = 0; i < listLength; ++i ) {
 					backingList.add( this.readDoubleValue() );
 				}
@@ -174,7 +260,7 @@ public class NBTReader extends NBTStreamReader {
 				break;
 			case NBTDefinitions.TAG_COMPOUND:
 				for ( int i = 0; i < listLength; ++i ) {
-					backingList.add( this.readTagCompoundValue() );
+					backingList.add( this.intern( this.readTagCompoundValue() ) );
 				}
 				break;
 			case NBTDefinitions.TAG_INT_ARRAY:
@@ -186,7 +272,8 @@ public class NBTReader extends NBTStreamReader {
 				throw new IOException( "Invalid NBT Data: Unknown tag <" + listType + ">" );
 		}
 
-		return backingList;
+		this.leaveNested();
+		return this.concurrent ? new CopyOnWriteArrayList<>( backingList ) : backingList;
 	}
 
 }
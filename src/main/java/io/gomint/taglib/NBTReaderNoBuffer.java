@@ -25,6 +25,7 @@
 
 package io.gomint.taglib;
 
+import java.io.DataInput;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteOrder;
@@ -32,6 +33,10 @@ import java.util.ArrayList;
 import java.util.List;
 
 /**
+ * Reader which consumes exactly the bytes of one NBT compound from a stream or {@link DataInput}, see
+ * {@link NBTStreamReaderNoBuffer}. Framed protocols should declare the length of the frame so the headers can be
+ * checked against it.
+ *
  * @author BlackyPaw
  * @version 1.0
  */
@@ -41,61 +46,90 @@ public class NBTReaderNoBuffer extends NBTStreamReaderNoBuffer {
 		super( in, byteOrder );
 	}
 
+	/**
+	 * Constructs a reader which reads at most the given amount of bytes from the stream
+	 *
+	 * @param in        The stream to read from
+	 * @param length    The length of the data, -1 if unknown
+	 * @param byteOrder The byteorder of the encoded data
+	 */
+	public NBTReaderNoBuffer( InputStream in, long length, ByteOrder byteOrder ) {
+		super( in, length, byteOrder );
+	}
+
+	public NBTReaderNoBuffer( DataInput in, ByteOrder byteOrder ) {
+		super( in, byteOrder );
+	}
+
+	/**
+	 * Constructs a reader which reads at most the given amount of bytes from the input
+	 *
+	 * @param in        The input to read from
+	 * @param length    The length of the data, -1 if unknown
+	 * @param byteOrder The byteorder of the encoded data
+	 */
+	public NBTReaderNoBuffer( DataInput in, long length, ByteOrder byteOrder ) {
+		super( in, length, byteOrder );
+	}
+
 	public NBTTagCompound parse() throws IOException, AllocationLimitReachedException {
+		this.resetNesting();
 		this.expectInput( 3, "Invalid NBT Data: Not enough data to read new tag", false );
-		if ( this.readByteValue() != NBTDefinitions.TAG_COMPOUND ) {
-			throw new IOException( "Invalid NBT Data: No root tag found" );
+		try {
+			String name = this.readRootHeader();
+			NBTTagCompound root = this.readTagCompoundValue();
+			root.setName( name );
+			return root;
+		} finally {
+			this.endPacked();
 		}
-
-		String name = this.readStringValue();
-		NBTTagCompound root = this.readTagCompoundValue();
-		root.setName( name );
-		return root;
 	}
 
 	private NBTTagCompound readTagCompoundValue() throws IOException, AllocationLimitReachedException {
+		this.enterNested();
 		this.alterAllocationLimit( Allocation.COMPOUND );
 		NBTTagCompound compound = new NBTTagCompound();
 
 		this.expectInput( 1, "Invalid NBT Data: Expected Tag ID in compound tag", false );
 		byte tagID = this.readByteValue();
 		while ( tagID != NBTDefinitions.TAG_END ) {
+			this.alterAllocationLimit( Allocation.COMPOUND_ENTRY + Allocation.value( tagID ) );
 			switch ( tagID ) {
 				case NBTDefinitions.TAG_BYTE:
-					compound.addValue( this.readStringValue(), this.readByteValue() );
+					compound.addValue( this.readTagName(), this.readByteValue() );
 					break;
 				case NBTDefinitions.TAG_SHORT:
-					compound.addValue( this.readStringValue(), this.readShortValue() );
+					compound.addValue( this.readTagName(), this.readShortValue() );
 					break;
 				case NBTDefinitions.TAG_INT:
-					compound.addValue( this.readStringValue(), this.readIntValue() );
+					compound.addValue( this.readTagName(), this.readIntValue() );
 					break;
 				case NBTDefinitions.TAG_LONG:
-					compound.addValue( this.readStringValue(), this.readLongValue() );
+					compound.addValue( this.readTagName(), this.readLongValue() );
 					break;
 				case NBTDefinitions.TAG_FLOAT:
-					compound.addValue( this.readStringValue(), this.readFloatValue() );
+					compound.addValue( this.readTagName(), this.readFloatValue() );
 					break;
 				case NBTDefinitions.TAG_DOUBLE:
-					compound.addValue( this.readStringValue(), this.readDoubleValue() );
+					compound.addValue( this.readTagName(), this.readDoubleValue() );
 					break;
 				case NBTDefinitions.TAG_BYTE_ARRAY:
-					compound.addValue( this.readStringValue(), this.readByteArrayValue() );
+					compound.addValue( this.readTagName(), this.readByteArrayValue() );
 					break;
 				case NBTDefinitions.TAG_STRING:
-					compound.addValue( this.readStringValue(), this.readStringValue() );
+					compound.addValue( this.readTagName(), this.readStringValue() );
 					break;
 				case NBTDefinitions.TAG_LIST:
-					compound.addValue( this.readStringValue(), this.readTagListValue() );
+					compound.addValue( this.readTagName(), this.readTagListValue() );
 					break;
 				case NBTDefinitions.TAG_COMPOUND:
-					String name = this.readStringValue();
+					String name = this.readTagName();
 					NBTTagCompound child = this.readTagCompoundValue();
 					child.setName( name );
 					compound.addChild( child );
 					break;
 				case NBTDefinitions.TAG_INT_ARRAY:
-					compound.addValue( this.readStringValue(), this.readIntArrayValue() );
+					compound.addValue( this.readTagName(), this.readIntArrayValue() );
 					break;
 				default:
 					throw new IOException( "Invalid NBT Data: Unknown tag <" + tagID + ">" );
@@ -104,56 +138,57 @@ public class NBTReaderNoBuffer extends NBTStreamReaderNoBuffer {
 			this.expectInput( 1, "Invalid NBT Data: Expected tag ID in tag compound", false );
 			tagID = this.readByteValue();
 		}
+
+		this.leaveNested();
 		return compound;
 	}
 	
 	private List<Object> readTagListValue() throws IOException, AllocationLimitReachedException {
-		this.expectInput( 5, "Invalid NBT Data: Expected TAGList header", false );
+		this.expectInput( this.isUseVarint() ? 2 : 5, "Invalid NBT Data: Expected TAGList header", false );
 		byte listType = this.readByteValue();
 		int listLength = this.readIntValue();
 
-		this.alterAllocationLimit( Allocation.ARRAY_LIST ); 			// 16 byte java object overhead + 4 byte integer for size
-		this.alterAllocationLimit( Allocation.REFERENCE * listLength ); // reference overhead ( for the objects stored inside )
+		// Everything is checked before the list gets allocated, elements of streamed input only take memory once they arrive
+		int capacity = this.checkListLength( listType, listLength );
+		if ( listType == NBTDefinitions.TAG_END ) {
+			listLength = 0;
+		}
+
+		this.enterNested();
+		this.alterAllocationLimit( Allocation.list( listType, listLength ) );
 
-		List<Object> backingList = new ArrayList<>( listLength );
+		List<Object> backingList = new ArrayList<>( capacity );
 
 		switch( listType ) {
 			case NBTDefinitions.TAG_END:
 				// Not to be unseen! Seemingly Mojang cares about something after all: disk space
-				listLength = 0;
 				break;
 			case NBTDefinitions.TAG_BYTE:
-				this.expectInput( listLength, "Invalid NBT Data: Expected bytes for list" );
 				for ( int i = 0; i < listLength; ++i ) {
 					backingList.add( this.readByteValue() );
 				}
 				break;
 			case NBTDefinitions.TAG_SHORT:
-				this.expectInput( 2 * listLength, "Invalid NBT Data: Expected shorts for list" );
 				for ( int i = 0; i < listLength; ++i ) {
 					backingList.add( this.readShortValue() );
 				}
 				break;
 			case NBTDefinitions.TAG_INT:
-				this.expectInput( 4 * listLength, "Invalid NBT Data: Expected ints for list" );
 				for ( int i = 0; i < listLength; ++i ) {
 					backingList.add( this.readIntValue() );
 				}
 				break;
 			case NBTDefinitions.TAG_LONG:
-				this.expectInput( 8 * listLength, "Invalid NBT Data: Expected longs for list" );
 				for ( int i = 0; i < listLength; ++i ) {
 					backingList.add( this.readLongValue() );
 				}
 				break;
 			case NBTDefinitions.TAG_FLOAT:
-				this.expectInput( 4 * listLength, "Invalid NBT Data: Expected floats for list" );
 				for ( int i = 0; i < listLength; ++i ) {
 					backingList.add( this.readFloatValue() );
 				}
 				break;
 			case NBTDefinitions.TAG_DOUBLE:
-				this.expectInput( 8 * listLength, "Invalid NBT Data: Expected doubles for list" );
 				for ( int i = 0; i < listLength; ++i ) {
 					backingList.add( this.readDoubleValue() );
 				}
@@ -187,6 +222,7 @@ public class NBTReaderNoBuffer extends NBTStreamReaderNoBuffer {
 				throw new IOException( "Invalid NBT Data: Unknown tag <" + listType + ">" );
 		}
 
+		this.leaveNested();
 		return backingList;
 	}
 
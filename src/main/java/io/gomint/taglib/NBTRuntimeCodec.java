@@ -0,0 +1,719 @@
+package io.gomint.taglib;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link NBTObjectCodec} which is built at runtime by inspecting a bean or record once. Every field gets method
+ * handles which are adapted to an erased receiver, so objects are encoded and decoded without reflection and
+ * primitive fields without boxing. It follows the rules of {@link NBTCodec} and additionally converts objects from
+ * and to {@link NBTTagCompound}s. Codecs are built and cached by {@link NBTCodecs}.
+ *
+ * @param <T> The type of the objects
+ * @author geNAZt
+ * @version 1.0
+ */
+class NBTRuntimeCodec<T> implements NBTObjectCodec<T> {
+
+    // Records can't be referenced when compiling for Java 11, their components are looked up reflectively instead
+    private static final Method GET_RECORD_COMPONENTS;
+    private static final Method COMPONENT_NAME;
+    private static final Method COMPONENT_GENERIC_TYPE;
+    private static final Method COMPONENT_ACCESSOR;
+
+    static {
+        Method components = null;
+        Method name = null;
+        Method genericType = null;
+        Method accessor = null;
+        try {
+            Class<?> component = Class.forName( "java.lang.reflect.RecordComponent" );
+            components = Class.class.getMethod( "getRecordComponents" );
+            name = component.getMethod( "getName" );
+            genericType = component.getMethod( "getGenericType" );
+            accessor = component.getMethod( "getAccessor" );
+        } catch ( ClassNotFoundException | NoSuchMethodException e ) {
+            // Runtime without records
+        }
+
+        GET_RECORD_COMPONENTS = components;
+        COMPONENT_NAME = name;
+        COMPONENT_GENERIC_TYPE = genericType;
+        COMPONENT_ACCESSOR = accessor;
+    }
+
+    private final Class<T> type;
+    private final Property[] properties;
+    private final Map<String, Property> byName;
+
+    // Beans: ()Object, records: (Object[])Object taking the components in order
+    private final MethodHandle constructor;
+    private final Object[] defaults;
+
+    NBTRuntimeCodec( Class<T> type ) {
+        if ( type.isPrimitive() || type.isArray() || type.isInterface() || type.isEnum() || Modifier.isAbstract( type.getModifiers() ) ) {
+            throw new IllegalArgumentException( "Type " + type.getName() + " can't be stored as compound" );
+        }
+
+        this.type = type;
+        this.byName = new HashMap<>();
+
+        try {
+            Object[] components = GET_RECORD_COMPONENTS != null ? (Object[]) GET_RECORD_COMPONENTS.invoke( type ) : null;
+            if ( components != null ) {
+                this.properties = new Property[components.length];
+                this.defaults = new Object[components.length];
+                this.constructor = this.inspectRecord( components );
+            } else {
+                this.properties = this.inspectBean();
+                this.defaults = null;
+                this.constructor = lookupIn( type ).findConstructor( type, MethodType.methodType( void.class ) )
+                    .asType( MethodType.methodType( Object.class ) );
+            }
+        } catch ( NoSuchMethodException e ) {
+            throw new IllegalArgumentException( "Type " + type.getName() + " needs a constructor without arguments", e );
+        } catch ( IllegalAccessException e ) {
+            throw new IllegalArgumentException( "Type " + type.getName() + " is not accessible, its package has to be opened to gomint.taglib", e );
+        } catch ( ReflectiveOperationException e ) {
+            throw new IllegalArgumentException( "Could not inspect type " + type.getName(), e );
+        }
+
+        for ( Property property : this.properties ) {
+            if ( this.byName.put( property.name, property ) != null ) {
+                throw new IllegalArgumentException( "Type " + type.getName() + " stores two fields under '" + property.name + "'" );
+            }
+        }
+    }
+
+    private Property[] inspectBean() throws IllegalAccessException {
+        // Fields of superclasses come first, like the generated codecs write them
+        List<Field> fields = new ArrayList<>();
+        for ( Class<?> current = this.type; current != null && current != Object.class; current = current.getSuperclass() ) {
+            List<Field> declared = new ArrayList<>();
+            for ( Field field : current.getDeclaredFields() ) {
+                int modifiers = field.getModifiers();
+                if ( !Modifier.isStatic( modifiers ) && !Modifier.isTransient( modifiers ) && !field.isSynthetic() ) {
+                    declared.add( field );
+                }
+            }
+
+            fields.addAll( 0, declared );
+        }
+
+        Property[] properties = new Property[fields.size()];
+        for ( int i = 0; i < properties.length; i++ ) {
+            Field field = fields.get( i );
+            String where = field.getDeclaringClass().getName() + "." + field.getName();
+            if ( Modifier.isFinal( field.getModifiers() ) ) {
+                throw new IllegalArgumentException( "Field " + where + " is final and can't be read into" );
+            }
+
+            MethodHandles.Lookup lookup = lookupIn( field.getDeclaringClass() );
+            properties[i] = new Property( nameOf( field ), i, field.getType().isPrimitive(),
+                valueOf( field.getType(), field.getGenericType(), where ),
+                lookup.unreflectGetter( field ), lookup.unreflectSetter( field ) );
+        }
+
+        return properties;
+    }
+
+    private MethodHandle inspectRecord( Object[] components ) throws ReflectiveOperationException {
+        MethodHandles.Lookup lookup = lookupIn( this.type );
+        Class<?>[] types = new Class<?>[components.length];
+        for ( int i = 0; i < components.length; i++ ) {
+            String component = (String) COMPONENT_NAME.invoke( components[i] );
+            Method accessor = (Method) COMPONENT_ACCESSOR.invoke( components[i] );
+            Field field = this.type.getDeclaredField( component );
+
+            types[i] = accessor.getReturnType();
+            this.properties[i] = new Property( nameOf( field ), i, types[i].isPrimitive(),
+                valueOf( types[i], (Type) COMPONENT_GENERIC_TYPE.invoke( components[i] ), this.type.getName() + "." + component ),
+                lookup.unreflect( accessor ), null );
+
+            // Components which are missing in the data get the default value of their type
+            this.defaults[i] = types[i].isPrimitive() ? Array.get( Array.newInstance( types[i], 1 ), 0 ) : null;
+        }
+
+        Constructor<T> canonical = this.type.getDeclaredConstructor( types );
+        return lookup.unreflectConstructor( canonical )
+            .asSpreader( Object[].class, components.length )
+            .asType( MethodType.methodType( Object.class, Object[].class ) );
+    }
+
+    @Override
+    public T read( NBTObjectReader reader ) throws IOException, AllocationLimitReachedException {
+        try {
+            Object value = this.defaults == null ? (Object) this.constructor.invokeExact() : this.defaults.clone();
+            for ( byte tagID = reader.readTagType(); tagID != NBTDefinitions.TAG_END; tagID = reader.readTagType() ) {
+                String name = reader.readName();
+                Property property = this.byName.get( name );
+                if ( property == null ) {
+                    reader.skipValue( tagID );
+                    continue;
+                }
+
+                reader.checkType( tagID, property.value.tag(), name );
+                if ( this.defaults == null ) {
+                    property.read( reader, value );
+                } else {
+                    ( (Object[]) value )[property.index] = property.value.read( reader );
+                }
+            }
+
+            if ( this.defaults != null ) {
+                value = (Object) this.constructor.invokeExact( (Object[]) value );
+            }
+
+            return this.type.cast( value );
+        } catch ( IOException | AllocationLimitReachedException | RuntimeException | Error e ) {
+            throw e;
+        } catch ( Throwable t ) {
+            throw new IllegalStateException( "Could not construct " + this.type.getName(), t );
+        }
+    }
+
+    @Override
+    public void write( NBTObjectWriter writer, T value ) throws IOException {
+        try {
+            for ( Property property : this.properties ) {
+                property.write( writer, value );
+            }
+        } catch ( IOException | RuntimeException | Error e ) {
+            throw e;
+        } catch ( Throwable t ) {
+            throw new IllegalStateException( "Could not access " + this.type.getName(), t );
+        }
+    }
+
+    /**
+     * Converts an object into a compound, values are not copied
+     *
+     * @param name  The name of the compound
+     * @param value The object to convert
+     * @return The compound holding the fields of the object
+     */
+    NBTTagCompound toCompound( String name, Object value ) {
+        NBTTagCompound compound = new NBTTagCompound( name );
+        try {
+            for ( Property property : this.properties ) {
+                Object fieldValue = (Object) property.boxedGetter.invokeExact( value );
+                if ( fieldValue != null ) {
+                    compound.set( property.name, property.value.toTag( fieldValue, property.name ) );
+                }
+            }
+        } catch ( RuntimeException | Error e ) {
+            throw e;
+        } catch ( Throwable t ) {
+            throw new IllegalStateException( "Could not access " + this.type.getName(), t );
+        }
+
+        return compound;
+    }
+
+    /**
+     * Converts a compound into a new object. Arrays are copied since the compound may share them with clones.
+     *
+     * @param compound The compound to convert
+     * @return The object holding the values of the compound
+     */
+    T fromCompound( NBTTagCompound compound ) {
+        try {
+            Object value = this.defaults == null ? (Object) this.constructor.invokeExact() : this.defaults.clone();
+            for ( Map.Entry<String, Object> entry : compound.entries() ) {
+                Property property = this.byName.get( entry.getKey() );
+                if ( property == null ) {
+                    continue;
+                }
+
+                Object fieldValue = property.value.fromTag( entry.getValue(), entry.getKey() );
+                if ( this.defaults == null ) {
+                    property.boxedSetter.invokeExact( value, fieldValue );
+                } else {
+                    ( (Object[]) value )[property.index] = fieldValue;
+                }
+            }
+
+            if ( this.defaults != null ) {
+                value = (Object) this.constructor.invokeExact( (Object[]) value );
+            }
+
+            return this.type.cast( value );
+        } catch ( RuntimeException | Error e ) {
+            throw e;
+        } catch ( Throwable t ) {
+            throw new IllegalStateException( "Could not construct " + this.type.getName(), t );
+        }
+    }
+
+    private static MethodHandles.Lookup lookupIn( Class<?> type ) throws IllegalAccessException {
+        // Named modules only read what they require, readability of the target module has to be added first
+        NBTRuntimeCodec.class.getModule().addReads( type.getModule() );
+        return MethodHandles.privateLookupIn( type, MethodHandles.lookup() );
+    }
+
+    private static String nameOf( Field field ) {
+        NBTCodec.Name name = field.getAnnotation( NBTCodec.Name.class );
+        return name != null ? name.value() : field.getName();
+    }
+
+    private static Value valueOf( Class<?> type, Type genericType, String where ) {
+        if ( type == byte.class || type == Byte.class ) {
+            return Simple.BYTE;
+        } else if ( type == boolean.class || type == Boolean.class ) {
+            return Simple.BOOLEAN;
+        } else if ( type == short.class || type == Short.class ) {
+            return Simple.SHORT;
+        } else if ( type == int.class || type == Integer.class ) {
+            return Simple.INT;
+        } else if ( type == long.class || type == Long.class ) {
+            return Simple.LONG;
+        } else if ( type == float.class || type == Float.class ) {
+            return Simple.FLOAT;
+        } else if ( type == double.class || type == Double.class ) {
+            return Simple.DOUBLE;
+        } else if ( type == String.class ) {
+            return Simple.STRING;
+        } else if ( type == byte[].class ) {
+            return Simple.BYTE_ARRAY;
+        } else if ( type == int[].class ) {
+            return Simple.INT_ARRAY;
+        } else if ( type == List.class || type == ArrayList.class || type == Collection.class ) {
+            if ( !( genericType instanceof ParameterizedType ) ) {
+                throw new IllegalArgumentException( "List " + where + " needs a concrete element type" );
+            }
+
+            Type elementType = ( (ParameterizedType) genericType ).getActualTypeArguments()[0];
+            if ( !( elementType instanceof Class ) ) {
+                throw new IllegalArgumentException( "List " + where + " needs a concrete element type" );
+            }
+
+            Value element = valueOf( (Class<?>) elementType, elementType, where );
+            if ( element instanceof ListValue || element == Simple.BYTE_ARRAY || element == Simple.INT_ARRAY ) {
+                throw new IllegalArgumentException( "List " + where + " can't hold lists or arrays" );
+            }
+
+            return new ListValue( element );
+        } else if ( type.isPrimitive() || type.isArray() || type.isInterface() || type.isEnum() || type.getName().startsWith( "java." ) ) {
+            throw new IllegalArgumentException( "Type " + type.getName() + " of " + where + " is not supported" );
+        }
+
+        return new ObjectValue( type );
+    }
+
+    private static Object checkTag( Object tag, Class<?> expected, String name ) {
+        if ( !expected.isInstance( tag ) ) {
+            throw new IllegalArgumentException( "Entry '" + name + "' holds " + ( tag == null ? "null" : tag.getClass().getSimpleName() ) +
+                " but needs " + expected.getSimpleName() );
+        }
+
+        return tag;
+    }
+
+    private static final class Property {
+
+        private final String name;
+        private final int index;
+        private final boolean primitive;
+        private final Value value;
+
+        // Primitive fields: (Object)primitive and (Object,primitive)void, others: (Object)Object and (Object,Object)void
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+        private final MethodHandle boxedGetter;
+        private final MethodHandle boxedSetter;
+
+        private Property( String name, int index, boolean primitive, Value value, MethodHandle getter, MethodHandle setter ) {
+            this.name = name;
+            this.index = index;
+            this.primitive = primitive;
+            this.value = value;
+
+            this.boxedGetter = getter.asType( MethodType.methodType( Object.class, Object.class ) );
+            this.getter = primitive ? getter.asType( getter.type().changeParameterType( 0, Object.class ) ) : this.boxedGetter;
+            if ( setter != null ) {
+                this.boxedSetter = setter.asType( MethodType.methodType( void.class, Object.class, Object.class ) );
+                this.setter = primitive ? setter.asType( setter.type().changeParameterType( 0, Object.class ) ) : this.boxedSetter;
+            } else {
+                this.boxedSetter = null;
+                this.setter = null;
+            }
+        }
+
+        private void read( NBTObjectReader reader, Object target ) throws Throwable {
+            if ( !this.primitive ) {
+                this.setter.invokeExact( target, this.value.read( reader ) );
+                return;
+            }
+
+            switch ( (Simple) this.value ) {
+                case BYTE:
+                    this.setter.invokeExact( target, reader.readByte() );
+                    break;
+                case BOOLEAN:
+                    this.setter.invokeExact( target, reader.readByte() != 0 );
+                    break;
+                case SHORT:
+                    this.setter.invokeExact( target, reader.readShort() );
+                    break;
+                case INT:
+                    this.setter.invokeExact( target, reader.readInt() );
+                    break;
+                case LONG:
+                    this.setter.invokeExact( target, reader.readLong() );
+                    break;
+                case FLOAT:
+                    this.setter.invokeExact( target, reader.readFloat() );
+                    break;
+                default:
+                    this.setter.invokeExact( target, reader.readDouble() );
+                    break;
+            }
+        }
+
+        private void write( NBTObjectWriter writer, Object target ) throws Throwable {
+            if ( !this.primitive ) {
+                Object fieldValue = (Object) this.getter.invokeExact( target );
+                if ( fieldValue != null ) {
+                    writer.writeTag( this.value.tag(), this.name );
+                    this.value.write( writer, fieldValue );
+                }
+
+                return;
+            }
+
+            writer.writeTag( this.value.tag(), this.name );
+            switch ( (Simple) this.value ) {
+                case BYTE:
+                    writer.writeByte( (byte) this.getter.invokeExact( target ) );
+                    break;
+                case BOOLEAN:
+                    writer.writeByte( (byte) ( (boolean) this.getter.invokeExact( target ) ? 1 : 0 ) );
+                    break;
+                case SHORT:
+                    writer.writeShort( (short) this.getter.invokeExact( target ) );
+                    break;
+                case INT:
+                    writer.writeInt( (int) this.getter.invokeExact( target ) );
+                    break;
+                case LONG:
+                    writer.writeLong( (long) this.getter.invokeExact( target ) );
+                    break;
+                case FLOAT:
+                    writer.writeFloat( (float) this.getter.invokeExact( target ) );
+                    break;
+                default:
+                    writer.writeDouble( (double) this.getter.invokeExact( target ) );
+                    break;
+            }
+        }
+
+    }
+
+    private interface Value {
+
+        byte tag();
+
+        Object read( NBTObjectReader reader ) throws IOException, AllocationLimitReachedException;
+
+        void write( NBTObjectWriter writer, Object value ) throws IOException;
+
+        Object toTag( Object value, String name );
+
+        Object fromTag( Object tag, String name );
+
+    }
+
+    private enum Simple implements Value {
+
+        BYTE( NBTDefinitions.TAG_BYTE, Byte.class ) {
+            @Override
+            public Object read( NBTObjectReader reader ) throws IOException, AllocationLimitReachedException {
+                return reader.readByte();
+            }
+
+            @Override
+            public void write( NBTObjectWriter writer, Object value ) throws IOException {
+                writer.writeByte( (Byte) value );
+            }
+        },
+        BOOLEAN( NBTDefinitions.TAG_BYTE, Byte.class ) {
+            @Override
+            public Object read( NBTObjectReader reader ) throws IOException, AllocationLimitReachedException {
+                return reader.readByte() != 0;
+            }
+
+            @Override
+            public void write( NBTObjectWriter writer, Object value ) throws IOException {
+                writer.writeByte( (byte) ( (Boolean) value ? 1 : 0 ) );
+            }
+
+            @Override
+            public Object toTag( Object value, String name ) {
+                return (byte) ( (Boolean) value ? 1 : 0 );
+            }
+
+            @Override
+            public Object fromTag( Object tag, String name ) {
+                return (Byte) checkTag( tag, Byte.class, name ) != 0;
+            }
+        },
+        SHORT( NBTDefinitions.TAG_SHORT, Short.class ) {
+            @Override
+            public Object read( NBTObjectReader reader ) throws IOException, AllocationLimitReachedException {
+                return reader.readShort();
+            }
+
+            @Override
+            public void write( NBTObjectWriter writer, Object value ) throws IOException {
+                writer.writeShort( (Short) value );
+            }
+        },
+        INT( NBTDefinitions.TAG_INT, Integer.class ) {
+            @Override
+            public Object read( NBTObjectReader reader ) throws IOException, AllocationLimitReachedException {
+                return reader.readInt();
+            }
+
+            @Override
+            public void write( NBTObjectWriter writer, Object value ) throws IOException {
+                writer.writeInt( (Integer) value );
+            }
+        },
+        LONG( NBTDefinitions.TAG_LONG, Long.class ) {
+            @Override
+            public Object read( NBTObjectReader reader ) throws IOException, AllocationLimitReachedException {
+                return reader.readLong();
+            }
+
+            @Override
+            public void write( NBTObjectWriter writer, Object value ) throws IOException {
+                writer.writeLong( (Long) value );
+            }
+        },
+        FLOAT( NBTDefinitions.TAG_FLOAT, Float.class ) {
+            @Override
+            public Object read( NBTObjectReader reader ) throws IOException, AllocationLimitReachedException {
+                return reader.readFloat();
+            }
+
+            @Override
+            public void write( NBTObjectWriter writer, Object value ) throws IOException {
+                writer.writeFloat( (Float) value );
+            }
+        },
+        DOUBLE( NBTDefinitions.TAG_DOUBLE, Double.class ) {
+            @Override
+            public Object read( NBTObjectReader reader ) throws IOException, AllocationLimitReachedException {
+                return reader.readDouble();
+            }
+
+            @Override
+            public void write( NBTObjectWriter writer, Object value ) throws IOException {
+                writer.writeDouble( (Double) value );
+            }
+        },
+        STRING( NBTDefinitions.TAG_STRING, String.class ) {
+            @Override
+            public Object read( NBTObjectReader reader ) throws IOException, AllocationLimitReachedException {
+                return reader.readString();
+            }
+
+            @Override
+            public void write( NBTObjectWriter writer, Object value ) throws IOException {
+                writer.writeString( (String) value );
+            }
+        },
+        BYTE_ARRAY( NBTDefinitions.TAG_BYTE_ARRAY, byte[].class ) {
+            @Override
+            public Object read( NBTObjectReader reader ) throws IOException, AllocationLimitReachedException {
+                return reader.readByteArray();
+            }
+
+            @Override
+            public void write( NBTObjectWriter writer, Object value ) throws IOException {
+                writer.writeByteArray( (byte[]) value );
+            }
+
+            @Override
+            public Object fromTag( Object tag, String name ) {
+                return ( (byte[]) checkTag( tag, byte[].class, name ) ).clone();
+            }
+        },
+        INT_ARRAY( NBTDefinitions.TAG_INT_ARRAY, int[].class ) {
+            @Override
+            public Object read( NBTObjectReader reader ) throws IOException, AllocationLimitReachedException {
+                return reader.readIntArray();
+            }
+
+            @Override
+            public void write( NBTObjectWriter writer, Object value ) throws IOException {
+                writer.writeIntArray( (int[]) value );
+            }
+
+            @Override
+            public Object fromTag( Object tag, String name ) {
+                return ( (int[]) checkTag( tag, int[].class, name ) ).clone();
+            }
+        };
+
+        private final byte tag;
+        private final Class<?> tagType;
+
+        Simple( byte tag, Class<?> tagType ) {
+            this.tag = tag;
+            this.tagType = tagType;
+        }
+
+        @Override
+        public byte tag() {
+            return this.tag;
+        }
+
+        @Override
+        public Object toTag( Object value, String name ) {
+            return value;
+        }
+
+        @Override
+        public Object fromTag( Object tag, String name ) {
+            return checkTag( tag, this.tagType, name );
+        }
+
+    }
+
+    private static final class ListValue implements Value {
+
+        private final Value element;
+
+        private ListValue( Value element ) {
+            this.element = element;
+        }
+
+        @Override
+        public byte tag() {
+            return NBTDefinitions.TAG_LIST;
+        }
+
+        @Override
+        public Object read( NBTObjectReader reader ) throws IOException, AllocationLimitReachedException {
+            int length = reader.readListHeader( this.element.tag() );
+            List<Object> list = new ArrayList<>( reader.getListCapacity() );
+            for ( int i = 0; i < length; i++ ) {
+                list.add( this.element.read( reader ) );
+            }
+
+            return list;
+        }
+
+        @Override
+        public void write( NBTObjectWriter writer, Object value ) throws IOException {
+            Collection<?> list = (Collection<?>) value;
+            writer.writeListHeader( this.element.tag(), list.size() );
+            for ( Object element : list ) {
+                if ( element == null ) {
+                    throw new IOException( "List contains null, NBT lists can't hold null elements" );
+                }
+
+                this.element.write( writer, element );
+            }
+        }
+
+        @Override
+        public Object toTag( Object value, String name ) {
+            Collection<?> list = (Collection<?>) value;
+            List<Object> tags = new ArrayList<>( list.size() );
+            for ( Object element : list ) {
+                if ( element == null ) {
+                    throw new IllegalArgumentException( "List '" + name + "' contains null, NBT lists can't hold null elements" );
+                }
+
+                tags.add( this.element.toTag( element, null ) );
+            }
+
+            return tags;
+        }
+
+        @Override
+        public Object fromTag( Object tag, String name ) {
+            List<?> tags = (List<?>) checkTag( tag, List.class, name );
+            List<Object> list = new ArrayList<>( tags.size() );
+            for ( Object element : tags ) {
+                list.add( this.element.fromTag( element, name ) );
+            }
+
+            return list;
+        }
+
+    }
+
+    private static final class ObjectValue implements Value {
+
+        private final Class<?> type;
+
+        // Resolved on first use, types may contain themselves
+        private NBTObjectCodec<Object> codec;
+        private NBTRuntimeCodec<?> runtimeCodec;
+
+        private ObjectValue( Class<?> type ) {
+            this.type = type;
+        }
+
+        @SuppressWarnings( "unchecked" )
+        private NBTObjectCodec<Object> codec() {
+            if ( this.codec == null ) {
+                this.codec = (NBTObjectCodec<Object>) NBTCodecs.get( this.type );
+            }
+
+            return this.codec;
+        }
+
+        private NBTRuntimeCodec<?> runtimeCodec() {
+            if ( this.runtimeCodec == null ) {
+                this.runtimeCodec = NBTCodecs.runtime( this.type );
+            }
+
+            return this.runtimeCodec;
+        }
+
+        @Override
+        public byte tag() {
+            return NBTDefinitions.TAG_COMPOUND;
+        }
+
+        @Override
+        public Object read( NBTObjectReader reader ) throws IOException, AllocationLimitReachedException {
+            return reader.readObject( this.codec() );
+        }
+
+        @Override
+        public void write( NBTObjectWriter writer, Object value ) throws IOException {
+            writer.writeObject( value, this.codec() );
+        }
+
+        @Override
+        public Object toTag( Object value, String name ) {
+            return this.runtimeCodec().toCompound( name, value );
+        }
+
+        @Override
+        public Object fromTag( Object tag, String name ) {
+            return this.runtimeCodec().fromCompound( (NBTTagCompound) checkTag( tag, NBTTagCompound.class, name ) );
+        }
+
+    }
+
+}
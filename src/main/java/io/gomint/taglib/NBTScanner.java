@@ -0,0 +1,304 @@
+package io.gomint.taglib;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Walks encoded NBT data without decoding it. Values are skipped, only tag ids and lengths are looked at, so a scan
+ * does not allocate anything for the data it walks. This makes it cheap to check incoming data before paying for a
+ * full parse, for example to reject invalid data or to hand big payloads to another thread.
+ * <p>
+ * A scan reads root compounds until the input ends and reports the encoded length, the amount of roots, the
+ * deepest nesting, the amount of tags per type and how much heap a {@link NBTReader} would need for the data.
+ * Invalid data does not throw, the result tells what is wrong and where.
+ *
+ * @author geNAZt
+ * @version 1.0
+ */
+public class NBTScanner {
+
+    private final ByteOrder byteOrder;
+    private boolean useVarint;
+    private NBTNameTable nameTable;
+    private int maxDepth = AllocationBudget.DEFAULT_MAX_DEPTH;
+
+    /**
+     * Constructs a new scanner for data in the given byteorder
+     *
+     * @param byteOrder The byteorder of the encoded data
+     */
+    public NBTScanner( ByteOrder byteOrder ) {
+        this.byteOrder = byteOrder;
+    }
+
+    public void setUseVarint( boolean useVarint ) {
+        this.useVarint = useVarint;
+    }
+
+    /**
+     * Sets the table packed data is read with, see {@link NBTStreamReader#setNameTable(NBTNameTable)}
+     *
+     * @param nameTable The table of common names or null if there is none
+     */
+    public void setNameTable( NBTNameTable nameTable ) {
+        this.nameTable = nameTable;
+    }
+
+    /**
+     * Sets how deep compounds and lists may be nested before the data is considered invalid. The default is
+     * {@value AllocationBudget#DEFAULT_MAX_DEPTH}, the same as for readers.
+     *
+     * @param maxDepth The maximum depth or -1 for no limit
+     */
+    public void setMaxDepth( int maxDepth ) {
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Scans the remaining bytes of the given buffer. The position of the buffer is not modified.
+     *
+     * @param buffer The buffer to scan
+     * @return The result of the scan
+     */
+    public Result scan( ByteBuffer buffer ) {
+        return new Walker( buffer, this.byteOrder ).walk();
+    }
+
+    /**
+     * Scans the given stream until it ends. The stream is not closed.
+     *
+     * @param in The stream to scan
+     * @return The result of the scan
+     * @throws IOException Thrown in case reading from the stream failed
+     */
+    public Result scan( InputStream in ) throws IOException {
+        Source source = new Source( in );
+        Result result = new Walker( source, this.byteOrder ).walk();
+        if ( source.failure != null ) {
+            throw source.failure;
+        }
+
+        return result;
+    }
+
+    /**
+     * Remembers failures of the stream, they must not be reported as invalid data
+     */
+    private static final class Source extends FilterInputStream {
+
+        private IOException failure;
+
+        private Source( InputStream in ) {
+            super( in );
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return super.read();
+            } catch ( IOException e ) {
+                this.failure = e;
+                throw e;
+            }
+        }
+
+        @Override
+        public int read( byte[] b, int off, int len ) throws IOException {
+            try {
+                return super.read( b, off, len );
+            } catch ( IOException e ) {
+                this.failure = e;
+                throw e;
+            }
+        }
+
+    }
+
+    private final class Walker extends NBTStreamReader {
+
+        // Counts of the root which is being scanned and of all valid roots before it
+        private final long[] tags = new long[NBTDefinitions.TAG_INT_ARRAY + 1];
+        private final long[] validTags = new long[NBTDefinitions.TAG_INT_ARRAY + 1];
+        private int depth;
+        private int deepest;
+        private long heap;
+        private int validRoots;
+        private int validDeepest;
+        private long validHeap;
+
+        private Walker( ByteBuffer buffer, ByteOrder byteOrder ) {
+            super( buffer, byteOrder );
+            this.configure();
+        }
+
+        private Walker( InputStream in, ByteOrder byteOrder ) {
+            super( in, byteOrder );
+            this.configure();
+        }
+
+        private void configure() {
+            this.setMetrics( null );
+            this.setUseVarint( NBTScanner.this.useVarint );
+            this.setNameTable( NBTScanner.this.nameTable );
+            this.setMaxDepth( NBTScanner.this.maxDepth );
+        }
+
+        private Result walk() {
+            long length = 0;
+            String error = null;
+            try {
+                while ( this.hasInput() ) {
+                    // Names of packed roots may have to be remembered for references, so the root name is decoded
+                    this.tags[NBTDefinitions.TAG_COMPOUND]++;
+                    this.heap += Allocation.string( StringUtil.getUTF8Bytes( this.readRootHeader() ).length );
+                    this.skipValue( NBTDefinitions.TAG_COMPOUND );
+                    this.endPacked();
+
+                    System.arraycopy( this.tags, 0, this.validTags, 0, this.tags.length );
+                    this.validRoots++;
+                    this.validDeepest = this.deepest;
+                    this.validHeap = this.heap;
+                    length = this.consumed();
+                }
+            } catch ( IOException | AllocationLimitReachedException e ) {
+                error = e.getMessage() + " at byte " + this.consumed();
+            }
+
+            if ( error == null && this.validRoots == 0 ) {
+                error = "Invalid NBT Data: No data at all";
+            }
+
+            return new Result( error, length, this.validRoots, this.validDeepest, this.validTags, this.validHeap );
+        }
+
+        @Override
+        protected void countSkipped( byte tagID, int amount, long heap ) {
+            if ( tagID > 0 && tagID < this.tags.length ) {
+                this.tags[tagID] += amount;
+            }
+
+            this.heap += heap;
+        }
+
+        @Override
+        protected void enterNested() throws AllocationLimitReachedException {
+            super.enterNested();
+            this.deepest = Math.max( this.deepest, ++this.depth );
+        }
+
+        @Override
+        protected void leaveNested() {
+            super.leaveNested();
+            this.depth--;
+        }
+
+    }
+
+    /**
+     * Outcome of a scan. Everything except the error describes the roots which have been scanned successfully,
+     * invalid data after them is not included.
+     */
+    public static final class Result {
+
+        private final String error;
+        private final long length;
+        private final int roots;
+        private final int maxDepth;
+        private final long[] tags;
+        private final long estimatedHeap;
+
+        private Result( String error, long length, int roots, int maxDepth, long[] tags, long estimatedHeap ) {
+            this.error = error;
+            this.length = length;
+            this.roots = roots;
+            this.maxDepth = maxDepth;
+            this.tags = tags;
+            this.estimatedHeap = estimatedHeap;
+        }
+
+        /**
+         * Checks whether or not all of the input has been valid NBT data
+         *
+         * @return True when the data is valid
+         */
+        public boolean isValid() {
+            return this.error == null;
+        }
+
+        /**
+         * Gets what is wrong with the data
+         *
+         * @return The description of the error including its position or null when the data is valid
+         */
+        public String getError() {
+            return this.error;
+        }
+
+        /**
+         * Gets the encoded length of all valid roots
+         *
+         * @return The length in bytes
+         */
+        public long getLength() {
+            return this.length;
+        }
+
+        /**
+         * Get the amount of valid root compounds
+         *
+         * @return amount of roots
+         */
+        public int getRoots() {
+            return this.roots;
+        }
+
+        /**
+         * Gets the deepest nesting of compounds and lists, a root without nested values has a depth of 1
+         *
+         * @return The maximum depth
+         */
+        public int getMaxDepth() {
+            return this.maxDepth;
+        }
+
+        /**
+         * Get the amount of tags of the given type. Elements of lists count as tags of the element type.
+         *
+         * @param tagType The id of the tag type
+         * @return amount of tags of this type
+         */
+        public long getTags( int tagType ) {
+            return tagType >= 0 && tagType < this.tags.length ? this.tags[tagType] : 0;
+        }
+
+        /**
+         * Get the amount of tags of all types
+         *
+         * @return amount of tags
+         */
+        public long getTags() {
+            long sum = 0;
+            for ( long count : this.tags ) {
+                sum += count;
+            }
+
+            return sum;
+        }
+
+        /**
+         * Gets how much heap a {@link NBTReader} would need for the data. This is the amount which gets charged from
+         * {@link NBTStreamReader#setAllocateLimit(int) allocation limits}, strings are assumed to only contain
+         * latin-1 characters.
+         *
+         * @return The estimated heap in bytes
+         */
+        public long getEstimatedHeap() {
+            return this.estimatedHeap;
+        }
+
+    }
+
+}
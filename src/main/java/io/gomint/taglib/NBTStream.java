@@ -27,6 +27,14 @@ public class NBTStream extends NBTStreamReader {
         this.state = StreamState.INIT;
     }
 
+    @Override
+    protected void resetState() {
+        super.resetState();
+        this.state = StreamState.INIT;
+        this.nbtStreamListener = null;
+        this.nbtCompoundAcceptor = null;
+    }
+
     public void addCompountAcceptor( Function<String, Boolean> acceptor ) {
         if ( state == StreamState.INIT ) {
             this.nbtCompoundAcceptor = acceptor;
@@ -46,13 +54,22 @@ public class NBTStream extends NBTStreamReader {
             return;
         }
 
-        this.fetchInput( "Invalid NBT Data: No data at all" );
-        if ( this.buffer.remaining() < 3 || this.buffer.get() != NBTDefinitions.TAG_COMPOUND ) {
-            throw new IOException( "Invalid NBT Data: No root tag found" );
-        }
+        NBTParseEvent event = NBTEvents.beginParse();
+        long start = this.startOperation( event );
+        boolean success = false;
+        try {
+            this.fetchInput( "Invalid NBT Data: No data at all" );
+            if ( this.buffer.remaining() < 3 ) {
+                throw new IOException( "Invalid NBT Data: No root tag found" );
+            }
 
-        // Start reading the compound
-        this.readTagCompoundValue( this.readStringValue(), "", false );
+            // Start reading the compound
+            this.readTagCompoundValue( this.readRootHeader(), "", false );
+            success = true;
+        } finally {
+            this.endPacked();
+            this.finishOperation( start, success, event );
+        }
     }
 
     private NBTTagCompound readTagCompoundValue( String path, String tagName, boolean readAsCompound ) throws Exception {
@@ -62,12 +79,22 @@ public class NBTStream extends NBTStreamReader {
             readAsCompound = manual = this.nbtCompoundAcceptor.apply( path );
         }
 
+        this.enterNested();
+        if ( readAsCompound ) {
+            this.alterAllocationLimit( Allocation.COMPOUND );
+        }
+
         this.expectInput( 1, "Invalid NBT Data: Expected Tag ID in compound tag" );
         byte tagID = this.readByteValue();
 
         NBTTagCompound compound = ( readAsCompound ) ? new NBTTagCompound( tagName ) : null;
         while ( tagID != NBTDefinitions.TAG_END ) {
-            String name = this.readStringValue();
+            if ( compound != null ) {
+                this.alterAllocationLimit( Allocation.COMPOUND_ENTRY + Allocation.value( tagID ) );
+            }
+
+            this.countTag( tagID );
+            String name = this.readTagName();
             String currentPath = path + "." + name;
 
             switch ( tagID ) {
@@ -162,6 +189,7 @@ public class NBTStream extends NBTStreamReader {
             tagID = this.readByteValue();
         }
 
+        this.leaveNested();
         if ( manual ) {
             this.nbtStreamListener.onNBTValue( path, compound );
         }
@@ -176,18 +204,27 @@ public class NBTStream extends NBTStreamReader {
             readAsList = manual = this.nbtCompoundAcceptor.apply( path );
         }
 
-        this.expectInput( 5, "Invalid NBT Data: Expected TAGList header" );
+        this.expectInput( this.isUseVarint() ? 2 : 5, "Invalid NBT Data: Expected TAGList header" );
         byte listType = this.readByteValue();
         int listLength = this.readIntValue();
 
-        List<Object> list = ( readAsList ) ? new ArrayList<>() : null;
+        int capacity = this.checkListLength( listType, listLength );
+        if ( listType == NBTDefinitions.TAG_END ) {
+            listLength = 0;
+        }
+
+        this.enterNested();
+        if ( readAsList ) {
+            this.alterAllocationLimit( Allocation.list( listType, listLength ) );
+        }
+
+        List<Object> list = ( readAsList ) ? new ArrayList<>( capacity ) : null;
+        this.countTags( listType, listLength );
         switch ( listType ) {
             case NBTDefinitions.TAG_END:
                 // Not to be unseen! Seemingly Mojang cares about something after all: disk space
                 break;
             case NBTDefinitions.TAG_BYTE:
-                this.expectInput( listLength, "Invalid NBT Data: Expected bytes for list" );
-
                 for ( int i = 0; i < listLength; ++i ) {
                     if ( list != null ) {
                         list.add( this.readByteValue() );
@@ -198,8 +235,6 @@ public class NBTStream extends NBTStreamReader {
 
                 break;
             case NBTDefinitions.TAG_SHORT:
-                this.expectInput( 2 * listLength, "Invalid NBT Data: Expected shorts for list" );
-
                 for ( int i = 0; i < listLength; ++i ) {
                     if ( list != null ) {
                         list.add( this.readShortValue() );
@@ -210,8 +245,6 @@ public class NBTStream extends NBTStreamReader {
 
                 break;
             case NBTDefinitions.TAG_INT:
-                this.expectInput( 4 * listLength, "Invalid NBT Data: Expected ints for list" );
-
                 for ( int i = 0; i < listLength; ++i ) {
                     if ( list != null ) {
                         list.add( this.readIntValue() );
@@ -222,8 +255,6 @@ public class NBTStream extends NBTStreamReader {
 
                 break;
             case NBTDefinitions.TAG_LONG:
-                this.expectInput( 8 * listLength, "Invalid NBT Data: Expected longs for list" );
-
                 for ( int i = 0; i < listLength; ++i ) {
                     if ( list != null ) {
                         list.add( this.readLongValue() );
@@ -234,8 +265,6 @@ public class NBTStream extends NBTStreamReader {
 
                 break;
             case NBTDefinitions.TAG_FLOAT:
-                this.expectInput( 4 * listLength, "Invalid NBT Data: Expected floats for list" );
-
                 for ( int i = 0; i < listLength; ++i ) {
                     if ( list != null ) {
                         list.add( this.readFloatValue() );
@@ -246,8 +275,6 @@ public class NBTStream extends NBTStreamReader {
 
                 break;
             case NBTDefinitions.TAG_DOUBLE:
-                this.expectInput( 8 * listLength, "Invalid NBT Data: Expected doubles for list" );
-
                 for ( int i = 0; i < listLength; ++i ) {
                     if ( list != null ) {
                         list.add( this.readDoubleValue() );
@@ -311,6 +338,7 @@ public class NBTStream extends NBTStreamReader {
                 throw new IOException( "Invalid NBT Data: Unknown tag <" + listType + ">" );
         }
 
+        this.leaveNested();
         if ( manual ) {
             this.nbtStreamListener.onNBTValue( path, list );
         }
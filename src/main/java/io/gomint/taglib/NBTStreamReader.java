@@ -22,15 +22,103 @@ public class NBTStreamReader {
     protected ByteBuffer buffer;
     protected ByteOrder byteOrder;
 
+    // Buffer for streamed input which is kept across resets, buffers grown for oversized values are not
+    private ByteBuffer streamBuffer;
+
     private boolean useVarint;
-    private int allocateLimit = -1;
+    private final AllocationBudget budget = new AllocationBudget();
+
+    // Names of the packed document which is currently read, null while reading standard NBT
+    private NBTNameTable nameTable;
+    private NBTNameTable.Document packedNames;
+    private boolean packedUseVarint;
+
+    // Metrics are counted locally and reported once per parse, tags only while someone is interested in them
+    private NBTMetrics metrics;
+    private int[] tagCounts;
+    private int stringsDecoded;
+    private int bufferGrowths;
+    private long bytesFetched;
+    private long bytesReported;
+    private boolean compressed;
 
     protected NBTStreamReader( InputStream in, ByteOrder byteOrder ) {
         this.in = in;
         this.byteOrder = byteOrder;
 
-        this.buffer = ByteBuffer.allocateDirect( BUFFER_SIZE );
+        this.useStreamBuffer();
+        this.setMetrics( NBTMetrics.getGlobal() );
+    }
+
+    protected NBTStreamReader( ByteBuffer buffer, ByteOrder byteOrder ) {
+        this.in = null;
+        this.byteOrder = byteOrder;
+
+        // Read directly from the given memory, there is nothing to fetch or to grow
+        this.buffer = buffer.slice();
         this.buffer.order( byteOrder );
+
+        this.setMetrics( NBTMetrics.getGlobal() );
+    }
+
+    /**
+     * Puts this reader into the state of a newly constructed one which reads from the given stream. Its buffer is
+     * kept so reusing a reader does not allocate, unless the buffer had to grow for an oversized value.
+     *
+     * @param in        The stream to read from
+     * @param byteOrder The byteorder of the encoded data
+     */
+    public void reset( InputStream in, ByteOrder byteOrder ) {
+        this.in = in;
+        this.byteOrder = byteOrder;
+        this.useStreamBuffer();
+        this.resetState();
+    }
+
+    /**
+     * Puts this reader into the state of a newly constructed one which reads from the remaining bytes of the given
+     * buffer. The position of the buffer is not modified.
+     *
+     * @param buffer    The buffer to read from
+     * @param byteOrder The byteorder of the encoded data
+     */
+    public void reset( ByteBuffer buffer, ByteOrder byteOrder ) {
+        this.in = null;
+        this.byteOrder = byteOrder;
+        this.buffer = buffer.slice();
+        this.buffer.order( byteOrder );
+        this.resetState();
+    }
+
+    /**
+     * Drops all settings and everything which has been counted since the last parse. Subclasses which have settings
+     * of their own reset them here.
+     */
+    protected void resetState() {
+        this.useVarint = false;
+        this.nameTable = null;
+        this.packedNames = null;
+        this.compressed = false;
+        this.budget.clear();
+        this.bytesFetched = 0;
+        this.bytesReported = 0;
+        this.stringsDecoded = 0;
+        this.bufferGrowths = 0;
+        if ( this.tagCounts != null ) {
+            Arrays.fill( this.tagCounts, 0 );
+        }
+
+        this.setMetrics( NBTMetrics.getGlobal() );
+    }
+
+    private void useStreamBuffer() {
+        if ( this.streamBuffer == null ) {
+            // Heap memory so the stream can read straight into the buffer
+            this.streamBuffer = ByteBuffer.allocate( BUFFER_SIZE );
+        }
+
+        this.buffer = this.streamBuffer;
+        this.buffer.order( this.byteOrder );
         this.buffer.limit( 0 );
         this.buffer.position( 0 );
     }
@@ -39,13 +127,83 @@ public class NBTStreamReader {
         this.useVarint = useVarint;
     }
 
+    public boolean isUseVarint() {
+        return this.useVarint;
+    }
+
+    /**
+     * Sets the table packed data is read with, see {@link NBTWriter#writePacked(NBTTagCompound, NBTNameTable)}.
+     * Packed data is detected on its own, the table is only needed when the data has been written with one.
+     *
+     * @param nameTable The table of common names or null if there is none
+     */
+    public void setNameTable( NBTNameTable nameTable ) {
+        this.nameTable = nameTable;
+    }
+
+    /**
+     * Sets the amount of heap the decoded values may take up. Values are charged with their real size on the
+     * heap before they get allocated, the limit is shared by all parses of this reader.
+     *
+     * @param allocateLimit The limit in bytes or -1 for no limit
+     */
     public void setAllocateLimit( int allocateLimit ) {
-        this.allocateLimit = allocateLimit;
+        this.budget.setLimit( allocateLimit );
+    }
+
+    /**
+     * Sets how deep compounds and lists may be nested. The default is {@value AllocationBudget#DEFAULT_MAX_DEPTH}.
+     *
+     * @param maxDepth The maximum depth or -1 for no limit
+     */
+    public void setMaxDepth( int maxDepth ) {
+        this.budget.setMaxDepth( maxDepth );
+    }
+
+    /**
+     * Sets how many elements a single list may declare
+     *
+     * @param maxListLength The maximum amount of elements or -1 for no limit
+     */
+    public void setMaxListLength( int maxListLength ) {
+        this.budget.setMaxListLength( maxListLength );
+    }
+
+    /**
+     * Sets how many elements a single byte or int array may declare
+     *
+     * @param maxArrayLength The maximum amount of elements or -1 for no limit
+     */
+    public void setMaxArrayLength( int maxArrayLength ) {
+        this.budget.setMaxArrayLength( maxArrayLength );
+    }
+
+    /**
+     * Sets how many bytes a single string may declare
+     *
+     * @param maxStringLength The maximum length of the UTF-8 encoded string or -1 for no limit
+     */
+    public void setMaxStringLength( int maxStringLength ) {
+        this.budget.setMaxStringLength( maxStringLength );
+    }
+
+    /**
+     * Sets the metrics this reader reports to. Readers report to the {@link NBTMetrics#getGlobal() global metrics}
+     * by default.
+     *
+     * @param metrics The metrics to report to or null to disable reporting
+     */
+    public void setMetrics( NBTMetrics metrics ) {
+        this.metrics = metrics;
+        this.budget.setMetrics( metrics );
+        if ( metrics != null && this.tagCounts == null ) {
+            this.tagCounts = NBTMetrics.newTagCounts();
+        }
     }
 
     public boolean hasMoreToRead() {
         try {
-            return this.buffer.limit() > this.buffer.position() || this.in.available() > 0;
+            return this.buffer.limit() > this.buffer.position() || ( this.in != null && this.in.available() > 0 );
         } catch ( IOException e ) {
             LOGGER.error( "Could not read from input for checking if there is more data present", e );
         }
@@ -59,14 +217,78 @@ public class NBTStreamReader {
     }
 
     protected String readStringValue() throws IOException, AllocationLimitReachedException {
-        int length = this.useVarint ? VarInt.readUnsignedVarInt( this ) : this.readShortValue();
-        this.expectInput( length, "Invalid NBT Data: Expected string bytes" );
+        int length = this.useVarint ? VarInt.readUnsignedVarInt( this ) : this.readShortValue() & 0xFFFF;
+        this.budget.checkString( length, this.knownRemaining() );
+        this.alterAllocationLimit( Allocation.string( length ) );
+
+        byte[] stringData = this.readBytes( length, "Invalid NBT Data: Expected string bytes" );
+        String value = StringUtil.fromUTF8Bytes( stringData, 0, length );
+        this.alterAllocationLimit( Allocation.stringExtra( value, length ) );
+        this.stringsDecoded++;
+        return value;
+    }
+
+    /**
+     * Reads the name of a compound entry, which is a reference in packed data
+     *
+     * @return The name of the entry
+     * @throws IOException                     Thrown in case the name could not be read
+     * @throws AllocationLimitReachedException Thrown in case the name is longer than allowed
+     */
+    protected String readTagName() throws IOException, AllocationLimitReachedException {
+        if ( this.packedNames == null ) {
+            return this.readStringValue();
+        }
+
+        int reference = VarInt.readUnsignedVarInt( this );
+        if ( reference != 0 ) {
+            return this.packedNames.resolve( reference );
+        }
 
-        byte[] stringData = new byte[length];
-        this.buffer.get( stringData );
+        String name = this.readStringValue();
+        this.packedNames.add( name );
+        return name;
+    }
+
+    /**
+     * Reads the header of a root compound up to its name. Packed data is recognized by its marker, until
+     * {@link #endPacked()} all numbers and lengths are read as varints and names as references.
+     *
+     * @return The name of the root compound
+     * @throws IOException                     Thrown in case there is no root compound or the packed header is invalid
+     * @throws AllocationLimitReachedException Thrown in case the name is longer than allowed
+     */
+    protected String readRootHeader() throws IOException, AllocationLimitReachedException {
+        byte tagID = this.readByteValue();
+        if ( tagID == NBTDefinitions.PACKED_MAGIC ) {
+            tagID = this.beginPacked();
+        }
+
+        if ( tagID != NBTDefinitions.TAG_COMPOUND ) {
+            throw new IOException( "Invalid NBT Data: No root tag found" );
+        }
 
-        this.alterAllocationLimit( Allocation.STRING );
-        return StringUtil.fromUTF8Bytes( stringData, 0, length );
+        this.countTag( NBTDefinitions.TAG_COMPOUND );
+        return this.readTagName();
+    }
+
+    private byte beginPacked() throws IOException, AllocationLimitReachedException {
+        byte version = this.readByteValue();
+        int tableId = VarInt.readSignedVarInt( this );
+        this.packedNames = NBTNameTable.open( version, tableId, this.nameTable );
+        this.packedUseVarint = this.useVarint;
+        this.useVarint = true;
+        return this.readByteValue();
+    }
+
+    /**
+     * Leaves the packed format of the root which has been read, does nothing after standard NBT
+     */
+    protected void endPacked() {
+        if ( this.packedNames != null ) {
+            this.packedNames = null;
+            this.useVarint = this.packedUseVarint;
+        }
     }
 
     protected short readShortValue() throws IOException, AllocationLimitReachedException {
@@ -85,13 +307,38 @@ public class NBTStreamReader {
 
     protected long readLongValue() throws IOException, AllocationLimitReachedException {
         if ( this.useVarint ) {
-            return VarInt.readSignedVarLong( this ).longValue();
+            return VarInt.readSignedVarLong( this );
         } else {
             this.expectInput( 8, "Invalid NBT Data: Expected long" );
             return this.buffer.getLong();
         }
     }
 
+    /**
+     * Reads an unsigned varint. Bits beyond 64 are dropped.
+     *
+     * @param maxBytes The maximum amount of bytes the varint may take up
+     * @return The raw value of the varint
+     * @throws IOException                     Thrown in case the input ended or the varint is longer than allowed
+     * @throws AllocationLimitReachedException Never thrown, readers only charge for values
+     */
+    protected long readVarNumber( int maxBytes ) throws IOException, AllocationLimitReachedException {
+        long value = 0;
+        for ( int i = 0; i < maxBytes; i++ ) {
+            if ( !this.buffer.hasRemaining() ) {
+                this.fetchInput( "Invalid NBT Data: Expected varint" );
+            }
+
+            byte in = this.buffer.get();
+            value |= (long) ( in & 0x7F ) << ( i * 7 );
+            if ( ( in & 0x80 ) == 0 ) {
+                return value;
+            }
+        }
+
+        throw new IOException( "Invalid NBT Data: VarInt too big" );
+    }
+
     protected float readFloatValue() throws IOException, AllocationLimitReachedException {
         this.expectInput( 4, "Invalid NBT Data: Expected float" );
         return this.buffer.getFloat();
@@ -104,24 +351,265 @@ public class NBTStreamReader {
 
     protected byte[] readByteArrayValue() throws IOException, AllocationLimitReachedException {
         int size = this.readIntValue();
-        this.expectInput( size, "Invalid NBT Data: Expected byte array data" );
-        byte[] result = new byte[size];
-        this.buffer.get( result );
-        return result;
+        this.budget.checkArray( size, 1, this.knownRemaining() );
+        this.alterAllocationLimit( Allocation.byteArray( size ) );
+        return this.readBytes( size, "Invalid NBT Data: Expected byte array data" );
     }
 
     protected int[] readIntArrayValue() throws IOException, AllocationLimitReachedException {
         int size = this.readIntValue();
-        this.expectInput( size * 4, "Invalid NBT Data: Expected int array data" );
-        int[] result = new int[size];
+        this.budget.checkArray( size, Allocation.minimumSize( NBTDefinitions.TAG_INT, this.useVarint ), this.knownRemaining() );
+        this.alterAllocationLimit( Allocation.intArray( size ) );
+
+        // Declared sizes of streamed input are only trusted as far as data arrives
+        int[] result = new int[this.in != null ? Math.min( size, BUFFER_SIZE / 4 ) : size];
         for ( int i = 0; i < size; ++i ) {
+            if ( i == result.length ) {
+                result = Arrays.copyOf( result, (int) Math.min( size, 2L * i ) );
+            }
+
             result[i] = this.readIntValue();
         }
         return result;
     }
 
+    private byte[] readBytes( int length, String message ) throws IOException {
+        // Declared sizes of streamed input are only trusted as far as data arrives, the buffer never grows for them
+        byte[] data = new byte[this.in != null ? Math.min( length, BUFFER_SIZE ) : length];
+        int read = 0;
+        while ( read < length ) {
+            if ( !this.buffer.hasRemaining() ) {
+                this.fetchInput( message );
+            }
+
+            if ( read == data.length ) {
+                data = Arrays.copyOf( data, (int) Math.min( length, 2L * read ) );
+            }
+
+            int chunk = Math.min( this.buffer.remaining(), data.length - read );
+            this.buffer.get( data, read, chunk );
+            read += chunk;
+        }
+
+        return data;
+    }
+
+    /**
+     * Reads the length of a byte or int array and checks it against the limits of this reader and the input which
+     * is left
+     *
+     * @param elementSize The minimal encoded size of one element
+     * @return The amount of elements
+     * @throws IOException                     Thrown in case the length is negative or the elements can't fit into the input
+     * @throws AllocationLimitReachedException Thrown in case the array is longer than allowed
+     */
+    protected int readArrayLength( int elementSize ) throws IOException, AllocationLimitReachedException {
+        int length = this.readIntValue();
+        this.budget.checkArray( length, elementSize, this.knownRemaining() );
+        return length;
+    }
+
+    /**
+     * Skips a value without decoding it. Nesting is limited just like for decoded values, but nothing is charged from
+     * the allocation limit. Every skipped tag is handed to {@link #countSkipped(byte, int, long)}.
+     *
+     * @param tagID The type of the value
+     * @throws IOException                     Thrown in case of invalid NBT data
+     * @throws AllocationLimitReachedException Thrown in case the value exceeds the limits of this reader
+     */
+    protected void skipValue( byte tagID ) throws IOException, AllocationLimitReachedException {
+        switch ( tagID ) {
+            case NBTDefinitions.TAG_BYTE:
+            case NBTDefinitions.TAG_SHORT:
+            case NBTDefinitions.TAG_FLOAT:
+            case NBTDefinitions.TAG_DOUBLE:
+                this.skipInput( this.fixedSize( tagID ), "Invalid NBT Data: Expected number" );
+                break;
+            case NBTDefinitions.TAG_INT:
+                this.skipNumber( VarInt.MAX_INT_BYTES, 4 );
+                break;
+            case NBTDefinitions.TAG_LONG:
+                this.skipNumber( VarInt.MAX_LONG_BYTES, 8 );
+                break;
+            case NBTDefinitions.TAG_BYTE_ARRAY:
+                int bytes = this.readArrayLength( 1 );
+                this.countSkipped( tagID, 0, Allocation.byteArray( bytes ) );
+                this.skipInput( bytes, "Invalid NBT Data: Expected byte array data" );
+                break;
+            case NBTDefinitions.TAG_STRING:
+                this.countSkipped( tagID, 0, Allocation.string( this.skipString() ) );
+                break;
+            case NBTDefinitions.TAG_LIST:
+                this.skipList();
+                break;
+            case NBTDefinitions.TAG_COMPOUND:
+                this.skipCompound();
+                break;
+            case NBTDefinitions.TAG_INT_ARRAY:
+                int ints = this.readArrayLength( Allocation.minimumSize( NBTDefinitions.TAG_INT, this.useVarint ) );
+                this.countSkipped( tagID, 0, Allocation.intArray( ints ) );
+                if ( this.useVarint ) {
+                    for ( int i = 0; i < ints; i++ ) {
+                        this.readVarNumber( VarInt.MAX_INT_BYTES );
+                    }
+                } else {
+                    this.skipInput( 4L * ints, "Invalid NBT Data: Expected int array data" );
+                }
+
+                break;
+            default:
+                throw new IOException( "Invalid NBT Data: Unknown tag <" + tagID + ">" );
+        }
+    }
+
+    /**
+     * Skips a string without decoding it
+     *
+     * @return The length of the UTF-8 encoded string
+     * @throws IOException                     Thrown in case the string does not fit into the input
+     * @throws AllocationLimitReachedException Thrown in case the string is longer than allowed
+     */
+    protected int skipString() throws IOException, AllocationLimitReachedException {
+        int length = this.useVarint ? VarInt.readUnsignedVarInt( this ) : this.readShortValue() & 0xFFFF;
+        this.budget.checkString( length, this.knownRemaining() );
+        this.skipInput( length, "Invalid NBT Data: Expected string bytes" );
+        return length;
+    }
+
+    /**
+     * Skips the name of a compound entry. Names of packed data which are not references have to be decoded since
+     * later references may point to them.
+     *
+     * @return The length of the name
+     * @throws IOException                     Thrown in case the name could not be read
+     * @throws AllocationLimitReachedException Thrown in case the name is longer than allowed
+     */
+    protected int skipTagName() throws IOException, AllocationLimitReachedException {
+        if ( this.packedNames == null ) {
+            return this.skipString();
+        }
+
+        return this.readTagName().length();
+    }
+
+    /**
+     * Called for every tag which is skipped, with the heap a reader would have charged for decoding it. Does nothing
+     * by default, scanners use it to size data without decoding it.
+     *
+     * @param tagID  The type of the tag
+     * @param amount The amount of tags, 1 for compound entries, the amount of elements for lists and 0 for the
+     *               content of values which have already been counted
+     * @param heap   The heap in bytes
+     */
+    protected void countSkipped( byte tagID, int amount, long heap ) {
+        // Readers are only interested in the values they decode
+    }
+
+    private void skipNumber( int varintBytes, int size ) throws IOException, AllocationLimitReachedException {
+        if ( this.useVarint ) {
+            this.readVarNumber( varintBytes );
+        } else {
+            this.skipInput( size, "Invalid NBT Data: Expected number" );
+        }
+    }
+
+    private void skipList() throws IOException, AllocationLimitReachedException {
+        byte listType = this.readByteValue();
+        int listLength = this.readIntValue();
+        this.checkListLength( listType, listLength );
+        if ( listType == NBTDefinitions.TAG_END ) {
+            listLength = 0;
+        }
+
+        this.enterNested();
+        this.countSkipped( listType, listLength, Allocation.list( listType, listLength ) );
+
+        // Elements of a fixed size are skipped at once, the header check made sure they fit into known input
+        int size = this.fixedSize( listType );
+        if ( size > 0 ) {
+            this.skipInput( (long) size * listLength, "Invalid NBT Data: Expected list elements" );
+        } else {
+            for ( int i = 0; i < listLength; i++ ) {
+                this.skipValue( listType );
+            }
+        }
+
+        this.leaveNested();
+    }
+
+    private void skipCompound() throws IOException, AllocationLimitReachedException {
+        this.enterNested();
+        this.countSkipped( NBTDefinitions.TAG_COMPOUND, 0, Allocation.COMPOUND );
+        for ( byte entryType = this.readByteValue(); entryType != NBTDefinitions.TAG_END; entryType = this.readByteValue() ) {
+            this.countSkipped( entryType, 1, Allocation.COMPOUND_ENTRY + Allocation.value( entryType ) + Allocation.string( this.skipTagName() ) );
+            this.skipValue( entryType );
+        }
+
+        this.leaveNested();
+    }
+
+    /**
+     * Gets the encoded size of values which are always encoded with the same amount of bytes
+     *
+     * @param tagID The type of the value
+     * @return The size in bytes or 0 when the size depends on the value
+     */
+    private int fixedSize( byte tagID ) {
+        switch ( tagID ) {
+            case NBTDefinitions.TAG_BYTE:
+                return 1;
+            case NBTDefinitions.TAG_SHORT:
+                return 2;
+            case NBTDefinitions.TAG_INT:
+                return this.useVarint ? 0 : 4;
+            case NBTDefinitions.TAG_LONG:
+                return this.useVarint ? 0 : 8;
+            case NBTDefinitions.TAG_FLOAT:
+                return 4;
+            case NBTDefinitions.TAG_DOUBLE:
+                return 8;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Gets the amount of input which is left, only known when reading from a buffer
+     *
+     * @return amount of bytes left or -1 if unknown
+     */
+    private long knownRemaining() {
+        return this.in == null ? this.buffer.remaining() : -1;
+    }
+
+    /**
+     * Checks the header of a list against the limits of this reader and the input which is left
+     *
+     * @param listType   The type of the elements
+     * @param listLength The declared amount of elements
+     * @return The capacity the list should be created with
+     * @throws IOException                     Thrown in case the header is invalid
+     * @throws AllocationLimitReachedException Thrown in case the list exceeds the limits
+     */
+    protected int checkListLength( byte listType, int listLength ) throws IOException, AllocationLimitReachedException {
+        return this.budget.checkList( listType, listLength, this.knownRemaining(), this.useVarint );
+    }
+
+    /**
+     * Enters a compound or list, has to be paired with {@link #leaveNested()}
+     *
+     * @throws AllocationLimitReachedException Thrown in case the maximum depth has been exceeded
+     */
+    protected void enterNested() throws AllocationLimitReachedException {
+        this.budget.enter();
+    }
+
+    protected void leaveNested() {
+        this.budget.leave();
+    }
+
     protected void expectInput( int remaining, String message ) throws IOException, AllocationLimitReachedException {
-        this.expectInput( remaining, message, true );
+        this.expectInput( remaining, message, false );
     }
 
     protected void expectInput( int remaining, String message, boolean alterAllocLimit ) throws IOException, AllocationLimitReachedException {
@@ -131,7 +619,7 @@ public class NBTStreamReader {
         }
 
         // Catch the overflow case:
-        if ( remaining > this.buffer.capacity() ) {
+        if ( this.in != null && remaining > this.buffer.capacity() ) {
             int capacity = this.buffer.capacity();
             while ( remaining > capacity ) {
                 capacity *= 2;
@@ -139,15 +627,13 @@ public class NBTStreamReader {
 
             int length = this.buffer.remaining();
 
-            ByteBuffer newBuffer = ByteBuffer.allocateDirect( capacity );
-            byte[] remainingData = new byte[length];
-            this.buffer.get( remainingData );
-            newBuffer.put( remainingData );
+            this.bufferGrowths++;
+            ByteBuffer newBuffer = ByteBuffer.allocate( capacity );
+            newBuffer.order( this.byteOrder );
+            newBuffer.put( this.buffer );
+            newBuffer.flip();
 
             this.buffer = newBuffer;
-            this.buffer.order( this.byteOrder );
-            this.buffer.limit( length );
-            this.buffer.position( 0 );
         }
 
         if ( this.buffer.remaining() < remaining ) {
@@ -158,57 +644,166 @@ public class NBTStreamReader {
         }
     }
 
-    protected void alterAllocationLimit( int remaining ) throws AllocationLimitReachedException {
-        if ( this.allocateLimit != -1 ) {
-            if ( this.allocateLimit - remaining < 0 ) {
-                throw new AllocationLimitReachedException( "Could not allocate more bytes due to reaching the set limit" );
-            } else {
-                this.allocateLimit -= remaining;
-            }
-        }
+    protected void alterAllocationLimit( long remaining ) throws AllocationLimitReachedException {
+        this.budget.charge( remaining );
     }
 
     protected void fetchInput( String message ) throws IOException {
-        // Got to do some nasty copies here:
-        if ( this.buffer.remaining() > 0 ) {
-            // We want to "move" the rest of the buffer to the front
-            byte[] remain = new byte[this.buffer.remaining()];
-            this.buffer.get( remain );
-
-            this.buffer.limit( remain.length );
-            this.buffer.position( 0 );
-
-            // Write back
-            this.buffer.put( remain );
-
-            // Try to read, don't fail when you did not read
-            byte[] maxRead = new byte[this.buffer.capacity() - this.buffer.limit()];
-            int read = this.in.read( maxRead, 0, maxRead.length );
-            if ( read == -1 ) {
-                return;
+        if ( !this.readInput() && this.buffer.remaining() == 0 ) {
+            throw new IOException( "NBT input ended unexpectedly!", new IOException( message ) );
+        }
+    }
+
+    /**
+     * Checks whether or not there is input left, reads more from the stream when the buffer has been consumed
+     *
+     * @return True when there is at least one more byte to read
+     * @throws IOException Thrown in case reading from the stream failed
+     */
+    boolean hasInput() throws IOException {
+        return this.buffer.hasRemaining() || this.readInput();
+    }
+
+    private boolean readInput() throws IOException {
+        // Buffer backed readers already hold all data there is
+        if ( this.in == null ) {
+            return false;
+        }
+
+        // Move the rest of the buffer to the front and let the stream fill up everything behind it
+        this.buffer.compact();
+        int read = this.in.read( this.buffer.array(), this.buffer.arrayOffset() + this.buffer.position(), this.buffer.remaining() );
+        if ( read > 0 ) {
+            this.buffer.position( this.buffer.position() + read );
+            this.bytesFetched += read;
+        }
+
+        this.buffer.flip();
+        return read > 0;
+    }
+
+    /**
+     * Skips the given amount of bytes without looking at them
+     *
+     * @param length  The amount of bytes to skip
+     * @param message The message of the exception thrown when the input ends before
+     * @throws IOException Thrown in case the input ended before
+     */
+    void skipInput( long length, String message ) throws IOException {
+        long skipped = 0;
+        while ( skipped < length ) {
+            if ( !this.buffer.hasRemaining() ) {
+                this.fetchInput( message );
             }
 
-            // Flip does not really fit here:
-            this.buffer.limit( remain.length + read );
+            int chunk = (int) Math.min( this.buffer.remaining(), length - skipped );
+            this.buffer.position( this.buffer.position() + chunk );
+            skipped += chunk;
+        }
+    }
 
-            // We did read some data
-            this.buffer.put( Arrays.copyOf( maxRead, read ) );
-            this.buffer.position( 0 );
-        } else {
-            byte[] maxRead = new byte[this.buffer.capacity()];
+    /**
+     * Gets the amount of bytes this reader has consumed
+     *
+     * @return amount of bytes consumed
+     */
+    long consumed() {
+        return this.in != null ? this.bytesFetched - this.buffer.remaining() : this.buffer.position();
+    }
 
-            // Speedier variant if applicable (that is the case quite often, as the buffer is a power of two):
-            int read = this.in.read( maxRead, 0, maxRead.length );
-            if ( read == -1 ) {
-                throw new IOException( "NBT input ended unexpectedly!", new IOException( message ) );
+    /**
+     * Counts a decoded tag for the metrics
+     *
+     * @param tagID The type of the tag
+     */
+    protected void countTag( byte tagID ) {
+        if ( this.tagCounts != null && tagID > 0 && tagID < this.tagCounts.length ) {
+            this.tagCounts[tagID]++;
+        }
+    }
+
+    /**
+     * Counts the elements of a list for the metrics
+     *
+     * @param tagID  The type of the elements
+     * @param amount The amount of elements
+     */
+    protected void countTags( byte tagID, int amount ) {
+        if ( this.tagCounts != null && tagID > 0 && tagID < this.tagCounts.length && amount > 0 ) {
+            this.tagCounts[tagID] += amount;
+        }
+    }
+
+    /**
+     * Marks the start of a parse for the metrics and the flight recorder
+     *
+     * @param event The flight recorder event of this parse, which has already been begun, or null
+     * @return The start time to pass to {@link #finishOperation(long, boolean, NBTParseEvent)}
+     */
+    long startOperation( NBTParseEvent event ) {
+        this.budget.reset();
+
+        // Tags are only counted when someone is interested in them
+        if ( this.tagCounts == null && event != null ) {
+            this.tagCounts = NBTMetrics.newTagCounts();
+        }
+
+        return this.metrics != null ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Reports everything which has been counted since the last report to the metrics and commits the flight
+     * recorder event
+     *
+     * @param start   The time returned by {@link #startOperation(NBTParseEvent)}
+     * @param success Whether or not the parse succeeded
+     * @param event   The flight recorder event of this parse or null
+     */
+    void finishOperation( long start, boolean success, NBTParseEvent event ) {
+        boolean commit = event != null && event.shouldCommit();
+        if ( this.metrics == null && !commit ) {
+            return;
+        }
+
+        long consumed = this.consumed();
+        if ( this.metrics != null ) {
+            this.metrics.recordParse( System.nanoTime() - start, success, consumed - this.bytesReported, this.tagCounts, this.stringsDecoded, this.bufferGrowths );
+        }
+
+        if ( commit ) {
+            // Recordings which started during the parse did not count its tags
+            int tags = 0;
+            if ( this.tagCounts != null ) {
+                for ( int count : this.tagCounts ) {
+                    tags += count;
+                }
             }
 
-            // Flip does not really fit here:
-            this.buffer.limit( read );
-            this.buffer.position( 0 );
-            this.buffer.put( Arrays.copyOf( maxRead, read ) );
-            this.buffer.position( 0 );
+            event.reader = this.getClass().getSimpleName();
+            event.bytes = consumed - this.bytesReported;
+            event.tags = tags;
+            event.compressed = this.compressed;
+            event.byteOrder = this.byteOrder.toString();
+            event.varint = this.useVarint;
+            event.success = success;
+            event.commit();
         }
+
+        this.bytesReported = consumed;
+        this.stringsDecoded = 0;
+        this.bufferGrowths = 0;
+        if ( this.tagCounts != null ) {
+            Arrays.fill( this.tagCounts, 0 );
+        }
+    }
+
+    /**
+     * Sets whether or not the input of this reader has been decompressed, only used to describe parses
+     *
+     * @param compressed Whether or not the input is compressed
+     */
+    void setCompressed( boolean compressed ) {
+        this.compressed = compressed;
     }
 
 }
@@ -1,54 +1,226 @@
 package io.gomint.taglib;
 
+import java.io.DataInput;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteOrder;
+import java.util.Arrays;
 
 /**
+ * Reader base which consumes exactly the bytes of the NBT data and not a single byte more, so the source can be
+ * read on by someone else after parsing. Input is read fully, short reads of the source are retried until the
+ * value is complete. Primitives are read through a scratch array which lives as long as the reader, so decoding
+ * them does not allocate.
+ * <p>
+ * When the length of the data is declared up front every header is checked against the input which is left and
+ * reading never goes past the declared length. Without a declared length the input is only trusted as far as data
+ * arrives.
+ *
  * @author geNAZt
  * @version 1.0
  */
 public class NBTStreamReaderNoBuffer {
 
+    // Arrays of unknown input start with this size and only grow while data arrives
+    private static final int CHUNK_SIZE = 1024 * 16;
+
     protected InputStream in;
     protected ByteOrder byteOrder;
 
+    private final DataInput dataIn;
+    private long remaining;
+    private long consumed;
+    private byte[] scratch = new byte[8];
+
     private boolean useVarint;
-    private int allocateLimit = -1;
+    private final AllocationBudget budget = new AllocationBudget();
+
+    // Names of the packed document which is currently read, null while reading standard NBT
+    private NBTNameTable nameTable;
+    private NBTNameTable.Document packedNames;
+    private boolean packedUseVarint;
 
     protected NBTStreamReaderNoBuffer( InputStream in, ByteOrder byteOrder ) {
+        this( in, -1, byteOrder );
+    }
+
+    /**
+     * Constructs a reader which reads at most the given amount of bytes from the stream
+     *
+     * @param in        The stream to read from
+     * @param length    The length of the data or -1 if unknown
+     * @param byteOrder The byteorder of the encoded data
+     */
+    protected NBTStreamReaderNoBuffer( InputStream in, long length, ByteOrder byteOrder ) {
         this.in = in;
+        this.dataIn = null;
+        this.remaining = length;
         this.byteOrder = byteOrder;
     }
 
+    protected NBTStreamReaderNoBuffer( DataInput in, ByteOrder byteOrder ) {
+        this( in, -1, byteOrder );
+    }
+
+    /**
+     * Constructs a reader which reads at most the given amount of bytes from the input
+     *
+     * @param in        The input to read from
+     * @param length    The length of the data or -1 if unknown
+     * @param byteOrder The byteorder of the encoded data
+     */
+    protected NBTStreamReaderNoBuffer( DataInput in, long length, ByteOrder byteOrder ) {
+        this.in = null;
+        this.dataIn = in;
+        this.remaining = length;
+        this.byteOrder = byteOrder;
+    }
     public void setUseVarint( boolean useVarint ) {
         this.useVarint = useVarint;
     }
 
+    public boolean isUseVarint() {
+        return this.useVarint;
+    }
+
+    /**
+     * Sets the table packed data is read with, see {@link NBTStreamReader#setNameTable(NBTNameTable)}
+     *
+     * @param nameTable The table of common names or null if there is none
+     */
+    public void setNameTable( NBTNameTable nameTable ) {
+        this.nameTable = nameTable;
+    }
+
+    /**
+     * Sets the amount of heap the decoded values may take up, see {@link NBTStreamReader#setAllocateLimit(int)}
+     *
+     * @param allocateLimit The limit in bytes or -1 for no limit
+     */
     public void setAllocateLimit( int allocateLimit ) {
-        this.allocateLimit = allocateLimit;
+        this.budget.setLimit( allocateLimit );
+    }
+
+    /**
+     * Sets how deep compounds and lists may be nested. The default is {@value AllocationBudget#DEFAULT_MAX_DEPTH}.
+     *
+     * @param maxDepth The maximum depth or -1 for no limit
+     */
+    public void setMaxDepth( int maxDepth ) {
+        this.budget.setMaxDepth( maxDepth );
+    }
+
+    /**
+     * Sets how many elements a single list may declare
+     *
+     * @param maxListLength The maximum amount of elements or -1 for no limit
+     */
+    public void setMaxListLength( int maxListLength ) {
+        this.budget.setMaxListLength( maxListLength );
+    }
+
+    /**
+     * Sets how many elements a single byte or int array may declare
+     *
+     * @param maxArrayLength The maximum amount of elements or -1 for no limit
+     */
+    public void setMaxArrayLength( int maxArrayLength ) {
+        this.budget.setMaxArrayLength( maxArrayLength );
+    }
+
+    /**
+     * Sets how many bytes a single string may declare
+     *
+     * @param maxStringLength The maximum length of the UTF-8 encoded string or -1 for no limit
+     */
+    public void setMaxStringLength( int maxStringLength ) {
+        this.budget.setMaxStringLength( maxStringLength );
     }
 
     protected byte readByteValue() throws IOException, AllocationLimitReachedException {
         this.expectInput( 1, "Invalid NBT Data: Expected byte" );
-        return (byte) this.in.read();
+        return this.readByte( "Invalid NBT Data: Expected byte" );
     }
 
     protected String readStringValue() throws IOException, AllocationLimitReachedException {
-        int length = this.useVarint ? VarInt.readUnsignedVarInt( this ) : this.readShortValue();
+        int length = this.useVarint ? VarInt.readUnsignedVarInt( this ) : this.readShortValue() & 0xFFFF;
+        this.budget.checkString( length, this.remaining );
+        this.alterAllocationLimit( Allocation.string( length ) );
         this.expectInput( length, "Invalid NBT Data: Expected string bytes" );
 
-        byte[] data = new byte[length];
-        this.in.read( data );
+        // Strings can be at most 64 KB, the scratch array is reused for all of them
+        if ( this.scratch.length < length ) {
+            this.scratch = new byte[Math.max( length, 2 * this.scratch.length )];
+        }
 
-        return StringUtil.fromUTF8Bytes( data, 0, data.length );
+        this.readFully( this.scratch, length, "Invalid NBT Data: Expected string bytes" );
+        String value = StringUtil.fromUTF8Bytes( this.scratch, 0, length );
+        this.alterAllocationLimit( Allocation.stringExtra( value, length ) );
+        return value;
+    }
+
+    /**
+     * Reads the name of a compound entry, which is a reference in packed data
+     *
+     * @return The name of the entry
+     * @throws IOException                     Thrown in case the name could not be read
+     * @throws AllocationLimitReachedException Thrown in case the name is longer than allowed
+     */
+    protected String readTagName() throws IOException, AllocationLimitReachedException {
+        if ( this.packedNames == null ) {
+            return this.readStringValue();
+        }
+
+        int reference = VarInt.readUnsignedVarInt( this );
+        if ( reference != 0 ) {
+            return this.packedNames.resolve( reference );
+        }
+
+        String name = this.readStringValue();
+        this.packedNames.add( name );
+        return name;
+    }
+
+    /**
+     * Reads the header of a root compound up to its name, see {@link NBTStreamReader#readRootHeader()}
+     *
+     * @return The name of the root compound
+     * @throws IOException                     Thrown in case there is no root compound or the packed header is invalid
+     * @throws AllocationLimitReachedException Thrown in case the name is longer than allowed
+     */
+    protected String readRootHeader() throws IOException, AllocationLimitReachedException {
+        byte tagID = this.readByteValue();
+        if ( tagID == NBTDefinitions.PACKED_MAGIC ) {
+            byte version = this.readByteValue();
+            int tableId = VarInt.readSignedVarInt( this );
+            this.packedNames = NBTNameTable.open( version, tableId, this.nameTable );
+            this.packedUseVarint = this.useVarint;
+            this.useVarint = true;
+            tagID = this.readByteValue();
+        }
+
+        if ( tagID != NBTDefinitions.TAG_COMPOUND ) {
+            throw new IOException( "Invalid NBT Data: No root tag found" );
+        }
+
+        return this.readTagName();
+    }
+
+    /**
+     * Leaves the packed format of the root which has been read, does nothing after standard NBT
+     */
+    protected void endPacked() {
+        if ( this.packedNames != null ) {
+            this.packedNames = null;
+            this.useVarint = this.packedUseVarint;
+        }
     }
 
     protected short readShortValue() throws IOException, AllocationLimitReachedException {
         this.expectInput( 2, "Invalid NBT Data: Expected short" );
-
-        byte[] data = new byte[2];
-        this.in.read( data );
+        byte[] data = this.scratch;
+        this.readFully( data, 2, "Invalid NBT Data: Expected short" );
 
         if ( this.byteOrder == ByteOrder.BIG_ENDIAN ) {
             return (short) ( ( data[0] << 8 ) | ( data[1] & 0xff ) );
@@ -62,9 +234,13 @@ public class NBTStreamReaderNoBuffer {
             return VarInt.readSignedVarInt( this );
         }
 
+        return this.readFixedIntValue();
+    }
+
+    private int readFixedIntValue() throws IOException, AllocationLimitReachedException {
         this.expectInput( 4, "Invalid NBT Data: Expected int" );
-        byte[] data = new byte[4];
-        this.in.read( data );
+        byte[] data = this.scratch;
+        this.readFully( data, 4, "Invalid NBT Data: Expected int" );
 
         if ( this.byteOrder == ByteOrder.BIG_ENDIAN ) {
             return ( ( ( data[0] ) << 24 ) |
@@ -81,64 +257,138 @@ public class NBTStreamReaderNoBuffer {
 
     protected long readLongValue() throws IOException, AllocationLimitReachedException {
         if ( this.useVarint ) {
-            return VarInt.readSignedVarLong( this ).longValue();
+            return VarInt.readSignedVarLong( this );
         } else {
-            this.expectInput( 8, "Invalid NBT Data: Expected long" );
-            byte[] data = new byte[8];
-            this.in.read( data );
-
-            if ( this.byteOrder == ByteOrder.BIG_ENDIAN ) {
-                return ( ( ( (long) data[0] ) << 56 ) |
-                        ( ( (long) data[1] & 0xff ) << 48 ) |
-                        ( ( (long) data[2] & 0xff ) << 40 ) |
-                        ( ( (long) data[3] & 0xff ) << 32 ) |
-                        ( ( (long) data[4] & 0xff ) << 24 ) |
-                        ( ( (long) data[5] & 0xff ) << 16 ) |
-                        ( ( (long) data[6] & 0xff ) << 8 ) |
-                        ( (long) data[7] & 0xff ) );
-            }
+            return this.readFixedLongValue();
+        }
+    }
+
+    private long readFixedLongValue() throws IOException, AllocationLimitReachedException {
+        this.expectInput( 8, "Invalid NBT Data: Expected long" );
+        byte[] data = this.scratch;
+        this.readFully( data, 8, "Invalid NBT Data: Expected long" );
 
-            return ( ( ( (long) data[7] ) << 56 ) |
-                    ( ( (long) data[6] & 0xff ) << 48 ) |
-                    ( ( (long) data[5] & 0xff ) << 40 ) |
-                    ( ( (long) data[4] & 0xff ) << 32 ) |
-                    ( ( (long) data[3] & 0xff ) << 24 ) |
-                    ( ( (long) data[2] & 0xff ) << 16 ) |
-                    ( ( (long) data[1] & 0xff ) << 8 ) |
-                    ( (long) data[0] & 0xff ) );
+        if ( this.byteOrder == ByteOrder.BIG_ENDIAN ) {
+            return ( ( ( (long) data[0] ) << 56 ) |
+                    ( ( (long) data[1] & 0xff ) << 48 ) |
+                    ( ( (long) data[2] & 0xff ) << 40 ) |
+                    ( ( (long) data[3] & 0xff ) << 32 ) |
+                    ( ( (long) data[4] & 0xff ) << 24 ) |
+                    ( ( (long) data[5] & 0xff ) << 16 ) |
+                    ( ( (long) data[6] & 0xff ) << 8 ) |
+                    ( (long) data[7] & 0xff ) );
         }
+
+        return ( ( ( (long) data[7] ) << 56 ) |
+                ( ( (long) data[6] & 0xff ) << 48 ) |
+                ( ( (long) data[5] & 0xff ) << 40 ) |
+                ( ( (long) data[4] & 0xff ) << 32 ) |
+                ( ( (long) data[3] & 0xff ) << 24 ) |
+                ( ( (long) data[2] & 0xff ) << 16 ) |
+                ( ( (long) data[1] & 0xff ) << 8 ) |
+                ( (long) data[0] & 0xff ) );
     }
 
     protected float readFloatValue() throws IOException, AllocationLimitReachedException {
-        this.expectInput( 4, "Invalid NBT Data: Expected float" );
-        return Float.intBitsToFloat( this.readIntValue() );
+        // Floating point values are never varint encoded
+        return Float.intBitsToFloat( this.readFixedIntValue() );
     }
 
     protected double readDoubleValue() throws IOException, AllocationLimitReachedException {
-        this.expectInput( 8, "Invalid NBT Data: Expected double" );
-        return Double.longBitsToDouble( this.readLongValue() );
+        return Double.longBitsToDouble( this.readFixedLongValue() );
     }
 
     protected byte[] readByteArrayValue() throws IOException, AllocationLimitReachedException {
         int size = this.readIntValue();
+        this.budget.checkArray( size, 1, this.remaining );
+        this.alterAllocationLimit( Allocation.byteArray( size ) );
         this.expectInput( size, "Invalid NBT Data: Expected byte array data" );
-        byte[] data = new byte[size];
-        this.in.read( data );
+
+        // Declared sizes of unknown input are only trusted as far as data arrives
+        byte[] data = new byte[this.remaining == -1 ? Math.min( size, CHUNK_SIZE ) : size];
+        int read = 0;
+        while ( read < size ) {
+            if ( read == data.length ) {
+                data = Arrays.copyOf( data, (int) Math.min( size, 2L * read ) );
+            }
+
+            int chunk = data.length - read;
+            this.readFully( data, read, chunk, "Invalid NBT Data: Expected byte array data" );
+            read += chunk;
+        }
+
         return data;
     }
 
     protected int[] readIntArrayValue() throws IOException, AllocationLimitReachedException {
         int size = this.readIntValue();
-        this.expectInput( size * 4, "Invalid NBT Data: Expected int array data" );
-        int[] result = new int[size];
+        this.budget.checkArray( size, Allocation.minimumSize( NBTDefinitions.TAG_INT, this.useVarint ), this.remaining );
+        this.alterAllocationLimit( Allocation.intArray( size ) );
+
+        int[] result = new int[this.remaining == -1 ? Math.min( size, CHUNK_SIZE / 4 ) : size];
         for ( int i = 0; i < size; ++i ) {
+            if ( i == result.length ) {
+                result = Arrays.copyOf( result, (int) Math.min( size, 2L * i ) );
+            }
+
             result[i] = this.readIntValue();
         }
         return result;
     }
 
+    /**
+     * Gets the amount of bytes which have been consumed from the input
+     *
+     * @return amount of bytes consumed
+     */
+    public long getConsumed() {
+        return this.consumed;
+    }
+
+    /**
+     * Gets the amount of declared input which has not been consumed yet
+     *
+     * @return amount of bytes left or -1 if no length has been declared
+     */
+    public long getRemaining() {
+        return this.remaining;
+    }
+
+    /**
+     * Checks the header of a list against the limits of this reader and the input which is left
+     *
+     * @param listType   The type of the elements
+     * @param listLength The declared amount of elements
+     * @return The capacity the list should be created with
+     * @throws IOException                     Thrown in case the header is invalid
+     * @throws AllocationLimitReachedException Thrown in case the list exceeds the limits
+     */
+    protected int checkListLength( byte listType, int listLength ) throws IOException, AllocationLimitReachedException {
+        return this.budget.checkList( listType, listLength, this.remaining, this.useVarint );
+    }
+
+    /**
+     * Enters a compound or list, has to be paired with {@link #leaveNested()}
+     *
+     * @throws AllocationLimitReachedException Thrown in case the maximum depth has been exceeded
+     */
+    protected void enterNested() throws AllocationLimitReachedException {
+        this.budget.enter();
+    }
+
+    protected void leaveNested() {
+        this.budget.leave();
+    }
+
+    /**
+     * Forgets about the nesting of a parse which has been aborted
+     */
+    void resetNesting() {
+        this.budget.reset();
+    }
+
     protected void expectInput( int remaining, String message ) throws IOException, AllocationLimitReachedException {
-        this.expectInput( remaining, message, true );
+        this.expectInput( remaining, message, false );
     }
 
     protected void expectInput( int remaining, String message, boolean alterAllocationLimit ) throws IOException, AllocationLimitReachedException {
@@ -146,19 +396,67 @@ public class NBTStreamReaderNoBuffer {
             this.alterAllocationLimit( remaining );
         }
 
-        if ( this.in.available() < remaining ) {
+        // Only declared input can be checked up front, everything else fails once the input ends
+        if ( this.remaining != -1 && this.remaining < remaining ) {
             throw new IOException( message );
         }
     }
 
-    void alterAllocationLimit( int remaining ) throws AllocationLimitReachedException {
-        if ( this.allocateLimit != -1 ) {
-            if ( this.allocateLimit - remaining < 0 ) {
-                throw new AllocationLimitReachedException( "Could not allocate more bytes due to reaching the set limit" );
-            } else {
-                this.allocateLimit -= remaining;
+    private byte readByte( String message ) throws IOException {
+        int value;
+        if ( this.dataIn != null ) {
+            try {
+                value = this.dataIn.readByte();
+            } catch ( EOFException e ) {
+                throw new IOException( message, e );
+            }
+        } else {
+            value = this.in.read();
+            if ( value == -1 ) {
+                throw new IOException( message );
             }
         }
+
+        this.consumed( 1 );
+        return (byte) value;
+    }
+
+    private void readFully( byte[] data, int length, String message ) throws IOException {
+        this.readFully( data, 0, length, message );
+    }
+
+    private void readFully( byte[] data, int offset, int length, String message ) throws IOException {
+        if ( this.dataIn != null ) {
+            try {
+                this.dataIn.readFully( data, offset, length );
+            } catch ( EOFException e ) {
+                throw new IOException( message, e );
+            }
+        } else {
+            // Streams may return less than requested, only the end of the stream stops reading
+            int read = 0;
+            while ( read < length ) {
+                int chunk = this.in.read( data, offset + read, length - read );
+                if ( chunk == -1 ) {
+                    throw new IOException( message );
+                }
+
+                read += chunk;
+            }
+        }
+
+        this.consumed( length );
+    }
+
+    private void consumed( int bytes ) {
+        this.consumed += bytes;
+        if ( this.remaining != -1 ) {
+            this.remaining -= bytes;
+        }
+    }
+
+    void alterAllocationLimit( long remaining ) throws AllocationLimitReachedException {
+        this.budget.charge( remaining );
     }
 
 }
@@ -31,11 +31,25 @@ import lombok.ToString;
 import java.io.*;
 import java.nio.ByteOrder;
 import java.util.*;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
 
 /**
  * Represents a compound tag that may hold several children tags.
+ * <p>
+ * <b>Copy-on-write clones:</b> {@link #copyOnWriteClone(String)} shares all values with the source compound until
+ * either side gets them through one of the get methods. Lists, arrays and compounds which have been taken out of the
+ * source <i>before</i> cloning are shared with the clone as well and must not be modified afterwards, get them again
+ * after cloning instead. Use {@link #getListView(String)} to read lists without copying them.
+ * <p>
+ * <b>Threads:</b> Compounds may not be used by multiple threads at once, not even when all of them only read.
+ * Cloning a compound or reading compounds out of a list view marks them as shared with the clone, the get methods
+ * of a shared compound replace its map and values with copies, and get methods as well as {@link #contentHash()}
+ * update the cached hash. Hand {@link #freeze() frozen} compounds or {@link ConcurrentNBTTagCompound}s to
+ * concurrent readers instead, neither of them is changed by cloning or reading.
  *
  * @author BlackyPaw
  * @version 1.0
@@ -61,8 +75,8 @@ public class NBTTagCompound implements Cloneable {
 
     /**
      * Reads the NBTTagCompound from the specified input stream. In case compressed is set to true
-     * the given input stream will be wrapped in a deflating stream. The implementation is guaranteed
-     * to wrap the entire stream in a BufferedInputStream so that no unbuffered I/O will ever occur.
+     * the given input stream will be wrapped in a deflating stream. The input is read in large chunks
+     * by a pooled reader (see {@link NBTPool#getDefault()}) so that no unbuffered I/O will ever occur.
      * Therefore it is not necessary to wrap the input in a BufferedInputStream manually. The input
      * stream is closed automatically.
      *
@@ -73,11 +87,17 @@ public class NBTTagCompound implements Cloneable {
      */
     public static NBTTagCompound readFrom( InputStream in, boolean compressed, ByteOrder byteOrder ) throws IOException, AllocationLimitReachedException {
         InputStream input = null;
+        NBTReader reader = null;
         try {
-            input = new BufferedInputStream( ( compressed ? new GZIPInputStream( in ) : in ) );
-            NBTReader reader = new NBTReader( input, byteOrder );
+            input = compressed ? new GZIPInputStream( in ) : in;
+            reader = NBTPool.getDefault().borrowReader( input, byteOrder );
+            reader.setCompressed( compressed );
             return reader.parse();
         } finally {
+            if ( reader != null ) {
+                NBTPool.getDefault().release( reader );
+            }
+
             if ( input != null ) {
                 try {
                     input.close();
@@ -88,9 +108,43 @@ public class NBTTagCompound implements Cloneable {
         }
     }
 
+    /**
+     * Reads the NBTTagCompound from a zlib stream which has been compressed with a preset dictionary, see
+     * {@link #writeTo(OutputStream, NBTDictionary, ByteOrder)}. The dictionary is picked by the id the stream carries,
+     * streams compressed without a dictionary are read as well. The input stream is closed automatically.
+     *
+     * @param in           The input stream to read from
+     * @param byteOrder    The byteorder of the encoded data
+     * @param dictionaries The dictionaries the input may have been compressed with
+     * @return The compound tag that was read from the input source
+     * @throws IOException Thrown in case an I/O error occurs, invalid NBT data is encountered or the input needs an
+     *                     unknown dictionary
+     */
+    public static NBTTagCompound readFrom( InputStream in, ByteOrder byteOrder, NBTDictionary... dictionaries ) throws IOException, AllocationLimitReachedException {
+        Inflater inflater = new Inflater();
+        try {
+            return readFrom( NBTDictionary.inflating( in, inflater, dictionaries ), false, byteOrder );
+        } finally {
+            inflater.end();
+        }
+    }
+
     private String name;
     private Map<String, Object> children;
 
+    @ToString.Exclude
+    private transient long contentHash;
+    @ToString.Exclude
+    private transient boolean contentHashValid;
+    @ToString.Exclude
+    private transient NBTTagCompound hashParent;
+    @ToString.Exclude
+    private transient volatile boolean frozen;
+    @ToString.Exclude
+    private transient boolean sharedChildren;
+    @ToString.Exclude
+    private transient Set<String> borrowed;
+
     /**
      * Constructs a new NBTTagCompound given its name. If no name is specified, i.e. name == null,
      * the NBTTagCompound is considered to be member of a list.
@@ -119,7 +173,7 @@ public class NBTTagCompound implements Cloneable {
      * @param value The value to be stored
      */
     public void addValue( String name, byte value ) {
-        this.children.put( name, value );
+        this.set( name, value );
     }
 
     /**
@@ -129,7 +183,7 @@ public class NBTTagCompound implements Cloneable {
      * @param value The value to be stored
      */
     public void addValue( String name, short value ) {
-        this.children.put( name, value );
+        this.set( name, value );
     }
 
     /**
@@ -139,7 +193,7 @@ public class NBTTagCompound implements Cloneable {
      * @param value The value to be stored
      */
     public void addValue( String name, int value ) {
-        this.children.put( name, value );
+        this.set( name, value );
     }
 
     /**
@@ -149,7 +203,7 @@ public class NBTTagCompound implements Cloneable {
      * @param value The value to be stored
      */
     public void addValue( String name, long value ) {
-        this.children.put( name, value );
+        this.set( name, value );
     }
 
     /**
@@ -159,7 +213,7 @@ public class NBTTagCompound implements Cloneable {
      * @param value The value to be stored
      */
     public void addValue( String name, float value ) {
-        this.children.put( name, value );
+        this.set( name, value );
     }
 
     /**
@@ -169,7 +223,7 @@ public class NBTTagCompound implements Cloneable {
      * @param value The value to be stored
      */
     public void addValue( String name, byte[] value ) {
-        this.children.put( name, value );
+        this.set( name, value );
     }
 
     /**
@@ -179,7 +233,7 @@ public class NBTTagCompound implements Cloneable {
      * @param value The value to be stored
      */
     public void addValue( String name, String value ) {
-        this.children.put( name, value );
+        this.set( name, value );
     }
 
     /**
@@ -189,7 +243,7 @@ public class NBTTagCompound implements Cloneable {
      * @param value The value to be stored
      */
     public void addValue( String name, double value ) {
-        this.children.put( name, value );
+        this.set( name, value );
     }
 
     /**
@@ -199,7 +253,7 @@ public class NBTTagCompound implements Cloneable {
      * @param value The value to be stored
      */
     public void addValue( String name, int[] value ) {
-        this.children.put( name, value );
+        this.set( name, value );
     }
 
     /**
@@ -209,7 +263,7 @@ public class NBTTagCompound implements Cloneable {
      * @param value The value to be stored
      */
     public void addValue( String name, List value ) {
-        this.children.put( name, value );
+        this.set( name, value );
     }
 
     /**
@@ -222,7 +276,7 @@ public class NBTTagCompound implements Cloneable {
         if ( !name.equals( value.getName() ) ) {
             throw new AssertionError( "Failed to add NBTTagCompound with name '" + value.getName() + "' given name '" + name + "'" );
         }
-        this.children.put( name, value );
+        this.set( name, value );
     }
 
     /**
@@ -233,7 +287,7 @@ public class NBTTagCompound implements Cloneable {
      * @param tag The tag to be added as a child
      */
     public void addChild( NBTTagCompound tag ) {
-        this.children.put( tag.getName(), tag );
+        this.set( tag.getName(), tag );
     }
 
     /**
@@ -245,7 +299,8 @@ public class NBTTagCompound implements Cloneable {
      * @return The value of the attribute
      */
     public Byte getByte( String name, Byte defaultValue ) {
-        return ( this.children.containsKey( name ) ? (Byte) this.children.get( name ) : defaultValue );
+        Object value = this.children.get( name );
+        return value != null ? (Byte) value : defaultValue;
     }
 
     /**
@@ -257,7 +312,8 @@ public class NBTTagCompound implements Cloneable {
      * @return The value of the attribute
      */
     public Short getShort( String name, Short defaultValue ) {
-        return ( this.children.containsKey( name ) ? (Short) this.children.get( name ) : defaultValue );
+        Object value = this.children.get( name );
+        return value != null ? (Short) value : defaultValue;
     }
 
     /**
@@ -269,7 +325,8 @@ public class NBTTagCompound implements Cloneable {
      * @return The value of the attribute
      */
     public Integer getInteger( String name, Integer defaultValue ) {
-        return ( this.children.containsKey( name ) ? (Integer) this.children.get( name ) : defaultValue );
+        Object value = this.children.get( name );
+        return value != null ? (Integer) value : defaultValue;
     }
 
     /**
@@ -281,7 +338,8 @@ public class NBTTagCompound implements Cloneable {
      * @return The value of the attribute
      */
     public Long getLong( String name, Long defaultValue ) {
-        return ( this.children.containsKey( name ) ? (Long) this.children.get( name ) : defaultValue );
+        Object value = this.children.get( name );
+        return value != null ? (Long) value : defaultValue;
     }
 
     /**
@@ -293,7 +351,8 @@ public class NBTTagCompound implements Cloneable {
      * @return The value of the attribute
      */
     public Float getFloat( String name, Float defaultValue ) {
-        return ( this.children.containsKey( name ) ? (Float) this.children.get( name ) : defaultValue );
+        Object value = this.children.get( name );
+        return value != null ? (Float) value : defaultValue;
     }
 
     /**
@@ -305,7 +364,8 @@ public class NBTTagCompound implements Cloneable {
      * @return The value of the attribute
      */
     public Double getDouble( String name, Double defaultValue ) {
-        return ( this.children.containsKey( name ) ? (Double) this.children.get( name ) : defaultValue );
+        Object value = this.children.get( name );
+        return value != null ? (Double) value : defaultValue;
     }
 
     /**
@@ -317,7 +377,8 @@ public class NBTTagCompound implements Cloneable {
      * @return The value of the attribute
      */
     public String getString( String name, String defaultValue ) {
-        return ( this.children.containsKey( name ) ? (String) this.children.get( name ) : defaultValue );
+        Object value = this.children.get( name );
+        return value != null ? (String) value : defaultValue;
     }
 
     /**
@@ -329,7 +390,10 @@ public class NBTTagCompound implements Cloneable {
      * @return The value of the attribute
      */
     public byte[] getByteArray( String name, byte[] defaultValue ) {
-        return ( this.children.containsKey( name ) ? (byte[]) this.children.get( name ) : defaultValue );
+        this.own( name );
+        Object value = this.children.get( name );
+        this.handOut( value );
+        return value != null ? (byte[]) value : defaultValue;
     }
 
     /**
@@ -341,7 +405,10 @@ public class NBTTagCompound implements Cloneable {
      * @return The value of the attribute
      */
     public int[] getIntegerArray( String name, int[] defaultValue ) {
-        return ( this.children.containsKey( name ) ? (int[]) this.children.get( name ) : defaultValue );
+        this.own( name );
+        Object value = this.children.get( name );
+        this.handOut( value );
+        return value != null ? (int[]) value : defaultValue;
     }
 
     /**
@@ -355,8 +422,11 @@ public class NBTTagCompound implements Cloneable {
      */
     @SuppressWarnings( "unchecked" )
     public List<Object> getList( String name, boolean insert ) {
-        if ( this.children.containsKey( name ) ) {
-            return (List<Object>) this.children.get( name );
+        this.own( name );
+        Object value = this.children.get( name );
+        if ( value != null ) {
+            this.handOut( value );
+            return (List<Object>) value;
         }
 
         if ( insert ) {
@@ -368,6 +438,20 @@ public class NBTTagCompound implements Cloneable {
         }
     }
 
+    /**
+     * Gets a read only view of the list stored under the specified name. Unlike {@link #getList(String, boolean)}
+     * this never copies a list shared with a copy-on-write clone. Compounds in the view are handed out as
+     * copy-on-write clones, lists as views and arrays as copies, so modifying them never reaches this compound.
+     * Handing out a clone marks the compound in the list as shared, see {@link #copyOnWriteClone(String)}.
+     *
+     * @param name The name of the list
+     * @return The read only view or null if there is no list with the specified name
+     */
+    public List<Object> getListView( String name ) {
+        Object value = this.children.get( name );
+        return value instanceof List ? new ListView( (List<?>) value ) : null;
+    }
+
     /**
      * Gets the compound stored under the specified name. In case the compound does not exist and insert is set to
      * true a new and empty compound with the specified name will be created. If insert is set to false null
@@ -378,8 +462,10 @@ public class NBTTagCompound implements Cloneable {
      * @return The compound or null
      */
     public NBTTagCompound getCompound( String name, boolean insert ) {
-        if ( this.children.containsKey( name ) ) {
-            return (NBTTagCompound) this.children.get( name );
+        this.own( name );
+        Object value = this.children.get( name );
+        if ( value != null ) {
+            return (NBTTagCompound) value;
         }
 
         if ( insert ) {
@@ -408,10 +494,10 @@ public class NBTTagCompound implements Cloneable {
 
     /**
      * Writes the NBTTagCompound to the specified output stream. In case compressed is set to true
-     * the given output stream will be wrapped in an inflating stream. The implementation is guaranteed
-     * to wrap the entire stream in a BufferedOutputStream so that no unbuffered I/O will ever occur.
-     * Therefore it is not necessary to wrap the output in a BufferedOutputStream manually. The output
-     * stream is closed automatically.
+     * the given output stream will be wrapped in an inflating stream. The output is written in large
+     * chunks by a pooled writer (see {@link NBTPool#getDefault()}) so that no unbuffered I/O will ever
+     * occur. Therefore it is not necessary to wrap the output in a BufferedOutputStream manually. The
+     * output stream is closed automatically.
      *
      * @param out        The output stream to write to
      * @param compressed Whether or not the output is compressed
@@ -420,11 +506,17 @@ public class NBTTagCompound implements Cloneable {
      */
     public void writeTo( OutputStream out, boolean compressed, ByteOrder byteOrder ) throws IOException {
         OutputStream output = null;
+        NBTWriter writer = null;
         try {
-            output = new BufferedOutputStream( ( compressed ? new GZIPOutputStream( out ) : out ) );
-            NBTWriter writer = new NBTWriter( output, byteOrder );
+            output = compressed ? new GZIPOutputStream( out ) : out;
+            writer = NBTPool.getDefault().borrowWriter( output, byteOrder );
+            writer.setCompressed( compressed );
             writer.write( this );
         } finally {
+            if ( writer != null ) {
+                NBTPool.getDefault().release( writer );
+            }
+
             if ( output != null ) {
                 try {
                     output.close();
@@ -436,11 +528,43 @@ public class NBTTagCompound implements Cloneable {
     }
 
     /**
-     * Returns an iterable set of entries this tag compound holds.
+     * Writes the NBTTagCompound to the specified output stream as zlib stream compressed with a preset dictionary.
+     * Small compounds compress a lot better this way than with {@link #writeTo(OutputStream, boolean, ByteOrder)},
+     * readers need the same dictionary though. The output stream is closed automatically.
+     *
+     * @param out        The output stream to write to
+     * @param dictionary The dictionary to compress with
+     * @param byteOrder  The byteorder to use
+     * @throws IOException Thrown in case an I/O error occurs or invalid NBT data is encountered
+     */
+    public void writeTo( OutputStream out, NBTDictionary dictionary, ByteOrder byteOrder ) throws IOException {
+        Deflater deflater = dictionary.newDeflater();
+        try {
+            this.writeTo( new DeflaterOutputStream( out, deflater ), false, byteOrder );
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Returns an iterable set of entries this tag compound holds. The set is read only for
+     * frozen compounds.
      *
      * @return The set of entries the compound holds
      */
     public Set<Map.Entry<String, Object>> entrySet() {
+        this.ownAll();
+        this.handOut( this.children );
+        return this.children.entrySet();
+    }
+
+    /**
+     * Returns the entries of this compound without taking ownership of values shared with copy-on-write
+     * clones. Only to be used by code which does not modify the entries or their values.
+     *
+     * @return The set of entries the compound holds
+     */
+    Set<Map.Entry<String, Object>> entries() {
         return this.children.entrySet();
     }
 
@@ -461,7 +585,15 @@ public class NBTTagCompound implements Cloneable {
      * @return The object which has been removed or null when nothing has been removed
      */
     public Object remove( String key ) {
-        return this.children.remove( key );
+        this.ensureMutable();
+        this.release( key );
+        Object removed = this.children.remove( key );
+        if ( removed != null ) {
+            this.unlink( removed );
+            this.invalidateContentHash();
+        }
+
+        return removed;
     }
 
     /**
@@ -473,9 +605,214 @@ public class NBTTagCompound implements Cloneable {
         return this.children.size();
     }
 
+    /**
+     * Computes a 64 bit hash of the content of this compound. The hash is stable across JVMs and runs, it does
+     * not depend on the order of the entries and the name of this compound is not part of it. Arrays and lists
+     * are hashed by their elements, so compounds which are {@link #contentEquals(NBTTagCompound) equal} always
+     * share the same hash.
+     * <p>
+     * The hash is cached until this compound or one of the compounds below it is modified through their add and
+     * remove methods or hands out something which can be modified in place, like the arrays and lists of
+     * {@link #getByteArray(String, byte[])}, {@link #getIntegerArray(String, int[])},
+     * {@link #getList(String, boolean)} or the set of {@link #entrySet()}. This invalidates the cached hashes upwards
+     * so getting a cached hash is constant time. References to arrays and lists have to be fetched again after a
+     * hash has been computed, changes made through a reference fetched before are not seen by the cached hash.
+     * Compounds which are held by more than one parent and concurrent compounds are hashed on every call since
+     * their parents can't be notified.
+     *
+     * @return The content hash of this compound
+     */
+    public long contentHash() {
+        if ( this.frozen || this.contentHashValid ) {
+            return this.contentHash;
+        }
+
+        // Cleared by children which can't tell this compound about their modifications
+        this.contentHashValid = !this.isConcurrent();
+        long hash = hashCompound( this );
+        this.contentHash = hash;
+        return hash;
+    }
+
+    /**
+     * Compares the content of this compound with the content of the given one. Arrays and lists are compared
+     * by their elements, floating point values by their bits and the names of both compounds are ignored.
+     * The cached {@link #contentHash()} of both compounds is compared first so that most unequal compounds
+     * are rejected without walking them.
+     *
+     * @param other The compound to compare with
+     * @return Whether or not both compounds hold the same content
+     */
+    public boolean contentEquals( NBTTagCompound other ) {
+        if ( this == other ) {
+            return true;
+        }
+
+        if ( other == null || this.children.size() != other.children.size() || this.contentHash() != other.contentHash() ) {
+            return false;
+        }
+
+        for ( Map.Entry<String, Object> entry : this.children.entrySet() ) {
+            if ( !valueEquals( entry.getValue(), other.children.get( entry.getKey() ) ) ) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static long hashCompound( NBTTagCompound compound ) {
+        // Entries are summed up so the result does not depend on iteration order
+        long hash = compound.children.size();
+        for ( Map.Entry<String, Object> entry : compound.children.entrySet() ) {
+            hash += mix( hashString( entry.getKey() ) * 31 + hashValue( entry.getValue(), compound ) );
+        }
+
+        return mix( hash + NBTDefinitions.TAG_COMPOUND );
+    }
+
+    private static long hashValue( Object value, NBTTagCompound owner ) {
+        if ( value instanceof Byte ) {
+            return mix( NBTDefinitions.TAG_BYTE * 31L + (Byte) value );
+        } else if ( value instanceof Short ) {
+            return mix( NBTDefinitions.TAG_SHORT * 31L + (Short) value );
+        } else if ( value instanceof Integer ) {
+            return mix( NBTDefinitions.TAG_INT * 31L + (Integer) value );
+        } else if ( value instanceof Long ) {
+            return mix( NBTDefinitions.TAG_LONG * 31L + (Long) value );
+        } else if ( value instanceof Float ) {
+            return mix( NBTDefinitions.TAG_FLOAT * 31L + Float.floatToIntBits( (Float) value ) );
+        } else if ( value instanceof Double ) {
+            return mix( NBTDefinitions.TAG_DOUBLE * 31L + Double.doubleToLongBits( (Double) value ) );
+        } else if ( value instanceof String ) {
+            return mix( NBTDefinitions.TAG_STRING * 31L + hashString( (String) value ) );
+        } else if ( value instanceof byte[] ) {
+            byte[] data = (byte[]) value;
+            long hash = NBTDefinitions.TAG_BYTE_ARRAY;
+            for ( byte b : data ) {
+                hash = hash * 31 + b;
+            }
+
+            return mix( hash + data.length );
+        } else if ( value instanceof int[] ) {
+            int[] data = (int[]) value;
+            long hash = NBTDefinitions.TAG_INT_ARRAY;
+            for ( int i : data ) {
+                hash = hash * 31 + i;
+            }
+
+            return mix( hash + data.length );
+        } else if ( value instanceof List ) {
+            List<?> list = (List<?>) value;
+            long hash = NBTDefinitions.TAG_LIST;
+            for ( int i = 0; i < list.size(); i++ ) {
+                hash = hash * 31 + hashValue( list.get( i ), owner );
+            }
+
+            return mix( hash + list.size() );
+        } else if ( value instanceof NBTTagCompound ) {
+            NBTTagCompound child = (NBTTagCompound) value;
+            long hash = child.contentHash();
+            owner.dependOn( child );
+            return hash;
+        }
+
+        return 0;
+    }
+
+    private void dependOn( NBTTagCompound child ) {
+        if ( child.frozen ) {
+            return;
+        }
+
+        // Only one parent gets notified about modifications, the others can't cache
+        if ( child.contentHashValid && ( child.hashParent == null || child.hashParent == this ) ) {
+            child.hashParent = this;
+        } else {
+            this.contentHashValid = false;
+        }
+    }
+
+    private void handOut( Object value ) {
+        // The caller may change the value in place, which this compound can't see
+        if ( !this.frozen && ( value instanceof List || value instanceof Map || value instanceof byte[] || value instanceof int[] ) ) {
+            this.invalidateContentHash();
+        }
+    }
+
+    private void invalidateContentHash() {
+        // A valid hash is only cached above compounds which have a valid one themselves
+        NBTTagCompound compound = this;
+        while ( compound != null && compound.contentHashValid ) {
+            compound.contentHashValid = false;
+            compound = compound.hashParent;
+        }
+    }
+
+    private void unlink( Object value ) {
+        if ( value instanceof NBTTagCompound && ( (NBTTagCompound) value ).hashParent == this ) {
+            ( (NBTTagCompound) value ).hashParent = null;
+        }
+    }
+
+    private static long hashString( String value ) {
+        long hash = 0;
+        for ( int i = 0; i < value.length(); i++ ) {
+            hash = hash * 31 + value.charAt( i );
+        }
+
+        return hash;
+    }
+
+    private static long mix( long hash ) {
+        // Finalizer of MurmurHash3, spreads every input bit over the whole result
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static boolean valueEquals( Object value, Object other ) {
+        if ( value == other ) {
+            return true;
+        }
+
+        if ( other == null || NBTDefinitions.getTagType( value ) != NBTDefinitions.getTagType( other ) ) {
+            return false;
+        }
+
+        if ( value instanceof byte[] ) {
+            return Arrays.equals( (byte[]) value, (byte[]) other );
+        } else if ( value instanceof int[] ) {
+            return Arrays.equals( (int[]) value, (int[]) other );
+        } else if ( value instanceof NBTTagCompound ) {
+            return ( (NBTTagCompound) value ).contentEquals( (NBTTagCompound) other );
+        } else if ( value instanceof List ) {
+            List<?> list = (List<?>) value;
+            List<?> otherList = (List<?>) other;
+            if ( list.size() != otherList.size() ) {
+                return false;
+            }
+
+            for ( int i = 0; i < list.size(); i++ ) {
+                if ( !valueEquals( list.get( i ), otherList.get( i ) ) ) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        // Boxed primitives compare floating point values by their bits, just like the hash does
+        return value.equals( other );
+    }
+
     /**
      * Clones the compound and all of its non-immutable elements recursively. This operation
-     * may be expensive so use it only if absolutely necessary.
+     * may be expensive so use it only if absolutely necessary. The clone of a frozen compound
+     * is not frozen.
      *
      * @param newName New name of the root compound
      * @return The cloned tag compound.
@@ -486,61 +823,361 @@ public class NBTTagCompound implements Cloneable {
         return compound;
     }
 
+    /**
+     * Clones the compound in constant time. The clone shares all children with this compound, nested compounds,
+     * lists and arrays are only copied once either side modifies them or hands them out through one of the get
+     * methods, tracked for every compound on its own. Cloning itself never copies anything.
+     * <p>
+     * Values of this compound which have been obtained before cloning are shared with the clone and must not
+     * be modified afterwards, get them again from this compound instead. Nothing detects such a modification, it
+     * silently shows up in both compounds. Use {@link #deepClone(String)} when this can't be guaranteed. Getting a
+     * list through {@link #getList(String, boolean)} copies it even if it is only read, {@link #getListView(String)}
+     * reads it without copying.
+     * <p>
+     * Unless it is frozen or concurrent this compound is marked as shared as well, its next get methods copy what
+     * they hand out, so neither cloning nor reading it afterwards may happen while another thread reads it.
+     *
+     * @param newName New name of the root compound
+     * @return The cloned tag compound.
+     */
+    public NBTTagCompound copyOnWriteClone( String newName ) {
+        NBTTagCompound compound = this.copyOnWriteClone0();
+        compound.name = newName;
+        return compound;
+    }
+
+    private NBTTagCompound copyOnWriteClone0() {
+        // Concurrent compounds can't track sharing safely, they are copied right away
+        if ( this.isConcurrent() ) {
+            return this.deepClone0();
+        }
+
+        NBTTagCompound compound = new NBTTagCompound();
+        compound.name = this.name;
+        compound.children = this.children;
+        compound.sharedChildren = true;
+
+        // Frozen compounds never change, there is nothing they need to copy later on. Shared children are copied
+        // before anyone modifies them, so the cached hash stays valid for the clone until it owns one of them.
+        if ( !this.frozen ) {
+            this.sharedChildren = true;
+            compound.contentHash = this.contentHash;
+            compound.contentHashValid = this.contentHashValid;
+        }
+
+        return compound;
+    }
+
+    private static Object copyOnWriteValue( Object value ) {
+        if ( value instanceof NBTTagCompound ) {
+            return ( (NBTTagCompound) value ).copyOnWriteClone0();
+        } else if ( value instanceof List ) {
+            List<?> list = (List<?>) value;
+            List<Object> output = new ArrayList<>( list.size() );
+            for ( int i = 0; i < list.size(); i++ ) {
+                output.add( copyOnWriteValue( list.get( i ) ) );
+            }
+
+            return output;
+        } else if ( value instanceof byte[] ) {
+            byte[] data = (byte[]) value;
+            return Arrays.copyOf( data, data.length );
+        } else if ( value instanceof int[] ) {
+            int[] data = (int[]) value;
+            return Arrays.copyOf( data, data.length );
+        }
+
+        return value;
+    }
+
+    private void unshare() {
+        if ( !this.sharedChildren ) {
+            return;
+        }
+
+        // Copy the map itself, its mutable values stay shared until they are needed
+        this.children = new HashMap<>( this.children );
+        this.sharedChildren = false;
+        for ( Map.Entry<String, Object> entry : this.children.entrySet() ) {
+            Object value = entry.getValue();
+            if ( value instanceof NBTTagCompound || value instanceof List || value instanceof byte[] || value instanceof int[] ) {
+                if ( this.borrowed == null ) {
+                    this.borrowed = new HashSet<>();
+                }
+
+                this.borrowed.add( entry.getKey() );
+            }
+        }
+    }
+
+    private void own( String key ) {
+        if ( !this.sharedChildren && this.borrowed == null ) {
+            return;
+        }
+
+        this.unshare();
+        if ( this.borrowed != null && this.borrowed.remove( key ) ) {
+            // The copy does not know this compound yet, it couldn't tell about its modifications
+            this.children.put( key, copyOnWriteValue( this.children.get( key ) ) );
+            this.invalidateContentHash();
+            if ( this.borrowed.isEmpty() ) {
+                this.borrowed = null;
+            }
+        }
+    }
+
+    private void ownAll() {
+        if ( !this.sharedChildren && this.borrowed == null ) {
+            return;
+        }
+
+        this.unshare();
+        if ( this.borrowed != null ) {
+            for ( String key : this.borrowed ) {
+                this.children.put( key, copyOnWriteValue( this.children.get( key ) ) );
+            }
+
+            this.borrowed = null;
+            this.invalidateContentHash();
+        }
+    }
+
+    private void release( String key ) {
+        // The value under this key gets replaced, no need to copy it anymore
+        this.unshare();
+        if ( this.borrowed != null && this.borrowed.remove( key ) && this.borrowed.isEmpty() ) {
+            this.borrowed = null;
+        }
+    }
+
     private NBTTagCompound deepClone0() {
         NBTTagCompound compound = new NBTTagCompound();
         compound.name = this.name;
         compound.children = new HashMap<>( this.children.size() );
         for ( Map.Entry<String, Object> child : this.children.entrySet() ) {
-            Object value = child.getValue();
-            if ( value instanceof byte[] ) {
-                byte[] data = (byte[]) value;
-                compound.addValue( child.getKey(), Arrays.copyOf( data, data.length ) );
-            } else if ( value instanceof List ) {
-                compound.addValue( child.getKey(), this.deepCloneList( (List) value ) );
-            } else if ( value instanceof int[] ) {
-                int[] data = (int[]) value;
-                compound.addValue( child.getKey(), Arrays.copyOf( data, data.length ) );
-            } else if ( value instanceof NBTTagCompound ) {
-                compound.addChild( ( (NBTTagCompound) value ).deepClone0() );
-            } else {
-                // Other supported types are immutable:
-                compound.children.put( child.getKey(), child.getValue() );
-            }
+            compound.children.put( child.getKey(), deepCloneValue( child.getValue() ) );
         }
         return compound;
     }
 
-    private List deepCloneList( List input ) {
+    private static List deepCloneList( List input ) {
         List output = new ArrayList( input.size() );
         for ( Object value : input ) {
-            if ( value instanceof byte[] ) {
-                byte[] data = (byte[]) value;
-                output.add( Arrays.copyOf( data, data.length ) );
-            } else if ( value instanceof List ) {
-                output.add( this.deepCloneList( (List) value ) );
-            } else if ( value instanceof int[] ) {
-                int[] data = (int[]) value;
-                output.add( Arrays.copyOf( data, data.length ) );
-            } else if ( value instanceof NBTTagCompound ) {
-                output.add( ( (NBTTagCompound) value ).deepClone0() );
-            } else {
-                // Other supported types are immutable:
-                output.add( value );
-            }
+            output.add( deepCloneValue( value ) );
         }
         return output;
     }
 
+    static Object deepCloneValue( Object value ) {
+        if ( value instanceof byte[] ) {
+            byte[] data = (byte[]) value;
+            return Arrays.copyOf( data, data.length );
+        } else if ( value instanceof List ) {
+            return deepCloneList( (List) value );
+        } else if ( value instanceof int[] ) {
+            int[] data = (int[]) value;
+            return Arrays.copyOf( data, data.length );
+        } else if ( value instanceof NBTTagCompound ) {
+            return ( (NBTTagCompound) value ).deepClone0();
+        } else {
+            // Other supported types are immutable:
+            return value;
+        }
+    }
+
+    /**
+     * Gets the raw value stored under the given name, regardless of its type.
+     *
+     * @param key The name of the value
+     * @return The value or null
+     */
+    Object get( String key ) {
+        return this.children.get( key );
+    }
+
+    /**
+     * Gets the raw value stored under the given name for modification. Values shared with copy-on-write
+     * clones are copied first.
+     *
+     * @param key The name of the value
+     * @return The value or null
+     */
+    Object getOwned( String key ) {
+        this.own( key );
+        return this.children.get( key );
+    }
+
+    /**
+     * Stores a raw value under the given name. The value has to be one of the supported NBT types.
+     *
+     * @param key   The name of the value
+     * @param value The value to be stored
+     */
+    void set( String key, Object value ) {
+        this.ensureMutable();
+        this.release( key );
+        this.unlink( this.children.put( key, value ) );
+        this.invalidateContentHash();
+    }
+
     NBTTagCompound() {
         super();
         this.name = null;
         this.children = new HashMap<>();
     }
 
+    NBTTagCompound( String name, Map<String, Object> children ) {
+        super();
+        this.name = name;
+        this.children = children;
+    }
+
     /**
      * @deprecated For internal use only!
      */
     void setName( String name ) {
+        this.ensureMutable();
         this.name = name;
     }
+
+    /**
+     * Checks whether or not this compound has been frozen. See {@link #freeze()} for details.
+     *
+     * @return Whether or not this compound is frozen
+     */
+    public boolean isFrozen() {
+        return this.frozen;
+    }
+
+    /**
+     * Freezes this compound and everything below it in place. Afterwards all add, remove and insert methods
+     * throw an {@link UnsupportedOperationException}, lists below this compound are replaced with immutable ones
+     * and {@link #entrySet()} becomes read only. Byte and int arrays can't be made read only in Java, they are
+     * still shared as they are and must not be modified once frozen.
+     * <p>
+     * Frozen compounds never change again, so they can be shared with any number of threads without locking or
+     * cloning as long as they are handed over safely (through a concurrent queue, an executor, a volatile field
+     * and the like). Their {@link #contentHash()} is computed once while freezing.
+     *
+     * @return This compound
+     */
+    public NBTTagCompound freeze() {
+        this.freeze0();
+        return this;
+    }
+
+    /**
+     * Gets a modifiable version of this compound. Compounds which are not frozen are returned as they are, frozen
+     * ones get copied through {@link #mutableCopy()}.
+     *
+     * @return This compound if it is not frozen, a modifiable copy otherwise
+     */
+    public NBTTagCompound thaw() {
+        return this.frozen ? this.mutableCopy() : this;
+    }
+
+    /**
+     * Creates a deep and modifiable copy of this compound which keeps its name. The copy is never frozen, no
+     * matter if this compound is.
+     *
+     * @return The modifiable copy
+     */
+    public NBTTagCompound mutableCopy() {
+        return this.deepClone( this.name );
+    }
+
+    /**
+     * Freezes this compound in place, see {@link #freeze()}. The content hash is computed before the compound is
+     * marked as frozen so that it never has to be written again once the compound is shared.
+     */
+    void freeze0() {
+        if ( this.frozen ) {
+            return;
+        }
+
+        // Freezing works in place, values shared with copy-on-write clones must be owned first
+        this.unshare();
+        if ( this.borrowed != null ) {
+            for ( String key : this.borrowed ) {
+                Object value = this.children.get( key );
+                if ( value instanceof NBTTagCompound || value instanceof List ) {
+                    this.children.put( key, copyOnWriteValue( value ) );
+                }
+            }
+
+            // Arrays are never written by frozen compounds, the other side copies them before it changes them
+            this.borrowed = null;
+        }
+
+        for ( Map.Entry<String, Object> entry : this.children.entrySet() ) {
+            entry.setValue( freezeValue( entry.getValue() ) );
+        }
+
+        this.children = Collections.unmodifiableMap( this.children );
+        this.contentHash = hashCompound( this );
+        this.frozen = true;
+    }
+
+    private static Object freezeValue( Object value ) {
+        if ( value instanceof NBTTagCompound ) {
+            ( (NBTTagCompound) value ).freeze0();
+        } else if ( value instanceof List ) {
+            List<?> list = (List<?>) value;
+            Object[] elements = new Object[list.size()];
+            for ( int i = 0; i < elements.length; i++ ) {
+                elements[i] = freezeValue( list.get( i ) );
+            }
+
+            return List.of( elements );
+        }
+
+        return value;
+    }
+
+    /**
+     * Checks whether or not this compound may be accessed by multiple threads at once. Such compounds don't cache
+     * their content hash and are never shared by copy-on-write clones.
+     *
+     * @return Whether or not this is a concurrent compound
+     */
+    boolean isConcurrent() {
+        return false;
+    }
+
+    void ensureMutable() {
+        if ( this.frozen ) {
+            throw new UnsupportedOperationException( "NBTTagCompound '" + this.name + "' is frozen" );
+        }
+    }
+
+    private static final class ListView extends AbstractList<Object> implements RandomAccess {
+
+        private final List<?> list;
+
+        private ListView( List<?> list ) {
+            this.list = list;
+        }
+
+        @Override
+        public Object get( int index ) {
+            Object value = this.list.get( index );
+            if ( value instanceof NBTTagCompound ) {
+                NBTTagCompound compound = (NBTTagCompound) value;
+                return compound.frozen ? compound : compound.copyOnWriteClone0();
+            } else if ( value instanceof List ) {
+                return new ListView( (List<?>) value );
+            } else if ( value instanceof byte[] || value instanceof int[] ) {
+                return copyOnWriteValue( value );
+            }
+
+            return value;
+        }
+
+        @Override
+        public int size() {
+            return this.list.size();
+        }
+
+    }
+
 }
@@ -0,0 +1,897 @@
+package io.gomint.taglib;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Converts binary NBT data into text and back without building a tree of the data. Binary data is rendered while
+ * it is read, text is encoded while it is parsed. Both directions take a small, fixed amount of memory, except
+ * that text lists and arrays are kept in their binary form until they are closed since the binary format needs
+ * their length up front.
+ * <p>
+ * The text is either SNBT, the format used by Minecraft commands, or JSON. SNBT keeps the exact types of all values,
+ * JSON only knows numbers, so text which is read back gets the smallest fitting type (int, long or double) and
+ * arrays become lists. The name of the root compound is not part of the text, text is read back into a root with
+ * an empty name. Text input can be in either format, JSON is read like SNBT without type suffixes. Numbers in a
+ * list are widened to the widest type among its elements.
+ * <p>
+ * JSON has no literals for NaN and infinite numbers, they are rendered as NaN, Infinity and -Infinity like
+ * JavaScript and most lenient JSON parsers do.
+ *
+ * @author geNAZt
+ * @version 1.0
+ */
+public class NBTTranscoder {
+
+    private static final int TEXT_BUFFER_SIZE = 1024 * 8;
+
+    /**
+     * Formats binary data can be rendered to
+     */
+    public enum Format {
+        SNBT,
+        JSON
+    }
+
+    private final ByteOrder byteOrder;
+    private boolean useVarint;
+    private NBTNameTable nameTable;
+    private Format format = Format.SNBT;
+    private int maxDepth = AllocationBudget.DEFAULT_MAX_DEPTH;
+
+    /**
+     * Constructs a new transcoder for binary data in the given byteorder
+     *
+     * @param byteOrder The byteorder of the binary data
+     */
+    public NBTTranscoder( ByteOrder byteOrder ) {
+        this.byteOrder = byteOrder;
+    }
+
+    public void setUseVarint( boolean useVarint ) {
+        this.useVarint = useVarint;
+    }
+
+    /**
+     * Sets the table packed data is read with, see {@link NBTStreamReader#setNameTable(NBTNameTable)}
+     *
+     * @param nameTable The table of common names or null if there is none
+     */
+    public void setNameTable( NBTNameTable nameTable ) {
+        this.nameTable = nameTable;
+    }
+
+    /**
+     * Sets the format binary data is rendered to. The default is SNBT.
+     *
+     * @param format The format of rendered text
+     */
+    public void setFormat( Format format ) {
+        this.format = format;
+    }
+
+    /**
+     * Sets how deep compounds and lists may be nested, in binary data as well as in text. The default is
+     * {@value AllocationBudget#DEFAULT_MAX_DEPTH}, the same as for readers.
+     *
+     * @param maxDepth The maximum depth or -1 for no limit
+     */
+    public void setMaxDepth( int maxDepth ) {
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Renders the root compound the stream starts with. The stream is read in chunks and not closed, the writer is
+     * flushed but not closed.
+     *
+     * @param in  The stream to read binary data from
+     * @param out The writer to render the text to
+     * @throws IOException                     Thrown in case reading or writing failed or invalid NBT data is encountered
+     * @throws AllocationLimitReachedException Thrown in case the data is nested deeper than allowed
+     */
+    public void toText( InputStream in, Writer out ) throws IOException, AllocationLimitReachedException {
+        new BinarySource( in, out ).render();
+    }
+
+    /**
+     * Renders the root compound the remaining bytes of the buffer start with. The position of the buffer is not
+     * modified. The writer is flushed but not closed.
+     *
+     * @param in  The buffer to read binary data from
+     * @param out The writer to render the text to
+     * @throws IOException                     Thrown in case writing failed or invalid NBT data is encountered
+     * @throws AllocationLimitReachedException Thrown in case the data is nested deeper than allowed
+     */
+    public void toText( ByteBuffer in, Writer out ) throws IOException, AllocationLimitReachedException {
+        new BinarySource( in, out ).render();
+    }
+
+    /**
+     * Encodes the compound the text consists of. Nothing but whitespace may follow the compound. The reader is read
+     * in chunks and not closed, the stream is flushed but not closed.
+     *
+     * @param in  The reader to read text from
+     * @param out The stream to write binary data to
+     * @throws IOException Thrown in case reading or writing failed or the text is invalid
+     */
+    public void toBinary( Reader in, OutputStream out ) throws IOException {
+        NBTWriter writer = new NBTWriter( out, this.byteOrder );
+        writer.setUseVarint( this.useVarint );
+        writer.setMetrics( null );
+        new TextSource( in, writer ).encode();
+    }
+
+    /**
+     * Reads binary data through the primitives of {@link NBTStreamReader} and renders it
+     */
+    private final class BinarySource extends NBTStreamReader {
+
+        private final Writer out;
+        private final StringBuilder text = new StringBuilder( TEXT_BUFFER_SIZE );
+        private final boolean json = NBTTranscoder.this.format == Format.JSON;
+
+        private BinarySource( InputStream in, Writer out ) {
+            super( in, NBTTranscoder.this.byteOrder );
+            this.out = out;
+            this.configure();
+        }
+
+        private BinarySource( ByteBuffer in, Writer out ) {
+            super( in, NBTTranscoder.this.byteOrder );
+            this.out = out;
+            this.configure();
+        }
+
+        private void configure() {
+            this.setMetrics( null );
+            this.setUseVarint( NBTTranscoder.this.useVarint );
+            this.setNameTable( NBTTranscoder.this.nameTable );
+            this.setMaxDepth( NBTTranscoder.this.maxDepth );
+        }
+
+        private void render() throws IOException, AllocationLimitReachedException {
+            // The name of the root has no place in the text
+            this.readRootHeader();
+            try {
+                this.renderCompound();
+            } finally {
+                this.endPacked();
+            }
+
+            this.out.append( this.text );
+            this.out.flush();
+        }
+
+        private void renderCompound() throws IOException, AllocationLimitReachedException {
+            this.enterNested();
+            this.text.append( '{' );
+
+            byte tagID = this.readByteValue();
+            boolean first = true;
+            while ( tagID != NBTDefinitions.TAG_END ) {
+                if ( !first ) {
+                    this.text.append( ',' );
+                }
+
+                first = false;
+                this.renderKey( this.readTagName() );
+                this.text.append( ':' );
+                this.renderValue( tagID );
+                tagID = this.readByteValue();
+            }
+
+            this.text.append( '}' );
+            this.leaveNested();
+        }
+
+        private void renderList() throws IOException, AllocationLimitReachedException {
+            byte listType = this.readByteValue();
+            int listLength = this.readIntValue();
+            this.checkListLength( listType, listLength );
+            if ( listType == NBTDefinitions.TAG_END ) {
+                listLength = 0;
+            }
+
+            this.enterNested();
+            this.text.append( '[' );
+            for ( int i = 0; i < listLength; i++ ) {
+                if ( i > 0 ) {
+                    this.text.append( ',' );
+                }
+
+                this.renderValue( listType );
+            }
+
+            this.text.append( ']' );
+            this.leaveNested();
+        }
+
+        private void renderValue( byte tagID ) throws IOException, AllocationLimitReachedException {
+            switch ( tagID ) {
+                case NBTDefinitions.TAG_BYTE:
+                    this.text.append( this.readByteValue() );
+                    this.suffix( 'b' );
+                    break;
+                case NBTDefinitions.TAG_SHORT:
+                    this.text.append( this.readShortValue() );
+                    this.suffix( 's' );
+                    break;
+                case NBTDefinitions.TAG_INT:
+                    this.text.append( this.readIntValue() );
+                    break;
+                case NBTDefinitions.TAG_LONG:
+                    this.text.append( this.readLongValue() );
+                    this.suffix( 'L' );
+                    break;
+                case NBTDefinitions.TAG_FLOAT:
+                    this.renderDecimal( this.readFloatValue(), 'f' );
+                    break;
+                case NBTDefinitions.TAG_DOUBLE:
+                    this.renderDecimal( this.readDoubleValue(), 'd' );
+                    break;
+                case NBTDefinitions.TAG_BYTE_ARRAY:
+                    this.renderArray( "[B;", NBTDefinitions.TAG_BYTE );
+                    break;
+                case NBTDefinitions.TAG_STRING:
+                    this.renderString( this.readStringValue() );
+                    break;
+                case NBTDefinitions.TAG_LIST:
+                    this.renderList();
+                    break;
+                case NBTDefinitions.TAG_COMPOUND:
+                    this.renderCompound();
+                    break;
+                case NBTDefinitions.TAG_INT_ARRAY:
+                    this.renderArray( "[I;", NBTDefinitions.TAG_INT );
+                    break;
+                default:
+                    throw new IOException( "Invalid NBT Data: Unknown tag <" + tagID + ">" );
+            }
+
+            if ( this.text.length() >= TEXT_BUFFER_SIZE ) {
+                this.out.append( this.text );
+                this.text.setLength( 0 );
+            }
+        }
+
+        private void renderArray( String prefix, byte elementType ) throws IOException, AllocationLimitReachedException {
+            // Elements are rendered one by one so big arrays never have to be held in memory
+            int length = this.readIntValue();
+            if ( length < 0 ) {
+                throw new IOException( "Invalid NBT Data: Negative array length <" + length + ">" );
+            }
+
+            this.text.append( this.json ? "[" : prefix );
+            for ( int i = 0; i < length; i++ ) {
+                if ( i > 0 ) {
+                    this.text.append( ',' );
+                }
+
+                this.renderValue( elementType );
+            }
+
+            this.text.append( ']' );
+        }
+
+        private void renderDecimal( double value, char suffix ) {
+            if ( suffix == 'f' ) {
+                this.text.append( (float) value );
+            } else {
+                this.text.append( value );
+            }
+
+            this.suffix( suffix );
+        }
+
+        private void suffix( char suffix ) {
+            if ( !this.json ) {
+                this.text.append( suffix );
+            }
+        }
+
+        private void renderKey( String key ) {
+            if ( this.json || key.isEmpty() ) {
+                this.renderString( key );
+                return;
+            }
+
+            for ( int i = 0; i < key.length(); i++ ) {
+                if ( !isUnquoted( key.charAt( i ) ) ) {
+                    this.renderString( key );
+                    return;
+                }
+            }
+
+            this.text.append( key );
+        }
+
+        private void renderString( String value ) {
+            this.text.append( '"' );
+            for ( int i = 0; i < value.length(); i++ ) {
+                char c = value.charAt( i );
+                switch ( c ) {
+                    case '"':
+                        this.text.append( "\\\"" );
+                        break;
+                    case '\\':
+                        this.text.append( "\\\\" );
+                        break;
+                    case '\n':
+                        this.text.append( "\\n" );
+                        break;
+                    case '\r':
+                        this.text.append( "\\r" );
+                        break;
+                    case '\t':
+                        this.text.append( "\\t" );
+                        break;
+                    default:
+                        if ( c < 0x20 ) {
+                            this.text.append( "\\u00" );
+                            this.text.append( Character.forDigit( c >> 4, 16 ) );
+                            this.text.append( Character.forDigit( c & 0xF, 16 ) );
+                        } else {
+                            this.text.append( c );
+                        }
+                }
+            }
+
+            this.text.append( '"' );
+        }
+
+    }
+
+    /**
+     * Tokenizes text and encodes it through the primitives of {@link NBTWriter}
+     */
+    private final class TextSource {
+
+        private final Reader in;
+        private final NBTWriter writer;
+        private final char[] chars = new char[TEXT_BUFFER_SIZE];
+        private int position;
+        private int limit;
+        private long offset;
+        private int depth;
+
+        // Token which has been read last, reused for all tokens
+        private final StringBuilder token = new StringBuilder();
+        private byte scalarType;
+        private long integral;
+        private double decimal;
+        private String string;
+
+        // Elements of the numeric list which is encoded right now, integral values or the bits of decimal ones.
+        // Numeric lists can't nest, one buffer serves all of them.
+        private long[] numbers = new long[16];
+
+        private TextSource( Reader in, NBTWriter writer ) {
+            this.in = in;
+            this.writer = writer;
+        }
+
+        private void encode() throws IOException {
+            if ( this.peek() != '{' ) {
+                throw this.error( "Expected '{'" );
+            }
+
+            this.writer.writeByteValue( NBTDefinitions.TAG_COMPOUND );
+            this.writer.writeStringValue( "" );
+            this.encodeCompound();
+
+            if ( this.peek() != -1 ) {
+                throw this.error( "Expected end of text" );
+            }
+
+            this.writer.finish();
+        }
+
+        private void encodeCompound() throws IOException {
+            this.enter();
+            this.position++;
+
+            if ( this.peek() == '}' ) {
+                this.position++;
+            } else {
+                while ( true ) {
+                    String key = this.readKey();
+                    this.expect( ':' );
+
+                    byte type = this.readValueType();
+                    this.writer.writeByteValue( type );
+                    this.writer.writeStringValue( key );
+                    this.encodeValue( type );
+
+                    int c = this.next();
+                    if ( c == '}' ) {
+                        break;
+                    }
+
+                    if ( c != ',' ) {
+                        throw this.error( "Expected ',' or '}'" );
+                    }
+                }
+            }
+
+            this.writer.writeByteValue( NBTDefinitions.TAG_END );
+            this.depth--;
+        }
+
+        private void encodeList() throws IOException {
+            this.enter();
+            this.position++;
+
+            int header = this.writer.reserveHeader( true );
+            byte listType = NBTDefinitions.TAG_BYTE;
+            int length = 0;
+            if ( this.peek() == ']' ) {
+                this.position++;
+            } else {
+                while ( true ) {
+                    byte type = this.readValueType();
+                    if ( length == 0 ) {
+                        listType = type;
+                    } else if ( type < listType && listType <= NBTDefinitions.TAG_DOUBLE ) {
+                        // Numbers are widened to the type of the list, JSON can't tell ints from longs or doubles
+                        if ( type <= NBTDefinitions.TAG_LONG && listType >= NBTDefinitions.TAG_FLOAT ) {
+                            this.decimal = this.integral;
+                        }
+
+                        type = listType;
+                    } else if ( type > listType && type <= NBTDefinitions.TAG_DOUBLE ) {
+                        // A later number needs a wider type, the elements before it are written again
+                        this.widen( header, listType, type, length );
+                        listType = type;
+                    } else if ( type != listType ) {
+                        throw this.error( "List of tag <" + listType + "> can't hold tag <" + type + ">" );
+                    }
+
+                    if ( listType <= NBTDefinitions.TAG_DOUBLE ) {
+                        if ( length == this.numbers.length ) {
+                            this.numbers = Arrays.copyOf( this.numbers, length * 2 );
+                        }
+
+                        this.numbers[length] = listType >= NBTDefinitions.TAG_FLOAT ? Double.doubleToRawLongBits( this.decimal ) : this.integral;
+                    }
+
+                    this.encodeValue( type );
+                    length++;
+
+                    int c = this.next();
+                    if ( c == ']' ) {
+                        break;
+                    }
+
+                    if ( c != ',' ) {
+                        throw this.error( "Expected ',' or ']'" );
+                    }
+                }
+            }
+
+            this.writer.completeHeader( header, true, listType, length );
+            this.depth--;
+        }
+
+        private void widen( int header, byte fromType, byte toType, int length ) throws IOException {
+            long integral = this.integral;
+            double decimal = this.decimal;
+
+            this.writer.rewindHeader( header, true );
+            boolean toDecimal = toType >= NBTDefinitions.TAG_FLOAT;
+            for ( int i = 0; i < length; i++ ) {
+                if ( fromType >= NBTDefinitions.TAG_FLOAT ) {
+                    this.decimal = Double.longBitsToDouble( this.numbers[i] );
+                } else if ( toDecimal ) {
+                    this.decimal = this.numbers[i];
+                    this.numbers[i] = Double.doubleToRawLongBits( this.decimal );
+                } else {
+                    this.integral = this.numbers[i];
+                }
+
+                this.encodeValue( toType );
+            }
+
+            this.integral = integral;
+            this.decimal = decimal;
+        }
+
+        private void encodeArray( byte arrayType ) throws IOException {
+            // Skip the bracket, the type and the semicolon
+            this.position += 3;
+
+            int header = this.writer.reserveHeader( false );
+            int length = 0;
+            if ( this.peek() == ']' ) {
+                this.position++;
+            } else {
+                while ( true ) {
+                    if ( this.readValueType() > NBTDefinitions.TAG_LONG || ( arrayType == NBTDefinitions.TAG_BYTE_ARRAY ?
+                        this.integral != (byte) this.integral : this.integral != (int) this.integral ) ) {
+                        throw this.error( "Invalid array element '" + this.token + "'" );
+                    }
+
+                    if ( arrayType == NBTDefinitions.TAG_BYTE_ARRAY ) {
+                        this.writer.writeByteValue( (byte) this.integral );
+                    } else {
+                        this.writer.writeIntegerValue( (int) this.integral );
+                    }
+
+                    length++;
+
+                    int c = this.next();
+                    if ( c == ']' ) {
+                        break;
+                    }
+
+                    if ( c != ',' ) {
+                        throw this.error( "Expected ',' or ']'" );
+                    }
+                }
+            }
+
+            this.writer.completeHeader( header, false, (byte) 0, length );
+        }
+
+        private void encodeValue( byte type ) throws IOException {
+            switch ( type ) {
+                case NBTDefinitions.TAG_BYTE:
+                    this.writer.writeByteValue( (byte) this.integral );
+                    break;
+                case NBTDefinitions.TAG_SHORT:
+                    this.writer.writeShortValue( (short) this.integral );
+                    break;
+                case NBTDefinitions.TAG_INT:
+                    this.writer.writeIntegerValue( (int) this.integral );
+                    break;
+                case NBTDefinitions.TAG_LONG:
+                    this.writer.writeLongValue( this.integral );
+                    break;
+                case NBTDefinitions.TAG_FLOAT:
+                    this.writer.writeFloatValue( (float) this.decimal );
+                    break;
+                case NBTDefinitions.TAG_DOUBLE:
+                    this.writer.writeDoubleValue( this.decimal );
+                    break;
+                case NBTDefinitions.TAG_STRING:
+                    this.writer.writeStringValue( this.string );
+                    break;
+                case NBTDefinitions.TAG_LIST:
+                    this.encodeList();
+                    break;
+                case NBTDefinitions.TAG_COMPOUND:
+                    this.encodeCompound();
+                    break;
+                default:
+                    this.encodeArray( type );
+            }
+        }
+
+        /**
+         * Looks at the start of the next value. Scalars are read completely, compounds, lists and arrays are left
+         * for {@link #encodeValue(byte)}.
+         *
+         * @return The type of the value
+         */
+        private byte readValueType() throws IOException {
+            int c = this.peek();
+            if ( c == '{' ) {
+                return NBTDefinitions.TAG_COMPOUND;
+            }
+
+            if ( c == '[' ) {
+                this.fill( 3 );
+                if ( this.limit - this.position >= 3 && this.chars[this.position + 2] == ';' ) {
+                    switch ( this.chars[this.position + 1] ) {
+                        case 'B':
+                            return NBTDefinitions.TAG_BYTE_ARRAY;
+                        case 'I':
+                            return NBTDefinitions.TAG_INT_ARRAY;
+                        default:
+                            throw this.error( "Unsupported array type '" + this.chars[this.position + 1] + "'" );
+                    }
+                }
+
+                return NBTDefinitions.TAG_LIST;
+            }
+
+            if ( c == '"' || c == '\'' ) {
+                this.string = this.readQuoted();
+                return this.scalarType = NBTDefinitions.TAG_STRING;
+            }
+
+            this.readUnquoted();
+            this.classify();
+            return this.scalarType;
+        }
+
+        private String readKey() throws IOException {
+            int c = this.peek();
+            if ( c == '"' || c == '\'' ) {
+                return this.readQuoted();
+            }
+
+            this.readUnquoted();
+            return this.token.toString();
+        }
+
+        private String readQuoted() throws IOException {
+            char quote = this.chars[this.position++];
+            this.token.setLength( 0 );
+            while ( true ) {
+                int c = this.read();
+                if ( c == -1 ) {
+                    throw this.error( "Unterminated string" );
+                }
+
+                if ( c == quote ) {
+                    return this.token.toString();
+                }
+
+                if ( c == '\\' ) {
+                    c = this.read();
+                    switch ( c ) {
+                        case 'n':
+                            c = '\n';
+                            break;
+                        case 'r':
+                            c = '\r';
+                            break;
+                        case 't':
+                            c = '\t';
+                            break;
+                        case 'b':
+                            c = '\b';
+                            break;
+                        case 'f':
+                            c = '\f';
+                            break;
+                        case 'u':
+                            c = 0;
+                            for ( int i = 0; i < 4; i++ ) {
+                                int digit = Character.digit( this.read(), 16 );
+                                if ( digit == -1 ) {
+                                    throw this.error( "Invalid unicode escape" );
+                                }
+
+                                c = ( c << 4 ) | digit;
+                            }
+
+                            break;
+                        case '"':
+                        case '\'':
+                        case '\\':
+                        case '/':
+                            break;
+                        default:
+                            throw this.error( "Invalid escape" );
+                    }
+                }
+
+                this.token.append( (char) c );
+            }
+        }
+
+        private void readUnquoted() throws IOException {
+            this.token.setLength( 0 );
+            while ( true ) {
+                if ( this.position == this.limit && !this.fill( 1 ) ) {
+                    break;
+                }
+
+                char c = this.chars[this.position];
+                if ( !isUnquoted( c ) ) {
+                    break;
+                }
+
+                this.token.append( c );
+                this.position++;
+            }
+
+            if ( this.token.length() == 0 ) {
+                throw this.error( "Expected value" );
+            }
+        }
+
+        /**
+         * Finds out what an unquoted token is. Numbers which don't fit into their type are strings, just like words.
+         */
+        private void classify() {
+            StringBuilder token = this.token;
+            int length = token.length();
+            if ( "true".contentEquals( token ) || "false".contentEquals( token ) ) {
+                this.scalarType = NBTDefinitions.TAG_BYTE;
+                this.integral = token.charAt( 0 ) == 't' ? 1 : 0;
+                return;
+            }
+
+            char suffix = Character.toLowerCase( token.charAt( length - 1 ) );
+            int end = length;
+            if ( length > 1 && ( suffix == 'b' || suffix == 's' || suffix == 'l' || suffix == 'f' || suffix == 'd' ) ) {
+                end--;
+            } else {
+                suffix = 0;
+            }
+
+            if ( suffix != 'f' && suffix != 'd' && this.parseIntegral( end ) ) {
+                switch ( suffix ) {
+                    case 'b':
+                        this.scalarType = this.integral == (byte) this.integral ? NBTDefinitions.TAG_BYTE : NBTDefinitions.TAG_STRING;
+                        break;
+                    case 's':
+                        this.scalarType = this.integral == (short) this.integral ? NBTDefinitions.TAG_SHORT : NBTDefinitions.TAG_STRING;
+                        break;
+                    case 'l':
+                        this.scalarType = NBTDefinitions.TAG_LONG;
+                        break;
+                    default:
+                        this.scalarType = this.integral == (int) this.integral ? NBTDefinitions.TAG_INT : NBTDefinitions.TAG_LONG;
+                }
+            } else if ( ( suffix == 0 || suffix == 'f' || suffix == 'd' ) && this.parseDecimal( end ) ) {
+                this.scalarType = suffix == 'f' ? NBTDefinitions.TAG_FLOAT : NBTDefinitions.TAG_DOUBLE;
+            } else {
+                this.scalarType = NBTDefinitions.TAG_STRING;
+            }
+
+            if ( this.scalarType == NBTDefinitions.TAG_STRING ) {
+                this.string = token.toString();
+            }
+        }
+
+        private boolean parseIntegral( int end ) {
+            StringBuilder token = this.token;
+            int i = 0;
+            boolean negative = false;
+            if ( token.charAt( 0 ) == '-' || token.charAt( 0 ) == '+' ) {
+                negative = token.charAt( 0 ) == '-';
+                i++;
+            }
+
+            if ( i == end ) {
+                return false;
+            }
+
+            // Accumulated negatively so Long.MIN_VALUE fits
+            long value = 0;
+            for ( ; i < end; i++ ) {
+                int digit = token.charAt( i ) - '0';
+                if ( digit < 0 || digit > 9 || value < ( Long.MIN_VALUE + digit ) / 10 ) {
+                    return false;
+                }
+
+                value = value * 10 - digit;
+            }
+
+            if ( !negative && value == Long.MIN_VALUE ) {
+                return false;
+            }
+
+            this.integral = negative ? value : -value;
+            return true;
+        }
+
+        private boolean parseDecimal( int end ) {
+            // Only digits, signs, dots and exponents are handed to the JDK, which would accept a lot more
+            boolean digits = false;
+            for ( int i = 0; i < end; i++ ) {
+                char c = this.token.charAt( i );
+                if ( c >= '0' && c <= '9' ) {
+                    digits = true;
+                } else if ( c != '-' && c != '+' && c != '.' && c != 'e' && c != 'E' ) {
+                    String body = this.token.substring( 0, end );
+                    if ( body.equals( "NaN" ) || body.equals( "Infinity" ) || body.equals( "-Infinity" ) ) {
+                        this.decimal = Double.parseDouble( body );
+                        return true;
+                    }
+
+                    return false;
+                }
+            }
+
+            if ( !digits ) {
+                return false;
+            }
+
+            try {
+                this.decimal = Double.parseDouble( this.token.substring( 0, end ) );
+                return true;
+            } catch ( NumberFormatException e ) {
+                return false;
+            }
+        }
+
+        private void expect( char expected ) throws IOException {
+            if ( this.next() != expected ) {
+                throw this.error( "Expected '" + expected + "'" );
+            }
+        }
+
+        /**
+         * Reads the next character which is not whitespace
+         */
+        private int next() throws IOException {
+            int c = this.peek();
+            if ( c != -1 ) {
+                this.position++;
+            }
+
+            return c;
+        }
+
+        /**
+         * Looks at the next character which is not whitespace without consuming it
+         */
+        private int peek() throws IOException {
+            while ( true ) {
+                if ( this.position == this.limit && !this.fill( 1 ) ) {
+                    return -1;
+                }
+
+                char c = this.chars[this.position];
+                if ( c != ' ' && c != '\n' && c != '\r' && c != '\t' ) {
+                    return c;
+                }
+
+                this.position++;
+            }
+        }
+
+        private int read() throws IOException {
+            if ( this.position == this.limit && !this.fill( 1 ) ) {
+                return -1;
+            }
+
+            return this.chars[this.position++];
+        }
+
+        /**
+         * Makes sure the given amount of characters is buffered, unless the text ends before
+         *
+         * @return True when enough characters are buffered
+         */
+        private boolean fill( int amount ) throws IOException {
+            if ( this.limit - this.position >= amount ) {
+                return true;
+            }
+
+            int left = this.limit - this.position;
+            System.arraycopy( this.chars, this.position, this.chars, 0, left );
+            this.offset += this.position;
+            this.position = 0;
+            this.limit = left;
+
+            while ( this.limit < amount ) {
+                int read = this.in.read( this.chars, this.limit, this.chars.length - this.limit );
+                if ( read == -1 ) {
+                    return false;
+                }
+
+                this.limit += read;
+            }
+
+            return true;
+        }
+
+        private void enter() throws IOException {
+            if ( ++this.depth > NBTTranscoder.this.maxDepth && NBTTranscoder.this.maxDepth != -1 ) {
+                throw this.error( "Nested deeper than " + NBTTranscoder.this.maxDepth + " levels" );
+            }
+        }
+
+        private IOException error( String message ) {
+            return new IOException( "Invalid NBT Data: " + message + " at character " + ( this.offset + this.position ) );
+        }
+
+    }
+
+    private static boolean isUnquoted( char c ) {
+        return ( c >= '0' && c <= '9' ) || ( c >= 'a' && c <= 'z' ) || ( c >= 'A' && c <= 'Z' ) ||
+            c == '_' || c == '-' || c == '.' || c == '+';
+    }
+
+}
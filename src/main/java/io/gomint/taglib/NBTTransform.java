@@ -0,0 +1,529 @@
+package io.gomint.taglib;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.function.UnaryOperator;
+
+/**
+ * Rewrites encoded NBT data in a single pass, without building a {@link NBTTagCompound}. Entries are selected by
+ * {@link NBTPath}s and can be dropped, renamed, mapped to another value or have values injected next to them.
+ * Everything no rule can apply to is copied byte for byte without being decoded, only values which are mapped get
+ * decoded. The output uses the byteorder and varint setting of the input. Packed data is not supported since its
+ * names reference each other across the whole document.
+ * <p>
+ * Rules are applied in the order they have been added. Paths always refer to the input, so a rule still selects an
+ * entry which has been renamed by an earlier rule. Functions of several map rules for the same entry are chained,
+ * rules below an entry which is dropped or mapped don't apply. Renaming only applies to entries of compounds, not to
+ * elements of lists. A transform can be shared between threads once all of its rules have been added.
+ *
+ * @author geNAZt
+ * @version 1.0
+ */
+public class NBTTransform {
+
+    private static final int DROP = 0;
+    private static final int RENAME = 1;
+    private static final int MAP = 2;
+    private static final int INJECT = 3;
+
+    private Rule[] rules = new Rule[0];
+
+    /**
+     * Drops all entries and list elements the path selects
+     *
+     * @param path The path of the entries
+     * @return This transform
+     * @throws IllegalArgumentException Thrown in case the path is invalid or empty
+     */
+    public NBTTransform drop( String path ) {
+        return this.add( new Rule( DROP, path, false ) );
+    }
+
+    /**
+     * Renames all entries the path selects
+     *
+     * @param path The path of the entries
+     * @param name The new name of the entries
+     * @return This transform
+     * @throws IllegalArgumentException Thrown in case the path is invalid or empty
+     */
+    public NBTTransform rename( String path, String name ) {
+        Rule rule = new Rule( RENAME, path, false );
+        rule.name = name;
+        return this.add( rule );
+    }
+
+    /**
+     * Replaces the values of all entries and list elements the path selects. The function gets the decoded value and
+     * returns the value to write, which may be of another type, or null to drop the entry. Elements of a list have
+     * to keep the type of the list.
+     *
+     * @param path     The path of the entries
+     * @param function The function which maps the values
+     * @return This transform
+     * @throws IllegalArgumentException Thrown in case the path is invalid or empty
+     */
+    public NBTTransform map( String path, UnaryOperator<Object> function ) {
+        Rule rule = new Rule( MAP, path, false );
+        rule.function = function;
+        return this.add( rule );
+    }
+
+    /**
+     * Adds an entry to all compounds the path selects. Entries of the compounds with the same name are replaced.
+     *
+     * @param path  The path of the compounds, an empty path selects the root compound
+     * @param name  The name of the entry
+     * @param value The value of the entry
+     * @return This transform
+     * @throws IllegalArgumentException Thrown in case the path is invalid or the value is no NBT value
+     */
+    public NBTTransform inject( String path, String name, Object value ) {
+        Rule rule = new Rule( INJECT, path, true );
+        rule.name = name;
+        rule.nameBytes = StringUtil.getUTF8Bytes( name );
+        rule.value = value;
+        rule.valueType = NBTDefinitions.getTagType( value );
+        if ( rule.valueType == -1 ) {
+            throw new IllegalArgumentException( "Cannot inject value of class '" + value.getClass().getName() + "'" );
+        }
+
+        return this.add( rule );
+    }
+
+    private NBTTransform add( Rule rule ) {
+        Rule[] rules = Arrays.copyOf( this.rules, this.rules.length + 1 );
+        rules[rules.length - 1] = rule;
+        this.rules = rules;
+        return this;
+    }
+
+    /**
+     * Transforms a root compound
+     *
+     * @param data      The encoded root compound
+     * @param byteOrder The byteorder of the data
+     * @return The transformed root compound, encoded the same way
+     * @throws IOException                     Thrown in case of invalid or packed NBT data
+     * @throws AllocationLimitReachedException Never thrown since no allocation limit is set
+     */
+    public byte[] transform( byte[] data, ByteOrder byteOrder ) throws IOException, AllocationLimitReachedException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream( data.length );
+        this.transform( new NBTByteArrayReader( data, byteOrder ), out );
+        return out.toByteArray();
+    }
+
+    /**
+     * Transforms the next root compound of the reader. Afterwards the reader is positioned behind the root compound.
+     *
+     * @param reader The reader positioned at the root compound
+     * @param out    The stream to write the transformed root compound to
+     * @throws IOException                     Thrown in case of invalid or packed NBT data or in case writing failed
+     * @throws AllocationLimitReachedException Thrown in case the data exceeds the limits of the reader
+     */
+    public void transform( NBTByteArrayReader reader, OutputStream out ) throws IOException, AllocationLimitReachedException {
+        NBTPool pool = NBTPool.getDefault();
+        NBTWriter writer = pool.borrowWriter( out, reader.getByteOrder() );
+        writer.setUseVarint( reader.isUseVarint() );
+        try {
+            new Pass( this.rules, reader, writer ).run();
+        } finally {
+            pool.release( writer );
+        }
+    }
+
+    private static final class Rule {
+
+        private final int type;
+        private final NBTPath.Step[] steps;
+
+        private String name;
+        private byte[] nameBytes;
+        private UnaryOperator<Object> function;
+        private Object value;
+        private byte valueType;
+
+        private Rule( int type, String path, boolean allowRoot ) {
+            this.type = type;
+            this.steps = NBTPath.compile( path ).getSteps();
+            if ( !allowRoot && this.steps.length == 0 ) {
+                throw new IllegalArgumentException( "The root compound can only have values injected" );
+            }
+        }
+
+    }
+
+    /**
+     * State of one transformation. Every level of nesting has an array which holds, per rule, the index of the next
+     * step of its path or -1 in case the rule can't apply below this level anymore.
+     */
+    private static final class Pass {
+
+        private static final Object NOT_DECODED = new Object();
+
+        private final Rule[] rules;
+        private final NBTByteArrayReader reader;
+        private final NBTWriter writer;
+        private final byte[] data;
+
+        private int[][] progress = new int[8][];
+
+        // Bytes which are copied as they are get collected into one span until something else has to be written
+        private int spanStart;
+        private int spanEnd;
+
+        private AllocationLimitReachedException limitReached;
+
+        private Pass( Rule[] rules, NBTByteArrayReader reader, NBTWriter writer ) {
+            this.rules = rules;
+            this.reader = reader;
+            this.writer = writer;
+            this.data = reader.getData();
+        }
+
+        private void run() throws IOException, AllocationLimitReachedException {
+            String name = this.reader.readRootName();
+            if ( this.reader.isPacked() ) {
+                // Copied bytes would keep references into a document whose names have changed
+                this.reader.endPacked();
+                throw new IOException( "Invalid NBT Data: Packed data can't be transformed, parse and write it instead" );
+            }
+
+            int[] root = this.level( 0 );
+            Arrays.fill( root, 0 );
+            this.resolveFilters( root, NBTDefinitions.TAG_COMPOUND );
+
+            try {
+                this.writer.writeRoot( name, () -> {
+                    try {
+                        this.compound( 0 );
+                    } catch ( AllocationLimitReachedException e ) {
+                        // The body of a root can only throw IOExceptions, the limit is rethrown once writing ended
+                        this.limitReached = e;
+                        throw new IOException( e.getMessage(), e );
+                    }
+                } );
+            } catch ( IOException e ) {
+                if ( this.limitReached != null ) {
+                    throw this.limitReached;
+                }
+
+                throw e;
+            }
+        }
+
+        private void compound( int depth ) throws IOException, AllocationLimitReachedException {
+            int[] state = this.progress[depth];
+            int[] child = this.level( depth + 1 );
+            this.reader.enterNested();
+
+            while ( true ) {
+                int entryStart = this.reader.getPosition();
+                byte type = this.reader.readByte();
+                if ( type == NBTDefinitions.TAG_END ) {
+                    break;
+                }
+
+                int nameLength = this.reader.readStringLength();
+                int nameOffset = this.reader.getPosition();
+                this.reader.setPosition( nameOffset + nameLength );
+
+                boolean alive = false;
+                for ( int i = 0; i < this.rules.length; i++ ) {
+                    int next = -1;
+                    int step = state[i];
+                    if ( step >= 0 && step < this.rules[i].steps.length ) {
+                        NBTPath.Step current = this.rules[i].steps[step];
+                        if ( current.type == NBTPath.ANY_CHILD ||
+                            ( current.type == NBTPath.CHILD && this.reader.regionEquals( nameOffset, nameLength, current.nameBytes ) ) ) {
+                            next = step + 1;
+                            alive = true;
+                        }
+                    }
+
+                    child[i] = next;
+                }
+
+                // Entries which get injected replace the existing ones
+                if ( this.isInjected( state, nameOffset, nameLength ) ) {
+                    this.reader.skipValue( type );
+                    continue;
+                }
+
+                if ( !alive ) {
+                    this.reader.skipValue( type );
+                    this.copy( entryStart, this.reader.getPosition() );
+                    continue;
+                }
+
+                this.resolveFilters( child, type );
+                this.entry( depth + 1, type, entryStart, nameOffset, nameLength );
+            }
+
+            this.flushSpan();
+            for ( int i = 0; i < this.rules.length; i++ ) {
+                Rule rule = this.rules[i];
+                if ( rule.type == INJECT && state[i] == rule.steps.length ) {
+                    this.writer.writeTagHeader( rule.valueType, rule.name );
+                    this.writer.writeValue( rule.valueType, rule.value );
+                }
+            }
+
+            this.writer.writeByteValue( NBTDefinitions.TAG_END );
+            this.reader.leaveNested();
+        }
+
+        private void entry( int depth, byte type, int entryStart, int nameOffset, int nameLength ) throws IOException, AllocationLimitReachedException {
+            int[] state = this.progress[depth];
+            String rename = null;
+            Object value = NOT_DECODED;
+            for ( int i = 0; i < this.rules.length; i++ ) {
+                Rule rule = this.rules[i];
+                if ( state[i] != rule.steps.length ) {
+                    continue;
+                }
+
+                if ( rule.type == DROP ) {
+                    if ( value == NOT_DECODED ) {
+                        this.reader.skipValue( type );
+                    }
+
+                    return;
+                } else if ( rule.type == RENAME ) {
+                    rename = rule.name;
+                } else if ( rule.type == MAP ) {
+                    if ( value == NOT_DECODED ) {
+                        value = this.decode( type, StringUtil.fromUTF8Bytes( this.data, nameOffset, nameLength ) );
+                    }
+
+                    value = rule.function.apply( value );
+                    if ( value == null ) {
+                        return;
+                    }
+                }
+            }
+
+            if ( value != NOT_DECODED ) {
+                this.flushSpan();
+                byte valueType = this.writer.getNBTTypeFromValue( value );
+                this.writer.writeTagHeader( valueType, rename != null ? rename : StringUtil.fromUTF8Bytes( this.data, nameOffset, nameLength ) );
+                this.writer.writeValue( valueType, value );
+                return;
+            }
+
+            if ( rename != null ) {
+                this.flushSpan();
+                this.writer.writeTagHeader( type, rename );
+            } else {
+                this.copy( entryStart, nameOffset + nameLength );
+            }
+
+            this.value( depth, type );
+        }
+
+        private void list( int depth ) throws IOException, AllocationLimitReachedException {
+            int[] state = this.progress[depth];
+            int[] child = this.level( depth + 1 );
+
+            byte listType = this.reader.readByte();
+            int length = this.reader.readListLength( listType );
+            this.flushSpan();
+            int header = this.writer.reserveHeader( true );
+            byte writtenType = listType;
+            int written = 0;
+
+            this.reader.enterNested();
+            for ( int element = 0; element < length; element++ ) {
+                int elementStart = this.reader.getPosition();
+                boolean alive = false;
+                for ( int i = 0; i < this.rules.length; i++ ) {
+                    int next = -1;
+                    int step = state[i];
+                    if ( step >= 0 && step < this.rules[i].steps.length ) {
+                        NBTPath.Step current = this.rules[i].steps[step];
+                        boolean selected;
+                        switch ( current.type ) {
+                            case NBTPath.ALL:
+                                selected = true;
+                                break;
+                            case NBTPath.INDEX:
+                                selected = element == ( current.index < 0 ? length + current.index : current.index );
+                                break;
+                            case NBTPath.FILTER:
+                                selected = listType == NBTDefinitions.TAG_COMPOUND && this.test( current, elementStart );
+                                break;
+                            default:
+                                selected = false;
+                                break;
+                        }
+
+                        if ( selected ) {
+                            next = step + 1;
+                            alive = true;
+                        }
+                    }
+
+                    child[i] = next;
+                }
+
+                byte elementType = listType;
+                if ( alive ) {
+                    this.resolveFilters( child, listType );
+                    elementType = this.element( depth + 1, listType );
+                    if ( elementType == -1 ) {
+                        continue;
+                    }
+                } else {
+                    this.reader.skipValue( listType );
+                    this.copy( elementStart, this.reader.getPosition() );
+                }
+
+                if ( written > 0 && elementType != writtenType ) {
+                    throw new IllegalArgumentException( "List can't hold elements of type <" + writtenType + "> and <" + elementType + ">, mapped elements have to keep the type of the list" );
+                }
+
+                writtenType = elementType;
+                written++;
+            }
+
+            this.reader.leaveNested();
+            this.flushSpan();
+            this.writer.completeHeader( header, true, writtenType, written );
+        }
+
+        /**
+         * Writes an element of a list which rules apply to
+         *
+         * @return The type of the element which has been written or -1 if it has been dropped
+         */
+        private byte element( int depth, byte type ) throws IOException, AllocationLimitReachedException {
+            int[] state = this.progress[depth];
+            Object value = NOT_DECODED;
+            for ( int i = 0; i < this.rules.length; i++ ) {
+                Rule rule = this.rules[i];
+                if ( state[i] != rule.steps.length ) {
+                    continue;
+                }
+
+                if ( rule.type == DROP ) {
+                    if ( value == NOT_DECODED ) {
+                        this.reader.skipValue( type );
+                    }
+
+                    return -1;
+                } else if ( rule.type == MAP ) {
+                    if ( value == NOT_DECODED ) {
+                        value = this.decode( type, null );
+                    }
+
+                    value = rule.function.apply( value );
+                    if ( value == null ) {
+                        return -1;
+                    }
+                }
+            }
+
+            if ( value != NOT_DECODED ) {
+                this.flushSpan();
+                byte valueType = this.writer.getNBTTypeFromValue( value );
+                this.writer.writeValue( valueType, value );
+                return valueType;
+            }
+
+            this.value( depth, type );
+            return type;
+        }
+
+        private void value( int depth, byte type ) throws IOException, AllocationLimitReachedException {
+            int[] state = this.progress[depth];
+            boolean descend = false;
+            for ( int i = 0; i < this.rules.length && !descend; i++ ) {
+                Rule rule = this.rules[i];
+                descend = ( state[i] >= 0 && state[i] < rule.steps.length ) || ( rule.type == INJECT && state[i] == rule.steps.length );
+            }
+
+            if ( descend && type == NBTDefinitions.TAG_COMPOUND ) {
+                this.compound( depth );
+            } else if ( descend && type == NBTDefinitions.TAG_LIST ) {
+                this.list( depth );
+            } else {
+                int start = this.reader.getPosition();
+                this.reader.skipValue( type );
+                this.copy( start, this.reader.getPosition() );
+            }
+        }
+
+        private Object decode( byte type, String name ) throws IOException, AllocationLimitReachedException {
+            return this.reader.readValue( type, name );
+        }
+
+        private boolean isInjected( int[] state, int nameOffset, int nameLength ) {
+            for ( int i = 0; i < this.rules.length; i++ ) {
+                Rule rule = this.rules[i];
+                if ( rule.type == INJECT && state[i] == rule.steps.length && this.reader.regionEquals( nameOffset, nameLength, rule.nameBytes ) ) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        /**
+         * Applies the filters of paths which test the value the reader is positioned at, without consuming it
+         */
+        private void resolveFilters( int[] state, byte type ) throws IOException, AllocationLimitReachedException {
+            for ( int i = 0; i < this.rules.length; i++ ) {
+                NBTPath.Step[] steps = this.rules[i].steps;
+                while ( state[i] >= 0 && state[i] < steps.length && steps[state[i]].type == NBTPath.FILTER ) {
+                    // Filters on lists select their elements, they are applied once the elements are read
+                    if ( type == NBTDefinitions.TAG_LIST ) {
+                        break;
+                    }
+
+                    boolean selected = type == NBTDefinitions.TAG_COMPOUND && this.test( steps[state[i]], this.reader.getPosition() );
+                    state[i] = selected ? state[i] + 1 : -1;
+                }
+            }
+        }
+
+        private boolean test( NBTPath.Step filter, int compoundStart ) throws IOException, AllocationLimitReachedException {
+            boolean matches = NBTPath.matches( this.reader, filter );
+            this.reader.setPosition( compoundStart );
+            return matches;
+        }
+
+        private int[] level( int depth ) {
+            if ( depth >= this.progress.length ) {
+                this.progress = Arrays.copyOf( this.progress, this.progress.length * 2 );
+            }
+
+            if ( this.progress[depth] == null ) {
+                this.progress[depth] = new int[this.rules.length];
+            }
+
+            return this.progress[depth];
+        }
+
+        private void copy( int start, int end ) throws IOException {
+            if ( start != this.spanEnd ) {
+                this.flushSpan();
+                this.spanStart = start;
+            }
+
+            this.spanEnd = end;
+        }
+
+        private void flushSpan() throws IOException {
+            if ( this.spanEnd > this.spanStart ) {
+                this.writer.writeRawBytes( this.data, this.spanStart, this.spanEnd - this.spanStart );
+            }
+
+            this.spanStart = this.spanEnd;
+        }
+
+    }
+
+}
@@ -0,0 +1,45 @@
+package io.gomint.taglib;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event which is emitted for every write of a NBT compound. The event duration is the time the
+ * write took, compression included.
+ *
+ * @author geNAZt
+ * @version 1.0
+ */
+@Name( "io.gomint.taglib.Write" )
+@Label( "NBT Write" )
+@Category( { "GoMint", "TagLib" } )
+@Description( "Write of a NBT compound" )
+@StackTrace( false )
+final class NBTWriteEvent extends jdk.jfr.Event {
+
+    @Label( "Bytes" )
+    @Description( "Bytes produced by the write, before compression" )
+    @DataAmount
+    long bytes;
+
+    @Label( "Tags" )
+    @Description( "Tags encoded by the write, list elements included" )
+    int tags;
+
+    @Label( "Compressed" )
+    boolean compressed;
+
+    @Label( "Byte Order" )
+    String byteOrder;
+
+    @Label( "Varint" )
+    boolean varint;
+
+    @Label( "Success" )
+    boolean success;
+
+}
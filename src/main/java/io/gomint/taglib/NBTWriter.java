@@ -29,8 +29,11 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author BlackyPaw
@@ -40,11 +43,29 @@ public class NBTWriter {
 
 	private static final int BUFFER_SIZE = 1024 * 16;
 
+	// Sorted names of compound shapes which have been written canonically, keyed by the hash of their names
+	private static final int MAX_CANONICAL_ORDERS = 4096;
+	private static final Map<Integer, String[]> CANONICAL_ORDERS = new ConcurrentHashMap<>();
+
 	private OutputStream out;
 	private ByteBuffer   buffer;
     private ByteOrder    order;
 
+	// Buffer which is kept across resets, buffers grown for oversized values are not
+	private final ByteBuffer initialBuffer;
+
     private boolean useVarint;
+	private boolean canonical;
+
+	private NBTMetrics metrics;
+	private long bytesFlushed;
+	private long bytesReported;
+	private int tagsWritten;
+	private boolean compressed;
+	private int openHeaders;
+
+	// Names of the packed document which is currently written, null while writing standard NBT
+	private NBTNameTable.Document packedNames;
 
 	public NBTWriter( final OutputStream out, final ByteOrder byteOrder ) {
 		this.out = out;
@@ -55,25 +76,174 @@ public class NBTWriter {
 		this.buffer.position( 0 );
 		this.buffer.limit( this.buffer.capacity() );
 		this.buffer.order( byteOrder );
+		this.initialBuffer = this.buffer;
+
+		this.metrics = NBTMetrics.getGlobal();
+	}
+
+	/**
+	 * Puts this writer into the state of a newly constructed one which writes to the given stream. Anything which
+	 * is still buffered gets discarded. The buffer is kept so reusing a writer does not allocate, a buffer which had
+	 * to grow for an oversized value is dropped in favor of the initial one.
+	 *
+	 * @param out       The stream to write to
+	 * @param byteOrder The byteorder to encode data with
+	 */
+	public void reset( final OutputStream out, final ByteOrder byteOrder ) {
+		this.out = out;
+		this.order = byteOrder;
+
+		this.buffer = this.initialBuffer;
+		this.buffer.position( 0 );
+		this.buffer.limit( this.buffer.capacity() );
+		this.buffer.order( byteOrder );
+
+		this.useVarint = false;
+		this.canonical = false;
+		this.compressed = false;
+		this.bytesFlushed = 0;
+		this.bytesReported = 0;
+		this.tagsWritten = 0;
+		this.openHeaders = 0;
+		this.packedNames = null;
+		this.metrics = NBTMetrics.getGlobal();
 	}
 
 	public void setUseVarint( boolean useVarint ) {
 		this.useVarint = useVarint;
 	}
 
+	/**
+	 * Sets whether or not the output only depends on the content of the written compounds. Canonical output lists
+	 * the entries of every compound sorted by name, in the natural order of {@link String}, and writes every NaN
+	 * float or double as the canonical NaN. Equal compounds then always produce equal bytes, no matter in which
+	 * order their entries have been added. The sorted names are cached per set of names, so compounds of the same
+	 * shape are only sorted once.
+	 *
+	 * @param canonical Whether or not to write canonical output
+	 */
+	public void setCanonical( boolean canonical ) {
+		this.canonical = canonical;
+	}
+
+	/**
+	 * Sets the metrics this writer reports to. Writers report to the {@link NBTMetrics#getGlobal() global metrics}
+	 * by default.
+	 *
+	 * @param metrics The metrics to report to or null to disable reporting
+	 */
+	public void setMetrics( NBTMetrics metrics ) {
+		this.metrics = metrics;
+	}
+
 	public void write( NBTTagCompound compound ) throws IOException {
-		this.writeTagHeader( NBTDefinitions.TAG_COMPOUND, compound.getName() );
-		this.writeCompoundValue( compound );
+		this.writeRoot( compound.getName(), () -> this.writeCompoundValue( compound ) );
+	}
+
+	/**
+	 * Writes a compound in the packed format. Packed data is not compatible with standard NBT, it is meant for caches
+	 * and storage which are only read by this library. Names are written as references into the given table or
+	 * spelled out once per document, all numbers and lengths are written as varints. Readers detect packed data on
+	 * their own, they need the same table to read it, see {@link NBTNameTable}.
+	 *
+	 * @param compound The compound to write
+	 * @param names    The table of common names or null to spell out every name once
+	 * @throws IOException Thrown in case writing failed
+	 */
+	public void writePacked( NBTTagCompound compound, NBTNameTable names ) throws IOException {
+		boolean useVarint = this.useVarint;
+		this.useVarint = true;
+		this.packedNames = new NBTNameTable.Document( names );
+		try {
+			this.writeByteValue( NBTDefinitions.PACKED_MAGIC );
+			this.writeByteValue( NBTDefinitions.PACKED_VERSION );
+			this.writeIntegerValue( names != null ? names.getId() : 0 );
+			this.write( compound );
+		} finally {
+			this.useVarint = useVarint;
+			this.packedNames = null;
+		}
+	}
+
+	/**
+	 * Writes a root compound whose content gets written by the given body, reporting the write to the metrics and
+	 * the flight recorder
+	 *
+	 * @param name The name of the root compound
+	 * @param body Writes the entries of the root compound, including the end tag
+	 * @throws IOException Thrown in case writing failed
+	 */
+	void writeRoot( String name, RootBody body ) throws IOException {
+		NBTWriteEvent event = NBTEvents.beginWrite();
+
+		long start = this.metrics != null ? System.nanoTime() : 0;
+		boolean success = false;
+		this.tagsWritten = 1;
+		try {
+			this.writeTagHeader( NBTDefinitions.TAG_COMPOUND, name );
+			body.write();
+			this.finish();
+			success = true;
+		} finally {
+			// Bytes which are still buffered after a failure have not been written
+			long bytes = this.bytesFlushed - this.bytesReported;
+			this.bytesReported = this.bytesFlushed;
+			if ( this.metrics != null ) {
+				this.metrics.recordWrite( System.nanoTime() - start, success, bytes );
+			}
+
+			if ( event != null && event.shouldCommit() ) {
+				event.bytes = bytes;
+				event.tags = this.tagsWritten;
+				event.compressed = this.compressed;
+				event.byteOrder = this.order.toString();
+				event.varint = this.useVarint;
+				event.success = success;
+				event.commit();
+			}
+		}
+	}
+
+	/**
+	 * Counts tags which have been written without going through {@link #writeValue(byte, Object)}
+	 *
+	 * @param amount The amount of tags
+	 */
+	void countTags( int amount ) {
+		this.tagsWritten += amount;
+	}
+
+	/**
+	 * Sets whether or not the output of this writer gets compressed, only used to describe writes
+	 *
+	 * @param compressed Whether or not the output is compressed
+	 */
+	void setCompressed( boolean compressed ) {
+		this.compressed = compressed;
+	}
+
+	void finish() throws IOException {
 		this.flush();
 		this.out.flush();
 	}
 
-	private void writeTagHeader( byte type, String name ) throws IOException {
+	void writeTagHeader( byte type, String name ) throws IOException {
 		this.writeByteValue( type );
-		this.writeStringValue( name );
+		if ( this.packedNames == null ) {
+			this.writeStringValue( name );
+			return;
+		}
+
+		// Readers return unnamed roots with an empty name
+		String packedName = name != null ? name : "";
+		int reference = this.packedNames.reference( packedName );
+		VarInt.writeUnsignedVarInt( this, reference );
+		if ( reference == 0 ) {
+			this.writeStringValue( packedName );
+		}
 	}
 
-	private void writeStringValue( String value ) throws IOException {
+	void writeStringValue( String value ) throws IOException {
 		if ( value != null ) {
 			byte[] utf8Bytes = StringUtil.getUTF8Bytes( value );
 			if ( this.useVarint ) {
@@ -98,12 +268,33 @@ public class NBTWriter {
 		this.buffer.put( value );
 	}
 
-	private void writeShortValue( short value ) throws IOException {
+	/**
+	 * Writes already encoded data as it is
+	 *
+	 * @param data   The array holding the encoded data
+	 * @param offset The index of the first byte to write
+	 * @param length The amount of bytes to write
+	 * @throws IOException Thrown in case flushing buffered data failed
+	 */
+	void writeRawBytes( byte[] data, int offset, int length ) throws IOException {
+		if ( length > this.buffer.capacity() && this.openHeaders == 0 ) {
+			// Spans which don't fit into the buffer go straight to the stream instead of growing the buffer
+			this.flush();
+			this.out.write( data, offset, length );
+			this.bytesFlushed += length;
+			return;
+		}
+
+		this.ensureCapacity( length );
+		this.buffer.put( data, offset, length );
+	}
+
+	void writeShortValue( short value ) throws IOException {
 		this.ensureCapacity( 2 );
 		this.buffer.putShort( value );
 	}
 
-	private void writeIntegerValue( int value ) throws IOException {
+	void writeIntegerValue( int value ) throws IOException {
 		if ( this.useVarint ) {
 			VarInt.writeSignedVarInt( this, value );
 		} else {
@@ -112,7 +303,7 @@ public class NBTWriter {
 		}
 	}
 
-	private void writeLongValue( long value ) throws IOException {
+	void writeLongValue( long value ) throws IOException {
 		if ( this.useVarint ) {
 			VarInt.writeSignedVarLong( this, value );
 		} else {
@@ -121,19 +312,19 @@ public class NBTWriter {
 		}
 	}
 
-	private void writeFloatValue( float value ) throws IOException {
+	void writeFloatValue( float value ) throws IOException {
 		this.ensureCapacity( 4 );
-		this.buffer.putFloat( value );
+		this.buffer.putFloat( this.canonical && value != value ? Float.NaN : value );
 	}
 
-	private void writeDoubleValue( double value ) throws IOException {
+	void writeDoubleValue( double value ) throws IOException {
 		this.ensureCapacity( 8 );
-		this.buffer.putDouble( value );
+		this.buffer.putDouble( this.canonical && value != value ? Double.NaN : value );
 	}
 
-	private void writeByteArrayValue( byte[] value ) throws IOException {
-		this.ensureCapacity( value.length + 4 );
-		this.buffer.putInt( value.length );
+	void writeByteArrayValue( byte[] value ) throws IOException {
+		this.writeIntegerValue( value.length );
+		this.ensureCapacity( value.length );
 		this.buffer.put( value );
 	}
 
@@ -145,41 +336,7 @@ public class NBTWriter {
 			this.writeByteValue( listNbtType );
 			this.writeIntegerValue( value.size() );
 			for ( Object rawValue : value ) {
-				switch ( listNbtType ) {
-					case NBTDefinitions.TAG_BYTE:
-						this.writeByteValue( (Byte) rawValue );
-						break;
-					case NBTDefinitions.TAG_SHORT:
-						this.writeShortValue( (Short) rawValue );
-						break;
-					case NBTDefinitions.TAG_INT:
-						this.writeIntegerValue( (Integer) rawValue );
-						break;
-					case NBTDefinitions.TAG_LONG:
-						this.writeLongValue( (Long) rawValue );
-						break;
-					case NBTDefinitions.TAG_FLOAT:
-						this.writeFloatValue( (Float) rawValue );
-						break;
-					case NBTDefinitions.TAG_DOUBLE:
-						this.writeDoubleValue( (Double) rawValue );
-						break;
-					case NBTDefinitions.TAG_BYTE_ARRAY:
-						this.writeByteArrayValue( (byte[]) rawValue );
-						break;
-					case NBTDefinitions.TAG_STRING:
-						this.writeStringValue( (String) rawValue );
-						break;
-					case NBTDefinitions.TAG_LIST:
-						this.writeListValue( (List<Object>) rawValue );
-						break;
-					case NBTDefinitions.TAG_COMPOUND:
-						this.writeCompoundValue( (NBTTagCompound) rawValue );
-						break;
-					case NBTDefinitions.TAG_INT_ARRAY:
-						this.writeIntegerArrayValue( (int[]) rawValue );
-						break;
-				}
+				this.writeValue( listNbtType, rawValue );
 			}
 		} else {
 			this.writeByteValue( NBTDefinitions.TAG_BYTE );
@@ -188,51 +345,124 @@ public class NBTWriter {
 	}
 	@SuppressWarnings( "unchecked" )
 	private void writeCompoundValue( NBTTagCompound compound ) throws IOException {
-		for ( Map.Entry<String, Object> key : compound.entrySet() ) {
+		if ( this.canonical ) {
+			for ( String name : canonicalOrder( compound ) ) {
+				Object rawValue = compound.get( name );
+				byte nbtType = this.getNBTTypeFromValue( rawValue );
+				this.writeTagHeader( nbtType, name );
+				this.writeValue( nbtType, rawValue );
+			}
+
+			this.writeByteValue( NBTDefinitions.TAG_END );
+			return;
+		}
+
+		for ( Map.Entry<String, Object> key : compound.entries() ) {
 			Object rawValue = key.getValue();
 			byte nbtType = this.getNBTTypeFromValue( rawValue );
 			this.writeTagHeader( nbtType, key.getKey() );
-			switch ( nbtType ) {
-				case NBTDefinitions.TAG_BYTE:
-					this.writeByteValue( (Byte) rawValue );
-					break;
-				case NBTDefinitions.TAG_SHORT:
-					this.writeShortValue( (Short) rawValue );
-					break;
-				case NBTDefinitions.TAG_INT:
-					this.writeIntegerValue( (Integer) rawValue );
-					break;
-				case NBTDefinitions.TAG_LONG:
-					this.writeLongValue( (Long) rawValue );
-					break;
-				case NBTDefinitions.TAG_FLOAT:
-					this.writeFloatValue( (Float) rawValue );
-					break;
-				case NBTDefinitions.TAG_DOUBLE:
-					this.writeDoubleValue( (Double) rawValue );
-					break;
-				case NBTDefinitions.TAG_BYTE_ARRAY:
-					this.writeByteArrayValue( (byte[]) rawValue );
-					break;
-				case NBTDefinitions.TAG_STRING:
-					this.writeStringValue( (String) rawValue );
-					break;
-				case NBTDefinitions.TAG_LIST:
-					this.writeListValue( (List<Object>) rawValue );
-					break;
-				case NBTDefinitions.TAG_COMPOUND:
-					this.writeCompoundValue( (NBTTagCompound) rawValue );
-					break;
-				case NBTDefinitions.TAG_INT_ARRAY:
-					this.writeIntegerArrayValue( (int[]) rawValue );
+			this.writeValue( nbtType, rawValue );
+		}
+
+		this.writeByteValue( NBTDefinitions.TAG_END );
+	}
+
+	@SuppressWarnings( "unchecked" )
+	void writeValue( byte nbtType, Object rawValue ) throws IOException {
+		this.tagsWritten++;
+		switch ( nbtType ) {
+			case NBTDefinitions.TAG_BYTE:
+				this.writeByteValue( (Byte) rawValue );
+				break;
+			case NBTDefinitions.TAG_SHORT:
+				this.writeShortValue( (Short) rawValue );
+				break;
+			case NBTDefinitions.TAG_INT:
+				this.writeIntegerValue( (Integer) rawValue );
+				break;
+			case NBTDefinitions.TAG_LONG:
+				this.writeLongValue( (Long) rawValue );
+				break;
+			case NBTDefinitions.TAG_FLOAT:
+				this.writeFloatValue( (Float) rawValue );
+				break;
+			case NBTDefinitions.TAG_DOUBLE:
+				this.writeDoubleValue( (Double) rawValue );
+				break;
+			case NBTDefinitions.TAG_BYTE_ARRAY:
+				this.writeByteArrayValue( (byte[]) rawValue );
+				break;
+			case NBTDefinitions.TAG_STRING:
+				this.writeStringValue( (String) rawValue );
+				break;
+			case NBTDefinitions.TAG_LIST:
+				this.writeListValue( (List<Object>) rawValue );
+				break;
+			case NBTDefinitions.TAG_COMPOUND:
+				this.writeCompoundValue( (NBTTagCompound) rawValue );
+				break;
+			case NBTDefinitions.TAG_INT_ARRAY:
+				this.writeIntegerArrayValue( (int[]) rawValue );
+				break;
+		}
+	}
+
+	/**
+	 * Gets the names of a compound in canonical order. Orders are cached by the hash of the names, a cached order is
+	 * only used after checking that it holds exactly the names of the compound.
+	 *
+	 * @param compound The compound to get the order of
+	 * @return The sorted names, must not be modified
+	 */
+	static String[] canonicalOrder( NBTTagCompound compound ) {
+		int shape = 0;
+		for ( Map.Entry<String, Object> entry : compound.entries() ) {
+			shape += entry.getKey().hashCode();
+		}
+
+		String[] order = CANONICAL_ORDERS.get( shape );
+		if ( order != null && order.length == compound.size() ) {
+			boolean matches = true;
+			for ( String name : order ) {
+				if ( !compound.containsKey( name ) ) {
+					matches = false;
 					break;
+				}
+			}
+
+			if ( matches ) {
+				return order;
 			}
 		}
 
-		this.writeByteValue( NBTDefinitions.TAG_END );
+		List<String> names = new ArrayList<>( compound.size() );
+		for ( Map.Entry<String, Object> entry : compound.entries() ) {
+			names.add( entry.getKey() );
+		}
+
+		order = names.toArray( new String[0] );
+		Arrays.sort( order );
+
+		// Shapes don't repeat in every workload, start over instead of growing without bounds
+		if ( CANONICAL_ORDERS.size() >= MAX_CANONICAL_ORDERS ) {
+			CANONICAL_ORDERS.clear();
+		}
+
+		CANONICAL_ORDERS.put( shape, order );
+		return order;
 	}
 
-	private void writeIntegerArrayValue( int[] value ) throws IOException {
+	void writeIntegerArrayValue( int[] value ) throws IOException {
+		if ( this.useVarint ) {
+			// Readers decode lengths and elements as varints in this mode
+			this.writeIntegerValue( value.length );
+			for ( int i = 0; i < value.length; ++i ) {
+				this.writeIntegerValue( value[i] );
+			}
+
+			return;
+		}
+
 		this.ensureCapacity( 4 * value.length + 4 );
 		this.buffer.putInt( value.length );
 		for ( int i = 0; i < value.length; ++i ) {
@@ -240,40 +470,101 @@ public class NBTWriter {
 		}
 	}
 	
-	private byte getNBTTypeFromValue( Object value ) throws IOException {
-		if ( value instanceof Byte ) {
-			return NBTDefinitions.TAG_BYTE;
-		} else if ( value instanceof Short ) {
-			return NBTDefinitions.TAG_SHORT;
-		} else if ( value instanceof Integer ) {
-			return NBTDefinitions.TAG_INT;
-		} else if ( value instanceof Long ) {
-			return NBTDefinitions.TAG_LONG;
-		} else if ( value instanceof Float ) {
-			return NBTDefinitions.TAG_FLOAT;
-		} else if ( value instanceof Double ) {
-			return NBTDefinitions.TAG_DOUBLE;
-		} else if ( value instanceof byte[] ) {
-			return NBTDefinitions.TAG_BYTE_ARRAY;
-		} else if ( value instanceof String ) {
-			return NBTDefinitions.TAG_STRING;
-		} else if ( value instanceof List ) {
-			return NBTDefinitions.TAG_LIST;
-		} else if ( value instanceof NBTTagCompound ) {
-			return NBTDefinitions.TAG_COMPOUND;
-		} else if ( value instanceof int[] ) {
-			return NBTDefinitions.TAG_INT_ARRAY;
-		} else {
+	byte getNBTTypeFromValue( Object value ) throws IOException {
+		byte type = NBTDefinitions.getTagType( value );
+		if ( type == -1 ) {
 			throw new IOException( "Invalid NBT Data: Cannot deduce NBT type of class '" + value.getClass().getName() + "' (value: '" + value.toString() + "')" );
 		}
+
+		return type;
+	}
+
+	/**
+	 * Reserves room for the header of a list or array whose length is not known yet. Nothing gets flushed until the
+	 * header has been completed, the buffer grows instead.
+	 *
+	 * @param withType Whether or not the header starts with the type of the elements
+	 * @return The position of the header, to be passed to {@link #completeHeader(int, boolean, byte, int)}
+	 * @throws IOException Thrown in case flushing buffered data failed
+	 */
+	int reserveHeader( boolean withType ) throws IOException {
+		int size = ( withType ? 1 : 0 ) + ( this.useVarint ? 5 : 4 );
+		this.ensureCapacity( size );
+		this.openHeaders++;
+
+		int position = this.buffer.position();
+		this.buffer.position( position + size );
+		return position;
+	}
+
+	/**
+	 * Drops the elements which have been written after a header reserved through {@link #reserveHeader(boolean)},
+	 * they are still in the buffer since nothing gets flushed while the header is open
+	 *
+	 * @param position The position of the header
+	 * @param withType Whether or not the header starts with the type of the elements
+	 */
+	void rewindHeader( int position, boolean withType ) {
+		this.buffer.position( position + ( withType ? 1 : 0 ) + ( this.useVarint ? 5 : 4 ) );
+	}
+
+	/**
+	 * Writes a header which has been reserved through {@link #reserveHeader(boolean)}
+	 *
+	 * @param position The position of the header
+	 * @param withType Whether or not the header starts with the type of the elements
+	 * @param type     The type of the elements
+	 * @param length   The amount of elements
+	 */
+	void completeHeader( int position, boolean withType, byte type, int length ) {
+		this.openHeaders--;
+		if ( withType ) {
+			this.buffer.put( position++, type );
+		}
+
+		if ( !this.useVarint ) {
+			this.buffer.putInt( position, length );
+			return;
+		}
+
+		// Lengths are encoded like every other int, as a zigzag varint
+		byte[] array = this.buffer.array();
+		int value = ( length << 1 ) ^ ( length >> 31 );
+		int size = 1;
+		for ( int rest = value >>> 7; rest != 0; rest >>>= 7 ) {
+			size++;
+		}
+
+		// Most varints are shorter than the reserved room, the elements move down to close the gap
+		int end = this.buffer.position();
+		System.arraycopy( array, position + 5, array, position + size, end - position - 5 );
+		while ( ( value & -128 ) != 0 ) {
+			array[position++] = (byte) ( value & 127 | 128 );
+			value >>>= 7;
+		}
+
+		array[position] = (byte) value;
+		this.buffer.position( end - 5 + size );
 	}
 
 	private void ensureCapacity( int capacity ) throws IOException {
 		if ( this.buffer.remaining() < capacity ) {
+			// Reserved headers have to stay in the buffer, it grows until they have been completed
+			if ( this.openHeaders > 0 ) {
+				int position = this.buffer.position();
+				byte[] newArray = Arrays.copyOf( this.buffer.array(), Math.max( 2 * this.buffer.capacity(), position + capacity ) );
+				this.buffer = ByteBuffer.wrap( newArray );
+				this.buffer.position( position );
+				this.buffer.limit( this.buffer.capacity() );
+				this.buffer.order( this.order );
+				return;
+			}
+
 			// Are we even able to satisfy this request?
 			if ( this.buffer.capacity() < capacity ) {
 				// 1.) Flush what is still buffered right now:
 				this.out.write( this.buffer.array(), 0, this.buffer.position() );
+				this.bytesFlushed += this.buffer.position();
 
 				// 2.) Reallocate the buffer:
 				int requiredCapacity = this.buffer.array().length;
@@ -295,8 +586,18 @@ public class NBTWriter {
 
 	private void flush() throws IOException {
 		this.out.write( this.buffer.array(), 0, this.buffer.position() );
+		this.bytesFlushed += this.buffer.position();
 		this.buffer.position( 0 );
 		this.buffer.limit( this.buffer.capacity() );
 	}
 
+	/**
+	 * Writes the entries of a root compound
+	 */
+	interface RootBody {
+
+		void write() throws IOException;
+
+	}
+
 }
\ No newline at end of file
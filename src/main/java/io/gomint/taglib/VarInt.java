@@ -9,20 +9,23 @@ import java.math.BigInteger;
  */
 class VarInt {
 
+    // Longest encodings of 32 and 64 bit values
+    static final int MAX_INT_BYTES = 5;
+    static final int MAX_LONG_BYTES = 10;
+
     private static final BigInteger UNSIGNED_LONG_MAX_VALUE = new BigInteger( "FFFFFFFFFFFFFFFF", 16 );
 
     private static long encodeZigZag32( int v ) {
-        return (long) ( v << 1 ^ v >> 31 );
+        // Unsigned, sign extending would turn large values into ten byte varlongs
+        return ( v << 1 ^ v >> 31 ) & 0xFFFFFFFFL;
     }
 
-    private static int decodeZigZag32( long v ) {
-        return (int) ( v >> 1 ) ^ -( (int) ( v & 1L ) );
+    static int decodeZigZag32( long v ) {
+        return (int) ( v >>> 1 ) ^ -( (int) ( v & 1L ) );
     }
 
-    private static BigInteger decodeZigZag64( BigInteger v ) {
-        BigInteger left = v.shiftRight( 1 );
-        BigInteger right = v.and( BigInteger.ONE ).negate();
-        return left.xor( right );
+    static long decodeZigZag64( long v ) {
+        return ( v >>> 1 ) ^ -( v & 1L );
     }
 
     private static BigInteger encodeZigZag64( long v ) {
@@ -32,14 +35,12 @@ class VarInt {
         return left.xor( right );
     }
 
-    static BigInteger readSignedVarLong( NBTStreamReader reader ) throws IOException, AllocationLimitReachedException {
-        BigInteger val = readVarNumber( reader );
-        return decodeZigZag64( val );
+    static long readSignedVarLong( NBTStreamReader reader ) throws IOException, AllocationLimitReachedException {
+        return decodeZigZag64( reader.readVarNumber( MAX_LONG_BYTES ) );
     }
 
-    static BigInteger readSignedVarLong( NBTStreamReaderNoBuffer reader ) throws IOException, AllocationLimitReachedException {
-        BigInteger val = readVarNumber( reader );
-        return decodeZigZag64( val );
+    static long readSignedVarLong( NBTStreamReaderNoBuffer reader ) throws IOException, AllocationLimitReachedException {
+        return decodeZigZag64( readVarNumber( reader ) );
     }
 
     static void writeSignedVarLong( NBTWriter writer, long value ) throws IOException {
@@ -47,26 +48,9 @@ class VarInt {
         writeVarBigInteger( writer, signedLong );
     }
 
-    private static BigInteger readVarNumber( NBTStreamReader reader ) throws IOException, AllocationLimitReachedException {
-        BigInteger result = BigInteger.ZERO;
-        int offset = 0;
-        int b;
-
-        do {
-            if ( offset >= 10 ) {
-                throw new IllegalArgumentException( "Var Number too big" );
-            }
-
-            b = reader.readByteValue();
-            result = result.or( BigInteger.valueOf( ( b & 0x7f ) << ( offset * 7 ) ) );
-            offset++;
-        } while ( ( b & 0x80 ) > 0 );
-
-        return result;
-    }
-
-    private static BigInteger readVarNumber( NBTStreamReaderNoBuffer reader ) throws IOException, AllocationLimitReachedException {
-        BigInteger result = BigInteger.ZERO;
+    private static long readVarNumber( NBTStreamReaderNoBuffer reader ) throws IOException, AllocationLimitReachedException {
+        // Bits beyond 64 are dropped
+        long result = 0;
         int offset = 0;
         int b;
 
@@ -76,7 +60,7 @@ class VarInt {
             }
 
             b = reader.readByteValue();
-            result = result.or( BigInteger.valueOf( ( b & 0x7f ) << ( offset * 7 ) ) );
+            result |= (long) ( b & 0x7f ) << ( offset * 7 );
             offset++;
         } while ( ( b & 0x80 ) > 0 );
 
@@ -110,20 +94,7 @@ class VarInt {
     }
 
     static int readUnsignedVarInt( NBTStreamReader reader ) throws IOException, AllocationLimitReachedException {
-        int out = 0;
-        int bytes = 0;
-        byte in;
-
-        do {
-            in = reader.readByteValue();
-            out |= ( in & 0x7F ) << ( bytes++ * 7 );
-
-            if ( bytes > 6 ) {
-                throw new RuntimeException( "VarInt too big" );
-            }
-        } while ( ( in & 0x80 ) == 0x80 );
-
-        return out;
+        return (int) reader.readVarNumber( MAX_INT_BYTES );
     }
 
     static int readUnsignedVarInt( NBTStreamReaderNoBuffer reader ) throws IOException, AllocationLimitReachedException {
@@ -153,22 +124,6 @@ class VarInt {
         buffer.writeByteValue( (byte) ( (int) value ) );
     }
 
-    private static long readUnsignedVarLong( NBTStreamReader buffer ) throws IOException, AllocationLimitReachedException {
-        long out = 0L;
-        int bytes = 0;
-
-        byte in;
-        do {
-            in = buffer.readByteValue();
-            out |= (long) ( ( in & 127 ) << bytes++ * 7 );
-            if ( bytes > 7 ) {
-                throw new RuntimeException( "VarInt too big" );
-            }
-        } while ( ( in & 128 ) == 128 );
-
-        return out;
-    }
-
     private static long readUnsignedVarLong( NBTStreamReaderNoBuffer buffer ) throws IOException, AllocationLimitReachedException {
         long out = 0L;
         int bytes = 0;
@@ -176,7 +131,7 @@ class VarInt {
         byte in;
         do {
             in = buffer.readByteValue();
-            out |= (long) ( ( in & 127 ) << bytes++ * 7 );
+            out |= (long) ( in & 127 ) << bytes++ * 7;
             if ( bytes > 7 ) {
                 throw new RuntimeException( "VarInt too big" );
             }
@@ -185,9 +140,8 @@ class VarInt {
         return out;
     }
 
-    static int readSignedVarInt( NBTStreamReader buffer ) throws IOException, AllocationLimitReachedException {
-        long val = readUnsignedVarLong( buffer );
-        return decodeZigZag32( val );
+    static int readSignedVarInt( NBTStreamReader reader ) throws IOException, AllocationLimitReachedException {
+        return decodeZigZag32( reader.readVarNumber( MAX_INT_BYTES ) );
     }
 
     static int readSignedVarInt( NBTStreamReaderNoBuffer buffer ) throws IOException, AllocationLimitReachedException {
@@ -1,6 +1,7 @@
 module gomint.taglib {
     requires slf4j.api;
     requires lombok;
+    requires static jdk.jfr;
 
     exports io.gomint.taglib;
 }
\ No newline at end of file
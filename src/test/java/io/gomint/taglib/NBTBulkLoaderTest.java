@@ -0,0 +1,81 @@
+package io.gomint.taglib;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Every file of a directory has to end up as exactly one result, broken files included
+ *
+ * @author geNAZt
+ * @version 1.0
+ */
+public class NBTBulkLoaderTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void brokenFilesFailNextToGoodOnes() throws Exception {
+        NBTTagCompound good = new NBTTagCompound( "" );
+        good.addValue( "name", "good" );
+        good.addValue( "bytes", new byte[1024] );
+        byte[] data = NBTTestData.encode( good, ByteOrder.BIG_ENDIAN, false );
+
+        // Inflates to 4 MB of zeros out of a few kilobytes, far over the limit of the loader
+        NBTTagCompound oversized = new NBTTagCompound( "" );
+        oversized.addValue( "bytes", new byte[4 * 1024 * 1024] );
+
+        byte[] truncated = gzip( data );
+        Files.write( this.directory.resolve( "good.dat" ), gzip( data ) );
+        Files.write( this.directory.resolve( "plain.dat" ), data );
+        Files.write( this.directory.resolve( "oversized.dat" ), gzip( NBTTestData.encode( oversized, ByteOrder.BIG_ENDIAN, false ) ) );
+        Files.write( this.directory.resolve( "truncated.dat" ), Arrays.copyOf( truncated, truncated.length / 2 ) );
+        Files.write( this.directory.resolve( "garbage.dat" ), new byte[]{ 0x1F, (byte) 0x8B, 8, 0, 1, 2, 3, 4, 5, 6, 7, 8, 9 } );
+
+        NBTBulkLoader loader = new NBTBulkLoader( ByteOrder.BIG_ENDIAN );
+        loader.setAllocateLimit( 1024 * 1024 );
+
+        Map<String, NBTBulkLoader.Result> results = assertTimeoutPreemptively( Duration.ofSeconds( 30 ), () -> {
+            try ( Stream<NBTBulkLoader.Result> stream = loader.loadAll( this.directory, path -> true, 2 ) ) {
+                return stream.collect( Collectors.toMap( result -> result.getPath().getFileName().toString(), result -> result, ( a, b ) -> {
+                    throw new IllegalStateException( "Two results for " + a.getPath() );
+                }, TreeMap::new ) );
+            }
+        } );
+
+        assertEquals( 5, results.size() );
+        assertTrue( NBTTestData.same( good, results.get( "good.dat" ).getCompound() ) );
+        assertTrue( NBTTestData.same( good, results.get( "plain.dat" ).getCompound() ) );
+        for ( String name : new String[]{ "oversized.dat", "truncated.dat", "garbage.dat" } ) {
+            NBTBulkLoader.Result result = results.get( name );
+            assertTrue( !result.isSuccess() && result.getError() instanceof IOException, name + ": " + result );
+        }
+    }
+
+    private static byte[] gzip( byte[] data ) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try ( GZIPOutputStream gzip = new GZIPOutputStream( out ) ) {
+            gzip.write( data );
+        }
+
+        return out.toByteArray();
+    }
+
+}
@@ -0,0 +1,159 @@
+package io.gomint.taglib;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Canonical output has to depend on the content only and read back like any other output
+ *
+ * @author geNAZt
+ * @version 1.0
+ */
+public class NBTCanonicalTest {
+
+    private static final ByteOrder[] ORDERS = { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN };
+
+    @Test
+    public void equalContentGivesEqualBytes() throws Exception {
+        Random random = new Random( 50 );
+        for ( int i = 0; i < 50; i++ ) {
+            NBTTagCompound compound = NBTTestData.compound( random, "root", 0 );
+            NBTTagCompound reversed = (NBTTagCompound) reversed( compound );
+
+            // "Aa" and "BB" share a bucket, so both compounds iterate them in the order they have been added
+            compound.addValue( "Aa", 1 );
+            compound.addValue( "BB", 2 );
+            reversed.addValue( "BB", 2 );
+            reversed.addValue( "Aa", 1 );
+            assertTrue( compound.contentEquals( reversed ) );
+
+            for ( ByteOrder order : ORDERS ) {
+                for ( boolean varint : new boolean[]{ false, true } ) {
+                    assertFalse( Arrays.equals( write( compound, order, varint, false ), write( reversed, order, varint, false ) ) );
+
+                    byte[] data = write( compound, order, varint, true );
+                    assertArrayEquals( data, write( reversed, order, varint, true ) );
+
+                    NBTReader reader = new NBTReader( new ByteArrayInputStream( data ), order );
+                    reader.setUseVarint( varint );
+                    assertTrue( NBTTestData.same( compound, reader.parse() ) );
+                }
+
+                byte[] packed = packed( compound, order );
+                assertArrayEquals( packed, packed( reversed, order ) );
+                assertTrue( NBTTestData.same( compound, new NBTByteArrayReader( packed, order ).parse() ) );
+            }
+        }
+    }
+
+    @Test
+    public void entriesAreWrittenSortedByName() throws Exception {
+        // Both shapes have the same hash, the cached order of one must not be used for the other
+        NBTTagCompound first = new NBTTagCompound( "" );
+        first.addValue( "Aa", 1 );
+        first.addValue( "x", 2 );
+        NBTTagCompound second = new NBTTagCompound( "" );
+        second.addValue( "BB", 1 );
+        second.addValue( "x", 2 );
+        assertEquals( "Aa".hashCode(), "BB".hashCode() );
+
+        NBTTagCompound many = new NBTTagCompound( "" );
+        for ( int i = 0; i < 100; i++ ) {
+            many.addValue( Integer.toString( i * 7919 % 1000, 36 ), i );
+        }
+
+        for ( NBTTagCompound compound : new NBTTagCompound[]{ first, second, first, many } ) {
+            List<String> paths = new ArrayList<>();
+            NBTStream stream = new NBTStream( new ByteArrayInputStream( write( compound, ByteOrder.BIG_ENDIAN, false, true ) ), ByteOrder.BIG_ENDIAN );
+            stream.addListener( ( path, value ) -> paths.add( path ) );
+            stream.parse();
+
+            List<String> sorted = new ArrayList<>( paths );
+            Collections.sort( sorted );
+            assertEquals( sorted, paths );
+            assertEquals( compound.size(), paths.size() );
+        }
+    }
+
+    @Test
+    public void nanIsWrittenCanonically() throws Exception {
+        NBTTagCompound quiet = new NBTTagCompound( "" );
+        quiet.addValue( "f", Float.NaN );
+        quiet.addValue( "d", Double.NaN );
+        NBTTagCompound payload = new NBTTagCompound( "" );
+        payload.addValue( "f", Float.intBitsToFloat( 0x7fc00001 ) );
+        payload.addValue( "d", Double.longBitsToDouble( 0xfff0000000000001L ) );
+
+        for ( ByteOrder order : ORDERS ) {
+            assertFalse( Arrays.equals( write( quiet, order, false, false ), write( payload, order, false, false ) ) );
+
+            byte[] data = write( payload, order, false, true );
+            assertArrayEquals( write( quiet, order, false, true ), data );
+
+            NBTTagCompound read = new NBTByteArrayReader( data, order ).parse();
+            assertEquals( Float.floatToRawIntBits( Float.NaN ), Float.floatToRawIntBits( read.getFloat( "f", 0f ) ) );
+            assertEquals( Double.doubleToRawLongBits( Double.NaN ), Double.doubleToRawLongBits( read.getDouble( "d", 0d ) ) );
+        }
+    }
+
+    private static byte[] write( NBTTagCompound compound, ByteOrder byteOrder, boolean varint, boolean canonical ) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        NBTWriter writer = new NBTWriter( out, byteOrder );
+        writer.setUseVarint( varint );
+        writer.setCanonical( canonical );
+        writer.write( compound );
+        return out.toByteArray();
+    }
+
+    private static byte[] packed( NBTTagCompound compound, ByteOrder byteOrder ) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        NBTWriter writer = new NBTWriter( out, byteOrder );
+        writer.setCanonical( true );
+        writer.writePacked( compound, null );
+        return out.toByteArray();
+    }
+
+    /**
+     * Copies a value, adding the entries of every compound in reverse order
+     */
+    private static Object reversed( Object value ) {
+        if ( value instanceof NBTTagCompound ) {
+            NBTTagCompound compound = (NBTTagCompound) value;
+            List<Map.Entry<String, Object>> entries = new ArrayList<>();
+            compound.entries().forEach( entries::add );
+            Collections.reverse( entries );
+
+            NBTTagCompound copy = new NBTTagCompound( compound.getName() );
+            for ( Map.Entry<String, Object> entry : entries ) {
+                copy.set( entry.getKey(), reversed( entry.getValue() ) );
+            }
+
+            return copy;
+        } else if ( value instanceof List ) {
+            List<Object> copy = new ArrayList<>();
+            for ( Object element : (List<?>) value ) {
+                copy.add( reversed( element ) );
+            }
+
+            return copy;
+        }
+
+        return value;
+    }
+
+}
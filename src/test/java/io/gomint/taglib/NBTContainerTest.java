@@ -0,0 +1,77 @@
+package io.gomint.taglib;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author geNAZt
+ * @version 1.0
+ */
+public class NBTContainerTest {
+
+    @TempDir
+    File directory;
+
+    @Test
+    public void compactKeepsContainerUsable() throws Exception {
+        File file = new File( this.directory, "container.nbt" );
+        try ( NBTContainer container = new NBTContainer( file, ByteOrder.BIG_ENDIAN ) ) {
+            for ( int i = 0; i < 100; i++ ) {
+                container.put( "key" + ( i % 10 ), compound( i ) );
+            }
+
+            container.remove( "key0" );
+            container.compact();
+            assertEquals( 0, container.getGarbageRatio(), 0.0001 );
+
+            // The channel has been reopened after the move
+            container.put( "key10", compound( 10 ) );
+            container.flush();
+            assertEquals( 10, container.size() );
+            assertNull( container.get( "key0" ) );
+            assertEquals( 99, (int) container.get( "key9" ).getInteger( "value", -1 ) );
+        }
+
+        assertTrue( new File( this.directory, "container.nbt" ).exists() );
+        assertTrue( !new File( this.directory, "container.nbt.compact" ).exists() );
+    }
+
+    @Test
+    public void removeFlushesLikePut() throws IOException {
+        File file = new File( this.directory, "removals.nbt" );
+        try ( NBTContainer container = new NBTContainer( file, ByteOrder.LITTLE_ENDIAN ) ) {
+            StringBuilder padding = new StringBuilder();
+            for ( int i = 0; i < 200; i++ ) {
+                padding.append( 'x' );
+            }
+
+            for ( int i = 0; i < 6000; i++ ) {
+                container.put( padding + "" + i, compound( i ) );
+            }
+
+            container.flush();
+            long flushed = file.length();
+            for ( int i = 0; i < 6000; i++ ) {
+                container.remove( padding + "" + i );
+            }
+
+            // More than a megabyte of removals has been buffered, part of it has to be on disk already
+            assertTrue( file.length() > flushed );
+        }
+    }
+
+    private static NBTTagCompound compound( int value ) {
+        NBTTagCompound compound = new NBTTagCompound( "" );
+        compound.addValue( "value", value );
+        return compound;
+    }
+
+}
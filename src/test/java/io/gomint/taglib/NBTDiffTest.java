@@ -0,0 +1,148 @@
+package io.gomint.taglib;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author geNAZt
+ * @version 1.0
+ */
+public class NBTDiffTest {
+
+    @Test
+    public void applyingTheDiffProducesTheNewCompound() throws Exception {
+        Random random = new Random( 27 );
+        for ( int i = 0; i < 200; i++ ) {
+            NBTTagCompound oldCompound = entity( random );
+            NBTTagCompound newCompound = entity( random );
+
+            NBTPatch patch = NBTDiff.diff( oldCompound, newCompound );
+            assertTrue( newCompound.contentEquals( NBTDiff.apply( oldCompound.deepClone( "" ), patch ) ) );
+
+            // Through the encoded form of the patch and the compound
+            NBTPatch decoded = NBTPatch.readFrom( patch.toByteArray( ByteOrder.LITTLE_ENDIAN ), ByteOrder.LITTLE_ENDIAN );
+            byte[] applied = NBTDiff.apply( encode( oldCompound ), decoded, ByteOrder.BIG_ENDIAN );
+            assertTrue( newCompound.contentEquals( NBTTagCompound.readFrom( new ByteArrayInputStream( applied ), false, ByteOrder.BIG_ENDIAN ) ) );
+        }
+    }
+
+    @Test
+    public void unchangedCompoundsGiveEmptyPatches() {
+        NBTTagCompound compound = entity( new Random( 1 ) );
+        assertTrue( NBTDiff.diff( compound, compound.deepClone( "" ) ).isEmpty() );
+    }
+
+    @Test
+    public void arrayRangesOnlyCarryTheChange() throws IOException {
+        NBTTagCompound oldCompound = new NBTTagCompound( "" );
+        oldCompound.addValue( "blocks", new byte[4096] );
+        NBTTagCompound newCompound = oldCompound.deepClone( "" );
+        newCompound.getByteArray( "blocks", null )[100] = 1;
+
+        NBTPatch patch = NBTDiff.diff( oldCompound, newCompound );
+        assertTrue( patch.toByteArray( ByteOrder.BIG_ENDIAN ).length < 64 );
+        assertTrue( newCompound.contentEquals( NBTDiff.apply( oldCompound, patch ) ) );
+    }
+
+    @Test
+    public void patchesWhichDontFitAreRejected() {
+        NBTTagCompound base = new NBTTagCompound( "" );
+        base.addValue( "list", new ArrayList<>( Arrays.asList( 1, 2, 3 ) ) );
+
+        assertThrows( IllegalArgumentException.class, () -> NBTDiff.apply( base, patch( new Object[0] ) ) );
+        assertThrows( IllegalArgumentException.class, () -> NBTDiff.apply( base, patch( new Object[]{ "list", -1 } ) ) );
+        assertThrows( IllegalArgumentException.class, () -> NBTDiff.apply( base, patch( new Object[]{ "list", 3 } ) ) );
+        assertThrows( IllegalArgumentException.class, () -> NBTDiff.apply( base, patch( new Object[]{ "list", -1, "x" } ) ) );
+        assertThrows( IllegalArgumentException.class, () -> NBTDiff.apply( base, patch( new Object[]{ "missing", "x" } ) ) );
+    }
+
+    @Test
+    public void patchesWhichDontFitLeaveTheCompoundUnchanged() {
+        NBTTagCompound base = new NBTTagCompound( "" );
+        base.addValue( "value", 1 );
+        base.addValue( "list", new ArrayList<>( Arrays.asList( 1, 2, 3 ) ) );
+        NBTTagCompound copy = base.deepClone( "" );
+
+        // The second operation only fits after the first one, the third one never does
+        NBTPatch patch = new NBTPatch();
+        patch.add( new NBTPatch.Operation( NBTPatch.OP_SET, new Object[]{ "value" }, 2, 0 ) );
+        patch.add( new NBTPatch.Operation( NBTPatch.OP_SET, new Object[]{ "nested" }, new NBTTagCompound( "nested" ), 0 ) );
+        patch.add( new NBTPatch.Operation( NBTPatch.OP_SET, new Object[]{ "nested", "x" }, 1, 0 ) );
+        patch.add( new NBTPatch.Operation( NBTPatch.OP_SET, new Object[]{ "list", 3 }, 1, 0 ) );
+
+        assertThrows( IllegalArgumentException.class, () -> NBTDiff.apply( base, patch ) );
+        assertTrue( copy.contentEquals( base ) );
+    }
+
+    @Test
+    public void hostilePathLengthsAreRejected() {
+        // One set operation with a path of Integer.MAX_VALUE segments
+        byte[] data = { 1, 1, 0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07 };
+        assertThrows( IOException.class, () -> NBTPatch.readFrom( data, ByteOrder.BIG_ENDIAN ) );
+        assertThrows( IOException.class, () -> NBTPatch.readFrom( new ByteArrayInputStream( data ), ByteOrder.BIG_ENDIAN ) );
+    }
+
+    private static NBTPatch patch( Object[] path ) {
+        NBTPatch patch = new NBTPatch();
+        patch.add( new NBTPatch.Operation( NBTPatch.OP_SET, path, 1, 0 ) );
+        return patch;
+    }
+
+    private static NBTTagCompound entity( Random random ) {
+        NBTTagCompound compound = new NBTTagCompound( "" );
+        compound.addValue( "id", "minecraft:zombie" );
+        if ( random.nextBoolean() ) {
+            compound.addValue( "health", (float) random.nextInt( 20 ) );
+        }
+
+        compound.addValue( "age", random.nextInt( 3 ) );
+
+        List<Object> pos = new ArrayList<>();
+        for ( int i = 0; i < ( random.nextInt( 4 ) == 0 ? 2 : 3 ); i++ ) {
+            pos.add( (double) random.nextInt( 4 ) );
+        }
+
+        compound.addValue( "Pos", pos );
+
+        byte[] blocks = new byte[64];
+        blocks[random.nextInt( blocks.length )] = (byte) random.nextInt( 3 );
+        compound.addValue( "blocks", blocks );
+        compound.addValue( "heights", random.nextBoolean() ? new int[]{ 1, 2, 3 } : new int[]{ 1, random.nextInt( 3 ), 3, 4 } );
+
+        NBTTagCompound equipment = new NBTTagCompound( "equipment" );
+        equipment.addValue( "slot", (byte) random.nextInt( 2 ) );
+        if ( random.nextBoolean() ) {
+            equipment.addValue( "name", "sword" );
+        }
+
+        compound.addValue( "equipment", equipment );
+
+        List<Object> items = new ArrayList<>();
+        for ( int i = 0; i < 2; i++ ) {
+            NBTTagCompound item = new NBTTagCompound( null );
+            item.addValue( "count", (byte) random.nextInt( 3 ) );
+            items.add( item );
+        }
+
+        compound.addValue( "items", items );
+        return compound;
+    }
+
+    private static byte[] encode( NBTTagCompound compound ) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        compound.writeTo( out, false, ByteOrder.BIG_ENDIAN );
+        return out.toByteArray();
+    }
+
+}
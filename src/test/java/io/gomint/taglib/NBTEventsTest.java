@@ -0,0 +1,57 @@
+package io.gomint.taglib;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author geNAZt
+ * @version 1.0
+ */
+public class NBTEventsTest {
+
+    @Test
+    public void noEventsWithoutRecording() {
+        assertNull( NBTEvents.beginParse() );
+        assertNull( NBTEvents.beginWrite() );
+    }
+
+    @Test
+    public void recordingsGetEvents() throws Exception {
+        NBTTagCompound compound = NBTTestData.compound( new Random( 7 ), "root", 0 );
+        Path file = Files.createTempFile( "taglib", ".jfr" );
+        try ( Recording recording = new Recording() ) {
+            recording.enable( "io.gomint.taglib.Parse" ).withoutThreshold();
+            recording.enable( "io.gomint.taglib.Write" ).withoutThreshold();
+            recording.start();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            compound.writeTo( out, false, ByteOrder.BIG_ENDIAN );
+            new NBTByteArrayReader( out.toByteArray(), ByteOrder.BIG_ENDIAN ).parse();
+
+            recording.stop();
+            recording.dump( file );
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents( file );
+            assertEquals( 1, events.stream().filter( event -> event.getEventType().getName().equals( "io.gomint.taglib.Write" ) ).count() );
+            RecordedEvent parse = events.stream().filter( event -> event.getEventType().getName().equals( "io.gomint.taglib.Parse" ) ).findFirst().orElseThrow();
+            assertEquals( out.size(), parse.getLong( "bytes" ) );
+            assertTrue( parse.getBoolean( "success" ) );
+        } finally {
+            Files.delete( file );
+        }
+    }
+
+}
@@ -0,0 +1,226 @@
+package io.gomint.taglib;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Declared lengths and nesting are attacker controlled, every reader has to reject hostile headers before it
+ * allocates for them
+ *
+ * @author geNAZt
+ * @version 1.0
+ */
+public class NBTHostileDataTest {
+
+    private static final int HUGE = Integer.MAX_VALUE - 8;
+
+    public static class Nothing {
+    }
+
+    /**
+     * Reads one root compound of the given big endian data
+     */
+    private interface Read {
+        void read( byte[] data, Limits limits ) throws Exception;
+    }
+
+    /**
+     * Limits a reader is configured with, -1 keeps the default
+     */
+    private static final class Limits {
+        private int maxDepth = -1;
+        private int maxListLength = -1;
+        private int maxArrayLength = -1;
+        private int maxStringLength = -1;
+
+        private void apply( IntConsumer depth, IntConsumer list, IntConsumer array, IntConsumer string ) {
+            if ( this.maxDepth != -1 ) {
+                depth.accept( this.maxDepth );
+            }
+
+            if ( this.maxListLength != -1 ) {
+                list.accept( this.maxListLength );
+            }
+
+            if ( this.maxArrayLength != -1 ) {
+                array.accept( this.maxArrayLength );
+            }
+
+            if ( this.maxStringLength != -1 ) {
+                string.accept( this.maxStringLength );
+            }
+        }
+    }
+
+    private static Map<String, Read> readers( boolean withScanners ) {
+        Map<String, Read> readers = new LinkedHashMap<>();
+        readers.put( "NBTReader stream", ( data, limits ) -> {
+            NBTReader reader = new NBTReader( new ByteArrayInputStream( data ), ByteOrder.BIG_ENDIAN );
+            limits.apply( reader::setMaxDepth, reader::setMaxListLength, reader::setMaxArrayLength, reader::setMaxStringLength );
+            reader.parse();
+        } );
+        readers.put( "NBTReader buffer", ( data, limits ) -> {
+            NBTReader reader = new NBTReader( ByteBuffer.wrap( data ), ByteOrder.BIG_ENDIAN );
+            limits.apply( reader::setMaxDepth, reader::setMaxListLength, reader::setMaxArrayLength, reader::setMaxStringLength );
+            reader.parse();
+        } );
+        readers.put( "NBTByteArrayReader", ( data, limits ) -> {
+            NBTByteArrayReader reader = new NBTByteArrayReader( data, ByteOrder.BIG_ENDIAN );
+            limits.apply( reader::setMaxDepth, reader::setMaxListLength, reader::setMaxArrayLength, reader::setMaxStringLength );
+            reader.parse();
+        } );
+        readers.put( "NBTReaderNoBuffer", ( data, limits ) -> {
+            NBTReaderNoBuffer reader = new NBTReaderNoBuffer( new ByteArrayInputStream( data ), ByteOrder.BIG_ENDIAN );
+            limits.apply( reader::setMaxDepth, reader::setMaxListLength, reader::setMaxArrayLength, reader::setMaxStringLength );
+            reader.parse();
+        } );
+        readers.put( "NBTReaderNoBuffer framed", ( data, limits ) -> {
+            NBTReaderNoBuffer reader = new NBTReaderNoBuffer( new ByteArrayInputStream( data ), data.length, ByteOrder.BIG_ENDIAN );
+            limits.apply( reader::setMaxDepth, reader::setMaxListLength, reader::setMaxArrayLength, reader::setMaxStringLength );
+            reader.parse();
+        } );
+        readers.put( "NBTPushParser", ( data, limits ) -> {
+            NBTPushParser parser = new NBTPushParser( ByteOrder.BIG_ENDIAN );
+            limits.apply( parser::setMaxDepth, parser::setMaxListLength, parser::setMaxArrayLength, parser::setMaxStringLength );
+            parser.feed( ByteBuffer.wrap( data ) );
+            if ( !parser.isIdle() ) {
+                // The parser can't know that the input ended, the caller can
+                throw new IOException( "Input ended inside a root" );
+            }
+        } );
+        readers.put( "NBTObjectReader stream", ( data, limits ) -> {
+            NBTObjectReader reader = new NBTObjectReader( new ByteArrayInputStream( data ), ByteOrder.BIG_ENDIAN );
+            limits.apply( reader::setMaxDepth, reader::setMaxListLength, reader::setMaxArrayLength, reader::setMaxStringLength );
+            reader.read( NBTCodecs.get( Nothing.class ) );
+        } );
+        readers.put( "NBTObjectReader buffer", ( data, limits ) -> {
+            NBTObjectReader reader = new NBTObjectReader( ByteBuffer.wrap( data ), ByteOrder.BIG_ENDIAN );
+            limits.apply( reader::setMaxDepth, reader::setMaxListLength, reader::setMaxArrayLength, reader::setMaxStringLength );
+            reader.read( NBTCodecs.get( Nothing.class ) );
+        } );
+        readers.put( "NBTStream", ( data, limits ) -> {
+            NBTStream stream = new NBTStream( new ByteArrayInputStream( data ), ByteOrder.BIG_ENDIAN );
+            limits.apply( stream::setMaxDepth, stream::setMaxListLength, stream::setMaxArrayLength, stream::setMaxStringLength );
+            stream.addListener( ( path, value ) -> {
+            } );
+            stream.parse();
+        } );
+
+        if ( withScanners ) {
+            // Scanners have no length limits, declared lengths are checked against the input which is left
+            readers.put( "NBTScanner", ( data, limits ) -> {
+                NBTScanner scanner = new NBTScanner( ByteOrder.BIG_ENDIAN );
+                NBTScanner.Result result = scanner.scan( new ByteArrayInputStream( data ) );
+                if ( !result.isValid() ) {
+                    throw new IOException( result.getError() );
+                }
+            } );
+            readers.put( "NBTTranscoder", ( data, limits ) -> {
+                NBTTranscoder transcoder = new NBTTranscoder( ByteOrder.BIG_ENDIAN );
+                transcoder.toText( new ByteArrayInputStream( data ), new StringWriter() );
+            } );
+        }
+
+        return readers;
+    }
+
+    @Test
+    public void hugeDeclaredLengthsAreRejected() throws Exception {
+        List<byte[]> payloads = new ArrayList<>();
+        payloads.add( entry( NBTDefinitions.TAG_LIST ).put( NBTDefinitions.TAG_INT ).putInt( HUGE ).put( new byte[8] ).array() );
+        payloads.add( entry( NBTDefinitions.TAG_LIST ).put( NBTDefinitions.TAG_LIST ).putInt( HUGE ).put( new byte[8] ).array() );
+        payloads.add( entry( NBTDefinitions.TAG_LIST ).put( NBTDefinitions.TAG_COMPOUND ).putInt( HUGE ).put( new byte[8] ).array() );
+        payloads.add( entry( NBTDefinitions.TAG_LIST ).put( NBTDefinitions.TAG_INT ).putInt( -1 ).put( new byte[8] ).array() );
+        payloads.add( entry( NBTDefinitions.TAG_BYTE_ARRAY ).putInt( HUGE ).put( new byte[8] ).array() );
+        payloads.add( entry( NBTDefinitions.TAG_BYTE_ARRAY ).putInt( -1 ).put( new byte[8] ).array() );
+        payloads.add( entry( NBTDefinitions.TAG_INT_ARRAY ).putInt( HUGE ).put( new byte[8] ).array() );
+        payloads.add( entry( NBTDefinitions.TAG_STRING ).putShort( (short) 0xFFFF ).put( new byte[8] ).array() );
+
+        for ( byte[] data : payloads ) {
+            for ( Map.Entry<String, Read> reader : readers( true ).entrySet() ) {
+                assertRejected( reader.getKey(), reader.getValue(), data, new Limits() );
+            }
+        }
+    }
+
+    @Test
+    public void deepNestingIsRejected() throws Exception {
+        // Lists of lists only take two bytes per level, deeper than the default limit
+        int levels = AllocationBudget.DEFAULT_MAX_DEPTH + 10;
+        ByteBuffer buffer = entry( NBTDefinitions.TAG_LIST, levels * 5 + 8 );
+        for ( int i = 0; i < levels; i++ ) {
+            buffer.put( NBTDefinitions.TAG_LIST ).putInt( 1 );
+        }
+
+        byte[] data = buffer.array();
+        for ( Map.Entry<String, Read> reader : readers( true ).entrySet() ) {
+            assertRejected( reader.getKey(), reader.getValue(), data, new Limits() );
+        }
+    }
+
+    @Test
+    public void configuredLimitsRejectValidData() throws Exception {
+        NBTTagCompound nested = new NBTTagCompound( "" );
+        nested.getCompound( "a", true ).getCompound( "b", true ).getCompound( "c", true ).addValue( "d", 1 );
+
+        NBTTagCompound lengths = new NBTTagCompound( "" );
+        lengths.addValue( "list", new ArrayList<>( Collections.nCopies( 1000, 1 ) ) );
+        lengths.addValue( "bytes", new byte[1000] );
+        lengths.addValue( "ints", new int[1000] );
+        lengths.addValue( "string", String.join( "", Collections.nCopies( 1000, "x" ) ) );
+
+        Limits depth = new Limits();
+        depth.maxDepth = 3;
+        Limits list = new Limits();
+        list.maxListLength = 999;
+        Limits array = new Limits();
+        array.maxArrayLength = 999;
+        Limits string = new Limits();
+        string.maxStringLength = 999;
+
+        byte[] nestedData = NBTTestData.encode( nested, ByteOrder.BIG_ENDIAN, false );
+        byte[] lengthData = NBTTestData.encode( lengths, ByteOrder.BIG_ENDIAN, false );
+        for ( Map.Entry<String, Read> reader : readers( false ).entrySet() ) {
+            reader.getValue().read( nestedData, new Limits() );
+            reader.getValue().read( lengthData, new Limits() );
+
+            assertRejected( reader.getKey(), reader.getValue(), nestedData, depth );
+            assertRejected( reader.getKey(), reader.getValue(), lengthData, list );
+            assertRejected( reader.getKey(), reader.getValue(), lengthData, array );
+            assertRejected( reader.getKey(), reader.getValue(), lengthData, string );
+        }
+    }
+
+    private static void assertRejected( String name, Read reader, byte[] data, Limits limits ) {
+        Exception e = assertThrows( Exception.class, () -> reader.read( data, limits ), name );
+        assertTrue( e instanceof IOException || e instanceof AllocationLimitReachedException, name + ": " + e );
+    }
+
+    private static ByteBuffer entry( byte tagID ) {
+        return entry( tagID, 16 );
+    }
+
+    /**
+     * Starts a root compound with one entry named "v" of the given type, the value has to follow
+     */
+    private static ByteBuffer entry( byte tagID, int valueSize ) {
+        return ByteBuffer.allocate( 7 + valueSize )
+            .put( NBTDefinitions.TAG_COMPOUND ).putShort( (short) 0 )
+            .put( tagID ).putShort( (short) 1 ).put( (byte) 'v' );
+    }
+
+}
@@ -0,0 +1,73 @@
+package io.gomint.taglib;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author geNAZt
+ * @version 1.0
+ */
+public class NBTObjectReaderTest {
+
+    public static class Holder {
+        List<Integer> values;
+        List<String> names;
+    }
+
+    @Test
+    public void hostileListHeaderDoesNotAllocate() {
+        // 20 bytes which announce a list of almost Integer.MAX_VALUE ints
+        byte[] data = ByteBuffer.allocate( 20 )
+            .put( NBTDefinitions.TAG_COMPOUND ).putShort( (short) 0 )
+            .put( NBTDefinitions.TAG_LIST ).putShort( (short) 6 ).put( "values".getBytes() )
+            .put( NBTDefinitions.TAG_INT ).putInt( Integer.MAX_VALUE - 8 )
+            .put( new byte[3] )
+            .array();
+
+        NBTObjectReader reader = new NBTObjectReader( new ByteArrayInputStream( data ), ByteOrder.BIG_ENDIAN );
+        assertThrows( IOException.class, () -> reader.read( NBTCodecs.get( Holder.class ) ) );
+
+        NBTObjectReader bufferReader = new NBTObjectReader( ByteBuffer.wrap( data ), ByteOrder.BIG_ENDIAN );
+        assertThrows( IOException.class, () -> bufferReader.read( NBTCodecs.get( Holder.class ) ) );
+    }
+
+    @Test
+    public void listsRoundTrip() throws Exception {
+        Holder holder = new Holder();
+        holder.values = new ArrayList<>();
+        for ( int i = 0; i < 3000; i++ ) {
+            holder.values.add( i * 7 );
+        }
+
+        holder.names = Arrays.asList( "a", "b" );
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        NBTCodecs.toCompound( "", holder ).writeTo( out, false, ByteOrder.BIG_ENDIAN );
+
+        Holder read = new NBTObjectReader( new ByteArrayInputStream( out.toByteArray() ), ByteOrder.BIG_ENDIAN ).read( NBTCodecs.get( Holder.class ) );
+        assertEquals( holder.values, read.values );
+        assertEquals( holder.names, read.names );
+    }
+
+    @Test
+    public void nullListElementsAreRejected() {
+        Holder holder = new Holder();
+        holder.names = Arrays.asList( "a", null );
+
+        NBTObjectWriter writer = new NBTObjectWriter( new ByteArrayOutputStream(), ByteOrder.BIG_ENDIAN );
+        assertThrows( IOException.class, () -> writer.write( "", holder, NBTCodecs.get( Holder.class ) ) );
+        assertThrows( IllegalArgumentException.class, () -> NBTCodecs.toCompound( "", holder ) );
+    }
+
+}
@@ -0,0 +1,232 @@
+package io.gomint.taglib;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Packed data has to read back the same with every reader, with and without a shared name table
+ *
+ * @author geNAZt
+ * @version 1.0
+ */
+public class NBTPackedTest {
+
+    private static final ByteOrder[] ORDERS = { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN };
+
+    public static class Holder {
+        List<Integer> values;
+        List<String> names;
+    }
+
+    public static class Nothing {
+    }
+
+    @Test
+    public void everyReaderReadsPackedData() throws Exception {
+        Random random = new Random( 49 );
+        List<NBTTagCompound> samples = new ArrayList<>();
+        for ( int i = 0; i < 20; i++ ) {
+            samples.add( NBTTestData.compound( random, "root", 0 ) );
+        }
+
+        NBTNameTable table = NBTNameTable.train( samples, 8 );
+        for ( NBTTagCompound compound : samples ) {
+            for ( ByteOrder order : ORDERS ) {
+                for ( NBTNameTable names : new NBTNameTable[]{ null, table } ) {
+                    byte[] data = packed( compound, order, names );
+
+                    NBTReader stream = new NBTReader( new ByteArrayInputStream( data ), order );
+                    stream.setNameTable( names );
+                    assertTrue( NBTTestData.same( compound, stream.parse() ) );
+
+                    NBTReader buffer = new NBTReader( ByteBuffer.wrap( data ), order );
+                    buffer.setNameTable( names );
+                    assertTrue( NBTTestData.same( compound, buffer.parse() ) );
+
+                    NBTReaderNoBuffer noBuffer = new NBTReaderNoBuffer( new ByteArrayInputStream( data ), data.length, order );
+                    noBuffer.setNameTable( names );
+                    assertTrue( NBTTestData.same( compound, noBuffer.parse() ) );
+                    assertEquals( 0, noBuffer.getRemaining() );
+
+                    NBTByteArrayReader array = new NBTByteArrayReader( data, order );
+                    array.setNameTable( names );
+                    assertTrue( NBTTestData.same( compound, array.parse() ) );
+                    assertFalse( array.hasMoreToRead() );
+
+                    // Single bytes split every name reference and varint between two chunks
+                    for ( int chunk : new int[]{ 1, 7, data.length } ) {
+                        NBTPushParser parser = new NBTPushParser( order );
+                        parser.setNameTable( names );
+                        assertTrue( NBTTestData.same( compound, push( parser, data, chunk ) ) );
+                        assertTrue( parser.isIdle() );
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void streamingReadersSeeTheSameValues() throws Exception {
+        Random random = new Random( 50 );
+        for ( int i = 0; i < 20; i++ ) {
+            NBTTagCompound compound = NBTTestData.compound( random, "root", 0 );
+            NBTNameTable table = NBTNameTable.train( Arrays.asList( compound, compound ), 4 );
+            for ( ByteOrder order : ORDERS ) {
+                byte[] standard = NBTTestData.encode( compound, order, false );
+                byte[] data = packed( compound, order, table );
+
+                assertArrayEquals( listen( standard, order, null ).toArray(), listen( data, order, table ).toArray() );
+                assertEquals( text( standard, order, null ), text( data, order, table ) );
+
+                NBTScanner scanner = new NBTScanner( order );
+                NBTScanner.Result expected = scanner.scan( ByteBuffer.wrap( standard ) );
+                scanner.setNameTable( table );
+                for ( NBTScanner.Result result : new NBTScanner.Result[]{ scanner.scan( ByteBuffer.wrap( data ) ), scanner.scan( new ByteArrayInputStream( data ) ) } ) {
+                    assertTrue( result.isValid(), result.getError() );
+                    assertEquals( data.length, result.getLength() );
+                    assertEquals( expected.getMaxDepth(), result.getMaxDepth() );
+                    for ( int type = 0; type <= NBTDefinitions.TAG_INT_ARRAY; type++ ) {
+                        assertEquals( expected.getTags( type ), result.getTags( type ), "tag " + type );
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void objectReaderReadsPackedData() throws Exception {
+        Holder holder = new Holder();
+        holder.values = Arrays.asList( 1, -2, Integer.MAX_VALUE );
+        holder.names = Arrays.asList( "a", "b" );
+
+        NBTTagCompound compound = NBTCodecs.toCompound( "", holder );
+        NBTNameTable table = new NBTNameTable( Arrays.asList( "names" ) );
+        for ( ByteOrder order : ORDERS ) {
+            for ( NBTNameTable names : new NBTNameTable[]{ null, table } ) {
+                NBTObjectReader reader = new NBTObjectReader( new ByteArrayInputStream( packed( compound, order, names ) ), order );
+                reader.setNameTable( names );
+                Holder read = reader.read( NBTCodecs.get( Holder.class ) );
+                assertEquals( holder.values, read.values );
+                assertEquals( holder.names, read.names );
+            }
+        }
+    }
+
+    @Test
+    public void packedAndStandardRootsFollowEachOther() throws Exception {
+        Random random = new Random( 51 );
+        for ( int i = 0; i < 20; i++ ) {
+            NBTTagCompound compound = NBTTestData.compound( random, "root", 0 );
+            for ( ByteOrder order : ORDERS ) {
+                // Reading the packed root must not leave the reader in varint mode for the standard root behind it
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                out.write( packed( compound, order, null ) );
+                out.write( NBTTestData.encode( compound, order, false ) );
+                out.write( packed( compound, order, null ) );
+                byte[] data = out.toByteArray();
+
+                NBTByteArrayReader array = new NBTByteArrayReader( data, order );
+                NBTReaderNoBuffer noBuffer = new NBTReaderNoBuffer( new ByteArrayInputStream( data ), data.length, order );
+                NBTPushParser parser = new NBTPushParser( order );
+                ByteBuffer chunk = ByteBuffer.wrap( data );
+                for ( int root = 0; root < 3; root++ ) {
+                    assertTrue( NBTTestData.same( compound, array.parse() ) );
+                    assertTrue( NBTTestData.same( compound, noBuffer.parse() ) );
+                    assertEquals( NBTPushParser.Status.ROOT, parser.feed( chunk ) );
+                    assertTrue( NBTTestData.same( compound, parser.getRoot() ) );
+                }
+
+                assertFalse( array.hasMoreToRead() );
+                assertEquals( 0, noBuffer.getRemaining() );
+                assertFalse( chunk.hasRemaining() );
+
+                NBTObjectReader skipper = new NBTObjectReader( ByteBuffer.wrap( data ), order );
+                for ( int root = 0; root < 3; root++ ) {
+                    assertNotNull( skipper.read( NBTCodecs.get( Nothing.class ) ) );
+                }
+
+                assertFalse( skipper.hasMoreToRead() );
+            }
+        }
+    }
+
+    @Test
+    public void unknownTableIsRejected() throws Exception {
+        NBTTagCompound compound = NBTTestData.compound( new Random( 52 ), "root", 0 );
+        NBTNameTable table = NBTNameTable.train( Arrays.asList( compound, compound ), 4 );
+        NBTNameTable other = new NBTNameTable( Arrays.asList( "other" ) );
+        byte[] data = packed( compound, ByteOrder.BIG_ENDIAN, table );
+
+        NBTReader reader = new NBTReader( ByteBuffer.wrap( data ), ByteOrder.BIG_ENDIAN );
+        reader.setNameTable( other );
+        assertThrows( IOException.class, reader::parse );
+        assertThrows( IOException.class, () -> new NBTByteArrayReader( data, ByteOrder.BIG_ENDIAN ).parse() );
+        assertThrows( IOException.class, () -> new NBTReaderNoBuffer( new ByteArrayInputStream( data ), ByteOrder.BIG_ENDIAN ).parse() );
+        assertThrows( IOException.class, () -> new NBTPushParser( ByteOrder.BIG_ENDIAN ).feed( ByteBuffer.wrap( data ) ) );
+    }
+
+    @Test
+    public void transformRejectsPackedData() throws Exception {
+        NBTTagCompound compound = NBTTestData.compound( new Random( 53 ), "root", 0 );
+        byte[] data = packed( compound, ByteOrder.BIG_ENDIAN, null );
+
+        NBTTransform transform = new NBTTransform().drop( "id" );
+        assertThrows( IOException.class, () -> transform.transform( data, ByteOrder.BIG_ENDIAN ) );
+    }
+
+    static byte[] packed( NBTTagCompound compound, ByteOrder byteOrder, NBTNameTable names ) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new NBTWriter( out, byteOrder ).writePacked( compound, names );
+        return out.toByteArray();
+    }
+
+    private static NBTTagCompound push( NBTPushParser parser, byte[] data, int chunkSize ) throws Exception {
+        for ( int offset = 0; offset < data.length; offset += chunkSize ) {
+            ByteBuffer chunk = ByteBuffer.wrap( data, offset, Math.min( chunkSize, data.length - offset ) );
+            if ( parser.feed( chunk ) == NBTPushParser.Status.ROOT ) {
+                assertFalse( chunk.hasRemaining() );
+                return parser.getRoot();
+            }
+        }
+
+        throw new AssertionError( "Root has not been completed" );
+    }
+
+    private static List<Object> listen( byte[] data, ByteOrder byteOrder, NBTNameTable names ) throws Exception {
+        List<Object> values = new ArrayList<>();
+        NBTStream stream = new NBTStream( new ByteArrayInputStream( data ), byteOrder );
+        stream.setNameTable( names );
+        stream.addListener( ( path, value ) -> {
+            values.add( path );
+            values.add( value );
+        } );
+        stream.parse();
+        return values;
+    }
+
+    private static String text( byte[] data, ByteOrder byteOrder, NBTNameTable names ) throws Exception {
+        NBTTranscoder transcoder = new NBTTranscoder( byteOrder );
+        transcoder.setNameTable( names );
+        StringWriter out = new StringWriter();
+        transcoder.toText( new ByteArrayInputStream( data ), out );
+        return out.toString();
+    }
+
+}
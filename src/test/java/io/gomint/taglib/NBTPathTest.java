@@ -0,0 +1,197 @@
+package io.gomint.taglib;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author geNAZt
+ * @version 1.0
+ */
+public class NBTPathTest {
+
+    private static final String[] PATHS = {
+        "",
+        "Level",
+        "Level.time",
+        "Level.Entities[*]",
+        "Level.Entities[*].Pos[1]",
+        "Level.Entities[-1].id",
+        "Level.Entities[id==\"minecraft:zombie\"].Pos[*]",
+        "Level.Entities[age!=2]",
+        "Level.Entities[age==1.0].Motion",
+        "Level.*",
+        "Level.*[*]",
+        "Level.blocks[3]",
+        "Level.heights[*]",
+        "Level[time==7]",
+        "\"Level\".\"missing\"[0]"
+    };
+
+    @Test
+    public void treeAndBytesSelectTheSameValues() throws Exception {
+        Random random = new Random( 44 );
+        for ( int i = 0; i < 50; i++ ) {
+            NBTTagCompound root = level( random );
+            for ( boolean varint : new boolean[]{ false, true } ) {
+                for ( ByteOrder order : new ByteOrder[]{ ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN } ) {
+                    byte[] data = encode( root, order, varint );
+                    for ( String expression : PATHS ) {
+                        NBTPath path = NBTPath.compile( expression );
+
+                        List<Object> tree = new ArrayList<>();
+                        path.forEach( root, tree::add );
+
+                        List<Object> bytes = new ArrayList<>();
+                        NBTByteArrayReader reader = new NBTByteArrayReader( data, order );
+                        reader.setUseVarint( varint );
+                        path.forEach( reader, bytes::add );
+                        assertEquals( data.length, reader.getPosition(), expression );
+
+                        List<Object> streamed = path.stream( root ).collect( Collectors.toList() );
+                        assertSame( tree, bytes, expression );
+                        assertSame( tree, streamed, expression );
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void packedBytesSelectTheSameValues() throws Exception {
+        Random random = new Random( 45 );
+        for ( int i = 0; i < 30; i++ ) {
+            NBTTagCompound root = level( random );
+            NBTNameTable table = NBTNameTable.train( Arrays.asList( root, level( random ) ), 4 );
+            for ( NBTNameTable names : new NBTNameTable[]{ null, table } ) {
+                for ( ByteOrder order : new ByteOrder[]{ ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN } ) {
+                    // Filters read ahead and move back, names spelled out while reading ahead have to be read again
+                    byte[] data = NBTPackedTest.packed( root, order, names );
+                    for ( String expression : PATHS ) {
+                        NBTPath path = NBTPath.compile( expression );
+
+                        List<Object> tree = new ArrayList<>();
+                        path.forEach( root, tree::add );
+
+                        List<Object> bytes = new ArrayList<>();
+                        NBTByteArrayReader reader = new NBTByteArrayReader( data, order );
+                        reader.setNameTable( names );
+                        path.forEach( reader, bytes::add );
+                        assertEquals( data.length, reader.getPosition(), expression );
+                        assertFalse( reader.isUseVarint() );
+                        assertSame( tree, bytes, expression );
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void streamsAreLazy() {
+        int[] reads = new int[1];
+        List<Object> entities = new AbstractList<Object>() {
+            @Override
+            public Object get( int index ) {
+                reads[0]++;
+                NBTTagCompound entity = new NBTTagCompound( null );
+                entity.addValue( "id", index );
+                return entity;
+            }
+
+            @Override
+            public int size() {
+                return 1000;
+            }
+        };
+
+        NBTTagCompound root = new NBTTagCompound( "" );
+        root.addValue( "Entities", entities );
+
+        Object first = NBTPath.compile( "Entities[id!=0].id" ).stream( root ).findFirst().orElse( null );
+        assertEquals( 1, first );
+        assertEquals( 2, reads[0] );
+    }
+
+    private static void assertSame( List<Object> expected, List<Object> actual, String expression ) {
+        assertEquals( expected.size(), actual.size(), expression );
+        for ( int i = 0; i < expected.size(); i++ ) {
+            assertTrue( same( expected.get( i ), actual.get( i ) ), expression + " at " + i );
+        }
+    }
+
+    private static boolean same( Object expected, Object actual ) {
+        if ( expected instanceof NBTTagCompound ) {
+            return actual instanceof NBTTagCompound
+                && Objects.equals( ( (NBTTagCompound) expected ).getName(), ( (NBTTagCompound) actual ).getName() )
+                && ( (NBTTagCompound) expected ).contentEquals( (NBTTagCompound) actual );
+        } else if ( expected instanceof List ) {
+            if ( !( actual instanceof List ) || ( (List<?>) expected ).size() != ( (List<?>) actual ).size() ) {
+                return false;
+            }
+
+            for ( int i = 0; i < ( (List<?>) expected ).size(); i++ ) {
+                if ( !same( ( (List<?>) expected ).get( i ), ( (List<?>) actual ).get( i ) ) ) {
+                    return false;
+                }
+            }
+
+            return true;
+        } else if ( expected instanceof byte[] ) {
+            return actual instanceof byte[] && Arrays.equals( (byte[]) expected, (byte[]) actual );
+        } else if ( expected instanceof int[] ) {
+            return actual instanceof int[] && Arrays.equals( (int[]) expected, (int[]) actual );
+        }
+
+        return expected.equals( actual );
+    }
+
+    private static NBTTagCompound level( Random random ) {
+        NBTTagCompound root = new NBTTagCompound( "" );
+        NBTTagCompound level = root.getCompound( "Level", true );
+        level.addValue( "time", (long) random.nextInt( 10 ) );
+        level.addValue( "blocks", new byte[random.nextInt( 6 )] );
+        level.addValue( "heights", new int[]{ random.nextInt(), -1, 300 } );
+
+        List<Object> entities = new ArrayList<>();
+        for ( int i = random.nextInt( 5 ); i > 0; i-- ) {
+            NBTTagCompound entity = new NBTTagCompound( null );
+            entity.addValue( "id", random.nextBoolean() ? "minecraft:zombie" : "minecraft:cow" );
+            entity.addValue( "age", (byte) random.nextInt( 3 ) );
+
+            List<Object> pos = new ArrayList<>();
+            for ( int j = 0; j < 3; j++ ) {
+                pos.add( random.nextDouble() );
+            }
+
+            entity.addValue( "Pos", pos );
+            NBTTagCompound motion = entity.getCompound( "Motion", true );
+            motion.addValue( "speed", random.nextFloat() );
+            entities.add( entity );
+        }
+
+        level.addValue( "Entities", entities );
+        return root;
+    }
+
+    private static byte[] encode( NBTTagCompound compound, ByteOrder order, boolean varint ) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        NBTWriter writer = new NBTWriter( out, order );
+        writer.setUseVarint( varint );
+        writer.write( compound );
+        return out.toByteArray();
+    }
+
+}
@@ -0,0 +1,72 @@
+package io.gomint.taglib;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Every reader has to produce the same compounds, names included, as the writer has been given
+ *
+ * @author geNAZt
+ * @version 1.0
+ */
+public class NBTReaderParityTest {
+
+    private static final ByteOrder[] ORDERS = { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN };
+    private static final int[] CHUNKS = { 1, 2, 3, 7, 64 };
+
+    @Test
+    public void allReadersAgree() throws Exception {
+        Random random = new Random( 46 );
+        for ( int i = 0; i < 100; i++ ) {
+            NBTTagCompound expected = NBTTestData.compound( random, "root" + i, 0 );
+            for ( ByteOrder order : ORDERS ) {
+                for ( boolean varint : new boolean[]{ false, true } ) {
+                    byte[] data = NBTTestData.encode( expected, order, varint );
+                    String mode = order + ( varint ? " varint" : "" ) + " #" + i;
+
+                    NBTReader reader = new NBTReader( new ByteArrayInputStream( data ), order );
+                    reader.setUseVarint( varint );
+                    assertTrue( NBTTestData.same( expected, reader.parse() ), "NBTReader " + mode );
+
+                    NBTReader bufferReader = new NBTReader( ByteBuffer.wrap( data ), order );
+                    bufferReader.setUseVarint( varint );
+                    assertTrue( NBTTestData.same( expected, bufferReader.parse() ), "NBTReader buffer " + mode );
+
+                    NBTByteArrayReader arrayReader = new NBTByteArrayReader( data, order );
+                    arrayReader.setUseVarint( varint );
+                    assertTrue( NBTTestData.same( expected, arrayReader.parse() ), "NBTByteArrayReader " + mode );
+
+                    NBTReaderNoBuffer noBuffer = new NBTReaderNoBuffer( new ByteArrayInputStream( data ), order );
+                    noBuffer.setUseVarint( varint );
+                    assertTrue( NBTTestData.same( expected, noBuffer.parse() ), "NBTReaderNoBuffer " + mode );
+
+                    for ( int chunk : CHUNKS ) {
+                        assertTrue( NBTTestData.same( expected, push( data, order, varint, chunk ) ), "NBTPushParser " + chunk + " " + mode );
+                    }
+                }
+            }
+        }
+    }
+
+    private static NBTTagCompound push( byte[] data, ByteOrder order, boolean varint, int chunk ) throws Exception {
+        NBTPushParser parser = new NBTPushParser( order );
+        parser.setUseVarint( varint );
+        for ( int offset = 0; offset < data.length; offset += chunk ) {
+            ByteBuffer buffer = ByteBuffer.wrap( data, offset, Math.min( chunk, data.length - offset ) );
+            if ( parser.feed( buffer ) == NBTPushParser.Status.ROOT ) {
+                assertEquals( data.length, buffer.position() );
+                return parser.getRoot();
+            }
+        }
+
+        throw new AssertionError( "Push parser did not complete the root" );
+    }
+
+}
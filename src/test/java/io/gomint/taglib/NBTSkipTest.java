@@ -0,0 +1,138 @@
+package io.gomint.taglib;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Skipping values without decoding them, shared by scanners and object readers
+ *
+ * @author geNAZt
+ * @version 1.0
+ */
+public class NBTSkipTest {
+
+    private static final ByteOrder[] ORDERS = { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN };
+
+    public static class Nothing {
+    }
+
+    @Test
+    public void scannerCountsWhatReadersDecode() throws Exception {
+        Random random = new Random( 11 );
+        for ( int i = 0; i < 100; i++ ) {
+            NBTTagCompound compound = NBTTestData.compound( random, "root", 0 );
+            for ( ByteOrder order : ORDERS ) {
+                for ( boolean varint : new boolean[]{ false, true } ) {
+                    byte[] data = NBTTestData.encode( compound, order, varint );
+                    long[] expected = new long[NBTDefinitions.TAG_INT_ARRAY + 1];
+                    expected[NBTDefinitions.TAG_COMPOUND]++;
+                    count( compound, expected );
+
+                    NBTScanner scanner = new NBTScanner( order );
+                    scanner.setUseVarint( varint );
+                    for ( NBTScanner.Result result : new NBTScanner.Result[]{ scanner.scan( ByteBuffer.wrap( data ) ), scanner.scan( new ByteArrayInputStream( data ) ) } ) {
+                        assertTrue( result.isValid(), result.getError() );
+                        assertEquals( data.length, result.getLength() );
+                        assertEquals( 1, result.getRoots() );
+                        for ( int type = 0; type < expected.length; type++ ) {
+                            assertEquals( expected[type], result.getTags( type ), "tag " + type );
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void scannerReportsTruncatedData() throws Exception {
+        NBTTagCompound compound = NBTTestData.compound( new Random( 3 ), "root", 0 );
+        byte[] data = NBTTestData.encode( compound, ByteOrder.BIG_ENDIAN, true );
+
+        NBTScanner scanner = new NBTScanner( ByteOrder.BIG_ENDIAN );
+        scanner.setUseVarint( true );
+        for ( int length = 0; length < data.length; length++ ) {
+            NBTScanner.Result result = scanner.scan( ByteBuffer.wrap( data, 0, length ) );
+            assertFalse( result.isValid() );
+            assertNotNull( result.getError() );
+            assertEquals( 0, result.getRoots() );
+        }
+    }
+
+    @Test
+    public void objectReaderSkipsEverything() throws Exception {
+        Random random = new Random( 5 );
+        for ( int i = 0; i < 50; i++ ) {
+            NBTTagCompound compound = NBTTestData.compound( random, "root", 0 );
+            for ( ByteOrder order : ORDERS ) {
+                for ( boolean varint : new boolean[]{ false, true } ) {
+                    // Two roots in a row, the second one only reads when the first one has been skipped exactly
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    out.write( NBTTestData.encode( compound, order, varint ) );
+                    out.write( NBTTestData.encode( compound, order, varint ) );
+
+                    NBTObjectReader reader = new NBTObjectReader( ByteBuffer.wrap( out.toByteArray() ), order );
+                    reader.setUseVarint( varint );
+                    assertNotNull( reader.read( NBTCodecs.get( Nothing.class ) ) );
+                    assertNotNull( reader.read( NBTCodecs.get( Nothing.class ) ) );
+                    assertFalse( reader.hasMoreToRead() );
+                }
+            }
+        }
+    }
+
+    private static void count( NBTTagCompound compound, long[] counts ) {
+        compound.entries().forEach( entry -> {
+            counts[type( entry.getValue() )]++;
+            countValue( entry.getValue(), counts );
+        } );
+    }
+
+    private static void countValue( Object value, long[] counts ) {
+        if ( value instanceof NBTTagCompound ) {
+            count( (NBTTagCompound) value, counts );
+        } else if ( value instanceof List ) {
+            for ( Object element : (List<?>) value ) {
+                counts[type( element )]++;
+                countValue( element, counts );
+            }
+        }
+    }
+
+    private static int type( Object value ) {
+        if ( value instanceof Byte ) {
+            return NBTDefinitions.TAG_BYTE;
+        } else if ( value instanceof Short ) {
+            return NBTDefinitions.TAG_SHORT;
+        } else if ( value instanceof Integer ) {
+            return NBTDefinitions.TAG_INT;
+        } else if ( value instanceof Long ) {
+            return NBTDefinitions.TAG_LONG;
+        } else if ( value instanceof Float ) {
+            return NBTDefinitions.TAG_FLOAT;
+        } else if ( value instanceof Double ) {
+            return NBTDefinitions.TAG_DOUBLE;
+        } else if ( value instanceof byte[] ) {
+            return NBTDefinitions.TAG_BYTE_ARRAY;
+        } else if ( value instanceof String ) {
+            return NBTDefinitions.TAG_STRING;
+        } else if ( value instanceof List ) {
+            return NBTDefinitions.TAG_LIST;
+        } else if ( value instanceof NBTTagCompound ) {
+            return NBTDefinitions.TAG_COMPOUND;
+        }
+
+        return NBTDefinitions.TAG_INT_ARRAY;
+    }
+
+}
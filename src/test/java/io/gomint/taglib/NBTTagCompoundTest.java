@@ -0,0 +1,161 @@
+package io.gomint.taglib;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author geNAZt
+ * @version 1.0
+ */
+public class NBTTagCompoundTest {
+
+    @Test
+    public void contentHashFollowsNestedModifications() {
+        NBTTagCompound root = tree();
+        long hash = root.contentHash();
+
+        NBTTagCompound leaf = root.getCompound( "level", false ).getCompound( "player", false );
+        leaf.addValue( "health", 10f );
+        long modified = root.contentHash();
+        assertNotEquals( hash, modified );
+        assertEquals( fresh( root ), modified );
+
+        leaf.remove( "health" );
+        assertEquals( hash, root.contentHash() );
+    }
+
+    @Test
+    public void contentHashFollowsCompoundsInLists() {
+        NBTTagCompound root = tree();
+        long hash = root.contentHash();
+
+        NBTTagCompound item = (NBTTagCompound) root.getList( "items", false ).get( 1 );
+        item.addValue( "count", (byte) 64 );
+        assertNotEquals( hash, root.contentHash() );
+        assertEquals( fresh( root ), root.contentHash() );
+    }
+
+    @Test
+    public void contentHashOfSharedCompounds() {
+        NBTTagCompound shared = new NBTTagCompound( "shared" );
+        shared.addValue( "value", 1 );
+
+        NBTTagCompound first = new NBTTagCompound( "" );
+        first.addValue( "shared", shared );
+        NBTTagCompound second = new NBTTagCompound( "" );
+        second.addValue( "shared", shared );
+        first.contentHash();
+        second.contentHash();
+
+        // Both parents have to see the change, even though only one of them can be notified
+        shared.addValue( "value", 2 );
+        assertEquals( fresh( first ), first.contentHash() );
+        assertEquals( fresh( second ), second.contentHash() );
+        assertTrue( first.contentEquals( second ) );
+    }
+
+    @Test
+    public void contentHashOfCopyOnWriteClones() {
+        NBTTagCompound root = tree();
+        long hash = root.contentHash();
+
+        NBTTagCompound clone = root.copyOnWriteClone( "clone" );
+        assertEquals( hash, clone.contentHash() );
+
+        clone.getCompound( "level", false ).getCompound( "player", false ).addValue( "name", "changed" );
+        assertEquals( fresh( clone ), clone.contentHash() );
+        assertEquals( hash, root.contentHash() );
+        assertFalse( root.contentEquals( clone ) );
+    }
+
+    @Test
+    public void contentHashAfterMovingCompounds() {
+        NBTTagCompound root = tree();
+        NBTTagCompound other = new NBTTagCompound( "" );
+        root.contentHash();
+
+        NBTTagCompound level = (NBTTagCompound) root.remove( "level" );
+        other.addValue( "level", level );
+        long hash = other.contentHash();
+
+        level.addValue( "time", 5L );
+        assertNotEquals( hash, other.contentHash() );
+        assertEquals( fresh( other ), other.contentHash() );
+    }
+
+    @Test
+    public void contentHashFollowsInPlaceModifications() {
+        NBTTagCompound root = tree();
+        NBTTagCompound other = tree();
+        root.getCompound( "level", false ).addValue( "bytes", new byte[4] );
+        other.getCompound( "level", false ).addValue( "bytes", new byte[4] );
+        long hash = root.contentHash();
+        assertTrue( root.contentEquals( other ) );
+
+        root.getList( "items", false ).add( 2 );
+        other.getList( "items", false ).add( 2 );
+        assertNotEquals( hash, root.contentHash() );
+        assertEquals( fresh( root ), root.contentHash() );
+        assertTrue( root.contentEquals( other ) );
+
+        root.getCompound( "level", false ).getByteArray( "bytes", null )[0] = 1;
+        assertEquals( fresh( root ), root.contentHash() );
+        assertFalse( root.contentEquals( other ) );
+        other.getCompound( "level", false ).getByteArray( "bytes", null )[0] = 1;
+        assertTrue( root.contentEquals( other ) );
+
+        root.contentHash();
+        root.entrySet().removeIf( entry -> entry.getKey().equals( "items" ) );
+        assertEquals( fresh( root ), root.contentHash() );
+        assertFalse( root.contentEquals( other ) );
+    }
+
+    @Test
+    public void listViewsDontLeakModifications() {
+        NBTTagCompound root = tree();
+        NBTTagCompound clone = root.copyOnWriteClone( "clone" );
+
+        List<Object> view = clone.getListView( "items" );
+        assertEquals( 3, view.size() );
+        assertThrows( UnsupportedOperationException.class, () -> view.add( 1 ) );
+        ( (NBTTagCompound) view.get( 0 ) ).addValue( "id", 42 );
+
+        root.getList( "items", false ).remove( 2 );
+        assertEquals( 3, view.size() );
+        assertEquals( 0, (int) ( (NBTTagCompound) view.get( 0 ) ).getInteger( "id", -1 ) );
+        assertEquals( 0, (int) ( (NBTTagCompound) root.getList( "items", false ).get( 0 ) ).getInteger( "id", -1 ) );
+        assertNull( clone.getListView( "missing" ) );
+    }
+
+    private static long fresh( NBTTagCompound compound ) {
+        return compound.deepClone( "" ).contentHash();
+    }
+
+    private static NBTTagCompound tree() {
+        NBTTagCompound root = new NBTTagCompound( "" );
+        NBTTagCompound level = root.getCompound( "level", true );
+        level.addValue( "time", 1L );
+        NBTTagCompound player = level.getCompound( "player", true );
+        player.addValue( "name", "steve" );
+
+        List<Object> items = new ArrayList<>();
+        for ( int i = 0; i < 3; i++ ) {
+            NBTTagCompound item = new NBTTagCompound( null );
+            item.addValue( "id", i );
+            items.add( item );
+        }
+
+        root.addValue( "items", items );
+        return root;
+    }
+
+}
@@ -0,0 +1,145 @@
+package io.gomint.taglib;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * Random compounds and deep comparison for the reader and writer tests
+ *
+ * @author geNAZt
+ * @version 1.0
+ */
+final class NBTTestData {
+
+    private static final String[] NAMES = { "id", "Pos", "Motion", "health", "Items", "Count", "tag", "display", "Name", "Lore", "x", "\u00fcber", "\u65e5\u672c", "" };
+
+    private NBTTestData() {
+    }
+
+    /**
+     * Builds a random compound which uses every tag type, nested lists and compounds inside lists, negative and
+     * extreme numbers and non ASCII strings
+     */
+    static NBTTagCompound compound( Random random, String name, int depth ) {
+        NBTTagCompound compound = new NBTTagCompound( name );
+        int entries = random.nextInt( 8 ) + ( depth == 0 ? 4 : 0 );
+        for ( int i = 0; i < entries; i++ ) {
+            String key = NAMES[random.nextInt( NAMES.length )] + ( random.nextInt( 3 ) == 0 ? i : "" );
+            Object value = value( random, depth, random.nextInt( depth < 3 ? 11 : 9 ) + 1 );
+            if ( value instanceof NBTTagCompound ) {
+                value = compound( random, key, depth + 1 );
+            }
+
+            compound.set( key, value );
+        }
+
+        return compound;
+    }
+
+    private static Object value( Random random, int depth, int type ) {
+        switch ( type ) {
+            case NBTDefinitions.TAG_BYTE:
+                return (byte) random.nextInt();
+            case NBTDefinitions.TAG_SHORT:
+                return random.nextBoolean() ? Short.MIN_VALUE : (short) random.nextInt();
+            case NBTDefinitions.TAG_INT:
+                return random.nextBoolean() ? ( random.nextBoolean() ? Integer.MIN_VALUE : -1 ) : random.nextInt();
+            case NBTDefinitions.TAG_LONG:
+                return random.nextBoolean() ? Long.MIN_VALUE : random.nextLong();
+            case NBTDefinitions.TAG_FLOAT:
+                return random.nextFloat() * 1000 - 500;
+            case NBTDefinitions.TAG_DOUBLE:
+                return random.nextBoolean() ? -0.0 : random.nextDouble() * 1e9;
+            case NBTDefinitions.TAG_BYTE_ARRAY:
+                byte[] bytes = new byte[random.nextInt( 300 )];
+                random.nextBytes( bytes );
+                return bytes;
+            case NBTDefinitions.TAG_STRING:
+                return string( random );
+            case NBTDefinitions.TAG_INT_ARRAY:
+                int[] ints = new int[random.nextInt( 40 )];
+                for ( int i = 0; i < ints.length; i++ ) {
+                    ints[i] = random.nextBoolean() ? -random.nextInt( 100 ) : random.nextInt();
+                }
+
+                return ints;
+            case NBTDefinitions.TAG_COMPOUND:
+                return compound( random, null, depth + 1 );
+            default:
+                int elementType = random.nextInt( depth < 3 ? 11 : 9 ) + 1;
+                List<Object> list = new ArrayList<>();
+                for ( int i = random.nextInt( 6 ); i > 0; i-- ) {
+                    list.add( value( random, depth + 1, elementType ) );
+                }
+
+                return list;
+        }
+    }
+
+    private static String string( Random random ) {
+        StringBuilder builder = new StringBuilder();
+        for ( int i = random.nextInt( 20 ); i > 0; i-- ) {
+            int kind = random.nextInt( 10 );
+            builder.append( kind == 0 ? '\u00e9' : kind == 1 ? '\u4e16' : (char) ( 'a' + random.nextInt( 26 ) ) );
+        }
+
+        return builder.toString();
+    }
+
+    static byte[] encode( NBTTagCompound compound, ByteOrder byteOrder, boolean varint ) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        NBTWriter writer = new NBTWriter( out, byteOrder );
+        writer.setUseVarint( varint );
+        writer.write( compound );
+        return out.toByteArray();
+    }
+
+    /**
+     * Compares two compounds including the names of all compounds, arrays are compared by content
+     */
+    static boolean same( NBTTagCompound expected, NBTTagCompound actual ) {
+        if ( !Objects.equals( expected.getName(), actual.getName() ) || expected.size() != actual.size() ) {
+            return false;
+        }
+
+        for ( Map.Entry<String, Object> entry : expected.entries() ) {
+            if ( !sameValue( entry.getValue(), actual.get( entry.getKey() ) ) ) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean sameValue( Object expected, Object actual ) {
+        if ( expected instanceof NBTTagCompound ) {
+            return actual instanceof NBTTagCompound && same( (NBTTagCompound) expected, (NBTTagCompound) actual );
+        } else if ( expected instanceof List ) {
+            if ( !( actual instanceof List ) || ( (List<?>) expected ).size() != ( (List<?>) actual ).size() ) {
+                return false;
+            }
+
+            for ( int i = 0; i < ( (List<?>) expected ).size(); i++ ) {
+                if ( !sameValue( ( (List<?>) expected ).get( i ), ( (List<?>) actual ).get( i ) ) ) {
+                    return false;
+                }
+            }
+
+            return true;
+        } else if ( expected instanceof byte[] ) {
+            return actual instanceof byte[] && Arrays.equals( (byte[]) expected, (byte[]) actual );
+        } else if ( expected instanceof int[] ) {
+            return actual instanceof int[] && Arrays.equals( (int[]) expected, (int[]) actual );
+        }
+
+        return Objects.equals( expected, actual );
+    }
+
+}
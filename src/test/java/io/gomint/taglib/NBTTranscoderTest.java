@@ -0,0 +1,96 @@
+package io.gomint.taglib;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Text rendered by the transcoder has to encode back into the same data
+ *
+ * @author geNAZt
+ * @version 1.0
+ */
+public class NBTTranscoderTest {
+
+    @Test
+    public void snbtRoundTrips() throws Exception {
+        Random random = new Random( 41 );
+        for ( int i = 0; i < 50; i++ ) {
+            NBTTagCompound compound = NBTTestData.compound( random, "", 0 );
+            for ( boolean varint : new boolean[]{ false, true } ) {
+                NBTTranscoder transcoder = transcoder( NBTTranscoder.Format.SNBT, varint );
+                String text = toText( transcoder, NBTTestData.encode( compound, ByteOrder.LITTLE_ENDIAN, varint ) );
+                assertTrue( NBTTestData.same( compound, parse( transcoder, text, varint ) ), text );
+            }
+        }
+    }
+
+    @Test
+    public void jsonRoundTrips() throws Exception {
+        // JSON loses the types of numbers, rendering the encoded text again has to give the same text
+        Random random = new Random( 41 );
+        for ( int i = 0; i < 50; i++ ) {
+            NBTTagCompound compound = NBTTestData.compound( random, "", 0 );
+            for ( boolean varint : new boolean[]{ false, true } ) {
+                NBTTranscoder transcoder = transcoder( NBTTranscoder.Format.JSON, varint );
+                String text = toText( transcoder, NBTTestData.encode( compound, ByteOrder.LITTLE_ENDIAN, varint ) );
+                assertEquals( text, toText( transcoder, toBinary( transcoder, text ) ) );
+            }
+        }
+    }
+
+    @Test
+    public void numericListsAreWidened() throws Exception {
+        for ( boolean varint : new boolean[]{ false, true } ) {
+            NBTTranscoder transcoder = transcoder( NBTTranscoder.Format.JSON, varint );
+            assertEquals( Arrays.asList( 1L, 3000000000L ), list( transcoder, "{\"l\":[1,3000000000]}", varint ) );
+            assertEquals( Arrays.asList( 3000000000L, 1L ), list( transcoder, "{\"l\":[3000000000,1]}", varint ) );
+            assertEquals( Arrays.asList( 1d, 2d, 3000000000d, 2.5d ), list( transcoder, "{\"l\":[1,2,3000000000,2.5]}", varint ) );
+            assertEquals( Arrays.asList( 1L, 2L, 3L, 4L ), list( transcoder, "{l:[1b,2s,3,4L]}", varint ) );
+            assertEquals( Arrays.asList( 1.5d, 2.5d ), list( transcoder, "{l:[1.5f,2.5d]}", varint ) );
+            assertThrows( IOException.class, () -> list( transcoder, "{l:[1,\"x\"]}", varint ) );
+        }
+    }
+
+    private static NBTTranscoder transcoder( NBTTranscoder.Format format, boolean varint ) {
+        NBTTranscoder transcoder = new NBTTranscoder( ByteOrder.LITTLE_ENDIAN );
+        transcoder.setFormat( format );
+        transcoder.setUseVarint( varint );
+        return transcoder;
+    }
+
+    private static List<Object> list( NBTTranscoder transcoder, String text, boolean varint ) throws Exception {
+        return parse( transcoder, text, varint ).getList( "l", false );
+    }
+
+    private static NBTTagCompound parse( NBTTranscoder transcoder, String text, boolean varint ) throws Exception {
+        NBTReader reader = new NBTReader( ByteBuffer.wrap( toBinary( transcoder, text ) ), ByteOrder.LITTLE_ENDIAN );
+        reader.setUseVarint( varint );
+        return reader.parse();
+    }
+
+    private static byte[] toBinary( NBTTranscoder transcoder, String text ) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        transcoder.toBinary( new StringReader( text ), out );
+        return out.toByteArray();
+    }
+
+    private static String toText( NBTTranscoder transcoder, byte[] data ) throws Exception {
+        StringWriter out = new StringWriter();
+        transcoder.toText( ByteBuffer.wrap( data ), out );
+        return out.toString();
+    }
+
+}
@@ -0,0 +1,145 @@
+package io.gomint.taglib;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Wire format of the varint mode, every stream based reader has to read what the writer wrote
+ *
+ * @author geNAZt
+ * @version 1.0
+ */
+public class NBTVarintTest {
+
+    @Test
+    public void byteArrayLengthIsVarint() throws Exception {
+        NBTTagCompound compound = new NBTTagCompound( "" );
+        compound.addValue( "b", new byte[]{ 1, 2, 3 } );
+
+        assertArrayEquals( bytes( 0x0a, 0x00, 0x07, 0x01, 'b', 0x06, 0x01, 0x02, 0x03, 0x00 ), NBTTestData.encode( compound, ByteOrder.LITTLE_ENDIAN, true ) );
+        assertReadable( compound );
+    }
+
+    @Test
+    public void intArrayLengthAndElementsAreVarints() throws Exception {
+        NBTTagCompound compound = new NBTTagCompound( "" );
+        compound.addValue( "i", new int[]{ -1, 300 } );
+
+        assertArrayEquals( bytes( 0x0a, 0x00, 0x0b, 0x01, 'i', 0x04, 0x01, 0xd8, 0x04, 0x00 ), NBTTestData.encode( compound, ByteOrder.LITTLE_ENDIAN, true ) );
+        assertReadable( compound );
+    }
+
+    @Test
+    public void zigzagOfIntsTakesAtMostFiveBytes() throws Exception {
+        NBTTagCompound compound = new NBTTagCompound( "" );
+        compound.addValue( "i", Integer.MIN_VALUE );
+
+        assertArrayEquals( bytes( 0x0a, 0x00, 0x03, 0x01, 'i', 0xff, 0xff, 0xff, 0xff, 0x0f, 0x00 ), NBTTestData.encode( compound, ByteOrder.LITTLE_ENDIAN, true ) );
+        assertReadable( compound );
+    }
+
+    @Test
+    public void highBitsOfVarintsSurvive() throws Exception {
+        NBTTagCompound compound = new NBTTagCompound( "" );
+        compound.addValue( "intMax", Integer.MAX_VALUE );
+        compound.addValue( "intMin", Integer.MIN_VALUE );
+        compound.addValue( "longMax", Long.MAX_VALUE );
+        compound.addValue( "longMin", Long.MIN_VALUE );
+        compound.addValue( "longHigh", 1L << 40 );
+        assertReadable( compound );
+    }
+
+    @Test
+    public void listsOfSmallVarintsAtTheEnd() throws Exception {
+        // Elements take a single byte each, readers must not wait for four or eight of them
+        NBTTagCompound ints = new NBTTagCompound( "" );
+        ints.addValue( "ints", new ArrayList<>( Arrays.asList( 1, 2, 3 ) ) );
+        assertReadable( ints );
+
+        NBTTagCompound longs = new NBTTagCompound( "" );
+        longs.addValue( "longs", new ArrayList<>( Arrays.asList( 1L, 2L ) ) );
+        assertReadable( longs );
+    }
+
+    @Test
+    public void emptyListAtTheEnd() throws Exception {
+        // The list header takes two bytes in varint mode, not five
+        NBTTagCompound compound = new NBTTagCompound( "" );
+        compound.addValue( "list", new ArrayList<>() );
+        assertReadable( compound );
+    }
+
+    @Test
+    public void floatingPointValuesStayFixedSize() throws Exception {
+        NBTTagCompound compound = new NBTTagCompound( "" );
+        compound.addValue( "f", 1.5f );
+        compound.addValue( "d", -2.25 );
+        compound.addValue( "floats", new ArrayList<>( Arrays.asList( 0.5f, Float.NaN ) ) );
+        assertReadable( compound );
+    }
+
+    private static void assertReadable( NBTTagCompound expected ) throws Exception {
+        for ( ByteOrder order : new ByteOrder[]{ ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN } ) {
+            byte[] data = NBTTestData.encode( expected, order, true );
+
+            NBTReader reader = new NBTReader( new ByteArrayInputStream( data ), order );
+            reader.setUseVarint( true );
+            assertTrue( NBTTestData.same( expected, reader.parse() ), "NBTReader " + order );
+
+            NBTReader bufferReader = new NBTReader( ByteBuffer.wrap( data ), order );
+            bufferReader.setUseVarint( true );
+            assertTrue( NBTTestData.same( expected, bufferReader.parse() ), "NBTReader buffer " + order );
+
+            NBTReaderNoBuffer noBuffer = new NBTReaderNoBuffer( new ByteArrayInputStream( data ), order );
+            noBuffer.setUseVarint( true );
+            assertTrue( NBTTestData.same( expected, noBuffer.parse() ), "NBTReaderNoBuffer " + order );
+
+            Map<String, Object> streamed = new HashMap<>();
+            NBTStream stream = new NBTStream( new ByteArrayInputStream( data ), order );
+            stream.setUseVarint( true );
+            stream.addListener( streamed::put );
+            stream.parse();
+            for ( Map.Entry<String, Object> entry : expected.entries() ) {
+                Object value = streamed.get( "." + entry.getKey() );
+                if ( entry.getValue() instanceof List && ( (List<?>) entry.getValue() ).isEmpty() ) {
+                    continue;
+                }
+
+                if ( entry.getValue() instanceof List ) {
+                    List<?> list = (List<?>) entry.getValue();
+                    for ( int i = 0; i < list.size(); i++ ) {
+                        assertEquals( list.get( i ), streamed.get( "." + entry.getKey() + "." + i ), "NBTStream " + order );
+                    }
+                } else if ( entry.getValue() instanceof int[] ) {
+                    assertArrayEquals( (int[]) entry.getValue(), (int[]) value, "NBTStream " + order );
+                } else if ( entry.getValue() instanceof byte[] ) {
+                    assertArrayEquals( (byte[]) entry.getValue(), (byte[]) value, "NBTStream " + order );
+                } else {
+                    assertEquals( entry.getValue(), value, "NBTStream " + order );
+                }
+            }
+        }
+    }
+
+    private static byte[] bytes( int... values ) {
+        byte[] bytes = new byte[values.length];
+        for ( int i = 0; i < values.length; i++ ) {
+            bytes[i] = (byte) values[i];
+        }
+
+        return bytes;
+    }
+
+}
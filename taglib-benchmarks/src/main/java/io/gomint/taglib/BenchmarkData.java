@@ -0,0 +1,201 @@
+package io.gomint.taglib;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compounds and encodings shared by all benchmarks. All data is generated from a fixed seed so every run and
+ * every benchmark works on the same bytes.
+ *
+ * @author geNAZt
+ * @version 1.0
+ */
+public class BenchmarkData {
+
+    /**
+     * Shapes of compounds the benchmarks run on
+     */
+    public enum Size {
+        /**
+         * Item stack like compound as it is sent in a single packet, a few hundred bytes
+         */
+        SMALL,
+
+        /**
+         * Chunk like compound with block arrays, entities and tile entities, a few hundred kilobytes
+         */
+        LARGE
+    }
+
+    /**
+     * Gets the compound of the given size
+     *
+     * @param size The size of the compound
+     * @return A new compound
+     */
+    public static NBTTagCompound create( Size size ) {
+        Random random = new Random( 42 );
+        return size == Size.SMALL ? createItem( random, "" ) : createChunk( random );
+    }
+
+    /**
+     * Encodes the compound like it would be stored or sent
+     *
+     * @param compound   The compound to encode
+     * @param byteOrder  The byteorder to use
+     * @param varint     Whether or not to use varints
+     * @param compressed Whether or not to gzip the output
+     * @return The encoded compound
+     * @throws IOException Thrown in case the compound can't be encoded
+     */
+    public static byte[] encode( NBTTagCompound compound, ByteOrder byteOrder, boolean varint, boolean compressed ) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try ( OutputStream target = compressed ? new GZIPOutputStream( out ) : out ) {
+            NBTWriter writer = new NBTWriter( target, byteOrder );
+            writer.setUseVarint( varint );
+            writer.write( compound );
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Gets a stream over the encoded data which decompresses it if needed
+     *
+     * @param data       The encoded data
+     * @param compressed Whether or not the data is gzipped
+     * @return The stream to read from
+     * @throws IOException Thrown in case the gzip header is invalid
+     */
+    public static InputStream input( byte[] data, boolean compressed ) throws IOException {
+        InputStream in = new ByteArrayInputStream( data );
+        return compressed ? new BufferedInputStream( new GZIPInputStream( in ) ) : in;
+    }
+
+    /**
+     * Parses the byteorder parameter of a benchmark
+     *
+     * @param name BIG_ENDIAN or LITTLE_ENDIAN
+     * @return The byteorder
+     */
+    public static ByteOrder byteOrder( String name ) {
+        return "LITTLE_ENDIAN".equals( name ) ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+    }
+
+    private static NBTTagCompound createItem( Random random, String name ) {
+        NBTTagCompound item = new NBTTagCompound( name );
+        item.addValue( "id", (short) random.nextInt( 512 ) );
+        item.addValue( "Count", (byte) ( 1 + random.nextInt( 64 ) ) );
+        item.addValue( "Damage", (short) random.nextInt( 1500 ) );
+
+        NBTTagCompound tag = item.getCompound( "tag", true );
+        tag.addValue( "RepairCost", random.nextInt( 40 ) );
+        tag.addValue( "Unbreakable", (byte) 0 );
+
+        NBTTagCompound display = tag.getCompound( "display", true );
+        display.addValue( "Name", "Sword of " + Long.toHexString( random.nextLong() ) );
+        List<Object> lore = display.getList( "Lore", true );
+        for ( int i = 0; i < 3; i++ ) {
+            lore.add( "Lore line number " + i + " with some text in it" );
+        }
+
+        List<Object> enchantments = tag.getList( "ench", true );
+        for ( int i = 0; i < 4; i++ ) {
+            NBTTagCompound enchantment = new NBTTagCompound( "" );
+            enchantment.addValue( "id", (short) random.nextInt( 64 ) );
+            enchantment.addValue( "lvl", (short) ( 1 + random.nextInt( 5 ) ) );
+            enchantments.add( enchantment );
+        }
+
+        return item;
+    }
+
+    private static NBTTagCompound createChunk( Random random ) {
+        NBTTagCompound root = new NBTTagCompound( "" );
+        root.addValue( "DataVersion", 1343 );
+
+        NBTTagCompound level = root.getCompound( "Level", true );
+        level.addValue( "xPos", random.nextInt( 4096 ) - 2048 );
+        level.addValue( "zPos", random.nextInt( 4096 ) - 2048 );
+        level.addValue( "LastUpdate", random.nextLong() );
+        level.addValue( "InhabitedTime", (long) random.nextInt( 1_000_000 ) );
+        level.addValue( "TerrainPopulated", (byte) 1 );
+        level.addValue( "LightPopulated", (byte) 1 );
+        level.addValue( "Biomes", bytes( random, 256 ) );
+
+        int[] heightMap = new int[256];
+        for ( int i = 0; i < heightMap.length; i++ ) {
+            heightMap[i] = 60 + random.nextInt( 20 );
+        }
+        level.addValue( "HeightMap", heightMap );
+
+        List<Object> sections = level.getList( "Sections", true );
+        for ( int y = 0; y < 16; y++ ) {
+            NBTTagCompound section = new NBTTagCompound( "" );
+            section.addValue( "Y", (byte) y );
+            section.addValue( "Blocks", bytes( random, 4096 ) );
+            section.addValue( "Data", bytes( random, 2048 ) );
+            section.addValue( "BlockLight", bytes( random, 2048 ) );
+            section.addValue( "SkyLight", bytes( random, 2048 ) );
+            sections.add( section );
+        }
+
+        List<Object> entities = level.getList( "Entities", true );
+        for ( int i = 0; i < 16; i++ ) {
+            NBTTagCompound entity = new NBTTagCompound( "" );
+            entity.addValue( "id", "minecraft:zombie" );
+            entity.addValue( "UUIDMost", random.nextLong() );
+            entity.addValue( "UUIDLeast", random.nextLong() );
+            entity.addValue( "Health", random.nextFloat() * 20 );
+            entity.addValue( "OnGround", (byte) 1 );
+            entity.getList( "Pos", true ).addAll( List.of( random.nextDouble() * 16, random.nextDouble() * 256, random.nextDouble() * 16 ) );
+            entity.getList( "Motion", true ).addAll( List.of( random.nextDouble(), random.nextDouble(), random.nextDouble() ) );
+            entity.getList( "Rotation", true ).addAll( List.of( random.nextFloat() * 360, random.nextFloat() * 180 - 90 ) );
+
+            List<Object> equipment = entity.getList( "ArmorItems", true );
+            for ( int j = 0; j < 4; j++ ) {
+                equipment.add( createItem( random, "" ) );
+            }
+            entities.add( entity );
+        }
+
+        List<Object> tileEntities = level.getList( "TileEntities", true );
+        for ( int i = 0; i < 32; i++ ) {
+            NBTTagCompound tileEntity = new NBTTagCompound( "" );
+            tileEntity.addValue( "id", "minecraft:chest" );
+            tileEntity.addValue( "x", random.nextInt( 16 ) );
+            tileEntity.addValue( "y", random.nextInt( 256 ) );
+            tileEntity.addValue( "z", random.nextInt( 16 ) );
+
+            List<Object> items = tileEntity.getList( "Items", true );
+            for ( int j = 0; j < 8; j++ ) {
+                NBTTagCompound item = createItem( random, "" );
+                item.addValue( "Slot", (byte) j );
+                items.add( item );
+            }
+            tileEntities.add( tileEntity );
+        }
+
+        return root;
+    }
+
+    private static byte[] bytes( Random random, int length ) {
+        // Block data is far from random, keep it compressible like the real thing
+        byte[] data = new byte[length];
+        for ( int i = 0; i < length; i++ ) {
+            data[i] = (byte) random.nextInt( 8 );
+        }
+
+        return data;
+    }
+
+}
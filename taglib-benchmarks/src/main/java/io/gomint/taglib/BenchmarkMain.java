@@ -0,0 +1,35 @@
+package io.gomint.taglib;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks like the JMH main class does, but with the GC profiler enabled unless other profilers
+ * have been requested. This way every report contains the allocation rate next to the throughput.
+ *
+ * @author geNAZt
+ * @version 1.0
+ */
+public class BenchmarkMain {
+
+    public static void main( String[] args ) throws Exception {
+        CommandLineOptions options = new CommandLineOptions( args );
+        if ( options.shouldHelp() || options.shouldList() || options.shouldListWithParams() ||
+            options.shouldListProfilers() || options.shouldListResultFormats() ) {
+            Main.main( args );
+            return;
+        }
+
+        ChainedOptionsBuilder builder = new OptionsBuilder().parent( options );
+        if ( options.getProfilers().isEmpty() ) {
+            builder.addProfiler( GCProfiler.class );
+        }
+
+        new Runner( builder.build() ).run();
+    }
+
+}
@@ -0,0 +1,116 @@
+package io.gomint.taglib;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes the same compound with every reader implementation. Compressed input is inflated as part of every
+ * operation, just like it would be when reading from disk or the network.
+ *
+ * @author geNAZt
+ * @version 1.0
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class ReaderBenchmark {
+
+    @Param( { "BIG_ENDIAN", "LITTLE_ENDIAN" } )
+    public String byteOrder;
+
+    @Param( { "false", "true" } )
+    public boolean varint;
+
+    @Param( { "false", "true" } )
+    public boolean compressed;
+
+    @Param( { "SMALL", "LARGE" } )
+    public BenchmarkData.Size size;
+
+    private ByteOrder order;
+    private byte[] data;
+
+    @Setup
+    public void setup() throws IOException {
+        this.order = BenchmarkData.byteOrder( this.byteOrder );
+        this.data = BenchmarkData.encode( BenchmarkData.create( this.size ), this.order, this.varint, this.compressed );
+    }
+
+    @Benchmark
+    public NBTTagCompound reader() throws IOException, AllocationLimitReachedException {
+        try ( InputStream in = BenchmarkData.input( this.data, this.compressed ) ) {
+            NBTReader reader = new NBTReader( in, this.order );
+            reader.setUseVarint( this.varint );
+            return reader.parse();
+        }
+    }
+
+    @Benchmark
+    public NBTTagCompound readerByteBuffer() throws IOException, AllocationLimitReachedException {
+        // Compressed input has to be inflated into memory before it can be wrapped
+        byte[] input = this.data;
+        if ( this.compressed ) {
+            try ( InputStream in = BenchmarkData.input( this.data, true ) ) {
+                input = in.readAllBytes();
+            }
+        }
+
+        NBTReader reader = new NBTReader( ByteBuffer.wrap( input ), this.order );
+        reader.setUseVarint( this.varint );
+        return reader.parse();
+    }
+
+    @Benchmark
+    public NBTTagCompound byteArrayReader() throws IOException, AllocationLimitReachedException {
+        byte[] input = this.data;
+        if ( this.compressed ) {
+            try ( InputStream in = BenchmarkData.input( this.data, true ) ) {
+                input = in.readAllBytes();
+            }
+        }
+
+        NBTByteArrayReader reader = new NBTByteArrayReader( input, this.order );
+        reader.setUseVarint( this.varint );
+        return reader.parse();
+    }
+
+    @Benchmark
+    public NBTTagCompound readerNoBuffer() throws IOException, AllocationLimitReachedException {
+        NBTReaderNoBuffer reader = new NBTReaderNoBuffer( BenchmarkData.input( this.data, this.compressed ), this.order );
+        reader.setUseVarint( this.varint );
+        return reader.parse();
+    }
+
+    @Benchmark
+    public void stream( Blackhole blackhole ) throws Exception {
+        try ( InputStream in = BenchmarkData.input( this.data, this.compressed ) ) {
+            NBTStream stream = new NBTStream( in, this.order );
+            stream.setUseVarint( this.varint );
+            stream.addListener( ( path, value ) -> {
+                blackhole.consume( path );
+                blackhole.consume( value );
+            } );
+            stream.parse();
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+package io.gomint.taglib;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the UTF-8 conversion of {@link StringUtil} on its own and the complete string paths of the reader
+ * and writer including the length prefix.
+ *
+ * @author geNAZt
+ * @version 1.0
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class StringBenchmark {
+
+    @Param( { "ASCII", "UNICODE" } )
+    public String charset;
+
+    @Param( { "8", "64", "1024" } )
+    public int length;
+
+    @Param( { "false", "true" } )
+    public boolean varint;
+
+    private String value;
+    private byte[] utf8;
+    private byte[] encoded;
+    private ByteArrayOutputStream out;
+
+    @Setup
+    public void setup() throws IOException {
+        String alphabet = "ASCII".equals( this.charset ) ? "abcdefghijklmnopqrstuvwxyz_:0123456789" : "abcäöüß€日本語ÆØÅ";
+        StringBuilder builder = new StringBuilder( this.length );
+        for ( int i = 0; i < this.length; i++ ) {
+            builder.append( alphabet.charAt( i % alphabet.length() ) );
+        }
+
+        this.value = builder.toString();
+        this.utf8 = StringUtil.getUTF8Bytes( this.value );
+        this.out = new ByteArrayOutputStream( this.utf8.length + 8 );
+        this.encoded = this.writeString();
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return StringUtil.getUTF8Bytes( this.value );
+    }
+
+    @Benchmark
+    public String decode() {
+        return StringUtil.fromUTF8Bytes( this.utf8, 0, this.utf8.length );
+    }
+
+    @Benchmark
+    public byte[] writeString() throws IOException {
+        this.out.reset();
+        NBTWriter writer = new NBTWriter( this.out, ByteOrder.LITTLE_ENDIAN );
+        writer.setUseVarint( this.varint );
+        writer.writeStringValue( this.value );
+        writer.finish();
+        return this.out.toByteArray();
+    }
+
+    @Benchmark
+    public String readString() throws IOException, AllocationLimitReachedException {
+        NBTReader reader = new NBTReader( ByteBuffer.wrap( this.encoded ), ByteOrder.LITTLE_ENDIAN );
+        reader.setUseVarint( this.varint );
+        return reader.readStringValue();
+    }
+
+}
@@ -0,0 +1,132 @@
+package io.gomint.taglib;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encodes and decodes batches of zigzag varints and varlongs through the writer and a buffer backed reader.
+ * Each operation handles {@link #BATCH} values.
+ *
+ * @author geNAZt
+ * @version 1.0
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class VarIntBenchmark {
+
+    private static final int BATCH = 1024;
+
+    /**
+     * SMALL fits into one byte, LARGE uses the whole value range and NEGATIVE is small but negative
+     */
+    @Param( { "SMALL", "LARGE", "NEGATIVE" } )
+    public String distribution;
+
+    private int[] ints;
+    private long[] longs;
+    private byte[] encodedInts;
+    private byte[] encodedLongs;
+    private ByteArrayOutputStream out;
+
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random( 42 );
+        this.ints = new int[BATCH];
+        this.longs = new long[BATCH];
+        for ( int i = 0; i < BATCH; i++ ) {
+            switch ( this.distribution ) {
+                case "SMALL":
+                    this.ints[i] = random.nextInt( 64 );
+                    this.longs[i] = random.nextInt( 64 );
+                    break;
+                case "NEGATIVE":
+                    this.ints[i] = -1 - random.nextInt( 64 );
+                    this.longs[i] = -1 - random.nextInt( 64 );
+                    break;
+                default:
+                    this.ints[i] = random.nextInt();
+                    this.longs[i] = random.nextLong();
+                    break;
+            }
+        }
+
+        this.out = new ByteArrayOutputStream( BATCH * 10 );
+        this.encodedInts = this.encodeInts();
+        this.encodedLongs = this.encodeLongs();
+    }
+
+    @Benchmark
+    public byte[] writeVarInt() throws IOException {
+        return this.encodeInts();
+    }
+
+    @Benchmark
+    public byte[] writeVarLong() throws IOException {
+        return this.encodeLongs();
+    }
+
+    @Benchmark
+    public int readVarInt() throws IOException, AllocationLimitReachedException {
+        NBTReader reader = new NBTReader( ByteBuffer.wrap( this.encodedInts ), ByteOrder.LITTLE_ENDIAN );
+        int sum = 0;
+        for ( int i = 0; i < BATCH; i++ ) {
+            sum += VarInt.readSignedVarInt( reader );
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public long readVarLong() throws IOException, AllocationLimitReachedException {
+        NBTReader reader = new NBTReader( ByteBuffer.wrap( this.encodedLongs ), ByteOrder.LITTLE_ENDIAN );
+        long sum = 0;
+        for ( int i = 0; i < BATCH; i++ ) {
+            sum += VarInt.readSignedVarLong( reader );
+        }
+
+        return sum;
+    }
+
+    private byte[] encodeInts() throws IOException {
+        this.out.reset();
+        NBTWriter writer = new NBTWriter( this.out, ByteOrder.LITTLE_ENDIAN );
+        for ( int value : this.ints ) {
+            VarInt.writeSignedVarInt( writer, value );
+        }
+
+        writer.finish();
+        return this.out.toByteArray();
+    }
+
+    private byte[] encodeLongs() throws IOException {
+        this.out.reset();
+        NBTWriter writer = new NBTWriter( this.out, ByteOrder.LITTLE_ENDIAN );
+        for ( long value : this.longs ) {
+            VarInt.writeSignedVarLong( writer, value );
+        }
+
+        writer.finish();
+        return this.out.toByteArray();
+    }
+
+}
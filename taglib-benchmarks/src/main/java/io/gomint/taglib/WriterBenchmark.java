@@ -0,0 +1,75 @@
+package io.gomint.taglib;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Encodes the same compound over and over into a reused output buffer, so only the allocations of the writer
+ * (and the deflater when compressing) show up in the GC profiler.
+ *
+ * @author geNAZt
+ * @version 1.0
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 5, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class WriterBenchmark {
+
+    @Param( { "BIG_ENDIAN", "LITTLE_ENDIAN" } )
+    public String byteOrder;
+
+    @Param( { "false", "true" } )
+    public boolean varint;
+
+    @Param( { "false", "true" } )
+    public boolean compressed;
+
+    @Param( { "SMALL", "LARGE" } )
+    public BenchmarkData.Size size;
+
+    private ByteOrder order;
+    private NBTTagCompound compound;
+    private ByteArrayOutputStream out;
+
+    @Setup
+    public void setup() throws IOException {
+        this.order = BenchmarkData.byteOrder( this.byteOrder );
+        this.compound = BenchmarkData.create( this.size );
+        this.out = new ByteArrayOutputStream( BenchmarkData.encode( this.compound, this.order, this.varint, false ).length );
+    }
+
+    @Benchmark
+    public int writer() throws IOException {
+        this.out.reset();
+
+        OutputStream target = this.compressed ? new GZIPOutputStream( this.out ) : this.out;
+        NBTWriter writer = new NBTWriter( target, this.order );
+        writer.setUseVarint( this.varint );
+        writer.write( this.compound );
+        if ( this.compressed ) {
+            target.close();
+        }
+
+        return this.out.size();
+    }
+
+}
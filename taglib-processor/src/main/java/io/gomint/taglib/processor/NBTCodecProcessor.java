@@ -0,0 +1,508 @@
+package io.gomint.taglib.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates a NBTObjectCodec for every class annotated with io.gomint.taglib.NBTCodec. The generated codecs read
+ * and write the fields of their class in straight-line code, without reflection and without a NBTTagCompound in
+ * between. See the annotation for what is supported.
+ *
+ * @author geNAZt
+ * @version 1.0
+ */
+@SupportedAnnotationTypes( { NBTCodecProcessor.ANNOTATION, NBTCodecProcessor.NAME_ANNOTATION } )
+public class NBTCodecProcessor extends AbstractProcessor {
+
+    static final String ANNOTATION = "io.gomint.taglib.NBTCodec";
+    static final String NAME_ANNOTATION = "io.gomint.taglib.NBTCodec.Name";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process( Set<? extends TypeElement> annotations, RoundEnvironment roundEnv ) {
+        TypeElement annotation = this.processingEnv.getElementUtils().getTypeElement( ANNOTATION );
+        if ( annotation == null ) {
+            return false;
+        }
+
+        for ( Element element : roundEnv.getElementsAnnotatedWith( annotation ) ) {
+            if ( element.getKind() != ElementKind.CLASS ) {
+                this.error( element, "@NBTCodec can only be used on classes" );
+                continue;
+            }
+
+            TypeElement type = (TypeElement) element;
+            List<Field> fields = this.collectFields( type );
+            if ( fields == null ) {
+                continue;
+            }
+
+            try {
+                this.generate( type, fields );
+            } catch ( IOException e ) {
+                this.error( type, "Could not write NBT codec: " + e.getMessage() );
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Collects the fields of the class and its superclasses
+     *
+     * @param type The annotated class
+     * @return The fields to read and write or null when the class can't get a codec
+     */
+    private List<Field> collectFields( TypeElement type ) {
+        boolean valid = true;
+        if ( type.getModifiers().contains( Modifier.ABSTRACT ) ) {
+            this.error( type, "@NBTCodec classes must not be abstract" );
+            valid = false;
+        }
+
+        if ( type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains( Modifier.STATIC ) ) {
+            this.error( type, "@NBTCodec classes which are nested must be static" );
+            valid = false;
+        }
+
+        if ( !type.getTypeParameters().isEmpty() ) {
+            this.error( type, "@NBTCodec classes must not be generic" );
+            valid = false;
+        }
+
+        boolean constructor = false;
+        for ( ExecutableElement candidate : ElementFilter.constructorsIn( type.getEnclosedElements() ) ) {
+            if ( candidate.getParameters().isEmpty() && this.isAccessible( candidate, type ) ) {
+                constructor = true;
+            }
+        }
+
+        if ( !constructor ) {
+            this.error( type, "@NBTCodec classes need a constructor without arguments which is not private" );
+            valid = false;
+        }
+
+        List<Field> fields = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for ( TypeElement current = type; current != null; current = this.superclass( current ) ) {
+            for ( VariableElement variable : ElementFilter.fieldsIn( current.getEnclosedElements() ) ) {
+                Set<Modifier> modifiers = variable.getModifiers();
+                if ( modifiers.contains( Modifier.STATIC ) || modifiers.contains( Modifier.TRANSIENT ) ) {
+                    continue;
+                }
+
+                Field field = this.createField( type, variable );
+                if ( field == null ) {
+                    valid = false;
+                } else if ( !names.add( field.name ) ) {
+                    this.error( variable, "NBT name '" + field.name + "' is used by more than one field" );
+                    valid = false;
+                } else {
+                    fields.add( field );
+                }
+            }
+        }
+
+        return valid ? fields : null;
+    }
+
+    private TypeElement superclass( TypeElement type ) {
+        TypeMirror superclass = type.getSuperclass();
+        if ( superclass.getKind() != TypeKind.DECLARED ) {
+            return null;
+        }
+
+        TypeElement element = (TypeElement) ( (DeclaredType) superclass ).asElement();
+        return element.getQualifiedName().contentEquals( "java.lang.Object" ) ? null : element;
+    }
+
+    private Field createField( TypeElement owner, VariableElement variable ) {
+        Field field = new Field();
+        field.name = variable.getSimpleName().toString();
+        field.type = variable.asType();
+        field.value = this.createValue( field.type );
+
+        for ( AnnotationMirror mirror : variable.getAnnotationMirrors() ) {
+            if ( this.nameOf( mirror ).equals( NAME_ANNOTATION ) ) {
+                for ( Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mirror.getElementValues().entrySet() ) {
+                    field.name = String.valueOf( entry.getValue().getValue() );
+                }
+            }
+        }
+
+        if ( field.value == null ) {
+            this.error( variable, "Type " + field.type + " can't be stored as NBT" );
+            return null;
+        }
+
+        String property = Character.toUpperCase( variable.getSimpleName().charAt( 0 ) ) + variable.getSimpleName().toString().substring( 1 );
+        if ( !variable.getModifiers().contains( Modifier.FINAL ) && this.isAccessible( variable, owner ) ) {
+            field.getter = "value." + variable.getSimpleName();
+            field.setter = "value." + variable.getSimpleName() + " = ";
+            return field;
+        }
+
+        // Lombok adds accessors in the same compilation, they might not be visible yet
+        boolean lombokGetter = this.hasLombok( variable, "lombok.Getter" ) || this.hasLombok( variable, "lombok.Data" );
+        boolean lombokSetter = this.hasLombok( variable, "lombok.Setter" ) || this.hasLombok( variable, "lombok.Data" );
+
+        String getterName = ( field.type.getKind() == TypeKind.BOOLEAN ? "is" : "get" ) + property;
+        String setterName = "set" + property;
+        boolean getter = lombokGetter;
+        boolean setter = lombokSetter && !variable.getModifiers().contains( Modifier.FINAL );
+        for ( ExecutableElement method : ElementFilter.methodsIn( this.processingEnv.getElementUtils().getAllMembers( owner ) ) ) {
+            if ( !this.isAccessible( method, owner ) || method.getModifiers().contains( Modifier.STATIC ) ) {
+                continue;
+            }
+
+            String name = method.getSimpleName().toString();
+            if ( name.equals( getterName ) && method.getParameters().isEmpty() ) {
+                getter = true;
+            } else if ( name.equals( setterName ) && method.getParameters().size() == 1 ) {
+                setter = true;
+            }
+        }
+
+        if ( !getter || !setter ) {
+            this.error( variable, "Field " + variable.getSimpleName() + " needs to be accessible, either directly or through " + getterName + " and " + setterName );
+            return null;
+        }
+
+        field.getter = "value." + getterName + "()";
+        field.setter = "value." + setterName + "( ";
+        field.setterCall = true;
+        return field;
+    }
+
+    private boolean hasLombok( VariableElement variable, String annotation ) {
+        for ( Element element = variable; element != null; element = element.getEnclosingElement() ) {
+            for ( AnnotationMirror mirror : element.getAnnotationMirrors() ) {
+                if ( this.nameOf( mirror ).equals( annotation ) ) {
+                    return true;
+                }
+            }
+
+            if ( element.getKind() == ElementKind.CLASS ) {
+                return false;
+            }
+        }
+
+        return false;
+    }
+
+    private String nameOf( AnnotationMirror mirror ) {
+        return ( (TypeElement) mirror.getAnnotationType().asElement() ).getQualifiedName().toString();
+    }
+
+    private boolean isAccessible( Element element, TypeElement codecOwner ) {
+        Set<Modifier> modifiers = element.getModifiers();
+        if ( modifiers.contains( Modifier.PRIVATE ) ) {
+            return false;
+        }
+
+        return modifiers.contains( Modifier.PUBLIC ) || this.packageOf( element ).equals( this.packageOf( codecOwner ) );
+    }
+
+    private String packageOf( Element element ) {
+        PackageElement pkg = this.processingEnv.getElementUtils().getPackageOf( element );
+        return pkg.getQualifiedName().toString();
+    }
+
+    /**
+     * Maps a Java type to the way it is stored
+     *
+     * @param type The type of a field or list element
+     * @return How the type is stored or null if it can't be stored
+     */
+    private Value createValue( TypeMirror type ) {
+        switch ( type.getKind() ) {
+            case BYTE:
+                return new Value( "TAG_BYTE", "reader.readByte()", "writer.writeByte( %s )", false );
+            case BOOLEAN:
+                return new Value( "TAG_BYTE", "reader.readByte() != 0", "writer.writeByte( (byte) ( %s ? 1 : 0 ) )", false );
+            case SHORT:
+                return new Value( "TAG_SHORT", "reader.readShort()", "writer.writeShort( %s )", false );
+            case INT:
+                return new Value( "TAG_INT", "reader.readInt()", "writer.writeInt( %s )", false );
+            case LONG:
+                return new Value( "TAG_LONG", "reader.readLong()", "writer.writeLong( %s )", false );
+            case FLOAT:
+                return new Value( "TAG_FLOAT", "reader.readFloat()", "writer.writeFloat( %s )", false );
+            case DOUBLE:
+                return new Value( "TAG_DOUBLE", "reader.readDouble()", "writer.writeDouble( %s )", false );
+            case ARRAY:
+                TypeKind component = ( (ArrayType) type ).getComponentType().getKind();
+                if ( component == TypeKind.BYTE ) {
+                    return new Value( "TAG_BYTE_ARRAY", "reader.readByteArray()", "writer.writeByteArray( %s )", true );
+                } else if ( component == TypeKind.INT ) {
+                    return new Value( "TAG_INT_ARRAY", "reader.readIntArray()", "writer.writeIntArray( %s )", true );
+                }
+
+                return null;
+            case DECLARED:
+                return this.createDeclaredValue( (DeclaredType) type );
+            default:
+                return null;
+        }
+    }
+
+    private Value createDeclaredValue( DeclaredType type ) {
+        TypeElement element = (TypeElement) type.asElement();
+        String name = element.getQualifiedName().toString();
+        switch ( name ) {
+            case "java.lang.String":
+                return new Value( "TAG_STRING", "reader.readString()", "writer.writeString( %s )", true );
+            case "java.util.List":
+            case "java.util.ArrayList":
+            case "java.util.Collection":
+                if ( type.getTypeArguments().size() != 1 ) {
+                    return null;
+                }
+
+                TypeMirror elementType = type.getTypeArguments().get( 0 );
+                Value elementValue = elementType.getKind() == TypeKind.DECLARED ? this.createValue( elementType ) : null;
+                if ( elementValue == null || elementValue.element != null || elementValue.tag.endsWith( "_ARRAY" ) ) {
+                    return null;
+                }
+
+                Value list = new Value( "TAG_LIST", null, null, true );
+                list.element = elementValue;
+                list.elementType = elementType.toString();
+                return list;
+            default:
+                break;
+        }
+
+        // Boxed primitives are stored like their primitive, null values are not written
+        try {
+            Value value = this.createValue( this.processingEnv.getTypeUtils().unboxedType( type ) );
+            if ( value != null ) {
+                value.reference = true;
+                return value;
+            }
+        } catch ( IllegalArgumentException e ) {
+            // Not a boxed primitive
+        }
+
+        for ( AnnotationMirror mirror : element.getAnnotationMirrors() ) {
+            if ( this.nameOf( mirror ).equals( ANNOTATION ) ) {
+                String codec = this.codecName( element );
+                return new Value( "TAG_COMPOUND", "reader.readObject( " + codec + ".INSTANCE )", "writer.writeObject( %s, " + codec + ".INSTANCE )", true );
+            }
+        }
+
+        return null;
+    }
+
+    private String codecName( TypeElement type ) {
+        String pkg = this.packageOf( type );
+        String simple = this.codecSimpleName( type );
+        return pkg.isEmpty() ? simple : pkg + "." + simple;
+    }
+
+    private String codecSimpleName( TypeElement type ) {
+        StringBuilder name = new StringBuilder( type.getSimpleName() );
+        for ( Element enclosing = type.getEnclosingElement(); enclosing instanceof TypeElement; enclosing = enclosing.getEnclosingElement() ) {
+            name.insert( 0, enclosing.getSimpleName() + "_" );
+        }
+
+        return name.append( "NBTCodec" ).toString();
+    }
+
+    private void generate( TypeElement type, List<Field> fields ) throws IOException {
+        String pkg = this.packageOf( type );
+        String simpleName = this.codecSimpleName( type );
+        String typeName = type.getQualifiedName().toString();
+
+        StringBuilder source = new StringBuilder();
+        if ( !pkg.isEmpty() ) {
+            source.append( "package " ).append( pkg ).append( ";\n\n" );
+        }
+
+        source.append( "import io.gomint.taglib.AllocationLimitReachedException;\n" )
+            .append( "import io.gomint.taglib.NBTDefinitions;\n" )
+            .append( "import io.gomint.taglib.NBTObjectCodec;\n" )
+            .append( "import io.gomint.taglib.NBTObjectReader;\n" )
+            .append( "import io.gomint.taglib.NBTObjectWriter;\n\n" )
+            .append( "import java.io.IOException;\n\n" )
+            .append( "/**\n * NBT codec of {@link " ).append( typeName ).append( "}, generated by taglib-processor. Do not edit.\n */\n" )
+            .append( "public final class " ).append( simpleName ).append( " implements NBTObjectCodec<" ).append( typeName ).append( "> {\n\n" )
+            .append( "    public static final " ).append( simpleName ).append( " INSTANCE = new " ).append( simpleName ).append( "();\n\n" )
+            .append( "    private " ).append( simpleName ).append( "() {\n\n    }\n\n" );
+
+        // Reading, unknown keys are skipped
+        source.append( "    @Override\n" )
+            .append( "    public " ).append( typeName ).append( " read( NBTObjectReader reader ) throws IOException, AllocationLimitReachedException {\n" )
+            .append( "        " ).append( typeName ).append( " value = new " ).append( typeName ).append( "();\n" )
+            .append( "        for ( byte tagID = reader.readTagType(); tagID != NBTDefinitions.TAG_END; tagID = reader.readTagType() ) {\n" )
+            .append( "            String name = reader.readName();\n" )
+            .append( "            switch ( name ) {\n" );
+
+        for ( Field field : fields ) {
+            Value value = field.value;
+            source.append( "                case \"" ).append( escape( field.name ) ).append( "\": {\n" )
+                .append( "                    reader.checkType( tagID, NBTDefinitions." ).append( value.tag ).append( ", name );\n" );
+
+            String read = value.read;
+            if ( value.element != null ) {
+                source.append( "                    int length = reader.readListHeader( NBTDefinitions." ).append( value.element.tag ).append( " );\n" )
+                    .append( "                    java.util.ArrayList<" ).append( field.listElementType() ).append( "> list = new java.util.ArrayList<>( reader.getListCapacity() );\n" )
+                    .append( "                    for ( int i = 0; i < length; i++ ) {\n" )
+                    .append( "                        list.add( " ).append( value.element.read ).append( " );\n" )
+                    .append( "                    }\n\n" );
+                read = "list";
+            }
+
+            source.append( "                    " ).append( field.setter ).append( read ).append( field.setterCall ? " );\n" : ";\n" )
+                .append( "                    break;\n" )
+                .append( "                }\n" );
+        }
+
+        source.append( "                default:\n" )
+            .append( "                    reader.skipValue( tagID );\n" )
+            .append( "            }\n" )
+            .append( "        }\n\n" )
+            .append( "        return value;\n" )
+            .append( "    }\n\n" );
+
+        // Writing, null values are left out
+        source.append( "    @Override\n" )
+            .append( "    public void write( NBTObjectWriter writer, " ).append( typeName ).append( " value ) throws IOException {\n" );
+
+        for ( int i = 0; i < fields.size(); i++ ) {
+            Field field = fields.get( i );
+            Value value = field.value;
+            String local = "f" + i;
+            String indent = value.reference ? "            " : "        ";
+
+            source.append( "        " ).append( field.type.toString() ).append( " " ).append( local ).append( " = " ).append( field.getter ).append( ";\n" );
+            if ( value.reference ) {
+                source.append( "        if ( " ).append( local ).append( " != null ) {\n" );
+            }
+
+            source.append( indent ).append( "writer.writeTag( NBTDefinitions." ).append( value.tag ).append( ", \"" ).append( escape( field.name ) ).append( "\" );\n" );
+            if ( value.element != null ) {
+                source.append( indent ).append( "writer.writeListHeader( NBTDefinitions." ).append( value.element.tag ).append( ", " ).append( local ).append( ".size() );\n" )
+                    .append( indent ).append( "for ( " ).append( field.listElementType() ).append( " element : " ).append( local ).append( " ) {\n" )
+                    .append( indent ).append( "    if ( element == null ) {\n" )
+                    .append( indent ).append( "        throw new IOException( \"List '" ).append( escape( field.name ) ).append( "' of " ).append( escape( typeName ) )
+                    .append( " contains null, NBT lists can't hold null elements\" );\n" )
+                    .append( indent ).append( "    }\n" )
+                    .append( indent ).append( "    " ).append( String.format( value.element.write, "element" ) ).append( ";\n" )
+                    .append( indent ).append( "}\n" );
+            } else {
+                source.append( indent ).append( String.format( value.write, local ) ).append( ";\n" );
+            }
+
+            if ( value.reference ) {
+                source.append( "        }\n" );
+            }
+
+            source.append( "\n" );
+        }
+
+        source.setLength( source.length() - ( fields.isEmpty() ? 0 : 1 ) );
+        source.append( "    }\n\n}\n" );
+
+        String qualifiedName = pkg.isEmpty() ? simpleName : pkg + "." + simpleName;
+        try ( Writer writer = this.processingEnv.getFiler().createSourceFile( qualifiedName, type ).openWriter() ) {
+            writer.write( source.toString() );
+        }
+    }
+
+    /**
+     * Escapes a value for a string literal of the generated source. Line breaks and other control characters are
+     * written as octal escapes since unicode escapes of them would break the literal, everything beyond ASCII as
+     * unicode escapes so the source does not depend on the encoding of the filer.
+     */
+    private static String escape( String value ) {
+        StringBuilder builder = new StringBuilder( value.length() + 8 );
+        for ( int i = 0; i < value.length(); i++ ) {
+            char c = value.charAt( i );
+            if ( c == '\\' || c == '"' ) {
+                builder.append( '\\' ).append( c );
+            } else if ( c < 0x20 || c == 0x7f ) {
+                builder.append( String.format( "\\%03o", (int) c ) );
+            } else if ( c > 0x7f ) {
+                builder.append( String.format( "\\u%04x", (int) c ) );
+            } else {
+                builder.append( c );
+            }
+        }
+
+        return builder.toString();
+    }
+
+    private void error( Element element, String message ) {
+        this.processingEnv.getMessager().printMessage( Diagnostic.Kind.ERROR, message, element );
+    }
+
+    /**
+     * A field of the annotated class
+     */
+    private static final class Field {
+
+        private String name;
+        private TypeMirror type;
+        private Value value;
+        private String getter;
+        private String setter;
+        private boolean setterCall;
+
+        private String listElementType() {
+            return this.value.elementType;
+        }
+
+    }
+
+    /**
+     * How a type is stored, the read and write code is generated from this
+     */
+    private static final class Value {
+
+        private final String tag;
+        private final String read;
+        private final String write;
+        private boolean reference;
+        private Value element;
+        private String elementType;
+
+        private Value( String tag, String read, String write, boolean reference ) {
+            this.tag = tag;
+            this.read = read;
+            this.write = write;
+            this.reference = reference;
+        }
+
+    }
+
+}
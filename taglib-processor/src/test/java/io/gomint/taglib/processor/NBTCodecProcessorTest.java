@@ -0,0 +1,98 @@
+package io.gomint.taglib.processor;
+
+import io.gomint.taglib.NBTObjectCodec;
+import io.gomint.taglib.NBTObjectReader;
+import io.gomint.taglib.NBTObjectWriter;
+import io.gomint.taglib.NBTReader;
+import io.gomint.taglib.NBTTagCompound;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the processor on a fixture class through javac and round trips the codecs it generated
+ *
+ * @author geNAZt
+ * @version 1.0
+ */
+public class NBTCodecProcessorTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @SuppressWarnings( "unchecked" )
+    public void generatedCodecsRoundTrip() throws Exception {
+        Path classes = Files.createDirectories( this.directory.resolve( "classes" ) );
+        Path generated = Files.createDirectories( this.directory.resolve( "generated" ) );
+        this.compile( classes, generated );
+        assertTrue( Files.exists( generated.resolve( "fixture/PlayerNBTCodec.java" ) ) );
+        assertTrue( Files.exists( generated.resolve( "fixture/Player_ItemNBTCodec.java" ) ) );
+
+        try ( URLClassLoader loader = new URLClassLoader( new URL[]{ classes.toUri().toURL() }, this.getClass().getClassLoader() ) ) {
+            Object player = loader.loadClass( "fixture.Player" ).getMethod( "sample" ).invoke( null );
+            NBTObjectCodec<Object> codec = (NBTObjectCodec<Object>) loader.loadClass( "fixture.PlayerNBTCodec" ).getField( "INSTANCE" ).get( null );
+            byte[] data = write( player, codec );
+
+            NBTTagCompound compound = new NBTReader( ByteBuffer.wrap( data ), ByteOrder.BIG_ENDIAN ).parse();
+            assertEquals( "Steve", compound.getString( "name", null ) );
+            assertEquals( "hello", compound.getString( "say \"hi\"\\\n\t\u00e9\u2603", null ) );
+            assertEquals( Arrays.asList( 1, -2, Integer.MAX_VALUE ), compound.getList( "scores", false ) );
+            assertEquals( 42, (int) compound.getInteger( "level", 0 ) );
+            assertEquals( 1, (byte) compound.getByte( "online", (byte) 0 ) );
+            assertEquals( "minecraft:sword", compound.getCompound( "hand", false ).getString( "id", null ) );
+
+            List<Object> items = compound.getList( "items", false );
+            assertEquals( 2, items.size() );
+            assertEquals( 1, (byte) ( (NBTTagCompound) items.get( 0 ) ).getByte( "count", (byte) 0 ) );
+            assertFalse( ( (NBTTagCompound) items.get( 1 ) ).containsKey( "count" ) );
+
+            Object read = new NBTObjectReader( ByteBuffer.wrap( data ), ByteOrder.BIG_ENDIAN ).read( codec );
+            assertArrayEquals( data, write( read, codec ) );
+        }
+    }
+
+    private void compile( Path classes, Path generated ) throws Exception {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try ( StandardJavaFileManager fileManager = compiler.getStandardFileManager( diagnostics, null, null ) ) {
+            File source = Paths.get( this.getClass().getResource( "/fixture/Player.java" ).toURI() ).toFile();
+            List<String> options = Arrays.asList( "-classpath", System.getProperty( "java.class.path" ), "-d", classes.toString(),
+                "-s", generated.toString(), "-encoding", "UTF-8" );
+
+            JavaCompiler.CompilationTask task = compiler.getTask( null, fileManager, diagnostics, options, null, fileManager.getJavaFileObjects( source ) );
+            task.setProcessors( Collections.singletonList( new NBTCodecProcessor() ) );
+            assertTrue( task.call(), diagnostics.getDiagnostics().toString() );
+        }
+    }
+
+    private static byte[] write( Object value, NBTObjectCodec<Object> codec ) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new NBTObjectWriter( out, ByteOrder.BIG_ENDIAN ).write( "", value, codec );
+        return out.toByteArray();
+    }
+
+}
@@ -0,0 +1,64 @@
+package fixture;
+
+import io.gomint.taglib.NBTCodec;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compiled by NBTCodecProcessorTest, covers nested classes, boxed lists, accessors and names which need escaping
+ */
+@NBTCodec
+public class Player {
+
+    @NBTCodec
+    public static class Item {
+        String id;
+        Byte count;
+    }
+
+    String name;
+    @NBTCodec.Name( "say \"hi\"\\\n\t\u00e9\u2603" )
+    String greeting;
+    List<Integer> scores;
+    List<Item> items;
+    Item hand;
+    private int level;
+    private boolean online;
+
+    public int getLevel() {
+        return this.level;
+    }
+
+    public void setLevel( int level ) {
+        this.level = level;
+    }
+
+    public boolean isOnline() {
+        return this.online;
+    }
+
+    public void setOnline( boolean online ) {
+        this.online = online;
+    }
+
+    public static Player sample() {
+        Item sword = new Item();
+        sword.id = "minecraft:sword";
+        sword.count = 1;
+        Item bread = new Item();
+        bread.id = "minecraft:bread";
+
+        Player player = new Player();
+        player.name = "Steve";
+        player.greeting = "hello";
+        player.scores = new ArrayList<>( Arrays.asList( 1, -2, Integer.MAX_VALUE ) );
+        player.items = new ArrayList<>( Arrays.asList( sword, bread ) );
+        player.hand = sword;
+        player.level = 42;
+        player.online = true;
+        return player;
+    }
+
+}